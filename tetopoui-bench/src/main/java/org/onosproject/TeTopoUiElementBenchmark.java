@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.host.HostService;
+import org.onosproject.net.provider.ProviderId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering one device or link, as a payload tree, as a
+ * complete message, or streamed into a hash. Run with {@code -prof gc}
+ * to see the bytes allocated per element.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TeTopoUiElementBenchmark {
+
+    private static final ProviderId PID = new ProviderId("127.0.0.1", "meow-topo");
+
+    private Device device;
+    private Link link;
+    private TeTopoJsonWriter writer;
+    private TeTopoUiSender sender;
+    private TeTopoUiDetailsCache details;
+    private TeTopoUiTrafficMonitor traffic;
+    private TeTopoUiSummary summary;
+    private TeTopoUiHeartbeats heartbeats;
+    private TeTopoUiParkedViews parkedViews;
+    private TeTopoUiMessageHandler handler;
+
+    @Setup
+    public void setUp() {
+        DefaultAnnotations annotations = DefaultAnnotations.builder()
+                .set("name", "te:1")
+                .set(TeTopoJson.LAYER_KEY, TeTopoJson.LAYER_CONTROLLER)
+                .set(TeTopoJson.LAYER_MASTER, "te:native")
+                .build();
+        device = new DefaultDevice(null, DeviceId.deviceId("te:1"), Device.Type.SWITCH,
+                                   "", "", "", "", null, annotations);
+        link = DefaultLink.builder()
+                .providerId(PID)
+                .src(new ConnectPoint(DeviceId.deviceId("te:1"), PortNumber.portNumber(1)))
+                .dst(new ConnectPoint(DeviceId.deviceId("te:2"), PortNumber.portNumber(1)))
+                .type(Link.Type.DIRECT)
+                .state(Link.State.ACTIVE)
+                .isExpected(true)
+                .build();
+        writer = new TeTopoJsonWriter();
+        sender = new TeTopoUiSender(1, 1000);
+        TeTopoUiStubDirectory directory = new TeTopoUiStubDirectory();
+        TeTopoUiCounters counters = new TeTopoUiCounters(directory.get(DeviceService.class),
+                                                         directory.get(FlowRuleService.class),
+                                                         directory.get(MastershipService.class));
+        TeTopoUiModelCache model =
+                new TeTopoUiModelCache(TeTopoUiSyntheticTopology.service(0, 0, 0));
+        details = new TeTopoUiDetailsCache(directory.get(DeviceService.class),
+                                           directory.get(HostService.class), model, 1000, 5000);
+        traffic = new TeTopoUiTrafficMonitor(directory.get(DeviceService.class), model, 5000);
+        summary = new TeTopoUiSummary(model, 2000);
+        heartbeats = new TeTopoUiHeartbeats(30000);
+        parkedViews = new TeTopoUiParkedViews(60000);
+        handler = new TeTopoUiMessageHandler(model, sender, counters, details, traffic,
+                                             summary, heartbeats, parkedViews, null, null, null,
+                                             500, 100, 2000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.destroy();
+        parkedViews.clear();
+        heartbeats.shutdown();
+        summary.deactivate();
+        traffic.shutdown();
+        details.deactivate();
+        sender.shutdown();
+    }
+
+    @Benchmark
+    public ObjectNode deviceTree() {
+        return TeTopoJson.layerDevice(device);
+    }
+
+    @Benchmark
+    public ObjectNode deviceMessageLayer() {
+        return handler.deviceLayerPayload(device);
+    }
+
+    @Benchmark
+    public long deviceHashed() {
+        return writer.layerDeviceHash(device);
+    }
+
+    @Benchmark
+    public ObjectNode linkTree() {
+        return TeTopoJson.link(link);
+    }
+
+    @Benchmark
+    public ObjectNode linkMessage() {
+        return handler.linkPayload(link);
+    }
+
+    @Benchmark
+    public long linkHashed() {
+        return writer.linkHash(link);
+    }
+
+    @Benchmark
+    public String deviceSerialized() {
+        return TeTopoJson.layerDevice(device).toString();
+    }
+}
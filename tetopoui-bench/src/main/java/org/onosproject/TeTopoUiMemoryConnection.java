@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onosproject.ui.JsonUtils;
+import org.onosproject.ui.UiConnection;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UI connection that serializes messages as the web socket does, then
+ * only counts them.
+ */
+final class TeTopoUiMemoryConnection implements UiConnection {
+
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong chars = new AtomicLong();
+
+    private volatile String awaitedType;
+    private volatile CountDownLatch awaited = new CountDownLatch(0);
+
+    /**
+     * Returns a latch released when a message of the given type is sent.
+     *
+     * @param type message type
+     * @return latch
+     */
+    CountDownLatch await(String type) {
+        CountDownLatch latch = new CountDownLatch(1);
+        awaited = latch;
+        awaitedType = type;
+        return latch;
+    }
+
+    /**
+     * Returns the number of messages sent.
+     *
+     * @return message count
+     */
+    long messages() {
+        return messages.get();
+    }
+
+    /**
+     * Returns the total length of the serialized messages sent.
+     *
+     * @return character count
+     */
+    long chars() {
+        return chars.get();
+    }
+
+    @Override
+    public void sendMessage(ObjectNode message) {
+        chars.addAndGet(message.toString().length());
+        messages.incrementAndGet();
+        if (message.path("event").asText().equals(awaitedType)) {
+            awaited.countDown();
+        }
+    }
+
+    @Override
+    public void sendMessage(String type, long sid, ObjectNode payload) {
+        sendMessage(JsonUtils.envelope(type, sid, payload));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onosproject.tetopology.management.api.TeTopologyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of building the shared view model of a synthetic TE
+ * topology, on a given number of rendering threads, and of encoding it
+ * as a full snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TeTopoUiModelBenchmark {
+
+    private static final int EVENT_LOG_SIZE = 10000;
+
+    @Param({"100", "1000", "10000"})
+    private int nodes;
+
+    @Param({"4"})
+    private int fanout;
+
+    @Param({"0.5"})
+    private double matrixDensity;
+
+    @Param({"1", "4", "16"})
+    private int threads;
+
+    private TeTopologyService service;
+    private TeTopoUiModelCache model;
+    private List<ObjectNode> devices;
+    private List<ObjectNode> links;
+
+    @Setup
+    public void setUp() {
+        service = TeTopoUiSyntheticTopology.service(nodes, fanout, matrixDensity);
+        model = new TeTopoUiModelCache(service, EVENT_LOG_SIZE, null, threads);
+        model.activate();
+        expandAll(model);
+        devices = model.devices();
+        links = model.links();
+    }
+
+    @TearDown
+    public void tearDown() {
+        model.deactivate();
+    }
+
+    /**
+     * Renders the upper layer of the whole topology.
+     *
+     * @return rendered device count
+     */
+    @Benchmark
+    public int buildModel() {
+        TeTopoUiModelCache cache = new TeTopoUiModelCache(service, EVENT_LOG_SIZE, null, threads);
+        cache.activate();
+        int size = cache.devices().size();
+        cache.deactivate();
+        return size;
+    }
+
+    /**
+     * Renders the whole topology and expands the inner layer of every
+     * TE node.
+     *
+     * @return rendered device count
+     */
+    @Benchmark
+    public int buildModelExpanded() {
+        TeTopoUiModelCache cache = new TeTopoUiModelCache(service, EVENT_LOG_SIZE, null, threads);
+        cache.activate();
+        int size = expandAll(cache);
+        cache.deactivate();
+        return size;
+    }
+
+    /**
+     * Serializes the upper layer as bulk addDevices/addLinks payloads.
+     *
+     * @return serialized length
+     */
+    @Benchmark
+    public int encodeBulk() {
+        ArrayNode deviceArray = TeTopoJson.arrayNode();
+        deviceArray.addAll(devices);
+        ArrayNode linkArray = TeTopoJson.arrayNode();
+        linkArray.addAll(links);
+        return deviceArray.toString().length() + linkArray.toString().length();
+    }
+
+    /**
+     * Serializes the upper layer in the compact columnar encoding.
+     *
+     * @return serialized length
+     */
+    @Benchmark
+    public int encodeCompact() {
+        return TeTopoUiCompactCodec.encode(devices, links).toString().length();
+    }
+
+    // Expands every TE node; returns the number of inner layer devices.
+    private int expandAll(TeTopoUiModelCache cache) {
+        int size = 0;
+        for (int i = 0; i < nodes; i++) {
+            CompletableFuture<TeTopoUiModelCache.Expansion> expansion =
+                    cache.expand(TeTopoUiSyntheticTopology.teNodeId(i));
+            size += expansion.join().devices().size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.host.HostService;
+import org.onosproject.tetopology.management.api.TeTopologyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end time from a view's meowTopoStart to its meowTopoStartDone,
+ * over an in-memory UI connection that serializes every message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TeTopoUiStartBenchmark {
+
+    private static final String TOPO_START = "meowTopoStart";
+    private static final String TOPO_START_DONE = "meowTopoStartDone";
+
+    @Param({"100", "1000", "10000"})
+    private int nodes;
+
+    @Param({"4"})
+    private int fanout;
+
+    @Param({"0.5"})
+    private double matrixDensity;
+
+    @Param({"plain", "bulk", "compact"})
+    private String encoding;
+
+    private TeTopologyService service;
+    private TeTopoUiModelCache model;
+    private TeTopoUiSender sender;
+    private TeTopoUiStubDirectory directory;
+    private TeTopoUiCounters counters;
+    private TeTopoUiDetailsCache details;
+    private TeTopoUiTrafficMonitor traffic;
+    private TeTopoUiSummary summary;
+    private TeTopoUiHeartbeats heartbeats;
+    private TeTopoUiParkedViews parkedViews;
+    private ObjectNode start;
+
+    @Setup
+    public void setUp() {
+        service = TeTopoUiSyntheticTopology.service(nodes, fanout, matrixDensity);
+        model = new TeTopoUiModelCache(service);
+        model.activate();
+        sender = new TeTopoUiSender(4, 1000);
+        directory = new TeTopoUiStubDirectory().add(TeTopologyService.class, service);
+        counters = new TeTopoUiCounters(directory.get(DeviceService.class),
+                                        directory.get(FlowRuleService.class),
+                                        directory.get(MastershipService.class));
+        details = new TeTopoUiDetailsCache(directory.get(DeviceService.class),
+                                           directory.get(HostService.class), model, 1000, 5000);
+        traffic = new TeTopoUiTrafficMonitor(directory.get(DeviceService.class), model, 5000);
+        summary = new TeTopoUiSummary(model, 2000);
+        heartbeats = new TeTopoUiHeartbeats(30000);
+        parkedViews = new TeTopoUiParkedViews(60000);
+
+        ObjectNode payload = TeTopoJson.objectNode()
+                .put("bulk", !"plain".equals(encoding))
+                .put("compact", "compact".equals(encoding));
+        start = TeTopoJson.objectNode().put("event", TOPO_START);
+        start.set("payload", payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        parkedViews.clear();
+        heartbeats.shutdown();
+        summary.deactivate();
+        traffic.shutdown();
+        details.deactivate();
+        sender.shutdown();
+        model.deactivate();
+    }
+
+    /**
+     * Opens a view, starts it and waits for the end of its snapshot.
+     *
+     * @return serialized length of the messages sent
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Benchmark
+    public long timeToStartDone() throws InterruptedException {
+        TeTopoUiMemoryConnection connection = new TeTopoUiMemoryConnection();
+        TeTopoUiMessageHandler handler =
+                new TeTopoUiMessageHandler(model, sender, counters, details, traffic,
+                                           summary, heartbeats, parkedViews, null, null, null,
+                                           500, 100, 2000);
+        handler.init(connection, directory);
+
+        CountDownLatch done = connection.await(TOPO_START_DONE);
+        handler.process(start);
+        if (!done.await(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("No " + TOPO_START_DONE + " received");
+        }
+        handler.destroy();
+        return connection.chars();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Maps;
+import org.onlab.osgi.ServiceDirectory;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Service directory handing out the given services, and inert stand-ins
+ * for any other: their methods do nothing and return null, zero or false.
+ */
+final class TeTopoUiStubDirectory implements ServiceDirectory {
+
+    private final Map<Class<?>, Object> services = Maps.newConcurrentMap();
+
+    /**
+     * Registers a service.
+     *
+     * @param serviceClass service interface
+     * @param service      service implementation
+     * @param <T>          service type
+     * @return this directory
+     */
+    <T> TeTopoUiStubDirectory add(Class<T> serviceClass, T service) {
+        services.put(serviceClass, service);
+        return this;
+    }
+
+    @Override
+    public <T> T get(Class<T> serviceClass) {
+        return serviceClass.cast(services.computeIfAbsent(serviceClass, TeTopoUiStubDirectory::inert));
+    }
+
+    private static Object inert(Class<?> serviceClass) {
+        return Proxy.newProxyInstance(serviceClass.getClassLoader(), new Class<?>[]{serviceClass},
+                                      (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Inert" + serviceClass.getSimpleName();
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return '\0';
+        }
+        return null;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.onosproject.tetopology.management.api.DefaultNetwork;
+import org.onosproject.tetopology.management.api.DefaultNetworks;
+import org.onosproject.tetopology.management.api.InternalTeNetwork;
+import org.onosproject.tetopology.management.api.KeyId;
+import org.onosproject.tetopology.management.api.Networks;
+import org.onosproject.tetopology.management.api.TeTopologyService;
+import org.onosproject.tetopology.management.api.TeTopologyType;
+import org.onosproject.tetopology.management.api.link.DefaultNetworkLink;
+import org.onosproject.tetopology.management.api.link.NetworkLink;
+import org.onosproject.tetopology.management.api.node.ConnectivityMatrix;
+import org.onosproject.tetopology.management.api.node.DefaultNetworkNode;
+import org.onosproject.tetopology.management.api.node.NetworkNode;
+import org.onosproject.tetopology.management.api.node.NetworkNodeKey;
+import org.onosproject.tetopology.management.api.node.TeNode;
+import org.onosproject.tetopology.management.api.node.TerminationPointKey;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a native TE network of configurable size and serves it
+ * through a stand-in TE topology service.
+ * <p>
+ * TE nodes form a ring of TE links. Each TE node has the given number of
+ * supporting nodes, and a connectivity matrix entry between an ordered
+ * pair of its supporting nodes with the given probability.
+ */
+final class TeTopoUiSyntheticTopology {
+
+    private static final KeyId NETWORK_ID = KeyId.keyId("te:native");
+    private static final KeyId TP_ID = KeyId.keyId("1");
+
+    // non-instantiable
+    private TeTopoUiSyntheticTopology() {
+    }
+
+    /**
+     * Returns a TE topology service serving one generated native network.
+     * Listeners are accepted and never notified; other operations are not
+     * supported.
+     *
+     * @param nodes         number of TE nodes
+     * @param fanout        number of supporting nodes per TE node
+     * @param matrixDensity probability of a connectivity matrix entry
+     *                      between two supporting nodes of a TE node
+     * @return TE topology service
+     */
+    static TeTopologyService service(int nodes, int fanout, double matrixDensity) {
+        Networks networks = networks(nodes, fanout, matrixDensity);
+        return (TeTopologyService) Proxy.newProxyInstance(
+                TeTopologyService.class.getClassLoader(),
+                new Class<?>[]{TeTopologyService.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getNetworks":
+                            return networks;
+                        case "addListener":
+                        case "removeListener":
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "SyntheticTeTopologyService";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Returns the device id of the TE node with the given index.
+     *
+     * @param index TE node index
+     * @return device id string
+     */
+    static String teNodeId(int index) {
+        return "te:" + index;
+    }
+
+    private static Networks networks(int nodes, int fanout, double matrixDensity) {
+        Random random = new Random(nodes);
+        List<NetworkNode> teNodes = Lists.newArrayListWithCapacity(nodes);
+        List<NetworkLink> teLinks = Lists.newArrayListWithCapacity(nodes);
+
+        for (int i = 0; i < nodes; i++) {
+            KeyId nodeId = KeyId.keyId(teNodeId(i));
+            DefaultNetworkNode node = new DefaultNetworkNode(nodeId);
+            TeNode te = new TeNode(teNodeId(i));
+
+            List<NetworkNodeKey> supporting = Lists.newArrayListWithCapacity(fanout);
+            for (int s = 0; s < fanout; s++) {
+                supporting.add(new NetworkNodeKey(NETWORK_ID, KeyId.keyId(teNodeId(i) + "-" + s)));
+            }
+
+            List<ConnectivityMatrix> matrices = Lists.newArrayList();
+            for (NetworkNodeKey from : supporting) {
+                for (NetworkNodeKey to : supporting) {
+                    if (from != to && random.nextDouble() < matrixDensity) {
+                        ConnectivityMatrix matrix = new ConnectivityMatrix(matrices.size());
+                        matrix.setFrom(tp(from.nodeId()));
+                        matrix.setTo(tp(to.nodeId()));
+                        matrices.add(matrix);
+                    }
+                }
+            }
+
+            te.setConnectivityMatrices(matrices);
+            node.setTe(te);
+            node.setSupportingNodeIds(supporting);
+            teNodes.add(node);
+
+            DefaultNetworkLink link = new DefaultNetworkLink(KeyId.keyId("te-link:" + i));
+            link.setSource(tp(nodeId));
+            link.setDestination(tp(KeyId.keyId(teNodeId((i + 1) % nodes))));
+            teLinks.add(link);
+        }
+
+        DefaultNetwork network = new DefaultNetwork(NETWORK_ID);
+        network.setNodes(teNodes);
+        network.setLinks(teLinks);
+        return new DefaultNetworks(ImmutableList.of(
+                new InternalTeNetwork(TeTopologyType.NATIVE, network)));
+    }
+
+    private static TerminationPointKey tp(KeyId nodeId) {
+        return new TerminationPointKey(NETWORK_ID, nodeId, TP_ID);
+    }
+}
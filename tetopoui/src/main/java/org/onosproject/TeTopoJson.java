@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onosproject.net.Annotated;
+import org.onosproject.net.AnnotationKeys;
+import org.onosproject.net.Annotations;
+import org.onosproject.net.Device;
+import org.onosproject.net.Link;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static org.onosproject.ui.topo.TopoUtils.compactLinkString;
+
+/**
+ * JSON renderings of the TE topology view elements, usable outside of
+ * a message handler so that payloads can be rendered once and shared.
+ */
+public final class TeTopoJson {
+
+    private static final Logger log = LoggerFactory.getLogger(TeTopoJson.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // multi topo layer define
+    static final String LAYER_KEY = "ctrl_layer";
+    static final String LAYER_CONTROLLER = "pkt"; // controller
+    static final String LAYER_TRAFFIC = "opt"; // traffic
+    static final String LAYER_MASTER = "layermaster"; // master
+
+    static final String MASTER = "127.0.0.1";
+    static final double LINK_WIDTH = 1.2;
+
+    // non-instantiable
+    private TeTopoJson() {
+    }
+
+    /**
+     * Returns a new empty object node.
+     *
+     * @return empty object node
+     */
+    static ObjectNode objectNode() {
+        return MAPPER.createObjectNode();
+    }
+
+    /**
+     * Returns a new empty array node.
+     *
+     * @return empty array node
+     */
+    static ArrayNode arrayNode() {
+        return MAPPER.createArrayNode();
+    }
+
+    /**
+     * Produces the payload of a layered device message, without envelope.
+     *
+     * @param device device annotated with its view layer
+     * @return device payload
+     */
+    public static ObjectNode layerDevice(Device device) {
+        Annotations annotations = device.annotations();
+        String ctrlLayer = annotations != null ? annotations.value(LAYER_KEY) : null;
+        ObjectNode payload = objectNode()
+                .put("id", device.id().toString())
+                .put("type", device.type().toString().toLowerCase())
+                .put("online", LAYER_CONTROLLER.equals(ctrlLayer))
+                .put("master", MASTER);
+
+        // Generate labels: id, chassis id, no-label, optional-name
+        String name = annotations != null ? annotations.value(AnnotationKeys.NAME) : null;
+        ArrayNode labels = arrayNode();
+        labels.add("");
+        labels.add(isNullOrEmpty(name) ? device.id().toString() : name);
+        labels.add(device.id().toString());
+
+        // Add labels and props.
+        payload.set("labels", labels);
+        payload.set("props", props(annotations));
+        addGeoLocation(device, payload);
+        return payload;
+    }
+
+    /**
+     * Produces the payload of a link message, without envelope.
+     *
+     * @param link link
+     * @return link payload
+     */
+    public static ObjectNode link(Link link) {
+        return objectNode()
+                .put("id", compactLinkString(link))
+                .put("type", link.type().toString().toLowerCase())
+                .put("expected", link.isExpected())
+                .put("online", link.state() == Link.State.ACTIVE)
+                .put("linkWidth", LINK_WIDTH)
+                .put("src", link.src().deviceId().toString())
+                .put("srcPort", link.src().port().toString())
+                .put("dst", link.dst().deviceId().toString())
+                .put("dstPort", link.dst().port().toString());
+    }
+
+    /**
+     * Produces the payload of a bundle link message, summarizing the
+     * connectivity matrix entries between two supporting nodes, without
+     * envelope.
+     *
+     * @param link    link between the supporting nodes
+     * @param teNode  id of the TE node the entries belong to
+     * @param count   number of entries
+     * @param allowed number of entries allowing connectivity
+     * @param srcTps  range of the source termination points
+     * @param dstTps  range of the destination termination points
+     * @return bundle payload
+     */
+    public static ObjectNode bundle(Link link, String teNode, int count, int allowed,
+                                    String srcTps, String dstTps) {
+        ObjectNode payload = link(link)
+                .put("online", allowed > 0)
+                .put("teNode", teNode);
+        payload.set("bundle", objectNode()
+                .put("count", count)
+                .put("allowed", allowed)
+                .put("srcTps", srcTps)
+                .put("dstTps", dstTps));
+        return payload;
+    }
+
+    /**
+     * Produces the payload of one connectivity matrix entry of a bundle,
+     * identified by its termination points, without envelope.
+     *
+     * @param link    link between the supporting nodes
+     * @param srcTp   source termination point id
+     * @param dstTp   destination termination point id
+     * @param allowed whether the entry allows connectivity
+     * @return entry payload
+     */
+    public static ObjectNode bundleEntry(Link link, String srcTp, String dstTp,
+                                         boolean allowed) {
+        String src = link.src().deviceId().toString();
+        String dst = link.dst().deviceId().toString();
+        return link(link)
+                .put("id", src + "/" + srcTp + "-" + dst + "/" + dstTp)
+                .put("online", allowed)
+                .put("srcPort", srcTp)
+                .put("dstPort", dstTp);
+    }
+
+    // Produces JSON structure from annotations.
+    static JsonNode props(Annotations annotations) {
+        ObjectNode props = objectNode();
+        if (annotations != null) {
+            for (String key : annotations.keys()) {
+                props.put(key, annotations.value(key));
+            }
+        }
+        return props;
+    }
+
+    // Adds a geo location JSON to the specified payload object.
+    static void addGeoLocation(Annotated annotated, ObjectNode payload) {
+        double[] lngLat = lngLat(annotated);
+        if (lngLat != null) {
+            ObjectNode loc = objectNode()
+                    .put("type", "lnglat")
+                    .put("lng", lngLat[0])
+                    .put("lat", lngLat[1]);
+            payload.set("location", loc);
+        }
+    }
+
+    // Returns the {longitude, latitude} annotated on an element, or null
+    // if it has none or they are invalid.
+    static double[] lngLat(Annotated annotated) {
+        Annotations annotations = annotated.annotations();
+        if (annotations == null) {
+            return null;
+        }
+
+        String slng = annotations.value(AnnotationKeys.LONGITUDE);
+        String slat = annotations.value(AnnotationKeys.LATITUDE);
+        boolean haveLng = slng != null && !slng.isEmpty();
+        boolean haveLat = slat != null && !slat.isEmpty();
+        try {
+            if (haveLng && haveLat) {
+                return new double[]{Double.parseDouble(slng), Double.parseDouble(slat)};
+            }
+            log.trace("missing Lng/Lat: lng={}, lat={}", slng, slat);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid geo data: longitude={}, latitude={}", slng, slat);
+        }
+        return null;
+    }
+}
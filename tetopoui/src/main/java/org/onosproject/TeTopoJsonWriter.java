@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.onosproject.net.AnnotationKeys;
+import org.onosproject.net.Annotations;
+import org.onosproject.net.Device;
+import org.onosproject.net.Link;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static org.onosproject.TeTopoJson.LAYER_CONTROLLER;
+import static org.onosproject.TeTopoJson.LAYER_KEY;
+import static org.onosproject.TeTopoJson.LINK_WIDTH;
+import static org.onosproject.TeTopoJson.MASTER;
+import static org.onosproject.ui.topo.TopoUtils.compactLinkString;
+
+/**
+ * Hashes the device and link payloads of {@link TeTopoJson} by streaming
+ * the same bytes as serializing those trees straight into a 64-bit hash,
+ * without building them; enough to tell whether an element changed
+ * without keeping its bytes. The field walks below must render exactly
+ * what {@link TeTopoJson#layerDevice(Device)} and
+ * {@link TeTopoJson#link(Link)} render.
+ */
+final class TeTopoJsonWriter {
+
+    private static final JsonFactory FACTORY = new JsonFactory(new ObjectMapper());
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+
+    /**
+     * Returns the hash of the payload of a layered device, as
+     * {@link #hash(ObjectNode, String)} returns it for the rendered tree.
+     *
+     * @param device device annotated with its view layer
+     * @return hash of the UTF-8 JSON bytes
+     */
+    long layerDeviceHash(Device device) {
+        Hasher hasher = HASH.newHasher();
+        try (JsonGenerator gen = FACTORY.createGenerator(Funnels.asOutputStream(hasher))) {
+            writeLayerDevice(gen, device);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hasher.hash().asLong();
+    }
+
+
+    /**
+     * Returns the hash of the payload of a link, as
+     * {@link #hash(ObjectNode, String)} returns it for the rendered tree.
+     *
+     * @param link link
+     * @return hash of the UTF-8 JSON bytes
+     */
+    long linkHash(Link link) {
+        Hasher hasher = HASH.newHasher();
+        try (JsonGenerator gen = FACTORY.createGenerator(Funnels.asOutputStream(hasher))) {
+            writeLink(gen, link);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Returns the hash of the serialized form of a payload tree, leaving
+     * out one of its top-level fields, such as a field added once the
+     * payload was rendered.
+     *
+     * @param payload payload tree
+     * @param skip    name of the field to leave out, or null for none
+     * @return hash of the UTF-8 JSON bytes
+     */
+    static long hash(ObjectNode payload, String skip) {
+        Hasher hasher = HASH.newHasher();
+        try (JsonGenerator gen = FACTORY.createGenerator(Funnels.asOutputStream(hasher))) {
+            gen.writeStartObject();
+            Iterator<Map.Entry<String, JsonNode>> it = payload.fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> field = it.next();
+                if (!field.getKey().equals(skip)) {
+                    gen.writeFieldName(field.getKey());
+                    gen.writeTree(field.getValue());
+                }
+            }
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hasher.hash().asLong();
+    }
+
+    private static void writeLayerDevice(JsonGenerator gen, Device device) throws IOException {
+        Annotations annotations = device.annotations();
+        String id = device.id().toString();
+        String name = annotations != null ? annotations.value(AnnotationKeys.NAME) : null;
+        String layer = annotations != null ? annotations.value(LAYER_KEY) : null;
+
+        gen.writeStartObject();
+        gen.writeStringField("id", id);
+        gen.writeStringField("type", device.type().toString().toLowerCase());
+        gen.writeBooleanField("online", LAYER_CONTROLLER.equals(layer));
+        gen.writeStringField("master", MASTER);
+
+        gen.writeArrayFieldStart("labels");
+        gen.writeString("");
+        gen.writeString(isNullOrEmpty(name) ? id : name);
+        gen.writeString(id);
+        gen.writeEndArray();
+
+        gen.writeObjectFieldStart("props");
+        if (annotations != null) {
+            for (String key : annotations.keys()) {
+                gen.writeStringField(key, annotations.value(key));
+            }
+        }
+        gen.writeEndObject();
+
+        double[] lngLat = TeTopoJson.lngLat(device);
+        if (lngLat != null) {
+            gen.writeObjectFieldStart("location");
+            gen.writeStringField("type", "lnglat");
+            gen.writeNumberField("lng", lngLat[0]);
+            gen.writeNumberField("lat", lngLat[1]);
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeLink(JsonGenerator gen, Link link) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("id", compactLinkString(link));
+        gen.writeStringField("type", link.type().toString().toLowerCase());
+        gen.writeBooleanField("expected", link.isExpected());
+        gen.writeBooleanField("online", link.state() == Link.State.ACTIVE);
+        gen.writeNumberField("linkWidth", LINK_WIDTH);
+        gen.writeStringField("src", link.src().deviceId().toString());
+        gen.writeStringField("srcPort", link.src().port().toString());
+        gen.writeStringField("dst", link.dst().deviceId().toString());
+        gen.writeStringField("dstPort", link.dst().port().toString());
+        gen.writeEndObject();
+    }
+}
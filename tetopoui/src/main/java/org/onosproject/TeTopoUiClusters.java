@@ -0,0 +1,607 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.onosproject.TeTopoJson.LAYER_CONTROLLER;
+import static org.onosproject.TeTopoJson.LAYER_KEY;
+import static org.onosproject.TeTopoJson.LINK_WIDTH;
+import static org.onosproject.TeTopoJson.MASTER;
+import static org.onosproject.TeTopoJson.arrayNode;
+import static org.onosproject.TeTopoJson.objectNode;
+
+/**
+ * Hierarchical clustering of the upper layer TE nodes of the view model
+ * into super-nodes, kept current from its events, so that a view can open
+ * at a coarse level of detail and refine it cluster by cluster.
+ * <p>
+ * Nodes are clustered by position on nested grids: geo-located nodes by
+ * longitude and latitude, the others by their layout position, which the
+ * force layout makes follow the communities of the graph. Each level
+ * halves the cell size of the level above, so the clusters of a node at
+ * every level follow from its position alone: a changed node updates one
+ * cluster per level, and a changed link only the link table.
+ * <p>
+ * A view is described by the clusters it refined. A node shows as its
+ * coarsest cluster that is not refined, or as itself once all of its
+ * clusters are. Links between nodes shown as different clusters are
+ * aggregated into one link per pair of shown clusters, so that what a view
+ * renders is bounded by how far it refined, not by the size of the network.
+ */
+public class TeTopoUiClusters {
+
+    // number of cluster levels
+    static final int LEVELS = 4;
+
+    // cell sizes of the coarsest level, in degrees and in layout units
+    private static final double GEO_CELL = 16.0;
+    private static final double LAYOUT_CELL = 2048.0;
+
+    // position spaces: geographic, layout, none
+    private static final String GEO = "g";
+    private static final String LAYOUT = "l";
+    private static final String UNPLACED = "u";
+
+    private static final String PREFIX = "cluster";
+    private static final String SEPARATOR = ":";
+    private static final String PORT = "0";
+    // parent of the coarsest clusters
+    private static final String ROOT = "";
+
+    private static final String ID = "id";
+    private static final String ONLINE = "online";
+    private static final String LOCATION = "location";
+    private static final String META_UI = "metaUi";
+    private static final String SRC = "src";
+    private static final String DST = "dst";
+
+    private final TeTopoUiModelCache modelCache;
+    private final TeTopoUiModelListener modelListener = new InternalModelListener();
+
+    // clustered nodes, by id; guarded by this
+    private final Map<String, Member> members = Maps.newHashMap();
+    // clusters of every level, by id
+    private final Map<String, Cluster> clusters = Maps.newHashMap();
+    // child clusters of each cluster, or nodes of a cluster of the finest
+    // level; the coarsest clusters are children of ROOT
+    private final SetMultimap<String, String> children = LinkedHashMultimap.create();
+    // end nodes {src, dst} of the upper layer links, by link id, and the
+    // links of each node
+    private final Map<String, String[]> links = Maps.newLinkedHashMap();
+    private final SetMultimap<String, String> linksByNode = LinkedHashMultimap.create();
+    // number of links between two clusters of the same level, by cluster
+    // and neighbouring cluster; links within a cluster are not counted
+    private final Map<String, Map<String, int[]>> adjacency = Maps.newHashMap();
+
+    /**
+     * Creates a clustering of the given view model.
+     *
+     * @param modelCache shared TE topology view model
+     */
+    public TeTopoUiClusters(TeTopoUiModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
+    /**
+     * Starts following the view model, clustering what it already holds.
+     */
+    public void activate() {
+        modelCache.addListener(modelListener);
+        synchronized (this) {
+            modelCache.devices().forEach(this::putNode);
+            modelCache.links().forEach(this::putLink);
+        }
+    }
+
+    /**
+     * Stops following the view model.
+     */
+    public void deactivate() {
+        modelCache.removeListener(modelListener);
+    }
+
+    /**
+     * Returns what a view refining the given clusters shows: the clusters
+     * not refined whose parents are, the nodes whose clusters all are,
+     * the links between those nodes, and the links aggregated between the
+     * clusters and nodes shown.
+     *
+     * @param refined ids of the refined clusters
+     * @return shown clusters, nodes and links
+     */
+    public synchronized View view(Set<String> refined) {
+        List<Cluster> shownClusters = Lists.newArrayList();
+        View view = new View();
+        collect(ROOT, refined, shownClusters, view);
+
+        // a pair is counted from its finer end, or from its first end if
+        // both are of the same level, so that it is counted once
+        Map<String, Map<String, Aggregate>> aggregated = Maps.newLinkedHashMap();
+        for (Cluster cluster : shownClusters) {
+            adjacency.getOrDefault(cluster.id, ImmutableMap.of()).forEach((cell, count) -> {
+                Cluster other = shownAncestor(cell, refined);
+                if (other != null && (other.level < cluster.level ||
+                        cluster.id.compareTo(other.id) < 0)) {
+                    aggregate(aggregated, cluster.id, other.id, count[0]);
+                }
+            });
+        }
+        for (String node : view.nodes) {
+            for (String link : linksByNode.get(node)) {
+                String[] ends = links.get(link);
+                String end = node.equals(ends[0]) ? ends[1] : ends[0];
+                String other = shownAs(end, refined);
+                if (end.equals(other)) {
+                    view.links.add(link);
+                } else if (other != null) {
+                    aggregate(aggregated, node, other, 1);
+                }
+            }
+        }
+        aggregated.values().forEach(pairs -> pairs.values().forEach(
+                aggregate -> view.aggregated.add(aggregate.payload())));
+        return view;
+    }
+
+    /**
+     * Indicates whether a view refining the given clusters shows a node
+     * as itself.
+     *
+     * @param id      node id
+     * @param refined ids of the refined clusters
+     * @return true if the node is shown as itself
+     */
+    public synchronized boolean isShown(String id, Set<String> refined) {
+        return id.equals(shownAs(id, refined));
+    }
+
+    /**
+     * Indicates whether the given id is that of a cluster.
+     *
+     * @param id element id
+     * @return true if there is such a cluster
+     */
+    public synchronized boolean isCluster(String id) {
+        return clusters.containsKey(id);
+    }
+
+    /**
+     * Returns the cluster just above the given cluster or node: the
+     * cluster of the finest level a node belongs to, or the parent of a
+     * cluster.
+     *
+     * @param id cluster or node id
+     * @return parent cluster id, or null if there is none
+     */
+    public synchronized String parentOf(String id) {
+        Member member = members.get(id);
+        if (member != null) {
+            return member.cells[LEVELS - 1];
+        }
+        Cluster cluster = clusters.get(id);
+        return cluster != null ? cluster.parent : null;
+    }
+
+    /**
+     * Indicates whether a cluster lies within another, or is that one.
+     *
+     * @param id       cluster id
+     * @param ancestor id of the enclosing cluster
+     * @return true if the cluster lies within the other
+     */
+    public static boolean isWithin(String id, String ancestor) {
+        String[] c = id.split(SEPARATOR);
+        String[] a = ancestor.split(SEPARATOR);
+        if (c.length != 5 || a.length != 5 || !c[2].equals(a[2])) {
+            return false;
+        }
+        int shift = Integer.parseInt(c[1]) - Integer.parseInt(a[1]);
+        return shift >= 0 &&
+                Long.parseLong(c[3]) >> shift == Long.parseLong(a[3]) &&
+                Long.parseLong(c[4]) >> shift == Long.parseLong(a[4]);
+    }
+
+    // Adds the children of a cluster to the view, descending into those
+    // refined.
+    private void collect(String parent, Set<String> refined,
+                         List<Cluster> shownClusters, View view) {
+        for (String child : children.get(parent)) {
+            if (members.containsKey(child)) {
+                view.nodes.add(child);
+            } else if (refined.contains(child)) {
+                collect(child, refined, shownClusters, view);
+            } else {
+                Cluster cluster = clusters.get(child);
+                shownClusters.add(cluster);
+                view.clusters.add(cluster.payload());
+            }
+        }
+    }
+
+    // Returns the shown cluster a cluster lies within, or null if the
+    // cluster itself is refined.
+    private Cluster shownAncestor(String cell, Set<String> refined) {
+        Cluster[] chain = new Cluster[LEVELS];
+        Cluster cluster = clusters.get(cell);
+        while (cluster != null) {
+            chain[cluster.level] = cluster;
+            cluster = clusters.get(cluster.parent);
+        }
+        for (Cluster ancestor : chain) {
+            if (ancestor != null && !refined.contains(ancestor.id)) {
+                return ancestor;
+            }
+        }
+        return null;
+    }
+
+    // Returns the id of what a node shows as, or null if it is unknown.
+    private String shownAs(String id, Set<String> refined) {
+        Member member = members.get(id);
+        return member != null ? member.shownAs(id, refined) : null;
+    }
+
+    private static void aggregate(Map<String, Map<String, Aggregate>> aggregated,
+                                  String a, String b, int count) {
+        // one link per pair, whichever way the links run
+        boolean forward = a.compareTo(b) < 0;
+        String first = forward ? a : b;
+        String second = forward ? b : a;
+        aggregated.computeIfAbsent(first, k -> Maps.newLinkedHashMap())
+                .computeIfAbsent(second, k -> new Aggregate(first, k)).count += count;
+    }
+
+    // Clusters a node anew; its links are recounted if it changed cluster.
+    private void putNode(ObjectNode payload) {
+        String id = payload.path(ID).asText();
+        Member member = new Member(payload);
+        Member old = members.get(id);
+        boolean moved = old == null || !Arrays.equals(old.cells, member.cells);
+        if (moved) {
+            countLinks(id, -1);
+        }
+        unclusterNode(id);
+
+        members.put(id, member);
+        String parent = ROOT;
+        for (int level = 0; level < LEVELS; level++) {
+            String cell = member.cells[level];
+            Cluster cluster = clusters.get(cell);
+            if (cluster == null) {
+                cluster = new Cluster(cell, level, member.space, parent);
+                clusters.put(cell, cluster);
+                children.put(parent, cell);
+            }
+            cluster.add(member, 1);
+            parent = cell;
+        }
+        children.put(parent, id);
+        if (moved) {
+            countLinks(id, 1);
+        }
+    }
+
+    private void removeNode(String id) {
+        countLinks(id, -1);
+        unclusterNode(id);
+    }
+
+    private void unclusterNode(String id) {
+        Member member = members.remove(id);
+        if (member == null) {
+            return;
+        }
+        children.remove(member.cells[LEVELS - 1], id);
+        for (int level = LEVELS - 1; level >= 0; level--) {
+            Cluster cluster = clusters.get(member.cells[level]);
+            cluster.add(member, -1);
+            if (cluster.count == 0) {
+                clusters.remove(cluster.id);
+                children.remove(cluster.parent, cluster.id);
+            }
+        }
+    }
+
+    private void putLink(ObjectNode payload) {
+        String id = payload.path(ID).asText();
+        removeLink(id);
+        String[] ends = {payload.path(SRC).asText(), payload.path(DST).asText()};
+        links.put(id, ends);
+        linksByNode.put(ends[0], id);
+        linksByNode.put(ends[1], id);
+        count(ends, 1);
+    }
+
+    private void removeLink(String id) {
+        String[] ends = links.remove(id);
+        if (ends != null) {
+            count(ends, -1);
+            linksByNode.remove(ends[0], id);
+            linksByNode.remove(ends[1], id);
+        }
+    }
+
+    private void countLinks(String node, int sign) {
+        for (String link : linksByNode.get(node)) {
+            count(links.get(link), sign);
+        }
+    }
+
+    // Adds or takes a link off the counts between the clusters of its
+    // ends, at every level they differ; links with an unclustered end
+    // are not counted.
+    private void count(String[] ends, int sign) {
+        Member src = members.get(ends[0]);
+        Member dst = members.get(ends[1]);
+        if (src == null || dst == null) {
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            String a = src.cells[level];
+            String b = dst.cells[level];
+            if (!a.equals(b)) {
+                bump(a, b, sign);
+                bump(b, a, sign);
+            }
+        }
+    }
+
+    private void bump(String cell, String neighbour, int sign) {
+        Map<String, int[]> counts = adjacency.computeIfAbsent(cell, k -> Maps.newHashMap());
+        int[] count = counts.computeIfAbsent(neighbour, k -> new int[1]);
+        count[0] += sign;
+        if (count[0] == 0) {
+            counts.remove(neighbour);
+            if (counts.isEmpty()) {
+                adjacency.remove(cell);
+            }
+        }
+    }
+
+    /**
+     * Clusters, nodes and links shown by a view at its level of detail.
+     */
+    public static final class View {
+        private final List<ObjectNode> clusters = Lists.newArrayList();
+        private final Set<String> nodes = Sets.newLinkedHashSet();
+        private final Set<String> links = Sets.newLinkedHashSet();
+        private final List<ObjectNode> aggregated = Lists.newArrayList();
+
+        /**
+         * Returns the payloads of the clusters shown, shaped as devices.
+         *
+         * @return cluster payloads
+         */
+        public List<ObjectNode> clusters() {
+            return ImmutableList.copyOf(clusters);
+        }
+
+        /**
+         * Returns the ids of the nodes shown as themselves.
+         *
+         * @return node ids
+         */
+        public Set<String> nodes() {
+            return ImmutableSet.copyOf(nodes);
+        }
+
+        /**
+         * Returns the ids of the links between nodes shown as themselves.
+         *
+         * @return link ids
+         */
+        public Set<String> links() {
+            return ImmutableSet.copyOf(links);
+        }
+
+        /**
+         * Returns the payloads of the links aggregated between the shown
+         * clusters and nodes, carrying the number of links of each.
+         *
+         * @return aggregated link payloads
+         */
+        public List<ObjectNode> aggregated() {
+            return ImmutableList.copyOf(aggregated);
+        }
+    }
+
+    // A clustered node: its position and its cluster at every level.
+    private static final class Member {
+        private final String space;
+        private final double a;
+        private final double b;
+        private final boolean online;
+        private final String[] cells = new String[LEVELS];
+
+        private Member(ObjectNode payload) {
+            JsonNode loc = payload.get(LOCATION);
+            JsonNode meta = payload.get(META_UI);
+            double cell;
+            if (loc != null) {
+                space = GEO;
+                a = loc.path("lng").asDouble();
+                b = loc.path("lat").asDouble();
+                cell = GEO_CELL;
+            } else if (meta != null && meta.has("x")) {
+                space = LAYOUT;
+                a = meta.path("x").asDouble();
+                b = meta.path("y").asDouble();
+                cell = LAYOUT_CELL;
+            } else {
+                space = UNPLACED;
+                a = 0;
+                b = 0;
+                cell = 1;
+            }
+            online = payload.path(ONLINE).asBoolean();
+
+            // cells of the coarser levels follow from those of the finest
+            double finest = cell / (1 << (LEVELS - 1));
+            long x = (long) Math.floor(a / finest);
+            long y = (long) Math.floor(b / finest);
+            for (int level = 0; level < LEVELS; level++) {
+                int shift = LEVELS - 1 - level;
+                cells[level] = PREFIX + SEPARATOR + level + SEPARATOR + space + SEPARATOR +
+                        (x >> shift) + SEPARATOR + (y >> shift);
+            }
+        }
+
+        // Returns the coarsest cluster of the node that is not refined, or
+        // the given node id if they all are.
+        private String shownAs(String id, Set<String> refined) {
+            for (String cell : cells) {
+                if (!refined.contains(cell)) {
+                    return cell;
+                }
+            }
+            return id;
+        }
+    }
+
+    // A cluster: its place in the hierarchy and what it holds.
+    private static final class Cluster {
+        private final String id;
+        private final int level;
+        private final String space;
+        private final String parent;
+        private int count;
+        private int online;
+        private double sumA;
+        private double sumB;
+
+        private Cluster(String id, int level, String space, String parent) {
+            this.id = id;
+            this.level = level;
+            this.space = space;
+            this.parent = parent;
+        }
+
+        private void add(Member member, int sign) {
+            count += sign;
+            online += member.online ? sign : 0;
+            sumA += sign * member.a;
+            sumB += sign * member.b;
+        }
+
+        // Renders the cluster as a device at the centroid of its nodes.
+        private ObjectNode payload() {
+            ObjectNode payload = objectNode()
+                    .put(ID, id)
+                    .put("type", "switch")
+                    .put(ONLINE, online > 0)
+                    .put("master", MASTER);
+            ArrayNode labels = arrayNode();
+            labels.add("");
+            labels.add(count + " TE nodes");
+            labels.add(id);
+            payload.set("labels", labels);
+            payload.set("props", objectNode()
+                    .put(LAYER_KEY, LAYER_CONTROLLER)
+                    .put("TE Nodes", count)
+                    .put("Online", online)
+                    .put("Level", level));
+
+            if (GEO.equals(space)) {
+                payload.set(LOCATION, objectNode()
+                        .put("type", "lnglat")
+                        .put("lng", sumA / count)
+                        .put("lat", sumB / count));
+            } else if (LAYOUT.equals(space)) {
+                payload.set(META_UI, objectNode()
+                        .put("x", sumA / count)
+                        .put("y", sumB / count));
+            }
+            payload.set(PREFIX, objectNode()
+                    .put("level", level)
+                    .put("count", count)
+                    .put(ONLINE, online));
+            return payload;
+        }
+    }
+
+    // Links aggregated between two shown clusters or nodes.
+    private static final class Aggregate {
+        private final String src;
+        private final String dst;
+        private int count;
+
+        private Aggregate(String src, String dst) {
+            this.src = src;
+            this.dst = dst;
+        }
+
+        private ObjectNode payload() {
+            ObjectNode payload = objectNode()
+                    .put(ID, src + "/" + PORT + "-" + dst + "/" + PORT)
+                    .put("type", "direct")
+                    .put("expected", true)
+                    .put(ONLINE, true)
+                    .put("linkWidth", LINK_WIDTH)
+                    .put(SRC, src)
+                    .put("srcPort", PORT)
+                    .put(DST, dst)
+                    .put("dstPort", PORT);
+            payload.set(PREFIX, objectNode().put("count", count));
+            return payload;
+        }
+    }
+
+    // View model listener; clusters upper layer changes.
+    private class InternalModelListener implements TeTopoUiModelListener {
+        @Override
+        public void event(TeTopoUiModelEvent event) {
+            if (event.parent() != null) {
+                return;
+            }
+            synchronized (TeTopoUiClusters.this) {
+                switch (event.type()) {
+                    case DEVICE_ADDED:
+                    case DEVICE_UPDATED:
+                        putNode(event.subject());
+                        break;
+                    case DEVICE_REMOVED:
+                        removeNode(event.id());
+                        break;
+                    case LINK_ADDED:
+                    case LINK_UPDATED:
+                        putLink(event.subject());
+                        break;
+                    case LINK_REMOVED:
+                        removeLink(event.id());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.onosproject.TeTopoJson.arrayNode;
+import static org.onosproject.TeTopoJson.objectNode;
+
+/**
+ * Compact columnar encoding of device and link payloads, for clients
+ * that ask for it at topology start.
+ * <p>
+ * Every string of a message (ids, types, labels, annotation keys and
+ * values) is written once to the message's string table and referred to
+ * by index. Devices and links are written as one array per field, with
+ * booleans as 0 or 1. Link ids are left out since the client derives them
+ * from the end points, as {@code src/srcPort-dst/dstPort}; the reverse
+ * direction paired with a link, if any, is in a {@code rev} column. Fields not
+ * known to the encoding are carried per element in an {@code extra}
+ * column, so no payload content is lost.
+ */
+final class TeTopoUiCompactCodec {
+
+    private static final String STRINGS = "strings";
+    private static final String DEVICES = "devices";
+    private static final String LINKS = "links";
+    private static final String COUNT = "n";
+    private static final String EXTRA = "extra";
+
+    private static final String ID = "id";
+    private static final String TYPE = "type";
+    private static final String ONLINE = "online";
+    private static final String MASTER = "master";
+    private static final String LABELS = "labels";
+    private static final String PROPS = "props";
+    private static final String LOCATION = "location";
+    private static final String LNG = "lng";
+    private static final String LAT = "lat";
+    private static final String EXPECTED = "expected";
+    private static final String LINK_WIDTH = "linkWidth";
+    private static final String SRC = "src";
+    private static final String SRC_PORT = "srcPort";
+    private static final String DST = "dst";
+    private static final String DST_PORT = "dstPort";
+    private static final String REV = TeTopoUiLinkPairs.REV;
+
+    private static final Set<String> DEVICE_FIELDS =
+            ImmutableSet.of(ID, TYPE, ONLINE, MASTER, LABELS, PROPS, LOCATION);
+    private static final Set<String> LINK_FIELDS =
+            ImmutableSet.of(ID, TYPE, EXPECTED, ONLINE, LINK_WIDTH,
+                            SRC, SRC_PORT, DST, DST_PORT, REV);
+
+    private final Map<String, Integer> index = Maps.newHashMap();
+    private final ArrayNode strings = arrayNode();
+
+    // one encoder per message
+    private TeTopoUiCompactCodec() {
+    }
+
+    /**
+     * Encodes device and link payloads into one compact message payload.
+     *
+     * @param devices device payloads
+     * @param links   link payloads
+     * @return compact payload
+     */
+    static ObjectNode encode(List<ObjectNode> devices, List<ObjectNode> links) {
+        TeTopoUiCompactCodec codec = new TeTopoUiCompactCodec();
+        ObjectNode payload = objectNode();
+        if (!devices.isEmpty()) {
+            payload.set(DEVICES, codec.devices(devices));
+        }
+        if (!links.isEmpty()) {
+            payload.set(LINKS, codec.links(links));
+        }
+        payload.set(STRINGS, codec.strings);
+        return payload;
+    }
+
+    private ObjectNode devices(List<ObjectNode> devices) {
+        ArrayNode ids = arrayNode();
+        ArrayNode types = arrayNode();
+        ArrayNode online = arrayNode();
+        ArrayNode masters = arrayNode();
+        ArrayNode labels = arrayNode();
+        ArrayNode props = arrayNode();
+        ArrayNode lngs = arrayNode();
+        ArrayNode lats = arrayNode();
+        ArrayNode extra = arrayNode();
+        boolean hasExtra = false;
+
+        for (ObjectNode device : devices) {
+            ids.add(intern(device.path(ID).asText()));
+            types.add(intern(device.path(TYPE).asText()));
+            online.add(device.path(ONLINE).asBoolean() ? 1 : 0);
+            masters.add(intern(device.path(MASTER).asText()));
+
+            ArrayNode labelRefs = arrayNode();
+            device.path(LABELS).forEach(l -> labelRefs.add(intern(l.asText())));
+            labels.add(labelRefs);
+
+            // key, value, key, value...
+            ArrayNode propRefs = arrayNode();
+            Iterator<Map.Entry<String, JsonNode>> it = device.path(PROPS).fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> prop = it.next();
+                propRefs.add(intern(prop.getKey()));
+                propRefs.add(intern(prop.getValue().asText()));
+            }
+            props.add(propRefs);
+
+            JsonNode loc = device.get(LOCATION);
+            if (loc != null) {
+                lngs.add(loc.path(LNG).asDouble());
+                lats.add(loc.path(LAT).asDouble());
+            } else {
+                lngs.addNull();
+                lats.addNull();
+            }
+
+            hasExtra |= addExtra(device, DEVICE_FIELDS, extra);
+        }
+
+        ObjectNode columns = objectNode().put(COUNT, devices.size());
+        columns.set(ID, ids);
+        columns.set(TYPE, types);
+        columns.set(ONLINE, online);
+        columns.set(MASTER, masters);
+        columns.set(LABELS, labels);
+        columns.set(PROPS, props);
+        columns.set(LNG, lngs);
+        columns.set(LAT, lats);
+        if (hasExtra) {
+            columns.set(EXTRA, extra);
+        }
+        return columns;
+    }
+
+    private ObjectNode links(List<ObjectNode> links) {
+        ArrayNode types = arrayNode();
+        ArrayNode expected = arrayNode();
+        ArrayNode online = arrayNode();
+        ArrayNode widths = arrayNode();
+        ArrayNode srcs = arrayNode();
+        ArrayNode srcPorts = arrayNode();
+        ArrayNode dsts = arrayNode();
+        ArrayNode dstPorts = arrayNode();
+        ArrayNode revs = arrayNode();
+        ArrayNode extra = arrayNode();
+        boolean hasRev = false;
+        boolean hasExtra = false;
+
+        for (ObjectNode link : links) {
+            types.add(intern(link.path(TYPE).asText()));
+            expected.add(link.path(EXPECTED).asBoolean() ? 1 : 0);
+            online.add(link.path(ONLINE).asBoolean() ? 1 : 0);
+            widths.add(link.path(LINK_WIDTH).asDouble());
+            srcs.add(intern(link.path(SRC).asText()));
+            srcPorts.add(intern(link.path(SRC_PORT).asText()));
+            dsts.add(intern(link.path(DST).asText()));
+            dstPorts.add(intern(link.path(DST_PORT).asText()));
+            JsonNode rev = link.get(REV);
+            if (rev != null) {
+                revs.add(rev);
+                hasRev = true;
+            } else {
+                revs.addNull();
+            }
+            hasExtra |= addExtra(link, LINK_FIELDS, extra);
+        }
+
+        ObjectNode columns = objectNode().put(COUNT, links.size());
+        columns.set(TYPE, types);
+        columns.set(EXPECTED, expected);
+        columns.set(ONLINE, online);
+        columns.set(LINK_WIDTH, widths);
+        columns.set(SRC, srcs);
+        columns.set(SRC_PORT, srcPorts);
+        columns.set(DST, dsts);
+        columns.set(DST_PORT, dstPorts);
+        if (hasRev) {
+            columns.set(REV, revs);
+        }
+        if (hasExtra) {
+            columns.set(EXTRA, extra);
+        }
+        return columns;
+    }
+
+    // Adds the fields of the payload the columns do not cover, or null if
+    // there are none; returns whether there were any.
+    private static boolean addExtra(ObjectNode payload, Set<String> known, ArrayNode extra) {
+        ObjectNode rest = null;
+        Iterator<Map.Entry<String, JsonNode>> it = payload.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> field = it.next();
+            if (!known.contains(field.getKey())) {
+                if (rest == null) {
+                    rest = objectNode();
+                }
+                rest.set(field.getKey(), field.getValue());
+            }
+        }
+        if (rest == null) {
+            extra.addNull();
+            return false;
+        }
+        extra.add(rest);
+        return true;
+    }
+
+    private int intern(String s) {
+        Integer i = index.get(s);
+        if (i == null) {
+            i = strings.size();
+            index.put(s, i);
+            strings.add(s);
+        }
+        return i;
+    }
+}
@@ -19,17 +19,32 @@ import com.google.common.collect.ImmutableList;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.host.HostService;
+import org.onosproject.net.link.LinkService;
+import org.onosproject.tetopology.management.api.TeTopologyService;
 import org.onosproject.ui.UiExtension;
 import org.onosproject.ui.UiExtensionService;
 import org.onosproject.ui.UiMessageHandlerFactory;
 import org.onosproject.ui.UiView;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.util.Dictionary;
 import java.util.List;
 
+import static com.google.common.base.Strings.isNullOrEmpty;
+
 /**
  * Skeletal ONOS UI Custom-View application component.
  */
@@ -39,11 +54,159 @@ public class TeTopoUiComponent {
     private static final String VIEW_ID = "tetopo";
     private static final String VIEW_TEXT = "TE Topo";
 
+    private static final int DEFAULT_EVENT_WINDOW_MS = 100;
+    private static final int DEFAULT_EVENT_MAX_BATCH = 500;
+    private static final int DEFAULT_SENDER_THREADS = 4;
+    private static final int DEFAULT_SENDER_HIGH_WATER_MARK = 1000;
+    private static final int DEFAULT_VIEW_PAGE_SIZE = 2000;
+    private static final int DEFAULT_DETAILS_CACHE_SIZE = 1000;
+    private static final int DEFAULT_DETAILS_CACHE_TTL_MS = 5000;
+    private static final int DEFAULT_TRAFFIC_PERIOD_MS = 5000;
+    private static final int DEFAULT_SUMMARY_PERIOD_MS = 2000;
+    private static final int DEFAULT_HEARTBEAT_TIMEOUT_MS = 30000;
+    private static final int DEFAULT_EVENT_LOG_SIZE = 10000;
+    private static final int DEFAULT_RESUME_WINDOW_MS = 60000;
+    private static final int DEFAULT_LAYOUT_THREADS = 4;
+    private static final int DEFAULT_RENDER_THREADS = 0;
+    private static final int DEFAULT_MATRIX_BUNDLE_THRESHOLD = 64;
+
+    // file the server-side layout is persisted to, under the data directory
+    private static final String LAYOUT_FILE = "tetopoui/layout.json";
+
+    // file the meta data operators set on devices is logged to
+    private static final String META_FILE = "tetopoui/metaui.log";
+
+    @Property(name = "eventWindowMs", intValue = DEFAULT_EVENT_WINDOW_MS,
+            label = "Window in milliseconds over which view events are coalesced")
+    private int eventWindowMs = DEFAULT_EVENT_WINDOW_MS;
+
+    @Property(name = "eventMaxBatch", intValue = DEFAULT_EVENT_MAX_BATCH,
+            label = "Maximum number of view events carried by one delta message")
+    private int eventMaxBatch = DEFAULT_EVENT_MAX_BATCH;
+
+    @Property(name = "senderThreads", intValue = DEFAULT_SENDER_THREADS,
+            label = "Number of threads sending view messages; applied on activation")
+    private int senderThreads = DEFAULT_SENDER_THREADS;
+
+    @Property(name = "senderHighWaterMark", intValue = DEFAULT_SENDER_HIGH_WATER_MARK,
+            label = "Number of queued messages at which a view session is resynchronized " +
+                    "instead; applied on activation")
+    private int senderHighWaterMark = DEFAULT_SENDER_HIGH_WATER_MARK;
+
+    @Property(name = "viewPageSize", intValue = DEFAULT_VIEW_PAGE_SIZE,
+            label = "Maximum number of devices sent per page to paged views")
+    private int viewPageSize = DEFAULT_VIEW_PAGE_SIZE;
+
+    @Property(name = "detailsCacheSize", intValue = DEFAULT_DETAILS_CACHE_SIZE,
+            label = "Maximum number of details panels kept; applied on activation")
+    private int detailsCacheSize = DEFAULT_DETAILS_CACHE_SIZE;
+
+    @Property(name = "detailsCacheTtlMs", intValue = DEFAULT_DETAILS_CACHE_TTL_MS,
+            label = "Time in milliseconds a details panel is kept; applied on activation")
+    private int detailsCacheTtlMs = DEFAULT_DETAILS_CACHE_TTL_MS;
+
+    @Property(name = "trafficPeriodMs", intValue = DEFAULT_TRAFFIC_PERIOD_MS,
+            label = "Period in milliseconds at which link traffic is sampled; " +
+                    "applied on activation")
+    private int trafficPeriodMs = DEFAULT_TRAFFIC_PERIOD_MS;
+
+    @Property(name = "summaryPeriodMs", intValue = DEFAULT_SUMMARY_PERIOD_MS,
+            label = "Period in milliseconds at which summary changes are pushed; " +
+                    "applied on activation")
+    private int summaryPeriodMs = DEFAULT_SUMMARY_PERIOD_MS;
+
+    @Property(name = "heartbeatTimeoutMs", intValue = DEFAULT_HEARTBEAT_TIMEOUT_MS,
+            label = "Time in milliseconds without heartbeat after which a view session " +
+                    "is paused; applied on activation")
+    private int heartbeatTimeoutMs = DEFAULT_HEARTBEAT_TIMEOUT_MS;
+
+    @Property(name = "eventLogSize", intValue = DEFAULT_EVENT_LOG_SIZE,
+            label = "Number of recent view changes kept to resume reconnecting views; " +
+                    "applied on activation")
+    private int eventLogSize = DEFAULT_EVENT_LOG_SIZE;
+
+    @Property(name = "resumeWindowMs", intValue = DEFAULT_RESUME_WINDOW_MS,
+            label = "Time in milliseconds a closed view can be resumed by its client; " +
+                    "applied on activation")
+    private int resumeWindowMs = DEFAULT_RESUME_WINDOW_MS;
+
+    @Property(name = "layoutThreads", intValue = DEFAULT_LAYOUT_THREADS,
+            label = "Number of threads computing the TE topology layout; " +
+                    "applied on activation")
+    private int layoutThreads = DEFAULT_LAYOUT_THREADS;
+
+    @Property(name = "renderThreads", intValue = DEFAULT_RENDER_THREADS,
+            label = "Number of threads rendering the TE topology, 0 for one per " +
+                    "processor; applied on activation")
+    private int renderThreads = DEFAULT_RENDER_THREADS;
+
+    @Property(name = "matrixBundleThreshold", intValue = DEFAULT_MATRIX_BUNDLE_THRESHOLD,
+            label = "Number of connectivity matrix entries of a TE node above which they " +
+                    "are shown as bundles, 0 for never; applied on activation")
+    private int matrixBundleThreshold = DEFAULT_MATRIX_BUNDLE_THRESHOLD;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected UiExtensionService uiExtensionService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ComponentConfigService cfgService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected TeTopologyService teTopologyService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected DeviceService deviceService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected FlowRuleService flowRuleService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected MastershipService mastershipService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected HostService hostService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected LinkService linkService;
+
+    // View model shared by all TE topo UI sessions
+    private TeTopoUiModelCache modelCache;
+
+    // Message sender pool shared by all TE topo UI sessions
+    private TeTopoUiSender sender;
+
+    // Device flow and port counts shared by all TE topo UI sessions
+    private TeTopoUiCounters counters;
+
+    // Details panels shared by all TE topo UI sessions
+    private TeTopoUiDetailsCache details;
+
+    // Link traffic monitor shared by all TE topo UI sessions
+    private TeTopoUiTrafficMonitor trafficMonitor;
+
+    // Topology summary shared by all TE topo UI sessions
+    private TeTopoUiSummary summary;
+
+    // Heartbeat watchdog shared by all TE topo UI sessions
+    private TeTopoUiHeartbeats heartbeats;
+
+    // Views of closed sessions awaiting their client's reconnection
+    private TeTopoUiParkedViews parkedViews;
+
+    // Layout of the TE topology shared by all TE topo UI sessions
+    private TeTopoUiLayout layout;
+
+    // Meta data operators set on devices, such as pinned positions
+    private TeTopoUiMetaStore metaStore;
+
+    // Search index of the TE topology shared by all TE topo UI sessions
+    private TeTopoUiSearchIndex searchIndex;
+
+    // Clusters of the TE topology for level-of-detail rendering
+    private TeTopoUiClusters clusters;
+
     // List of application views
     private final List<UiView> uiViews = ImmutableList.of(
             new UiView(UiView.Category.OTHER, VIEW_ID, VIEW_TEXT)
@@ -52,7 +215,7 @@ public class TeTopoUiComponent {
     // Factory for UI message handlers
     private final UiMessageHandlerFactory messageHandlerFactory =
             () -> ImmutableList.of(
-                    new TeTopoUiMessageHandler()
+                    new TeTopoUiMessageHandler(this)
             );
 
     // Application UI extension
@@ -63,7 +226,38 @@ public class TeTopoUiComponent {
                     .build();
 
     @Activate
-    protected void activate() {
+    protected void activate(ComponentContext context) {
+        cfgService.registerProperties(getClass());
+        modified(context);
+        sender = new TeTopoUiSender(senderThreads, senderHighWaterMark);
+        File data = new File(System.getProperty("karaf.data", "data"));
+        metaStore = new TeTopoUiMetaStore(new File(data, META_FILE));
+        metaStore.activate();
+        modelCache = new TeTopoUiModelCache(teTopologyService, eventLogSize, metaStore,
+                                            renderThreads > 0 ? renderThreads :
+                                                    Runtime.getRuntime().availableProcessors(),
+                                            matrixBundleThreshold);
+        modelCache.activate();
+        layout = new TeTopoUiLayout(modelCache, new File(data, LAYOUT_FILE), layoutThreads);
+        layout.activate();
+        counters = new TeTopoUiCounters(deviceService, flowRuleService, mastershipService);
+        counters.activate();
+        details = new TeTopoUiDetailsCache(deviceService, hostService, modelCache,
+                                           detailsCacheSize, detailsCacheTtlMs);
+        details.activate();
+        trafficMonitor = new TeTopoUiTrafficMonitor(deviceService, modelCache, trafficPeriodMs);
+        summary = new TeTopoUiSummary(modelCache, summaryPeriodMs);
+        summary.activate();
+        searchIndex = new TeTopoUiSearchIndex(modelCache);
+        searchIndex.activate();
+        clusters = new TeTopoUiClusters(modelCache);
+        clusters.activate();
+        heartbeats = new TeTopoUiHeartbeats(heartbeatTimeoutMs);
+        // a parked view holds the expansions of its session until taken
+        parkedViews = new TeTopoUiParkedViews(
+                resumeWindowMs, view -> view.expanded().forEach(modelCache::release),
+                deviceService, linkService);
+        parkedViews.activate();
         uiExtensionService.register(extension);
         log.info("Started");
     }
@@ -71,7 +265,220 @@ public class TeTopoUiComponent {
     @Deactivate
     protected void deactivate() {
         uiExtensionService.unregister(extension);
+        parkedViews.deactivate();
+        heartbeats.shutdown();
+        clusters.deactivate();
+        searchIndex.deactivate();
+        summary.deactivate();
+        trafficMonitor.shutdown();
+        details.deactivate();
+        counters.deactivate();
+        layout.deactivate();
+        modelCache.deactivate();
+        metaStore.deactivate();
+        sender.shutdown();
+        cfgService.unregisterProperties(getClass(), false);
         log.info("Stopped");
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        Dictionary<?, ?> properties = context != null ? context.getProperties() : null;
+        eventWindowMs = positiveIntProperty(properties, "eventWindowMs",
+                                            DEFAULT_EVENT_WINDOW_MS);
+        eventMaxBatch = positiveIntProperty(properties, "eventMaxBatch",
+                                            DEFAULT_EVENT_MAX_BATCH);
+        senderThreads = positiveIntProperty(properties, "senderThreads",
+                                            DEFAULT_SENDER_THREADS);
+        senderHighWaterMark = positiveIntProperty(properties, "senderHighWaterMark",
+                                                  DEFAULT_SENDER_HIGH_WATER_MARK);
+        viewPageSize = positiveIntProperty(properties, "viewPageSize", DEFAULT_VIEW_PAGE_SIZE);
+        detailsCacheSize = nonNegativeIntProperty(properties, "detailsCacheSize",
+                                                  DEFAULT_DETAILS_CACHE_SIZE);
+        detailsCacheTtlMs = positiveIntProperty(properties, "detailsCacheTtlMs",
+                                                DEFAULT_DETAILS_CACHE_TTL_MS);
+        trafficPeriodMs = positiveIntProperty(properties, "trafficPeriodMs",
+                                              DEFAULT_TRAFFIC_PERIOD_MS);
+        summaryPeriodMs = positiveIntProperty(properties, "summaryPeriodMs",
+                                              DEFAULT_SUMMARY_PERIOD_MS);
+        heartbeatTimeoutMs = intProperty(properties, "heartbeatTimeoutMs",
+                                         DEFAULT_HEARTBEAT_TIMEOUT_MS);
+        eventLogSize = intProperty(properties, "eventLogSize", DEFAULT_EVENT_LOG_SIZE);
+        resumeWindowMs = intProperty(properties, "resumeWindowMs", DEFAULT_RESUME_WINDOW_MS);
+        layoutThreads = intProperty(properties, "layoutThreads", DEFAULT_LAYOUT_THREADS);
+        renderThreads = intProperty(properties, "renderThreads", DEFAULT_RENDER_THREADS);
+        matrixBundleThreshold = intProperty(properties, "matrixBundleThreshold",
+                                            DEFAULT_MATRIX_BUNDLE_THRESHOLD);
+        log.info("Configured. Event window {} ms, max batch {}, sender threads {}, " +
+                         "high-water mark {}, view page size {}, details cache size {}, " +
+                         "details cache TTL {} ms, traffic period {} ms, summary period {} ms, " +
+                         "heartbeat timeout {} ms, event log size {}, resume window {} ms, " +
+                         "layout threads {}, render threads {}, matrix bundle threshold {}",
+                 eventWindowMs, eventMaxBatch, senderThreads, senderHighWaterMark,
+                 viewPageSize, detailsCacheSize, detailsCacheTtlMs, trafficPeriodMs,
+                 summaryPeriodMs, heartbeatTimeoutMs, eventLogSize, resumeWindowMs,
+                 layoutThreads, renderThreads, matrixBundleThreshold);
+    }
+
+    private int intProperty(Dictionary<?, ?> properties, String name, int defaultValue) {
+        if (properties == null) {
+            return defaultValue;
+        }
+        String s = Tools.get(properties, name);
+        try {
+            return isNullOrEmpty(s) ? defaultValue : Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid {} value: {}", name, s);
+            return defaultValue;
+        }
+    }
+
+    // Like intProperty, for values that must be greater than zero.
+    private int positiveIntProperty(Dictionary<?, ?> properties, String name,
+                                    int defaultValue) {
+        int value = intProperty(properties, name, defaultValue);
+        if (value <= 0) {
+            log.warn("Invalid {} value: {}; must be positive", name, value);
+            return defaultValue;
+        }
+        return value;
+    }
+
+    // Like intProperty, for values that must not be negative.
+    private int nonNegativeIntProperty(Dictionary<?, ?> properties, String name,
+                                       int defaultValue) {
+        int value = intProperty(properties, name, defaultValue);
+        if (value < 0) {
+            log.warn("Invalid {} value: {}; must not be negative", name, value);
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the TE topology view model shared by all sessions.
+     *
+     * @return view model cache
+     */
+    TeTopoUiModelCache modelCache() {
+        return modelCache;
+    }
+
+    /**
+     * Returns the message sender pool shared by all sessions.
+     *
+     * @return sender pool
+     */
+    TeTopoUiSender sender() {
+        return sender;
+    }
+
+    /**
+     * Returns the device counters shared by all sessions.
+     *
+     * @return device counters
+     */
+    TeTopoUiCounters counters() {
+        return counters;
+    }
+
+    /**
+     * Returns the details panel cache shared by all sessions.
+     *
+     * @return details panel cache
+     */
+    TeTopoUiDetailsCache details() {
+        return details;
+    }
+
+    /**
+     * Returns the link traffic monitor shared by all sessions.
+     *
+     * @return traffic monitor
+     */
+    TeTopoUiTrafficMonitor trafficMonitor() {
+        return trafficMonitor;
+    }
+
+    /**
+     * Returns the topology summary shared by all sessions.
+     *
+     * @return topology summary
+     */
+    TeTopoUiSummary summary() {
+        return summary;
+    }
+
+    /**
+     * Returns the heartbeat watchdog shared by all sessions.
+     *
+     * @return heartbeat watchdog
+     */
+    TeTopoUiHeartbeats heartbeats() {
+        return heartbeats;
+    }
+
+    /**
+     * Returns the store of views awaiting their client's reconnection.
+     *
+     * @return parked views
+     */
+    TeTopoUiParkedViews parkedViews() {
+        return parkedViews;
+    }
+
+    /**
+     * Returns the store of the meta data operators set on devices.
+     *
+     * @return meta data store
+     */
+    TeTopoUiMetaStore metaStore() {
+        return metaStore;
+    }
+
+    /**
+     * Returns the search index of the TE topology.
+     *
+     * @return search index
+     */
+    TeTopoUiSearchIndex searchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Returns the clusters of the TE topology.
+     *
+     * @return clusters
+     */
+    TeTopoUiClusters clusters() {
+        return clusters;
+    }
+
+    /**
+     * Returns the window over which view events are coalesced.
+     *
+     * @return window in milliseconds
+     */
+    int eventWindowMs() {
+        return eventWindowMs;
+    }
+
+    /**
+     * Returns the maximum number of view events carried by one delta.
+     *
+     * @return maximum batch size
+     */
+    int eventMaxBatch() {
+        return eventMaxBatch;
+    }
+
+    /**
+     * Returns the maximum number of devices sent per page to paged views.
+     *
+     * @return page size
+     */
+    int viewPageSize() {
+        return viewPageSize;
+    }
+
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import org.onosproject.mastership.MastershipEvent;
+import org.onosproject.mastership.MastershipListener;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.flow.FlowEntry.FlowEntryState;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleListener;
+import org.onosproject.net.flow.FlowRuleService;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Flow and port counts of devices, shared by all TE topology view
+ * sessions so that device details are answered without walking the
+ * device's flow entries or ports.
+ * <p>
+ * A device's count is computed on first request, then kept current from
+ * flow rule and device events. Flow rule events are only seen for the
+ * devices this instance masters, so a mastership change marks the
+ * device's flow count stale, to be computed again on next request.
+ * <p>
+ * Flow entries are counted once the device confirms them, since a
+ * requested rule may only replace an entry already stored; entries still
+ * pending addition are left out when a count is computed, and are added
+ * to it as they are confirmed.
+ */
+public class TeTopoUiCounters {
+
+    // marks a count to be computed again
+    private static final int STALE = -1;
+
+    // marks a count being computed; an event arriving meanwhile marks it
+    // stale, so that the computed count, which may predate the event, is
+    // not kept
+    private static final int COUNTING = -2;
+
+    private final DeviceService deviceService;
+    private final FlowRuleService flowService;
+    private final MastershipService mastershipService;
+
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+    private final FlowRuleListener flowListener = new InternalFlowRuleListener();
+    private final MastershipListener mastershipListener = new InternalMastershipListener();
+
+    private final Map<DeviceId, AtomicInteger> flows = Maps.newConcurrentMap();
+    private final Map<DeviceId, AtomicInteger> ports = Maps.newConcurrentMap();
+
+    /**
+     * Creates device counters backed by the given services.
+     *
+     * @param deviceService     device service
+     * @param flowService       flow rule service
+     * @param mastershipService mastership service
+     */
+    public TeTopoUiCounters(DeviceService deviceService, FlowRuleService flowService,
+                            MastershipService mastershipService) {
+        this.deviceService = deviceService;
+        this.flowService = flowService;
+        this.mastershipService = mastershipService;
+    }
+
+    /**
+     * Starts following device, flow rule and mastership events.
+     */
+    public void activate() {
+        deviceService.addListener(deviceListener);
+        flowService.addListener(flowListener);
+        mastershipService.addListener(mastershipListener);
+    }
+
+    /**
+     * Stops following events and forgets every count.
+     */
+    public void deactivate() {
+        mastershipService.removeListener(mastershipListener);
+        flowService.removeListener(flowListener);
+        deviceService.removeListener(deviceListener);
+        flows.clear();
+        ports.clear();
+    }
+
+    /**
+     * Returns the number of flow entries of a device.
+     *
+     * @param deviceId device identifier
+     * @return flow count
+     */
+    public int flowCount(DeviceId deviceId) {
+        return count(flows, deviceId, id -> Iterables.size(Iterables.filter(
+                flowService.getFlowEntries(id), e -> e.state() != FlowEntryState.PENDING_ADD)));
+    }
+
+    /**
+     * Returns the number of ports of a device.
+     *
+     * @param deviceId device identifier
+     * @return port count
+     */
+    public int portCount(DeviceId deviceId) {
+        return count(ports, deviceId, id -> deviceService.getPorts(id).size());
+    }
+
+    // Returns a count, computing it if stale. The computed count is only
+    // kept if no event arrived while computing it; a caller finding the
+    // count being computed by another computes its own.
+    private int count(Map<DeviceId, AtomicInteger> counts, DeviceId deviceId,
+                      ToIntFunction<DeviceId> recount) {
+        AtomicInteger count = counts.computeIfAbsent(deviceId, id -> new AtomicInteger(STALE));
+        int value = count.get();
+        if (value >= 0) {
+            return value;
+        }
+        if (!count.compareAndSet(STALE, COUNTING)) {
+            return recount.applyAsInt(deviceId);
+        }
+        try {
+            value = recount.applyAsInt(deviceId);
+        } catch (RuntimeException e) {
+            count.compareAndSet(COUNTING, STALE);
+            throw e;
+        }
+        count.compareAndSet(COUNTING, value);
+        return value;
+    }
+
+    // Applies a change to a count already computed; a count that would
+    // turn negative has missed events and is marked stale instead, as is
+    // a count being computed.
+    private static void add(Map<DeviceId, AtomicInteger> counts, DeviceId deviceId, int delta) {
+        AtomicInteger count = counts.get(deviceId);
+        if (count != null) {
+            count.updateAndGet(v -> v < 0 || v + delta < 0 ? STALE : v + delta);
+        }
+    }
+
+    private static void invalidate(Map<DeviceId, AtomicInteger> counts, DeviceId deviceId) {
+        AtomicInteger count = counts.get(deviceId);
+        if (count != null) {
+            count.set(STALE);
+        }
+    }
+
+    // Counts flow entries as devices confirm them and as the flow rule
+    // store drops them.
+    private class InternalFlowRuleListener implements FlowRuleListener {
+        @Override
+        public void event(FlowRuleEvent event) {
+            DeviceId deviceId = event.subject().deviceId();
+            switch (event.type()) {
+                case RULE_ADDED:
+                    add(flows, deviceId, 1);
+                    break;
+                case RULE_REMOVED:
+                    add(flows, deviceId, -1);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private class InternalDeviceListener implements DeviceListener {
+        @Override
+        public void event(DeviceEvent event) {
+            DeviceId deviceId = event.subject().id();
+            switch (event.type()) {
+                case PORT_ADDED:
+                    add(ports, deviceId, 1);
+                    break;
+                case PORT_REMOVED:
+                    add(ports, deviceId, -1);
+                    break;
+                case DEVICE_ADDED:
+                    invalidate(ports, deviceId);
+                    invalidate(flows, deviceId);
+                    break;
+                case DEVICE_REMOVED:
+                    ports.remove(deviceId);
+                    flows.remove(deviceId);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private class InternalMastershipListener implements MastershipListener {
+        @Override
+        public void event(MastershipEvent event) {
+            if (event.type() == MastershipEvent.Type.MASTER_CHANGED) {
+                invalidate(flows, event.subject());
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.host.HostEvent;
+import org.onosproject.net.host.HostListener;
+import org.onosproject.net.host.HostService;
+import org.onosproject.ui.topo.PropertyPanel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.onosproject.ui.topo.TopoJson.json;
+
+/**
+ * Details panels of devices and hosts, shared by all TE topo view
+ * sessions and built off the UI connection threads.
+ * <p>
+ * Built panels are kept, in their JSON form, for a bounded time and up
+ * to a bounded number of elements, so that repeatedly selecting the same
+ * element costs a cache lookup. A panel is dropped as soon as its element
+ * changes; counts it shows that change without the element changing,
+ * such as flow counts, may lag by up to the time to live.
+ */
+public class TeTopoUiDetailsCache {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    // threads building details panels
+    private static final int BUILDER_THREADS = 2;
+
+    private final DeviceService deviceService;
+    private final HostService hostService;
+    private final TeTopoUiModelCache modelCache;
+
+    private final Cache<String, ObjectNode> panels;
+    private final ExecutorService builder;
+
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+    private final HostListener hostListener = new InternalHostListener();
+    private final TeTopoUiModelListener modelListener = new InternalModelListener();
+
+    /**
+     * Creates a details panel cache.
+     *
+     * @param deviceService device service
+     * @param hostService   host service
+     * @param modelCache    shared TE topology view model
+     * @param maxSize       maximum number of panels kept
+     * @param ttlMs         time a panel is kept after it was built, in
+     *                      milliseconds
+     */
+    public TeTopoUiDetailsCache(DeviceService deviceService, HostService hostService,
+                                TeTopoUiModelCache modelCache, int maxSize, int ttlMs) {
+        this.deviceService = deviceService;
+        this.hostService = hostService;
+        this.modelCache = modelCache;
+        this.panels = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .build();
+        this.builder = newFixedThreadPool(BUILDER_THREADS,
+                groupedThreads("onos/tetopoui", "details-%d", log));
+    }
+
+    /**
+     * Starts following the changes of devices, hosts and view elements.
+     */
+    public void activate() {
+        deviceService.addListener(deviceListener);
+        hostService.addListener(hostListener);
+        modelCache.addListener(modelListener);
+    }
+
+    /**
+     * Stops following changes, stops the builder threads and drops every
+     * panel.
+     */
+    public void deactivate() {
+        modelCache.removeListener(modelListener);
+        hostService.removeListener(hostListener);
+        deviceService.removeListener(deviceListener);
+        builder.shutdownNow();
+        panels.invalidateAll();
+    }
+
+    /**
+     * Returns the details panel of an element, built by the given supplier
+     * on a builder thread unless a current one is kept. Concurrent
+     * requests for the same element share one build.
+     *
+     * @param id    element identifier
+     * @param panel builds the element's details panel
+     * @return future JSON form of the panel
+     */
+    public CompletableFuture<ObjectNode> get(String id, Supplier<PropertyPanel> panel) {
+        ObjectNode cached = panels.getIfPresent(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return panels.get(id, () -> json(panel.get()));
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            }
+        }, builder);
+    }
+
+    /**
+     * Drops the details panel of an element.
+     *
+     * @param id element identifier
+     */
+    public void invalidate(String id) {
+        panels.invalidate(id);
+    }
+
+    private class InternalDeviceListener implements DeviceListener {
+        @Override
+        public void event(DeviceEvent event) {
+            if (event.type() != DeviceEvent.Type.PORT_STATS_UPDATED) {
+                invalidate(event.subject().id().toString());
+            }
+        }
+    }
+
+    private class InternalHostListener implements HostListener {
+        @Override
+        public void event(HostEvent event) {
+            invalidate(event.subject().id().toString());
+        }
+    }
+
+    private class InternalModelListener implements TeTopoUiModelListener {
+        @Override
+        public void event(TeTopoUiModelEvent event) {
+            invalidate(event.id());
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onlab.util.AbstractAccumulator;
+import org.onlab.util.SharedExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_ADDED;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_REMOVED;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_UPDATED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_ADDED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_REMOVED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_UPDATED;
+
+/**
+ * Accumulates view model events of one UI session and hands them over
+ * as coalesced batches, at most one per window or per maximum batch size.
+ * <p>
+ * Within a batch, the events of an element collapse to the last state:
+ * an update folds into a pending add, an add followed by a remove cancels
+ * out, and a remove followed by an add becomes an update; a collapsed
+ * event carries the sequence number of the last one. Events of the inner
+ * layers of different TE nodes are kept apart even if their ids match.
+ * The newest event of a batch carries the highest sequence number of the
+ * events it accounts for, those that cancelled out included, so that the
+ * version of a delta never lags behind the event log. Devices are added
+ * before links and removed after them.
+ * <p>
+ * Batches are coalesced on the accumulator's timer, which is shared, but
+ * handed to the sink on the given executor, one batch at a time and in
+ * order, so that a slow sink does not hold up the timer.
+ */
+public class TeTopoUiEventAccumulator extends AbstractAccumulator<TeTopoUiModelEvent> {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    // separates the parent from the element id in coalescing keys
+    private static final char SEPARATOR = '|';
+
+    private final Executor executor;
+    private final Consumer<List<TeTopoUiModelEvent>> sink;
+
+    private final Queue<List<TeTopoUiModelEvent>> batches = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong emitted = new AtomicLong();
+
+    // highest sequence number of events that cancelled out in batches
+    // that came out empty, carried into the next batch
+    private final AtomicLong carried = new AtomicLong();
+
+    /**
+     * Creates an event accumulator.
+     *
+     * @param maxBatch     maximum number of events accumulated in one batch
+     * @param windowMillis maximum time an event waits for its batch
+     * @param executor     executor the sink runs on
+     * @param sink         consumer of the coalesced batches
+     */
+    public TeTopoUiEventAccumulator(int maxBatch, int windowMillis, Executor executor,
+                                    Consumer<List<TeTopoUiModelEvent>> sink) {
+        super(SharedExecutors.getTimer(), maxBatch, windowMillis, windowMillis);
+        this.executor = executor;
+        this.sink = sink;
+    }
+
+    @Override
+    public void processItems(List<TeTopoUiModelEvent> items) {
+        List<TeTopoUiModelEvent> batch = coalesce(items);
+        if (!batch.isEmpty()) {
+            emitted.addAndGet(batch.size());
+            batches.add(batch);
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                batches.clear();
+            }
+        }
+    }
+
+    // Hands the pending batches to the sink, in order.
+    private void drain() {
+        try {
+            List<TeTopoUiModelEvent> batch;
+            while ((batch = batches.poll()) != null) {
+                try {
+                    sink.accept(batch);
+                } catch (Exception e) {
+                    log.warn("Unable to process TE topo view events", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        if (!batches.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Returns the number of events discarded because they cancelled out.
+     *
+     * @return dropped event count
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of events folded into a later event of the same
+     * element.
+     *
+     * @return merged event count
+     */
+    public long mergedCount() {
+        return merged.get();
+    }
+
+    /**
+     * Returns the number of events handed over to the sink.
+     *
+     * @return emitted event count
+     */
+    public long emittedCount() {
+        return emitted.get();
+    }
+
+    // Collapses the events of each element to its last state.
+    private List<TeTopoUiModelEvent> coalesce(List<TeTopoUiModelEvent> items) {
+        Map<String, TeTopoUiModelEvent> pending = Maps.newLinkedHashMap();
+        long highest = 0;
+        for (TeTopoUiModelEvent event : items) {
+            highest = Math.max(highest, event.sequence());
+            String key = key(event);
+            TeTopoUiModelEvent prev = pending.remove(key);
+            if (prev == null) {
+                pending.put(key, event);
+                continue;
+            }
+
+            if (isAdd(prev) && isRemove(event)) {
+                dropped.addAndGet(2);
+            } else if (isAdd(prev)) {
+                merged.incrementAndGet();
+                pending.put(key, new TeTopoUiModelEvent(prev.type(), event.subject(),
+                                                        event.parent(), event.sequence()));
+            } else if (isRemove(prev) && isAdd(event)) {
+                merged.incrementAndGet();
+                pending.put(key, new TeTopoUiModelEvent(updateOf(event), event.subject(),
+                                                        event.parent(), event.sequence()));
+            } else {
+                merged.incrementAndGet();
+                pending.put(key, event);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            carried.accumulateAndGet(highest, Math::max);
+            return ImmutableList.of();
+        }
+        highest = Math.max(highest, carried.getAndSet(0));
+
+        List<TeTopoUiModelEvent> devices = Lists.newArrayList();
+        List<TeTopoUiModelEvent> links = Lists.newArrayList();
+        List<TeTopoUiModelEvent> deviceRemovals = Lists.newArrayList();
+        long newest = 0;
+        for (TeTopoUiModelEvent event : pending.values()) {
+            newest = Math.max(newest, event.sequence());
+            if (event.type() == DEVICE_REMOVED) {
+                deviceRemovals.add(event);
+            } else if (isDevice(event)) {
+                devices.add(event);
+            } else {
+                links.add(event);
+            }
+        }
+        List<TeTopoUiModelEvent> batch = Lists.newArrayListWithCapacity(pending.size());
+        batch.addAll(devices);
+        batch.addAll(links);
+        batch.addAll(deviceRemovals);
+        if (newest < highest) {
+            int last = batch.size() - 1;
+            batch.set(last, batch.get(last).sequenced(highest));
+        }
+        return ImmutableList.copyOf(batch);
+    }
+
+    private static String key(TeTopoUiModelEvent event) {
+        String parent = event.parent() != null ? event.parent() : "";
+        return (isDevice(event) ? "d:" : "l:") + parent + SEPARATOR + event.id();
+    }
+
+    private static boolean isDevice(TeTopoUiModelEvent event) {
+        TeTopoUiModelEvent.Type type = event.type();
+        return type == DEVICE_ADDED || type == DEVICE_UPDATED || type == DEVICE_REMOVED;
+    }
+
+    private static boolean isAdd(TeTopoUiModelEvent event) {
+        return event.type() == DEVICE_ADDED || event.type() == LINK_ADDED;
+    }
+
+    private static boolean isRemove(TeTopoUiModelEvent event) {
+        return event.type() == DEVICE_REMOVED || event.type() == LINK_REMOVED;
+    }
+
+    private static TeTopoUiModelEvent.Type updateOf(TeTopoUiModelEvent event) {
+        return isDevice(event) ? DEVICE_UPDATED : LINK_UPDATED;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Bounded log of the most recent view model events, in sequence order.
+ * <p>
+ * The events are kept in a ring buffer, so that a view reconnecting
+ * after a short outage can be sent the changes it missed rather than the
+ * whole topology, as long as they are still held.
+ */
+public class TeTopoUiEventLog {
+
+    private final TeTopoUiModelEvent[] ring;
+
+    // sequence number of the newest event; guarded by this
+    private long last = 0;
+
+    /**
+     * Creates an event log.
+     *
+     * @param capacity maximum number of events held
+     */
+    public TeTopoUiEventLog(int capacity) {
+        this.ring = new TeTopoUiModelEvent[Math.max(1, capacity)];
+    }
+
+    /**
+     * Appends an event, evicting the oldest one if the log is full. The
+     * event must carry the sequence number following the newest one.
+     *
+     * @param event sequenced view model event
+     */
+    public synchronized void append(TeTopoUiModelEvent event) {
+        last = event.sequence();
+        ring[(int) (last % ring.length)] = event;
+    }
+
+    /**
+     * Returns the sequence number of the newest event.
+     *
+     * @return newest sequence number, 0 if none was appended
+     */
+    public synchronized long last() {
+        return last;
+    }
+
+    /**
+     * Returns the events that followed the given sequence number.
+     *
+     * @param sequence sequence number of the last event already seen
+     * @return events after it, in order, or null if some of them are no
+     * longer held or the sequence number is unknown to this log
+     */
+    public synchronized List<TeTopoUiModelEvent> since(long sequence) {
+        if (sequence < 0 || sequence > last || last - sequence > ring.length) {
+            return null;
+        }
+        List<TeTopoUiModelEvent> events = Lists.newArrayListWithCapacity((int) (last - sequence));
+        for (long s = sequence + 1; s <= last; s++) {
+            events.add(ring[(int) (s % ring.length)]);
+        }
+        return events;
+    }
+}
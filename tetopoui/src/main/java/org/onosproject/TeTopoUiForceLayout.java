@@ -0,0 +1,643 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Multilevel force-directed layout of the upper layer of the TE topology.
+ * <p>
+ * Each connected component is coarsened by repeatedly collapsing matched
+ * pairs of neighbours, the coarsest graph is laid out from scratch, and
+ * every finer level starts from the positions of its coarse nodes and is
+ * refined with a few force-directed iterations. Repulsion only acts
+ * between nodes in neighbouring cells of a uniform grid, so an iteration
+ * costs time linear in the size of the graph. Components are laid out in
+ * parallel on the given fork-join pool, as are the forces of large ones.
+ * <p>
+ * A component whose nodes mostly have a previous position keeps them and
+ * is only refined around its new nodes, so that a topology change does
+ * not reshuffle the whole view.
+ */
+final class TeTopoUiForceLayout {
+
+    // ideal link length, in view pixels
+    private static final double EDGE = 80;
+    // components this small are laid out without coarsening
+    private static final int COARSEST = 24;
+    // coarsening stops at a level shrinking by less than this factor
+    private static final double MIN_SHRINK = 0.85;
+
+    private static final int COARSEST_ITERATIONS = 300;
+    private static final int LEVEL_ITERATIONS = 60;
+    private static final int SEEDED_ITERATIONS = 40;
+
+    // share of nodes with a previous position from which a component is
+    // only refined
+    private static final double STABLE_SHARE = 0.5;
+    // node count from which the forces of an iteration are computed in
+    // parallel
+    private static final int PARALLEL_NODES = 2048;
+
+    // margin of the laid out view and gap between packed components
+    private static final double MARGIN = 40;
+    private static final double GAP = 2 * EDGE;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a layout engine.
+     *
+     * @param pool fork-join pool the layout runs on
+     */
+    TeTopoUiForceLayout(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Lays out a graph.
+     *
+     * @param ids      node ids
+     * @param links    links, as {src, dst} node id pairs; links to unknown
+     *                 nodes are ignored
+     * @param previous previous positions {x, y} by node id
+     * @return positions {x, y} of every node, all of them positive
+     */
+    Map<String, double[]> layout(List<String> ids, Collection<String[]> links,
+                                 Map<String, double[]> previous) {
+        int n = ids.size();
+        Map<String, Integer> index = Maps.newHashMapWithExpectedSize(n);
+        for (int i = 0; i < n; i++) {
+            index.put(ids.get(i), i);
+        }
+        int[] src = new int[links.size()];
+        int[] dst = new int[links.size()];
+        int count = 0;
+        for (String[] link : links) {
+            Integer s = index.get(link[0]);
+            Integer d = index.get(link[1]);
+            if (s != null && d != null) {
+                src[count] = s;
+                dst[count++] = d;
+            }
+        }
+        Graph graph = Graph.of(n, src, dst, count);
+
+        double[] x = new double[n];
+        double[] y = new double[n];
+        boolean[] known = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            double[] xy = previous.get(ids.get(i));
+            if (xy != null) {
+                x[i] = xy[0];
+                y[i] = xy[1];
+                known[i] = true;
+            }
+        }
+
+        List<int[]> components = graph.components();
+        boolean[] stable = new boolean[components.size()];
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<RecursiveAction> tasks = Lists.newArrayList();
+                for (int c = 0; c < components.size(); c++) {
+                    int component = c;
+                    tasks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            stable[component] = layoutComponent(
+                                    graph, components.get(component), x, y, known);
+                        }
+                    });
+                }
+                invokeAll(tasks);
+            }
+        });
+        pack(components, stable, x, y);
+
+        Map<String, double[]> positions = Maps.newHashMapWithExpectedSize(n);
+        for (int i = 0; i < n; i++) {
+            positions.put(ids.get(i), new double[]{round(x[i]), round(y[i])});
+        }
+        return positions;
+    }
+
+    // Lays out one component in place; returns whether it kept its
+    // previous positions.
+    private boolean layoutComponent(Graph graph, int[] nodes, double[] x, double[] y,
+                                    boolean[] known) {
+        Graph sub = graph.induced(nodes);
+        int m = nodes.length;
+        double[] lx = new double[m];
+        double[] ly = new double[m];
+        Random random = new Random(31L * m + nodes[0]);
+
+        int placed = 0;
+        for (int i = 0; i < m; i++) {
+            if (known[nodes[i]]) {
+                lx[i] = x[nodes[i]];
+                ly[i] = y[nodes[i]];
+                placed++;
+            }
+        }
+
+        boolean stable = placed > 0 && placed >= STABLE_SHARE * m;
+        if (stable) {
+            boolean[] fixed = new boolean[m];
+            for (int i = 0; i < m; i++) {
+                fixed[i] = known[nodes[i]];
+            }
+            placeNearNeighbours(sub, lx, ly, fixed, random);
+            if (placed < m) {
+                refine(sub, lx, ly, EDGE, EDGE / 2, SEEDED_ITERATIONS);
+            }
+        } else if (m > 1) {
+            multilevel(sub, lx, ly, random);
+        }
+
+        for (int i = 0; i < m; i++) {
+            x[nodes[i]] = lx[i];
+            y[nodes[i]] = ly[i];
+        }
+        return stable;
+    }
+
+    // Gives every node without a position the centroid of its placed
+    // neighbours, or of all placed nodes, plus some jitter.
+    private void placeNearNeighbours(Graph g, double[] x, double[] y, boolean[] placed,
+                                     Random random) {
+        double cx = 0;
+        double cy = 0;
+        int count = 0;
+        for (int i = 0; i < g.n; i++) {
+            if (placed[i]) {
+                cx += x[i];
+                cy += y[i];
+                count++;
+            }
+        }
+        cx /= count;
+        cy /= count;
+
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int i = 0; i < g.n; i++) {
+                if (placed[i]) {
+                    continue;
+                }
+                double sx = 0;
+                double sy = 0;
+                int k = 0;
+                for (int e = g.offsets[i]; e < g.offsets[i + 1]; e++) {
+                    int j = g.adj[e];
+                    if (placed[j]) {
+                        sx += x[j];
+                        sy += y[j];
+                        k++;
+                    }
+                }
+                if (k > 0) {
+                    x[i] = sx / k + jitter(random, EDGE / 2);
+                    y[i] = sy / k + jitter(random, EDGE / 2);
+                    placed[i] = true;
+                    progress = true;
+                }
+            }
+        }
+        for (int i = 0; i < g.n; i++) {
+            if (!placed[i]) {
+                x[i] = cx + jitter(random, EDGE);
+                y[i] = cy + jitter(random, EDGE);
+            }
+        }
+    }
+
+    // Coarsens the graph level by level, lays out the coarsest level and
+    // refines the positions back down to the given graph.
+    private void multilevel(Graph graph, double[] x, double[] y, Random random) {
+        List<Graph> levels = Lists.newArrayList(graph);
+        List<int[]> parents = Lists.newArrayList();
+        Graph g = graph;
+        while (g.n > COARSEST) {
+            int[] parent = new int[g.n];
+            int coarse = g.match(parent, random);
+            if (coarse > MIN_SHRINK * g.n) {
+                break;
+            }
+            g = g.coarsen(parent, coarse);
+            levels.add(g);
+            parents.add(parent);
+        }
+
+        // a coarse node stands for several nodes, so its ideal link length
+        // grows with the square root of that number, keeping the area
+        int top = levels.size() - 1;
+        double k = EDGE * Math.sqrt((double) graph.n / g.n);
+        double radius = k * Math.sqrt(g.n);
+        double[] cx = new double[g.n];
+        double[] cy = new double[g.n];
+        for (int i = 0; i < g.n; i++) {
+            double angle = 2 * Math.PI * random.nextDouble();
+            double r = radius * Math.sqrt(random.nextDouble());
+            cx[i] = r * Math.cos(angle);
+            cy[i] = r * Math.sin(angle);
+        }
+        refine(g, cx, cy, k, radius / 2, COARSEST_ITERATIONS);
+
+        for (int level = top - 1; level >= 0; level--) {
+            Graph fine = levels.get(level);
+            int[] parent = parents.get(level);
+            k = EDGE * Math.sqrt((double) graph.n / fine.n);
+            double[] fx = new double[fine.n];
+            double[] fy = new double[fine.n];
+            for (int i = 0; i < fine.n; i++) {
+                fx[i] = cx[parent[i]] + jitter(random, k / 4);
+                fy[i] = cy[parent[i]] + jitter(random, k / 4);
+            }
+            refine(fine, fx, fy, k, k, LEVEL_ITERATIONS);
+            cx = fx;
+            cy = fy;
+        }
+        System.arraycopy(cx, 0, x, 0, graph.n);
+        System.arraycopy(cy, 0, y, 0, graph.n);
+    }
+
+    // Runs force-directed iterations with a linearly cooling maximum
+    // displacement: links pull with d^2 / k, nodes closer than 2k push
+    // each other away with k^2 / d.
+    private void refine(Graph g, double[] x, double[] y, double k, double temperature,
+                        int iterations) {
+        int n = g.n;
+        double[] dx = new double[n];
+        double[] dy = new double[n];
+        for (int it = 0; it < iterations; it++) {
+            double t = temperature * (1 - (double) it / iterations) + 0.1;
+            Grid grid = new Grid(x, y, 2 * k);
+            if (n >= PARALLEL_NODES) {
+                IntStream.range(0, n).parallel()
+                        .forEach(i -> force(g, grid, x, y, k, i, dx, dy));
+            } else {
+                for (int i = 0; i < n; i++) {
+                    force(g, grid, x, y, k, i, dx, dy);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                double d = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+                if (d > 0) {
+                    double step = Math.min(d, t) / d;
+                    x[i] += dx[i] * step;
+                    y[i] += dy[i] * step;
+                }
+            }
+        }
+    }
+
+    // Computes the displacement of one node; only writes its own slot.
+    private static void force(Graph g, Grid grid, double[] x, double[] y, double k, int i,
+                              double[] dx, double[] dy) {
+        double fx = 0;
+        double fy = 0;
+        double k2 = k * k;
+        double reach2 = 4 * k2;
+        int cx = grid.cell(x[i]);
+        int cy = grid.cell(y[i]);
+        for (int ox = -1; ox <= 1; ox++) {
+            for (int oy = -1; oy <= 1; oy++) {
+                int[] cell = grid.nodes(cx + ox, cy + oy);
+                if (cell == null) {
+                    continue;
+                }
+                for (int j : cell) {
+                    if (j == i) {
+                        continue;
+                    }
+                    double ddx = x[i] - x[j];
+                    double ddy = y[i] - y[j];
+                    double d2 = ddx * ddx + ddy * ddy;
+                    if (d2 < 1e-6) {
+                        // coincident nodes: push apart deterministically
+                        ddx = i < j ? 0.1 : -0.1;
+                        ddy = 0;
+                        d2 = 0.01;
+                    }
+                    if (d2 < reach2) {
+                        fx += ddx * k2 / d2;
+                        fy += ddy * k2 / d2;
+                    }
+                }
+            }
+        }
+        for (int e = g.offsets[i]; e < g.offsets[i + 1]; e++) {
+            int j = g.adj[e];
+            double ddx = x[j] - x[i];
+            double ddy = y[j] - y[i];
+            double d = Math.sqrt(ddx * ddx + ddy * ddy);
+            fx += ddx * d / k;
+            fy += ddy * d / k;
+        }
+        dx[i] = fx;
+        dy[i] = fy;
+    }
+
+    // Keeps the components that kept their positions where they are,
+    // packs the others in rows below them, then shifts everything into
+    // positive coordinates if needed.
+    private void pack(List<int[]> components, boolean[] stable, double[] x, double[] y) {
+        double top = MARGIN;
+        double left = MARGIN;
+        boolean anyStable = false;
+        List<double[]> boxes = Lists.newArrayList();
+        List<Integer> loose = Lists.newArrayList();
+        for (int c = 0; c < components.size(); c++) {
+            double[] box = box(components.get(c), x, y);
+            boxes.add(box);
+            if (stable[c]) {
+                top = anyStable ? Math.max(top, box[3] + GAP) : box[3] + GAP;
+                left = anyStable ? Math.min(left, box[0]) : box[0];
+                anyStable = true;
+            } else {
+                loose.add(c);
+            }
+        }
+
+        double area = 0;
+        double widest = 0;
+        for (int c : loose) {
+            double[] box = boxes.get(c);
+            area += (box[2] - box[0] + GAP) * (box[3] - box[1] + GAP);
+            widest = Math.max(widest, box[2] - box[0]);
+        }
+        double rowWidth = Math.max(widest, Math.sqrt(area));
+        loose.sort(Comparator.comparingDouble((Integer c) -> boxes.get(c)[1] - boxes.get(c)[3])
+                           .thenComparingInt(c -> components.get(c)[0]));
+
+        double cx = left;
+        double cy = top;
+        double rowHeight = 0;
+        for (int c : loose) {
+            double[] box = boxes.get(c);
+            double w = box[2] - box[0];
+            double h = box[3] - box[1];
+            if (cx > left && cx + w > left + rowWidth) {
+                cx = left;
+                cy += rowHeight + GAP;
+                rowHeight = 0;
+            }
+            for (int i : components.get(c)) {
+                x[i] += cx - box[0];
+                y[i] += cy - box[1];
+            }
+            cx += w + GAP;
+            rowHeight = Math.max(rowHeight, h);
+        }
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        for (int i = 0; i < x.length; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+        }
+        double shiftX = minX < MARGIN ? MARGIN - minX : 0;
+        double shiftY = minY < MARGIN ? MARGIN - minY : 0;
+        for (int i = 0; i < x.length; i++) {
+            x[i] += shiftX;
+            y[i] += shiftY;
+        }
+    }
+
+    // Bounding box {minX, minY, maxX, maxY} of some nodes.
+    private static double[] box(int[] nodes, double[] x, double[] y) {
+        double[] box = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i : nodes) {
+            box[0] = Math.min(box[0], x[i]);
+            box[1] = Math.min(box[1], y[i]);
+            box[2] = Math.max(box[2], x[i]);
+            box[3] = Math.max(box[3], y[i]);
+        }
+        return box;
+    }
+
+    private static double jitter(Random random, double amplitude) {
+        return (random.nextDouble() - 0.5) * amplitude;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 10) / 10.0;
+    }
+
+    // Undirected graph in compressed adjacency form: the neighbours of
+    // node i are adj[offsets[i]] to adj[offsets[i + 1] - 1].
+    private static final class Graph {
+        private final int n;
+        private final int[] offsets;
+        private final int[] adj;
+
+        private Graph(int n, int[] offsets, int[] adj) {
+            this.n = n;
+            this.offsets = offsets;
+            this.adj = adj;
+        }
+
+        // Builds a graph from edges given both ways or one way; parallel
+        // edges and self loops are dropped.
+        private static Graph of(int n, int[] src, int[] dst, int count) {
+            long[] keys = new long[count];
+            int k = 0;
+            for (int e = 0; e < count; e++) {
+                int a = Math.min(src[e], dst[e]);
+                int b = Math.max(src[e], dst[e]);
+                if (a != b) {
+                    keys[k++] = ((long) a << 32) | b;
+                }
+            }
+            Arrays.sort(keys, 0, k);
+            int[] degree = new int[n + 1];
+            long last = -1;
+            int unique = 0;
+            for (int e = 0; e < k; e++) {
+                if (keys[e] != last) {
+                    last = keys[e];
+                    keys[unique++] = last;
+                    degree[(int) (last >>> 32)]++;
+                    degree[(int) last]++;
+                }
+            }
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] = offsets[i] + degree[i];
+            }
+            int[] cursor = Arrays.copyOf(offsets, n);
+            int[] adj = new int[offsets[n]];
+            for (int e = 0; e < unique; e++) {
+                int a = (int) (keys[e] >>> 32);
+                int b = (int) keys[e];
+                adj[cursor[a]++] = b;
+                adj[cursor[b]++] = a;
+            }
+            return new Graph(n, offsets, adj);
+        }
+
+        private int degree(int i) {
+            return offsets[i + 1] - offsets[i];
+        }
+
+        // Matches each node with its unmatched neighbour of least degree,
+        // visiting nodes in random order; returns the number of coarse
+        // nodes, numbered into parent.
+        private int match(int[] parent, Random random) {
+            int[] order = IntStream.range(0, n).toArray();
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            Arrays.fill(parent, -1);
+            int coarse = 0;
+            for (int u : order) {
+                if (parent[u] >= 0) {
+                    continue;
+                }
+                int best = -1;
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int v = adj[e];
+                    if (parent[v] < 0 && (best < 0 || degree(v) < degree(best))) {
+                        best = v;
+                    }
+                }
+                parent[u] = coarse;
+                if (best >= 0) {
+                    parent[best] = coarse;
+                }
+                coarse++;
+            }
+            return coarse;
+        }
+
+        private Graph coarsen(int[] parent, int coarse) {
+            int[] src = new int[adj.length];
+            int[] dst = new int[adj.length];
+            int count = 0;
+            for (int u = 0; u < n; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int v = adj[e];
+                    if (u < v && parent[u] != parent[v]) {
+                        src[count] = parent[u];
+                        dst[count++] = parent[v];
+                    }
+                }
+            }
+            return of(coarse, src, dst, count);
+        }
+
+        // Returns the subgraph of the given nodes, which must be a
+        // component, with node i of it standing for nodes[i].
+        private Graph induced(int[] nodes) {
+            Map<Integer, Integer> local = Maps.newHashMapWithExpectedSize(nodes.length);
+            for (int i = 0; i < nodes.length; i++) {
+                local.put(nodes[i], i);
+            }
+            int[] offs = new int[nodes.length + 1];
+            for (int i = 0; i < nodes.length; i++) {
+                offs[i + 1] = offs[i] + degree(nodes[i]);
+            }
+            int[] sub = new int[offs[nodes.length]];
+            for (int i = 0; i < nodes.length; i++) {
+                int u = nodes[i];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    sub[offs[i] + e - offsets[u]] = local.get(adj[e]);
+                }
+            }
+            return new Graph(nodes.length, offs, sub);
+        }
+
+        // Returns the connected components, each as ascending node indexes.
+        private List<int[]> components() {
+            boolean[] seen = new boolean[n];
+            int[] queue = new int[n];
+            List<int[]> components = Lists.newArrayList();
+            for (int s = 0; s < n; s++) {
+                if (seen[s]) {
+                    continue;
+                }
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = s;
+                seen[s] = true;
+                while (head < tail) {
+                    int u = queue[head++];
+                    for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                        int v = adj[e];
+                        if (!seen[v]) {
+                            seen[v] = true;
+                            queue[tail++] = v;
+                        }
+                    }
+                }
+                int[] component = Arrays.copyOf(queue, tail);
+                Arrays.sort(component);
+                components.add(component);
+            }
+            return components;
+        }
+    }
+
+    // Uniform grid over node positions, for neighbourhood queries.
+    private static final class Grid {
+        private final double size;
+        private final Map<Long, int[]> cells = Maps.newHashMap();
+
+        private Grid(double[] x, double[] y, double size) {
+            this.size = size;
+            long[] keys = new long[x.length];
+            Map<Long, int[]> counts = Maps.newHashMap();
+            for (int i = 0; i < x.length; i++) {
+                keys[i] = key(cell(x[i]), cell(y[i]));
+                counts.computeIfAbsent(keys[i], k -> new int[1])[0]++;
+            }
+            counts.forEach((k, c) -> cells.put(k, new int[c[0]]));
+            for (int i = 0; i < x.length; i++) {
+                int[] c = counts.get(keys[i]);
+                cells.get(keys[i])[--c[0]] = i;
+            }
+        }
+
+        private int cell(double v) {
+            return (int) Math.floor(v / size);
+        }
+
+        private int[] nodes(int cx, int cy) {
+            return cells.get(key(cx, cy));
+        }
+
+        private static long key(int cx, int cy) {
+            return ((long) cx << 32) ^ (cy & 0xffffffffL);
+        }
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onosproject.net.Link;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.onosproject.ui.topo.TopoUtils.compactLinkString;
+
+/**
+ * Adjacency of the nodes of one TE network, over both layers, in
+ * compressed sparse row form.
+ * <p>
+ * Node and link ids are interned to ints once, when the graph is built;
+ * the neighbours of a node are then a contiguous run of one shared int
+ * array. Links and connectivity matrices join nodes of the same layer,
+ * while the supporting nodes of a TE node are joined to it across
+ * layers. The graph is immutable, so sessions share it without locking.
+ * Queries leave their results in a caller-owned {@link Search}, and
+ * allocate nothing once the search has grown to the size of the graph.
+ */
+final class TeTopoUiGraph {
+
+    /**
+     * Graph without nodes.
+     */
+    static final TeTopoUiGraph EMPTY = builder().build();
+
+    /**
+     * Index of no node, such as the parent of an upper layer node.
+     */
+    static final int NONE = -1;
+
+    // node id -> node index
+    private final Map<String, Integer> index;
+    private final String[] nodes;
+    private final String[] links;
+
+    // neighbours of node v in the same layer are targets[offsets[v]]
+    // to targets[offsets[v + 1] - 1], reached over the links with the
+    // indexes at the same positions of edgeLinks
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] edgeLinks;
+
+    // same, for the neighbours in the other layer
+    private final int[] crossOffsets;
+    private final int[] crossTargets;
+    private final int[] crossLinks;
+
+    // TE node each supporting node belongs to, NONE for TE nodes
+    private final int[] parents;
+
+    private TeTopoUiGraph(Builder builder) {
+        this.index = builder.index;
+        this.nodes = builder.nodes.toArray(new String[builder.nodes.size()]);
+        this.links = builder.links.toArray(new String[builder.links.size()]);
+        int n = nodes.length;
+
+        offsets = new int[n + 1];
+        targets = new int[degrees(builder.edges, builder.edgeCount, offsets)];
+        edgeLinks = new int[targets.length];
+        fill(builder.edges, builder.edgeCount, offsets, targets, edgeLinks);
+
+        crossOffsets = new int[n + 1];
+        crossTargets = new int[degrees(builder.members, builder.memberCount, crossOffsets)];
+        crossLinks = new int[crossTargets.length];
+        fill(builder.members, builder.memberCount, crossOffsets, crossTargets, crossLinks);
+
+        parents = new int[n];
+        Arrays.fill(parents, NONE);
+        for (int i = 0; i < builder.memberCount; i++) {
+            parents[builder.members[3 * i + 1]] = builder.members[3 * i];
+        }
+    }
+
+    // Sets the start of each node's run of neighbours, over edges given as
+    // {from, to, link} triples, both ways; returns the number of entries.
+    private static int degrees(int[] edges, int count, int[] offsets) {
+        for (int i = 0; i < count; i++) {
+            int from = edges[3 * i];
+            int to = edges[3 * i + 1];
+            offsets[from + 1]++;
+            if (from != to) {
+                offsets[to + 1]++;
+            }
+        }
+        for (int v = 1; v < offsets.length; v++) {
+            offsets[v] += offsets[v - 1];
+        }
+        return offsets[offsets.length - 1];
+    }
+
+    private static void fill(int[] edges, int count, int[] offsets, int[] targets, int[] links) {
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int i = 0; i < count; i++) {
+            int from = edges[3 * i];
+            int to = edges[3 * i + 1];
+            int link = edges[3 * i + 2];
+            targets[next[from]] = to;
+            links[next[from]++] = link;
+            if (from != to) {
+                targets[next[to]] = from;
+                links[next[to]++] = link;
+            }
+        }
+    }
+
+    /**
+     * Returns a builder of graphs.
+     *
+     * @return graph builder
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the number of nodes, which are indexed from 0.
+     *
+     * @return number of nodes
+     */
+    int nodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the number of links, which are indexed from 0.
+     *
+     * @return number of links
+     */
+    int linkCount() {
+        return links.length;
+    }
+
+    /**
+     * Returns the index of a node.
+     *
+     * @param id node id
+     * @return node index, or {@link #NONE} if the graph lacks the node
+     */
+    int node(String id) {
+        Integer v = index.get(id);
+        return v != null ? v : NONE;
+    }
+
+    /**
+     * Returns the id of a node.
+     *
+     * @param v node index
+     * @return node id
+     */
+    String nodeId(int v) {
+        return nodes[v];
+    }
+
+    /**
+     * Returns the id of a link.
+     *
+     * @param e link index
+     * @return link id
+     */
+    String linkId(int e) {
+        return links[e];
+    }
+
+    /**
+     * Returns the number of links a node has in its own layer.
+     *
+     * @param v node index
+     * @return node degree
+     */
+    int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * Returns a neighbour of a node in its own layer.
+     *
+     * @param v node index
+     * @param i neighbour position, below the node's degree
+     * @return neighbour index
+     */
+    int neighbour(int v, int i) {
+        return targets[offsets[v] + i];
+    }
+
+    /**
+     * Returns the TE node a supporting node belongs to.
+     *
+     * @param v node index
+     * @return parent index, or {@link #NONE} for a TE node
+     */
+    int parent(int v) {
+        return parents[v];
+    }
+
+    /**
+     * Returns the number of supporting nodes of a TE node.
+     *
+     * @param v node index
+     * @return number of supporting nodes, 0 for a supporting node
+     */
+    int memberCount(int v) {
+        return parents[v] == NONE ? crossOffsets[v + 1] - crossOffsets[v] : 0;
+    }
+
+    /**
+     * Returns a supporting node of a TE node.
+     *
+     * @param v node index
+     * @param i member position, below the node's member count
+     * @return supporting node index
+     */
+    int member(int v, int i) {
+        return crossTargets[crossOffsets[v] + i];
+    }
+
+    /**
+     * Finds the nodes within the given number of hops of a node, breadth
+     * first, along with the links among them. The search is left with the
+     * nodes in order of distance, the start node first.
+     *
+     * @param id         start node id
+     * @param hops       maximum distance
+     * @param crossLayer whether the relation between a TE node and its
+     *                   supporting nodes counts as a hop
+     * @param search     search the results are left in
+     * @return false if the graph lacks the start node
+     */
+    boolean neighbourhood(String id, int hops, boolean crossLayer, Search search) {
+        search.reset(this);
+        int start = node(id);
+        if (start == NONE) {
+            return false;
+        }
+        search.visit(start, 0);
+        for (int head = 0; head < search.nodeCount; head++) {
+            int v = search.nodes[head];
+            expand(v, offsets, targets, edgeLinks, hops, search);
+            if (crossLayer) {
+                expand(v, crossOffsets, crossTargets, crossLinks, hops, search);
+            }
+        }
+        return true;
+    }
+
+    // Visits the neighbours of a node, finding those not yet found within
+    // the distance, and the links to the found ones; a link is found from
+    // its end nearer to the start, or from its lower end at equal distance.
+    private static void expand(int v, int[] offsets, int[] targets, int[] links,
+                               int hops, Search search) {
+        int depth = search.depths[v];
+        for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+            int w = targets[i];
+            if (!search.found(w)) {
+                if (depth < hops) {
+                    search.visit(w, depth + 1);
+                    search.links[search.linkCount++] = links[i];
+                }
+            } else if (search.depths[w] > depth || search.depths[w] == depth && v <= w) {
+                search.links[search.linkCount++] = links[i];
+            }
+        }
+    }
+
+    /**
+     * Reusable state and results of graph queries. Not thread-safe; each
+     * session keeps its own.
+     */
+    static final class Search {
+        // nodes found carry the current stamp
+        private int[] stamps = new int[0];
+        private int[] depths = new int[0];
+        // nodes found, in order; doubles as the breadth first queue
+        private int[] nodes = new int[0];
+        private int[] links = new int[0];
+        private int stamp = 0;
+        private int nodeCount;
+        private int linkCount;
+        private TeTopoUiGraph graph = EMPTY;
+
+        /**
+         * Returns the number of nodes found.
+         *
+         * @return number of nodes
+         */
+        int nodeCount() {
+            return nodeCount;
+        }
+
+        /**
+         * Returns the id of a node found.
+         *
+         * @param i position of the node, in order of distance
+         * @return node id
+         */
+        String nodeId(int i) {
+            return graph.nodeId(nodes[i]);
+        }
+
+        /**
+         * Returns the number of hops from the start to a node found.
+         *
+         * @param i position of the node, in order of distance
+         * @return distance
+         */
+        int depth(int i) {
+            return depths[nodes[i]];
+        }
+
+        /**
+         * Returns the number of links found.
+         *
+         * @return number of links
+         */
+        int linkCount() {
+            return linkCount;
+        }
+
+        /**
+         * Returns the id of a link found.
+         *
+         * @param i position of the link
+         * @return link id
+         */
+        String linkId(int i) {
+            return graph.linkId(links[i]);
+        }
+
+        // Forgets the previous results, growing to the size of the graph.
+        private void reset(TeTopoUiGraph graph) {
+            this.graph = graph;
+            int n = graph.nodeCount();
+            if (stamps.length < n) {
+                stamps = new int[n];
+                depths = new int[n];
+                nodes = new int[n];
+                stamp = 0;
+            }
+            int m = graph.targets.length + graph.crossTargets.length;
+            if (links.length < m) {
+                links = new int[m];
+            }
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            nodeCount = 0;
+            linkCount = 0;
+        }
+
+        private boolean found(int v) {
+            return stamps[v] == stamp;
+        }
+
+        private void visit(int v, int depth) {
+            stamps[v] = stamp;
+            depths[v] = depth;
+            nodes[nodeCount++] = v;
+        }
+    }
+
+    /**
+     * Builder of graphs; nodes are interned as they are first named.
+     */
+    static final class Builder {
+        private final Map<String, Integer> index = Maps.newHashMap();
+        private final List<String> nodes = Lists.newArrayList();
+        private final Map<String, Integer> linkIndex = Maps.newHashMap();
+        private final List<String> links = Lists.newArrayList();
+
+        // {from, to, link} triples
+        private int[] edges = new int[48];
+        private int edgeCount;
+        // {parent, child, link} triples
+        private int[] members = new int[48];
+        private int memberCount;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a node, unless already added.
+         *
+         * @param id node id
+         * @return node index
+         */
+        int node(String id) {
+            Integer v = index.get(id);
+            if (v == null) {
+                v = nodes.size();
+                index.put(id, v);
+                nodes.add(id);
+            }
+            return v;
+        }
+
+        /**
+         * Adds a link between two nodes of the same layer, unless already
+         * added, along with its end nodes.
+         *
+         * @param link link
+         * @return this builder
+         */
+        Builder link(Link link) {
+            int e = intern(link);
+            if (e != NONE) {
+                edges = add(edges, edgeCount++, node(link.src().deviceId().toString()),
+                            node(link.dst().deviceId().toString()), e);
+            }
+            return this;
+        }
+
+        /**
+         * Adds the link from a TE node to one of its supporting nodes,
+         * unless already added, along with its end nodes.
+         *
+         * @param link link from the TE node to the supporting node
+         * @return this builder
+         */
+        Builder member(Link link) {
+            int e = intern(link);
+            if (e != NONE) {
+                members = add(members, memberCount++, node(link.src().deviceId().toString()),
+                              node(link.dst().deviceId().toString()), e);
+            }
+            return this;
+        }
+
+        /**
+         * Builds the graph.
+         *
+         * @return graph
+         */
+        TeTopoUiGraph build() {
+            return new TeTopoUiGraph(this);
+        }
+
+        // Returns the index of a new link, NONE if it was already added.
+        private int intern(Link link) {
+            String id = compactLinkString(link);
+            if (linkIndex.containsKey(id)) {
+                return NONE;
+            }
+            linkIndex.put(id, links.size());
+            links.add(id);
+            return links.size() - 1;
+        }
+
+        private static int[] add(int[] triples, int i, int from, int to, int link) {
+            int[] grown = 3 * i + 3 <= triples.length ? triples :
+                    Arrays.copyOf(triples, triples.length * 2);
+            grown[3 * i] = from;
+            grown[3 * i + 1] = to;
+            grown[3 * i + 2] = link;
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Heartbeat watchdog shared by all TE topo view sessions.
+ * <p>
+ * Each session has a {@link Monitor} it beats on every client heartbeat.
+ * A single thread checks the monitors a few times per timeout and tells a
+ * session once when its heartbeats stopped for longer than the timeout.
+ * Sessions whose client never sent a heartbeat are left alone.
+ */
+public class TeTopoUiHeartbeats {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    // checks per timeout
+    private static final int CHECKS = 3;
+
+    private final long timeoutMs;
+    private final Set<Monitor> monitors = Sets.newConcurrentHashSet();
+    private final ScheduledExecutorService scheduler =
+            newSingleThreadScheduledExecutor(groupedThreads("onos/tetopoui", "heartbeat-%d", log));
+
+    /**
+     * Creates a heartbeat watchdog.
+     *
+     * @param timeoutMs time without heartbeat after which a session is
+     *                  deemed gone, in milliseconds
+     */
+    public TeTopoUiHeartbeats(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        long period = Math.max(1, timeoutMs / CHECKS);
+        scheduler.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops watching every session.
+     */
+    public void shutdown() {
+        monitors.clear();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Starts watching a session.
+     *
+     * @param missed invoked, on the watchdog thread, when the session's
+     *               heartbeats stopped
+     * @return heartbeat monitor of the session
+     */
+    public Monitor watch(Runnable missed) {
+        Monitor monitor = new Monitor(missed);
+        monitors.add(monitor);
+        return monitor;
+    }
+
+    private void check() {
+        long now = System.currentTimeMillis();
+        for (Monitor monitor : monitors) {
+            try {
+                monitor.check(now);
+            } catch (Exception e) {
+                log.warn("Unable to pause TE topo view session", e);
+            }
+        }
+    }
+
+    /**
+     * Heartbeat monitor of one session.
+     */
+    public final class Monitor {
+        private final Runnable missed;
+
+        // time of the last heartbeat; 0 until the first
+        private volatile long lastBeat = 0;
+        private volatile boolean reported = false;
+
+        private Monitor(Runnable missed) {
+            this.missed = missed;
+        }
+
+        /**
+         * Records a heartbeat from the session's client.
+         */
+        public void beat() {
+            lastBeat = System.currentTimeMillis();
+            reported = false;
+        }
+
+        /**
+         * Stops watching the session.
+         */
+        public void cancel() {
+            monitors.remove(this);
+        }
+
+        private void check(long now) {
+            long last = lastBeat;
+            if (last > 0 && !reported && now - last > timeoutMs) {
+                reported = true;
+                missed.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Layout of the TE topology view, computed on the controller and shared
+ * by all TE topo view sessions.
+ * <p>
+ * The upper layer devices without a geo-location are laid out once per
+ * structure of the topology, a while after its devices or links were
+ * last added or removed, on a fork-join pool. The layout is persisted to
+ * local disk, so that it survives restarts, and handed to the model
+ * cache, which sends the positions within the device payloads so that
+ * clients start with the nodes already in place.
+ */
+public class TeTopoUiLayout {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    // time without structural change before the layout is recomputed
+    private static final int QUIET_MS = 1000;
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String POSITIONS = "positions";
+
+    private final TeTopoUiModelCache modelCache;
+    private final File file;
+    private final ForkJoinPool pool;
+    private final TeTopoUiForceLayout engine;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final TeTopoUiModelListener modelListener = new InternalModelListener();
+    private final ScheduledExecutorService scheduler =
+            newSingleThreadScheduledExecutor(groupedThreads("onos/tetopoui", "layout-%d", log));
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // current layout and the structure it was computed for; only touched
+    // by the scheduler thread
+    private String fingerprint = "";
+    private Map<String, double[]> positions = ImmutableMap.of();
+    private boolean placed = false;
+
+    /**
+     * Creates a layout of the given view model.
+     *
+     * @param modelCache  shared TE topology view model
+     * @param file        file the layout is persisted to
+     * @param parallelism number of threads computing the layout
+     */
+    public TeTopoUiLayout(TeTopoUiModelCache modelCache, File file, int parallelism) {
+        this.modelCache = modelCache;
+        this.file = file;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.engine = new TeTopoUiForceLayout(pool);
+    }
+
+    /**
+     * Loads the persisted layout, brings it up to date with the view model
+     * and starts following its structural changes.
+     */
+    public void activate() {
+        modelCache.addListener(modelListener);
+        scheduler.execute(() -> {
+            load();
+            relayout();
+        });
+    }
+
+    /**
+     * Stops following the view model and computing layouts.
+     */
+    public void deactivate() {
+        modelCache.removeListener(modelListener);
+        scheduler.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::relayout, QUIET_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Recomputes the layout if the structure it was computed for changed,
+    // starting from the current positions, and hands it to the model.
+    private void relayout() {
+        scheduled.set(false);
+        try {
+            List<String> ids = Lists.newArrayList();
+            for (ObjectNode device : modelCache.devices()) {
+                if (!device.has("location")) {
+                    ids.add(device.path("id").asText());
+                }
+            }
+            Collections.sort(ids);
+            List<String[]> links = Lists.newArrayList();
+            for (ObjectNode link : modelCache.links()) {
+                links.add(new String[]{link.path("src").asText(), link.path("dst").asText()});
+            }
+            links.sort((a, b) -> a[0].equals(b[0]) ? a[1].compareTo(b[1]) : a[0].compareTo(b[0]));
+
+            String current = fingerprint(ids, links);
+            if (!current.equals(fingerprint)) {
+                long start = System.nanoTime();
+                positions = engine.layout(ids, links, positions);
+                fingerprint = current;
+                placed = false;
+                log.debug("TE topology layout of {} devices computed in {} ms", ids.size(),
+                          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                save();
+            }
+            if (!placed) {
+                modelCache.place(positions);
+                placed = true;
+            }
+        } catch (Exception e) {
+            log.warn("Unable to lay out TE topology", e);
+        }
+    }
+
+    // Identifies the structure a layout is computed for: the devices and
+    // the links between them, in a canonical order.
+    private static String fingerprint(List<String> ids, List<String[]> links) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        ids.forEach(id -> hasher.putString(id, StandardCharsets.UTF_8).putByte((byte) 0));
+        hasher.putByte((byte) 1);
+        for (String[] link : links) {
+            hasher.putString(link[0], StandardCharsets.UTF_8).putByte((byte) 0)
+                    .putString(link[1], StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            JsonNode root = mapper.readTree(file);
+            Map<String, double[]> loaded = Maps.newHashMap();
+            Iterator<Map.Entry<String, JsonNode>> it = root.path(POSITIONS).fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> entry = it.next();
+                JsonNode xy = entry.getValue();
+                loaded.put(entry.getKey(), new double[]{xy.path(0).asDouble(),
+                        xy.path(1).asDouble()});
+            }
+            positions = loaded;
+            fingerprint = root.path(FINGERPRINT).asText();
+            log.info("Loaded TE topology layout of {} devices", loaded.size());
+        } catch (IOException e) {
+            log.warn("Unable to load TE topology layout from {}", file, e);
+        }
+    }
+
+    // Writes the layout to a temporary file first, so that a crash never
+    // leaves a truncated layout behind.
+    private void save() {
+        ObjectNode root = mapper.createObjectNode().put(FINGERPRINT, fingerprint);
+        ObjectNode xys = mapper.createObjectNode();
+        positions.forEach((id, xy) -> xys.putArray(id).add(xy[0]).add(xy[1]));
+        root.set(POSITIONS, xys);
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            File tmp = new File(dir, file.getName() + ".tmp");
+            mapper.writeValue(tmp, root);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Unable to save TE topology layout to {}", file, e);
+        }
+    }
+
+    // Devices and links added or removed change the structure; updates,
+    // including the placement itself, do not.
+    private class InternalModelListener implements TeTopoUiModelListener {
+        @Override
+        public void event(TeTopoUiModelEvent event) {
+            if (event.parent() != null) {
+                return;
+            }
+            switch (event.type()) {
+                case DEVICE_ADDED:
+                case DEVICE_REMOVED:
+                case LINK_ADDED:
+                case LINK_REMOVED:
+                    schedule();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.onosproject.TeTopoJson.objectNode;
+
+/**
+ * Pairing of the two directions of a bidirectional adjacency into one
+ * link payload, for clients that ask for it at topology start.
+ * <p>
+ * The first direction met keeps its payload; the other one is carried
+ * in its {@code rev} field, holding the reverse direction's state and
+ * whichever of its attributes differ. The client derives the reverse
+ * id and end points by swapping those of the link. Payloads are shared
+ * between sessions, so paired payloads are fresh shallow copies.
+ */
+final class TeTopoUiLinkPairs {
+
+    static final String REV = "rev";
+
+    private static final String ID = "id";
+    private static final String ONLINE = "online";
+    private static final String SRC = "src";
+    private static final String SRC_PORT = "srcPort";
+    private static final String DST = "dst";
+    private static final String DST_PORT = "dstPort";
+
+    // fields the client derives from the link it is paired with
+    private static final Set<String> DERIVED =
+            ImmutableSet.of(ID, SRC, SRC_PORT, DST, DST_PORT);
+
+    // non-instantiable
+    private TeTopoUiLinkPairs() {
+    }
+
+    /**
+     * Pairs the link payloads whose reverse direction is in the list
+     * too, keeping the order in which links, or the first direction of
+     * pairs, appear.
+     *
+     * @param links link payloads
+     * @return unpaired and paired link payloads
+     */
+    static List<ObjectNode> pair(List<ObjectNode> links) {
+        Map<String, ObjectNode> byId = Maps.newHashMapWithExpectedSize(links.size());
+        for (ObjectNode link : links) {
+            byId.put(link.path(ID).asText(), link);
+        }
+
+        List<ObjectNode> paired = Lists.newArrayListWithCapacity(links.size());
+        Set<String> consumed = Sets.newHashSet();
+        for (ObjectNode link : links) {
+            String id = link.path(ID).asText();
+            if (consumed.contains(id)) {
+                continue;
+            }
+            String reverseId = reverseId(link);
+            ObjectNode reverse = reverseId.equals(id) || consumed.contains(reverseId) ?
+                    null : byId.get(reverseId);
+            if (reverse == null) {
+                paired.add(link);
+            } else {
+                consumed.add(reverseId);
+                paired.add(pair(link, reverse));
+            }
+        }
+        return paired;
+    }
+
+    /**
+     * Produces the payload of a link carrying its reverse direction.
+     *
+     * @param link    link payload
+     * @param reverse payload of the reverse direction
+     * @return paired link payload
+     */
+    static ObjectNode pair(ObjectNode link, ObjectNode reverse) {
+        ObjectNode rev = objectNode().put(ONLINE, reverse.path(ONLINE).asBoolean());
+        Iterator<Map.Entry<String, JsonNode>> it = reverse.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> field = it.next();
+            String key = field.getKey();
+            if (!DERIVED.contains(key) && !field.getValue().equals(link.get(key))) {
+                rev.set(key, field.getValue());
+            }
+        }
+        ObjectNode paired = objectNode();
+        paired.setAll(link);
+        paired.set(REV, rev);
+        return paired;
+    }
+
+    // Returns the id of the reverse direction of a link payload.
+    private static String reverseId(ObjectNode link) {
+        return link.path(DST).asText() + "/" + link.path(DST_PORT).asText() + "-" +
+                link.path(SRC).asText() + "/" + link.path(SRC_PORT).asText();
+    }
+}
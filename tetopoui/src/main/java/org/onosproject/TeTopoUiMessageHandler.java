@@ -15,8 +15,14 @@
  */
 package org.onosproject;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.onlab.osgi.ServiceDirectory;
 import org.onlab.packet.IpAddress;
 import org.onosproject.cluster.ClusterEvent;
@@ -37,17 +43,6 @@ import org.onosproject.net.device.DeviceListener;
 import org.onosproject.net.link.LinkEvent;
 import org.onosproject.net.link.LinkListener;
 import org.onosproject.net.provider.ProviderId;
-import org.onosproject.tetopology.management.api.InternalTeNetwork;
-import org.onosproject.tetopology.management.api.KeyId;
-import org.onosproject.tetopology.management.api.Network;
-import org.onosproject.tetopology.management.api.TeTopologyType;
-import org.onosproject.tetopology.management.api.link.NetworkLink;
-import org.onosproject.tetopology.management.api.node.ConnectivityMatrix;
-import org.onosproject.tetopology.management.api.node.DefaultNetworkNode;
-import org.onosproject.tetopology.management.api.node.NetworkNode;
-import org.onosproject.tetopology.management.api.node.NetworkNodeKey;
-import org.onosproject.tetopology.management.api.node.TeNode;
-import org.onosproject.tetopology.management.api.node.TerminationPointKey;
 import org.onosproject.ui.JsonUtils;
 import org.onosproject.ui.RequestHandler;
 import org.onosproject.ui.UiConnection;
@@ -55,10 +50,11 @@ import org.onosproject.ui.topo.PropertyPanel;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
-import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.cluster.ClusterEvent.Type.INSTANCE_ADDED;
 import static org.onosproject.net.DeviceId.deviceId;
 import static org.onosproject.net.HostId.hostId;
@@ -66,7 +62,6 @@ import static org.onosproject.net.device.DeviceEvent.Type.DEVICE_ADDED;
 import static org.onosproject.net.device.DeviceEvent.Type.PORT_STATS_UPDATED;
 import static org.onosproject.net.link.LinkEvent.Type.LINK_ADDED;
 import static org.onosproject.ui.JsonUtils.envelope;
-import static org.onosproject.ui.topo.TopoJson.json;
 
 /**
  * Skeletal ONOS UI Custom-View message handler.
@@ -81,30 +76,178 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
     // incoming event types
     private static final String REQ_DETAILS = "requestDetails";
     private static final String REQ_SUMMARY = "requestSummary";
+    private static final String CANCEL_SUMMARY = "cancelSummary";
+    private static final String REQ_ALL_PORT_TRAFFIC = "requestAllPortTraffic";
+    private static final String CANCEL_TRAFFIC = "cancelTraffic";
+    private static final String UPDATE_META = "updateMeta";
+    private static final String REQ_RELATED = "requestRelated";
+    private static final String CANCEL_RELATED = "cancelRelated";
+    private static final String REQ_TE_PATH = "requestTePath";
+    private static final String CANCEL_TE_PATH = "cancelTePath";
+    private static final String SEARCH_TOPOLOGY = "searchTopology";
 
     private static final String TOPO_START = "meowTopoStart";
-    // private static final String TOPO_HEARTBEAT = "topoHeartbeat";
+    private static final String TOPO_REGION = "meowTopoRegion";
+    private static final String TOPO_PAGE_DONE = "meowTopoPageDone";
+    private static final String EXPAND_TE_NODE = "expandTeNode";
+    private static final String EXPAND_BUNDLE = "expandBundle";
+    private static final String REFINE_CLUSTER = "refineCluster";
+    private static final String COARSEN_CLUSTER = "coarsenCluster";
+    private static final String TOPO_COMPACT = "meowTopoCompact";
+    private static final String TOPO_HEARTBEAT = "topoHeartbeat";
     private static final String TOPO_STOP = "meowTopoStop";
 
     // outgoing event types
 
     private static final String SHOW_DETAILS = "showDetails";
+    private static final String SHOW_HIGHLIGHTS = "showHighlights";
+    private static final String SHOW_SUMMARY = "showSummary";
     private static final String TOPO_START_DONE = "meowTopoStartDone";
+    private static final String ADD_DEVICE = "addDevice";
+    private static final String ADD_DEVICES = "addDevices";
+    private static final String ADD_LINK = "addLink";
+    private static final String ADD_LINKS = "addLinks";
+    private static final String TOPO_DELTA = "meowTopoDelta";
+    private static final String TOPO_RESYNC = "meowTopoResync";
+    private static final String TOPO_SEARCH_RESULT = "meowTopoSearchResult";
+    private static final String TOPO_BUNDLE = "meowTopoBundle";
+    private static final String TOPO_CLUSTERS = "meowTopoClusters";
 
 
     // fields
     private static final String ID = "id";
     private static final String DEVICE = "device";
     private static final String HOST = "host";
+    private static final String HOSTS = "hosts";
     private static final String CLASS = "class";
+    private static final String MEMENTO = "memento";
     private static final String UNKNOWN = "unknown";
-
-    private final ExecutorService msgSender =
-            newSingleThreadExecutor(groupedThreads("onos/gui", "msg-sender", log));
-
+    private static final String BULK = "bulk";
+    private static final String COMPACT = "compact";
+    private static final String PAIRED = "paired";
+    private static final String PAGED = "paged";
+    private static final String REGION = "region";
+    private static final String MORE = "more";
+    private static final String MARK = "mark";
+    private static final String VIEW = "view";
+    private static final String VERSION = "version";
+    private static final String VISIBLE = "visible";
+    private static final String DEVICES = "devices";
+    private static final String LINKS = "links";
+    private static final String EVENTS = "events";
+    private static final String EVENT = "event";
+    private static final String PAYLOAD = "payload";
+    private static final String HOPS = "hops";
+    private static final String CROSS_LAYER = "crossLayer";
+    private static final String SUBDUE = "subdue";
+    private static final String SUBDUE_MIN = "min";
+    private static final String CSS = "css";
+    private static final String PRIMARY = "primary";
+    private static final String LABEL = "label";
+    private static final String SRC = "src";
+    private static final String DST = "dst";
+    private static final String BY_HOPS = "byHops";
+    private static final String MAX_HOPS_FIELD = "maxHops";
+    private static final String MAX_METRIC = "maxMetric";
+    private static final String MIN_BANDWIDTH = "minBandwidth";
+    private static final String QUERY = "query";
+    private static final String LIMIT = "limit";
+    private static final String TOTAL = "total";
+    private static final String MATCHES = "matches";
+    private static final String SCORE = "score";
+    private static final String BUNDLE = "bundle";
+    private static final String REMOVED = "removed";
+    private static final String CLUSTERED = "clustered";
+    private static final String CLUSTERS = "clusters";
+    private static final String LINK = "link";
+
+    // version of a snapshot mark that carries none
+    private static final long NO_VERSION = -1;
+
+    // max number of hops a related elements query spans
+    private static final int MAX_HOPS = 8;
+
+    // default and max number of matches a search returns
+    private static final int SEARCH_LIMIT = 10;
+    private static final int MAX_SEARCH_LIMIT = 100;
+
+    // max number of elements carried by one bulk snapshot message
+    private static final int SNAPSHOT_CHUNK_SIZE = 2000;
+
+    private final TeTopoUiModelCache modelCache;
+    private final TeTopoUiDetailsCache details;
+    private final TeTopoUiTrafficMonitor trafficMonitor;
+    private final TeTopoUiSummary summary;
+    private final TeTopoUiHeartbeats heartbeats;
+    private final TeTopoUiParkedViews parkedViews;
+    private final TeTopoUiSearchIndex searchIndex;
+    private final TeTopoUiClusters clusters;
+    private final TeTopoUiEventAccumulator eventAccumulator;
+    private final TeTopoUiSender.Channel channel;
+
+    // state of the related elements queries of this session
+    private final TeTopoUiGraph.Search related = new TeTopoUiGraph.Search();
+    // state of the TE path searches of this session
+    private final TeTopoUiPathGraph.Search tePath = new TeTopoUiPathGraph.Search();
+
+    private final int eventMaxBatch;
+    private final int viewPageSize;
+
+    // whether the client asked for bulk snapshots
+    private volatile boolean bulk = false;
+
+    // whether the client asked for the compact snapshot encoding
+    private volatile boolean compact = false;
+
+    // whether the client asked for both directions of a link as one
+    private volatile boolean paired = false;
+
+    // whether the client opened at the level of detail of clusters
+    private volatile boolean clustered = false;
+
+    // clusters a clustered client refined, and the nodes and links it was
+    // sent in full at its level of detail; the latter guarded by clusterLock
+    private final Set<String> refined = Sets.newConcurrentHashSet();
+    private final Object clusterLock = new Object();
+    private Set<String> clusterNodes = ImmutableSet.of();
+    private Set<String> clusterLinks = ImmutableSet.of();
+
+    // what a paged client was sent; null if it gets the whole topology
+    private volatile TeTopoUiViewport viewport;
+
+    // token the client identifies its view with; null if it sent none
+    private volatile String view;
+
+    // number of the last snapshot mark sent; guarded by markLock
+    private final Object markLock = new Object();
+    private long mark = 0;
+
+    // heartbeats of the client; null until the view starts
+    private volatile TeTopoUiHeartbeats.Monitor heartbeat;
+
+    // whether streaming is paused for a hidden or silent client, and the
+    // view model version and core change count it was paused at; guarded
+    // by this
+    private volatile boolean paused = false;
+    private long pausedVersion;
+    private long pausedCoreChanges;
+
+    // summary the client monitors; null if none
+    private volatile TeTopoUiSummary.Subscription summaryMonitor;
+
+    // link traffic the client monitors; null if none
+    private volatile TeTopoUiTrafficMonitor.Subscription traffic;
+
+    // TE nodes whose inner layer the client has expanded, the session
+    // holding one model cache expansion of each; changed with it held
+    private final Set<String> expanded = Sets.newConcurrentHashSet();
+
+    // bundles the client has expanded, with the entries last sent for each
+    private final Map<String, List<ObjectNode>> bundles = Maps.newConcurrentMap();
 
     private final DeviceListener deviceListener = new InternalDeviceListener();
     private final LinkListener linkListener = new InternalLinkListener();
+    private final TeTopoUiModelListener modelListener = new InternalModelListener();
 
     private volatile boolean listenersRemoved = false;
 
@@ -114,6 +257,61 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
 
     // == End Topo param ====
 
+    /**
+     * Creates a message handler serving the shared view model of the
+     * given TE topo UI component.
+     *
+     * @param component TE topo UI component
+     */
+    public TeTopoUiMessageHandler(TeTopoUiComponent component) {
+        this(component.modelCache(), component.sender(), component.counters(),
+             component.details(), component.trafficMonitor(), component.summary(),
+             component.heartbeats(), component.parkedViews(), component.metaStore(),
+             component.searchIndex(), component.clusters(), component.eventMaxBatch(),
+             component.eventWindowMs(), component.viewPageSize());
+    }
+
+    /**
+     * Creates a message handler on the given shared services.
+     *
+     * @param modelCache    shared TE topology view model
+     * @param sender        shared message sender pool
+     * @param counters      shared device counters
+     * @param details       shared details panel cache
+     * @param traffic       shared link traffic monitor
+     * @param summary       shared topology summary
+     * @param heartbeats    shared heartbeat watchdog
+     * @param parkedViews   shared store of views awaiting reconnection
+     * @param metaStore     shared store of the meta data set on devices
+     * @param searchIndex   shared search index of the view model
+     * @param clusters      shared clustering of the view model
+     * @param eventMaxBatch maximum number of events per delta message
+     * @param eventWindowMs event coalescing window, in milliseconds
+     * @param viewPageSize  maximum number of devices per page
+     */
+    TeTopoUiMessageHandler(TeTopoUiModelCache modelCache, TeTopoUiSender sender,
+                           TeTopoUiCounters counters, TeTopoUiDetailsCache details,
+                           TeTopoUiTrafficMonitor traffic, TeTopoUiSummary summary,
+                           TeTopoUiHeartbeats heartbeats, TeTopoUiParkedViews parkedViews,
+                           TeTopoUiMetaStore metaStore, TeTopoUiSearchIndex searchIndex,
+                           TeTopoUiClusters clusters, int eventMaxBatch, int eventWindowMs,
+                           int viewPageSize) {
+        this.modelCache = modelCache;
+        this.counters = counters;
+        this.details = details;
+        this.trafficMonitor = traffic;
+        this.summary = summary;
+        this.heartbeats = heartbeats;
+        this.parkedViews = parkedViews;
+        this.metaStore = metaStore;
+        this.searchIndex = searchIndex;
+        this.clusters = clusters;
+        this.eventMaxBatch = eventMaxBatch;
+        this.viewPageSize = viewPageSize;
+        this.channel = sender.open(this::sendMessage, this::resync);
+        this.eventAccumulator = new TeTopoUiEventAccumulator(
+                eventMaxBatch, eventWindowMs, sender.workers(), this::sendDelta);
+    }
 
     @Override
     public void init(UiConnection connection, ServiceDirectory directory) {
@@ -125,7 +323,13 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
     @Override
     public void destroy() {
         cancelAllRequests();
+        park();
         removeListeners();
+        releaseExpansions();
+        channel.close();
+        log.debug("TE topo view events: emitted={}, merged={}, dropped={}",
+                  eventAccumulator.emittedCount(), eventAccumulator.mergedCount(),
+                  eventAccumulator.droppedCount());
         super.destroy();
     }
 
@@ -135,9 +339,24 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
 //                new SampleCustomDataRequestHandler(),
                 // Topo handlers
                 new TopoStart(),
-                // new TopoHeartbeat(),
+                new TopoHeartbeat(),
                 new TopoStop(),
-                new RequestDetails()
+                new TopoRegion(),
+                new ExpandTeNode(),
+                new ExpandBundle(),
+                new RefineCluster(),
+                new CoarsenCluster(),
+                new UpdateMeta(),
+                new RequestDetails(),
+                new RequestSummary(),
+                new CancelSummary(),
+                new RequestAllPortTraffic(),
+                new CancelTraffic(),
+                new RequestRelated(),
+                new CancelRelated(),
+                new RequestTePath(),
+                new CancelTePath(),
+                new SearchTopology()
         );
     }
 
@@ -145,6 +364,9 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
     // == TE Topo Event ============================================
 
 
+    // Details are built off the connection thread, or taken from the
+    // shared cache, and sent on the channel's priority lane so that they
+    // overtake any snapshot or delta traffic in flight.
     private final class RequestDetails extends RequestHandler {
         private RequestDetails() {
             super(REQ_DETAILS);
@@ -154,7 +376,7 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
         public void process(long sid, ObjectNode payload) {
             String type = string(payload, CLASS, UNKNOWN);
             String id = string(payload, ID);
-            PropertyPanel pp = null;
+            Supplier<PropertyPanel> pp;
 
             if (type.equals(DEVICE)) {
                 DeviceId did = deviceId(id);
@@ -162,19 +384,28 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
                 // TODO: will delete, test detail info,
                 if (did.toString().equals("demo01")
                         || did.toString().equals("demo02")) {
-                    pp = demoDetails(did.toString(), (did.toString() + "Device"));
+                    pp = () -> demoDetails(did.toString(), (did.toString() + "Device"));
                 } else {
-                    pp = deviceDetails(did, sid);
+                    pp = () -> deviceDetails(did, sid);
                 }
 //                overlayCache.currentOverlay().modifyDeviceDetails(pp, did);
 
             } else if (type.equals(HOST)) {
                 HostId hid = hostId(id);
-                pp = hostDetails(hid, sid);
+                pp = () -> hostDetails(hid, sid);
 //                overlayCache.currentOverlay().modifyHostDetails(pp, hid);
+            } else {
+                log.debug("No details for {} {}", type, id);
+                return;
             }
 
-            sendMessage(envelope(SHOW_DETAILS, sid, json(pp)));
+            details.get(id, pp).whenComplete((panel, error) -> {
+                if (error != null) {
+                    log.warn("Unable to build details of {}", id, error);
+                } else {
+                    channel.urgent(envelope(SHOW_DETAILS, sid, panel));
+                }
+            });
         }
     }
 
@@ -185,20 +416,139 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
 
         @Override
         public void process(long sid, ObjectNode payload) {
+            // Te topo: gui view init; clients that understand the bulk
+            // snapshot ask for it, others get one message per element;
+            // a reconnecting client may resume its parked view instead
+            bulk = payload.path(BULK).asBoolean(false);
+            compact = payload.path(COMPACT).asBoolean(false);
+            paired = payload.path(PAIRED).asBoolean(false);
+            view = string(payload, VIEW);
+            // clustered views are not resumed, their clusters change too much
+            clustered = clusters != null && payload.path(CLUSTERED).asBoolean(false);
+            TeTopoUiParkedViews.View parked = clustered ? null : resumable(payload);
+            releaseExpansions();
+            bundles.clear();
+            refined.clear();
+            if (parked != null) {
+                viewport = parked.viewport();
+                expanded.addAll(parked.expanded());
+            } else if (!clustered && payload.path(PAGED).asBoolean(false)) {
+                TeTopoUiViewport vp = new TeTopoUiViewport(viewPageSize);
+                vp.region(payload.get(REGION));
+                viewport = vp;
+            } else {
+                viewport = null;
+            }
+
             addListeners();
+            startHeartbeat();
             sendAllInstances(null);
 
             // normal topo
 //            sendAllDevices();
 //            sendAllLinks();
 
-            // Te topo: gui view init
-            sendTeTopology();
+            if (parked != null) {
+                catchUp(parked, payload);
+            } else {
+                sendSnapshot();
+            }
 //            sendAllHosts();
             sendTopoStartDone();
         }
     }
 
+    private final class TopoRegion extends RequestHandler {
+        private TopoRegion() {
+            super(TOPO_REGION);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            TeTopoUiViewport vp = viewport;
+            if (vp != null) {
+                vp.region(payload.get(REGION));
+                sendPage(vp, NO_VERSION);
+            }
+        }
+    }
+
+    private final class ExpandTeNode extends RequestHandler {
+        private ExpandTeNode() {
+            super(EXPAND_TE_NODE);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            String id = string(payload, ID);
+            if (id != null) {
+                sendExpansion(id);
+            }
+        }
+    }
+
+    private final class ExpandBundle extends RequestHandler {
+        private ExpandBundle() {
+            super(EXPAND_BUNDLE);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            String id = string(payload, ID);
+            if (id != null) {
+                sendBundle(id);
+            }
+        }
+    }
+
+    private final class RefineCluster extends RequestHandler {
+        private RefineCluster() {
+            super(REFINE_CLUSTER);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            String id = string(payload, ID);
+            if (clustered && id != null && clusters.isCluster(id)) {
+                refined.add(id);
+                sendClusters();
+            }
+        }
+    }
+
+    // Shows the cluster holding a cluster or node in place of its content.
+    private final class CoarsenCluster extends RequestHandler {
+        private CoarsenCluster() {
+            super(COARSEN_CLUSTER);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            String id = string(payload, ID);
+            String parent = clustered && id != null ? clusters.parentOf(id) : null;
+            if (parent != null) {
+                refined.removeIf(r -> TeTopoUiClusters.isWithin(r, parent));
+                sendClusters();
+            }
+        }
+    }
+
+    // An operator moved a device; its new position is kept for every view.
+    private final class UpdateMeta extends RequestHandler {
+        private UpdateMeta() {
+            super(UPDATE_META);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            String id = string(payload, ID);
+            JsonNode memento = payload.get(MEMENTO);
+            if (id != null && DEVICE.equals(string(payload, CLASS)) && memento instanceof ObjectNode) {
+                modelCache.setMeta(id, (ObjectNode) memento);
+            }
+        }
+    }
+
     private final class TopoStop extends RequestHandler {
         private TopoStop() {
             super(TOPO_STOP);
@@ -207,8 +557,147 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
         @Override
         public void process(long sid, ObjectNode payload) {
             removeListeners();
-            // stopSummaryMonitoring();
-            // traffic.stopMonitoring();
+            releaseExpansions();
+            channel.clear();
+            stopHeartbeat();
+            stopSummary();
+            stopTraffic();
+        }
+    }
+
+    // A hidden tab reports itself not visible; a dead one stops beating.
+    // Either way the view is paused until it is visible again.
+    private final class TopoHeartbeat extends RequestHandler {
+        private TopoHeartbeat() {
+            super(TOPO_HEARTBEAT);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            TeTopoUiHeartbeats.Monitor monitor = heartbeat;
+            if (monitor != null) {
+                monitor.beat();
+            }
+            if (payload.path(VISIBLE).asBoolean(true)) {
+                resume();
+            } else {
+                pause();
+            }
+        }
+    }
+
+    private final class RequestSummary extends RequestHandler {
+        private RequestSummary() {
+            super(REQ_SUMMARY);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            startSummary();
+        }
+    }
+
+    private final class CancelSummary extends RequestHandler {
+        private CancelSummary() {
+            super(CANCEL_SUMMARY);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            stopSummary();
+        }
+    }
+
+    private final class RequestAllPortTraffic extends RequestHandler {
+        private RequestAllPortTraffic() {
+            super(REQ_ALL_PORT_TRAFFIC);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            startTraffic();
+        }
+    }
+
+    private final class CancelTraffic extends RequestHandler {
+        private CancelTraffic() {
+            super(CANCEL_TRAFFIC);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            stopTraffic();
+            clearHighlights();
+        }
+    }
+
+    private final class RequestRelated extends RequestHandler {
+        private RequestRelated() {
+            super(REQ_RELATED);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            String id = string(payload, ID);
+            if (id != null) {
+                int hops = Math.max(1, Math.min(MAX_HOPS, payload.path(HOPS).asInt(1)));
+                sendRelated(id, hops, payload.path(CROSS_LAYER).asBoolean(false));
+            }
+        }
+    }
+
+    private final class RequestTePath extends RequestHandler {
+        private RequestTePath() {
+            super(REQ_TE_PATH);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            String src = string(payload, SRC);
+            String dst = string(payload, DST);
+            if (src != null && dst != null) {
+                sendTePath(src, dst, payload.path(BY_HOPS).asBoolean(false),
+                           payload.path(MAX_HOPS_FIELD).asInt(0),
+                           payload.path(MAX_METRIC).asLong(0),
+                           payload.path(MIN_BANDWIDTH).asDouble(0));
+            }
+        }
+    }
+
+    private final class CancelTePath extends RequestHandler {
+        private CancelTePath() {
+            super(CANCEL_TE_PATH);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            clearHighlights();
+        }
+    }
+
+    private final class SearchTopology extends RequestHandler {
+        private SearchTopology() {
+            super(SEARCH_TOPOLOGY);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            String query = string(payload, QUERY);
+            if (query != null) {
+                int limit = payload.path(LIMIT).asInt(SEARCH_LIMIT);
+                sendSearch(query, Math.max(1, Math.min(MAX_SEARCH_LIMIT, limit)));
+            }
+        }
+    }
+
+    private final class CancelRelated extends RequestHandler {
+        private CancelRelated() {
+            super(CANCEL_RELATED);
+        }
+
+        @Override
+        public void process(long sid, ObjectNode payload) {
+            clearHighlights();
         }
     }
 
@@ -216,9 +705,312 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
     //== Meow Topo Function =====================================================================
 
 
+    // Parks what the client of a live view was shown, so that it can
+    // resume the view if it reconnects shortly. A paused view saw the core
+    // changes only up to its pause.
+    private void park() {
+        String token = view;
+        if (token == null || listenersRemoved) {
+            return;
+        }
+        long seen;
+        synchronized (this) {
+            seen = paused ? pausedCoreChanges : parkedViews.coreChanges();
+        }
+        long last;
+        synchronized (markLock) {
+            last = mark;
+        }
+        synchronized (expanded) {
+            parkedViews.park(token, new TeTopoUiParkedViews.View(last, viewport, expanded), seen);
+            // the parked view holds the expansions from now on
+            expanded.clear();
+        }
+    }
+
+    // Takes the parked view of a reconnecting client, if it can resume
+    // it: the client must have received every snapshot its previous
+    // session sent, which it proves by reporting the last mark.
+    private TeTopoUiParkedViews.View resumable(ObjectNode payload) {
+        String token = view;
+        TeTopoUiParkedViews.View parked = token != null ? parkedViews.take(token) : null;
+        if (parked == null || parked.mark() != payload.path(MARK).asLong(-1)) {
+            return null;
+        }
+        return parked;
+    }
+
+    // Sends a resumed view only the changes it missed, read from the log
+    // after listening again, so that none falls in between; if they are
+    // no longer all logged, or core device or link changes, which are
+    // never logged, happened meanwhile, it is resynchronized instead.
+    private void catchUp(TeTopoUiParkedViews.View parked, ObjectNode payload) {
+        List<TeTopoUiModelEvent> missed =
+                modelCache.eventsSince(payload.path(VERSION).asLong(-1));
+        synchronized (markLock) {
+            // not resumable again until the catch-up is delivered
+            mark = parked.mark() + 1;
+        }
+        if (missed == null) {
+            log.debug("TE topo view changes no longer logged; resync");
+            resync();
+            return;
+        }
+        if (parkedViews.missedCoreChanges(parked)) {
+            log.debug("TE topo view missed core device or link changes; resync");
+            resync();
+            return;
+        }
+
+        log.debug("TE topo view resumed with {} missed changes", missed.size());
+        for (List<TeTopoUiModelEvent> batch :
+                Lists.partition(missed, Math.max(1, eventMaxBatch))) {
+            sendDelta(batch);
+        }
+        long version = missed.isEmpty() ? payload.path(VERSION).asLong() :
+                missed.get(missed.size() - 1).sequence();
+        TeTopoUiViewport vp = viewport;
+        if (vp != null) {
+            vp.region(payload.get(REGION));
+            sendPage(vp, version);
+        } else {
+            sendMark(false, version);
+        }
+    }
+
     private void cancelAllRequests() {
-//        stopSummaryMonitoring();
-//        traffic.stopMonitoring();
+        stopHeartbeat();
+        stopSummary();
+        stopTraffic();
+    }
+
+    private void startHeartbeat() {
+        if (heartbeat == null) {
+            heartbeat = heartbeats.watch(this::pause);
+        }
+    }
+
+    private void stopHeartbeat() {
+        TeTopoUiHeartbeats.Monitor monitor = heartbeat;
+        heartbeat = null;
+        if (monitor != null) {
+            monitor.cancel();
+        }
+    }
+
+    // Stops listening to view changes, keeping only the version of the
+    // view model the client is up to date with and the count of core
+    // changes it has seen.
+    private synchronized void pause() {
+        if (paused || listenersRemoved) {
+            return;
+        }
+        paused = true;
+        pausedVersion = modelCache.version();
+        pausedCoreChanges = parkedViews.coreChanges();
+        detachListeners();
+        log.debug("TE topo view paused at version {}", pausedVersion);
+    }
+
+    // Listens to view changes again, and resynchronizes the client if it
+    // missed any while paused.
+    private synchronized void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        attachListeners();
+        long version = modelCache.version();
+        log.debug("TE topo view resumed at version {}, paused at {}", version, pausedVersion);
+        if (version != pausedVersion || parkedViews.coreChanges() != pausedCoreChanges) {
+            resync();
+        }
+        TeTopoUiTrafficMonitor.Subscription subscription = traffic;
+        if (subscription != null) {
+            subscription.reset();
+        }
+        if (summaryMonitor != null) {
+            channel.urgent(envelope(SHOW_SUMMARY, 0, summary.summary()));
+        }
+    }
+
+    // Sends the current summary, then its changes as the shared summary
+    // pushes them.
+    private void startSummary() {
+        stopSummary();
+        channel.urgent(envelope(SHOW_SUMMARY, 0, summary.summary()));
+        summaryMonitor = summary.subscribe(payload -> {
+            if (!paused) {
+                channel.offer(envelope(SHOW_SUMMARY, 0, payload));
+            }
+        });
+    }
+
+    private void stopSummary() {
+        TeTopoUiSummary.Subscription subscription = summaryMonitor;
+        summaryMonitor = null;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    // Subscribes to the link loads of the shared traffic monitor, which
+    // sends only the links whose load class changed.
+    private void startTraffic() {
+        stopTraffic();
+        traffic = trafficMonitor.subscribe(payload -> {
+            TeTopoUiTrafficMonitor.Subscription subscription = traffic;
+            if ((paused || !channel.offer(envelope(SHOW_HIGHLIGHTS, 0, payload)))
+                    && subscription != null) {
+                subscription.reset();
+            }
+        });
+    }
+
+    // Highlights the elements within the given number of hops of a node,
+    // subduing the others.
+    private void sendRelated(String id, int hops, boolean crossLayer) {
+        TeTopoUiGraph graph = modelCache.graphOf(id);
+        if (graph == null) {
+            return;
+        }
+        ArrayNode devices = arrayNode();
+        ArrayNode links = arrayNode();
+        synchronized (related) {
+            graph.neighbourhood(id, hops, crossLayer, related);
+            for (int i = 0; i < related.nodeCount(); i++) {
+                devices.add(objectNode().put(ID, related.nodeId(i)));
+            }
+            for (int i = 0; i < related.linkCount(); i++) {
+                links.add(objectNode().put(ID, related.linkId(i)).put(CSS, PRIMARY));
+            }
+        }
+        ObjectNode highlights = objectNode().put(SUBDUE, SUBDUE_MIN);
+        highlights.set(DEVICES, devices);
+        highlights.set(HOSTS, arrayNode());
+        highlights.set(LINKS, links);
+        channel.submit(envelope(SHOW_HIGHLIGHTS, 0, highlights));
+    }
+
+    // Highlights the best TE path between two TE nodes that meets the
+    // given constraints, its first link labelled with the path's metric,
+    // subduing the other elements; clears the overlay if there is none.
+    private void sendTePath(String src, String dst, boolean byHops, int maxHops,
+                            long maxMetric, double minBandwidth) {
+        TeTopoUiPathGraph paths = modelCache.pathsOf(src);
+        ArrayNode devices = arrayNode();
+        ArrayNode links = arrayNode();
+        synchronized (tePath) {
+            if (paths == null || !paths.path(src, dst, byHops, maxHops, maxMetric,
+                                             minBandwidth, tePath)) {
+                log.debug("No TE path from {} to {}", src, dst);
+                clearHighlights();
+                return;
+            }
+            int hops = tePath.linkCount();
+            for (int i = 0; i <= hops; i++) {
+                devices.add(objectNode().put(ID, tePath.nodeId(i)));
+            }
+            for (int i = 0; i < hops; i++) {
+                ObjectNode link = objectNode().put(ID, tePath.linkId(i)).put(CSS, PRIMARY);
+                if (i == 0) {
+                    link.put(LABEL, "metric " + tePath.metric() + ", " + hops + " hops");
+                }
+                links.add(link);
+            }
+        }
+        ObjectNode highlights = objectNode().put(SUBDUE, SUBDUE_MIN);
+        highlights.set(DEVICES, devices);
+        highlights.set(HOSTS, arrayNode());
+        highlights.set(LINKS, links);
+        channel.submit(envelope(SHOW_HIGHLIGHTS, 0, highlights));
+    }
+
+    // Sends the best matches of a search along with their neighbourhood:
+    // the elements a paged client lacks, the matches, then highlights of
+    // the matches and their neighbours.
+    private void sendSearch(String query, int limit) {
+        TeTopoUiSearchIndex.Result result = searchIndex.search(query, limit);
+        ArrayNode matches = arrayNode();
+        Set<String> deviceIds = Sets.newLinkedHashSet();
+        Set<String> linkIds = Sets.newLinkedHashSet();
+        for (TeTopoUiSearchIndex.Match match : result.matches()) {
+            String id = match.id();
+            matches.add(objectNode().put(ID, id)
+                                .put(CLASS, match.isLink() ? LINK : DEVICE)
+                                .put(SCORE, match.score()));
+            if (match.isLink()) {
+                linkIds.add(id);
+                deviceIds.add(match.payload().path(SRC).asText());
+                deviceIds.add(match.payload().path(DST).asText());
+            } else {
+                addNeighbourhood(id, deviceIds, linkIds);
+            }
+        }
+
+        List<ObjectNode> devices = modelCache.devices(deviceIds);
+        List<ObjectNode> links = modelCache.links(linkIds);
+        TeTopoUiViewport vp = viewport;
+        if (vp != null) {
+            TeTopoUiViewport.Page page = vp.claim(devices, links);
+            if (!page.devices.isEmpty() || !page.links.isEmpty()) {
+                sendElements(page.devices, page.links);
+                sendMark(false, NO_VERSION);
+            }
+        }
+
+        ObjectNode found = objectNode().put(QUERY, query).put(TOTAL, result.total());
+        found.set(MATCHES, matches);
+        channel.submit(envelope(TOPO_SEARCH_RESULT, 0, found));
+
+        if (!devices.isEmpty()) {
+            ArrayNode hiDevices = arrayNode();
+            ArrayNode hiLinks = arrayNode();
+            devices.forEach(d -> hiDevices.add(objectNode().put(ID, d.path(ID).asText())));
+            links.forEach(l -> hiLinks.add(objectNode().put(ID, l.path(ID).asText())
+                                                   .put(CSS, PRIMARY)));
+            ObjectNode highlights = objectNode().put(SUBDUE, SUBDUE_MIN);
+            highlights.set(DEVICES, hiDevices);
+            highlights.set(HOSTS, arrayNode());
+            highlights.set(LINKS, hiLinks);
+            channel.submit(envelope(SHOW_HIGHLIGHTS, 0, highlights));
+        }
+    }
+
+    // Adds a TE node and its neighbours in its own layer, along with the
+    // links among them.
+    private void addNeighbourhood(String id, Set<String> deviceIds, Set<String> linkIds) {
+        deviceIds.add(id);
+        TeTopoUiGraph graph = modelCache.graphOf(id);
+        if (graph == null) {
+            return;
+        }
+        synchronized (related) {
+            graph.neighbourhood(id, 1, false, related);
+            for (int i = 0; i < related.nodeCount(); i++) {
+                deviceIds.add(related.nodeId(i));
+            }
+            for (int i = 0; i < related.linkCount(); i++) {
+                linkIds.add(related.linkId(i));
+            }
+        }
+    }
+
+    // Sends empty highlights, which clear the overlay.
+    private void clearHighlights() {
+        ObjectNode highlights = objectNode();
+        highlights.set(DEVICES, arrayNode());
+        highlights.set(HOSTS, arrayNode());
+        highlights.set(LINKS, arrayNode());
+        channel.submit(envelope(SHOW_HIGHLIGHTS, 0, highlights));
+    }
+
+    private void stopTraffic() {
+        TeTopoUiTrafficMonitor.Subscription subscription = traffic;
+        traffic = null;
+        if (subscription != null) {
+            subscription.cancel();
+        }
     }
 
     // Sends all controller nodes to the client as node-added messages.
@@ -233,7 +1025,7 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
 
 
     private void sendTopoStartDone() {
-        sendMessage(JsonUtils.envelope(TOPO_START_DONE, objectNode()));
+        channel.submit(JsonUtils.envelope(TOPO_START_DONE, objectNode()));
     }
 
     // Sends all devices to the client as device-added messages.
@@ -395,208 +1187,309 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
                                               createDemoLink(srcId, dstId))));
     }
 
-    private void sendTeTopology() {
-        List<Network> networks = teTopologyService.getNetworks().networks();
-        for (Network network : networks) {
-            if (network instanceof InternalTeNetwork) {
-                if (((InternalTeNetwork) network).getTeTopologyType() == TeTopologyType.NATIVE) {
-                    sendUpLayer(network);
-                }
+    // Sends the cached TE topology, or the first page of it for a paged
+    // client; the elements sent from then on are at least as recent as
+    // the view model version read before.
+    private void sendSnapshot() {
+        long version = modelCache.version();
+        TeTopoUiViewport vp = viewport;
+        if (clustered) {
+            synchronized (clusterLock) {
+                clusterNodes = ImmutableSet.of();
+                clusterLinks = ImmutableSet.of();
             }
+            sendClusters();
+            sendMark(false, NO_VERSION);
+        } else if (vp != null) {
+            sendPage(vp, version);
+        } else {
+            sendElements(modelCache.devices(), modelCache.links());
+            sendMark(false, version);
         }
     }
 
-    // send uplayer network nodes
-    private void sendUpLayer(Network network) {
-        // send te
-        List<NetworkNode> nodes = network.getNodes();
-        sendTe(nodes, network);
+    // Sends what a clustered view shows at its level of detail: first the
+    // nodes and links it newly shows in full, then its clusters and the
+    // links aggregated between them, along with the ids of the nodes
+    // shown in full, the client dropping the other upper layer nodes.
+    private void sendClusters() {
+        synchronized (clusterLock) {
+            TeTopoUiClusters.View shown = clusters.view(ImmutableSet.copyOf(refined));
+            List<ObjectNode> devices =
+                    modelCache.devices(Sets.difference(shown.nodes(), clusterNodes));
+            List<ObjectNode> links =
+                    modelCache.links(Sets.difference(shown.links(), clusterLinks));
+            if (!devices.isEmpty() || !links.isEmpty()) {
+                sendElements(devices, links);
+            }
+            clusterNodes = shown.nodes();
+            clusterLinks = shown.links();
+
+            ArrayNode clusterArray = arrayNode();
+            shown.clusters().forEach(clusterArray::add);
+            ArrayNode linkArray = arrayNode();
+            shown.aggregated().forEach(linkArray::add);
+            ArrayNode nodeArray = arrayNode();
+            shown.nodes().forEach(nodeArray::add);
+            ObjectNode payload = objectNode();
+            payload.set(CLUSTERS, clusterArray);
+            payload.set(LINKS, linkArray);
+            payload.set(DEVICES, nodeArray);
+            channel.submit(envelope(TOPO_CLUSTERS, 0, payload));
+        }
+    }
 
-        // send te link
-        List<NetworkLink> links = network.getLinks();
-        sendTeLink(links);
+    // Keeps the changes of a clustered view's inner layers and of the
+    // upper layer elements it shows in full, and refreshes its clusters if
+    // any upper layer element changed; elements come and go with them.
+    private List<TeTopoUiModelEvent> clusterEvents(List<TeTopoUiModelEvent> events) {
+        List<TeTopoUiModelEvent> shown = Lists.newArrayList();
+        boolean changed = false;
+        synchronized (clusterLock) {
+            for (TeTopoUiModelEvent event : events) {
+                if (event.parent() != null) {
+                    shown.add(event);
+                    continue;
+                }
+                changed = true;
+                if (event.type() == TeTopoUiModelEvent.Type.DEVICE_UPDATED ?
+                        clusterNodes.contains(event.id()) :
+                        event.type() == TeTopoUiModelEvent.Type.LINK_UPDATED &&
+                                clusterLinks.contains(event.id())) {
+                    shown.add(event);
+                }
+            }
+        }
+        if (changed) {
+            sendClusters();
+        }
+        return shown;
     }
 
-    private void sendTe(List<NetworkNode> nodes, Network network) {
-        KeyId networkId = network.networkId();
+    // Sends the next page, then tells the client whether more remain.
+    private void sendPage(TeTopoUiViewport vp, long version) {
+        TeTopoUiViewport.Page page = vp.nextPage(modelCache);
+        sendElements(page.devices, page.links);
+        sendMark(page.more, version);
+    }
 
-        for (NetworkNode node : nodes) {
-            if (node instanceof DefaultNetworkNode) {
-                DefaultNetworkNode defaultNode = (DefaultNetworkNode) node;
-                // send te
-                sendTeDevice(defaultNode, networkId);
-                // send supportingNode
-                sendInnerLayer(defaultNode);
+    // Ends a snapshot, page or expansion with the next mark and, if
+    // known, the view model version the client is up to date with once
+    // it gets the mark. Marks are numbered as they are queued, so a
+    // client holding the last one has received everything sent before.
+    private void sendMark(boolean more, long version) {
+        synchronized (markLock) {
+            mark++;
+            ObjectNode payload = objectNode().put(MORE, more).put(MARK, mark);
+            if (version != NO_VERSION) {
+                payload.put(VERSION, version);
             }
+            channel.submit(JsonUtils.envelope(TOPO_PAGE_DONE, payload));
         }
-
     }
 
-    private void sendInnerLayer(DefaultNetworkNode defaultNode) {
-        innerLayerDevices(defaultNode);
-        innerLayerLinks(defaultNode);
+    // Keeps the client from resuming until it gets a further mark, after
+    // it may have missed a change.
+    private void invalidateMark() {
+        synchronized (markLock) {
+            mark++;
+        }
     }
 
-    private void innerLayerDevices(DefaultNetworkNode defaultNode) {
-        List<NetworkNodeKey> supportingNodeIds = defaultNode
-                .getSupportingNodeIds();
-        TeNode te = defaultNode.getTe();
-        if (supportingNodeIds == null) {
-            return;
+    // Sends elements in the form the client asked for.
+    private void sendElements(List<ObjectNode> devices, List<ObjectNode> links) {
+        if (paired) {
+            links = TeTopoUiLinkPairs.pair(links);
+        }
+        if (compact) {
+            sendCompact(devices, links);
+        } else if (bulk) {
+            sendTeTopologySnapshot(devices, links);
+        } else {
+            sendTeTopology(devices, links);
         }
-        for (NetworkNodeKey key : supportingNodeIds) {
-            Device device = createSupportingDevice(key, te);
-            sendMessage(deviceMessageLayer(
-                    new DeviceEvent(DEVICE_ADDED, device)));
+    }
 
-            Link link = createMiddleLink(key, defaultNode);
-            sendMessage(linkMessage(new LinkEvent(LINK_ADDED, link)));
+    // Sends the cached TE topology, one message per element.
+    private void sendTeTopology(List<ObjectNode> devices, List<ObjectNode> links) {
+        for (ObjectNode payload : devices) {
+            channel.submit(JsonUtils.envelope(ADD_DEVICE, 0, payload));
         }
+        for (ObjectNode payload : links) {
+            channel.submit(JsonUtils.envelope(ADD_LINK, 0, payload));
+        }
+    }
 
+    // Sends the cached TE topology as a few addDevices/addLinks array
+    // messages, all devices first so that every link finds its end points.
+    private void sendTeTopologySnapshot(List<ObjectNode> devices, List<ObjectNode> links) {
+        sendChunked(ADD_DEVICES, DEVICES, devices);
+        sendChunked(ADD_LINKS, LINKS, links);
     }
 
-    private void innerLayerLinks(DefaultNetworkNode defaultNode) {
-        TeNode te = defaultNode.getTe();
-        List<ConnectivityMatrix> connMatrices = te
-                .connectivityMatrices();
-        if (connMatrices == null) {
+    // Brings a lagging client back in line: tells it which elements still
+    // exist, so it can drop the ones it missed the removal of, then sends
+    // a fresh snapshot.
+    private void resync() {
+        if (listenersRemoved) {
             return;
         }
-        for (ConnectivityMatrix matrix : connMatrices) {
-            Link link = createMatrixLink(matrix);
-
-            sendMessage(linkMessage(new LinkEvent(LINK_ADDED, link)));
+        ObjectNode payload = objectNode();
+        payload.set(DEVICES, ids(modelCache.devices()));
+        payload.set(LINKS, ids(modelCache.links()));
+        channel.submit(JsonUtils.envelope(TOPO_RESYNC, 0, payload));
+
+        TeTopoUiViewport vp = viewport;
+        if (vp != null) {
+            vp.reset();
         }
+        TeTopoUiTrafficMonitor.Subscription subscription = traffic;
+        if (subscription != null) {
+            subscription.reset();
+        }
+        sendSnapshot();
+        expanded.forEach(this::sendExpansion);
+        Set<String> shownBundles = ImmutableSet.copyOf(bundles.keySet());
+        bundles.clear();
+        shownBundles.forEach(this::sendBundle);
     }
 
-
-    private void sendTeDevice(DefaultNetworkNode defaultNode, KeyId networkId) {
-//        TeNode te = defaultNode.getTe();
-        Device device = createTeDevice(defaultNode, networkId);
-        sendMessage(deviceMessageLayer(
-                new DeviceEvent(DEVICE_ADDED, device)));
+    // Sends the inner layer of a TE node, rendered by the model cache on
+    // first expansion, and routes its later changes to this session.
+    private void sendExpansion(String nodeId) {
+        modelCache.expand(nodeId).thenAccept(expansion -> {
+            if (expansion == null) {
+                log.debug("No TE node {} to expand", nodeId);
+                return;
+            }
+            boolean live;
+            synchronized (expanded) {
+                // one expansion per node is held while the view is live
+                live = !listenersRemoved;
+                if (!live || !expanded.add(nodeId)) {
+                    modelCache.release(nodeId);
+                }
+            }
+            if (live) {
+                sendElements(expansion.devices(), expansion.links());
+                sendMark(false, NO_VERSION);
+            }
+        });
     }
 
-    private Device createTeDevice(DefaultNetworkNode node, KeyId networkId) {
-        DefaultAnnotations annotations =
-                DefaultAnnotations.builder().set("name", node.nodeId().toString())
-                        .set(LAYER_KEY, LAYER_CONTROLLER)
-                        .set(LAYER_MASTER, networkId.toString())
-                        .build();
-        Device device = new DefaultDevice(null,
-                                          DeviceId.deviceId(node.nodeId().toString()),
-                                          Device.Type.SWITCH,
-                                          "",
-                                          "",
-                                          "",
-                                          "",
-                                          null,
-                                          annotations);
-
-        return device;
+    // Releases the expansions the session holds.
+    private void releaseExpansions() {
+        synchronized (expanded) {
+            expanded.forEach(modelCache::release);
+            expanded.clear();
+        }
     }
 
-    private Device createSupportingDevice(NetworkNodeKey key, TeNode te) {
-        DefaultAnnotations annotations =
-                DefaultAnnotations.builder().set("name", key.nodeId().toString())
-                        .set(LAYER_KEY, LAYER_TRAFFIC)
-                        .set(LAYER_MASTER, te.teNodeId())
-                        .build();
-        Device device = new DefaultDevice(null,
-                                          DeviceId.deviceId(key.nodeId().toString()),
-                                          Device.Type.SWITCH,
-                                          "",
-                                          "",
-                                          "",
-                                          "",
-                                          null,
-                                          annotations);
-
-        return device;
+    // Sends the entries of a bundle the client expanded, to be shown in
+    // place of the bundle link, along with those sent before and gone since.
+    private void sendBundle(String id) {
+        modelCache.bundle(id).thenAccept(bundle -> {
+            if (bundle == null) {
+                log.debug("No bundle {} to expand", id);
+                bundles.remove(id);
+                return;
+            }
+            Set<String> ids = bundle.entries().stream()
+                    .map(entry -> entry.path(ID).asText())
+                    .collect(Collectors.toSet());
+            ArrayNode removed = arrayNode();
+            bundles.getOrDefault(id, ImmutableList.of()).stream()
+                    .filter(entry -> !ids.contains(entry.path(ID).asText()))
+                    .forEach(removed::add);
+            bundles.put(id, bundle.entries());
+
+            ArrayNode links = arrayNode();
+            bundle.entries().forEach(links::add);
+            ObjectNode payload = objectNode();
+            payload.set(BUNDLE, bundle.link());
+            payload.set(LINKS, links);
+            payload.set(REMOVED, removed);
+            channel.submit(envelope(TOPO_BUNDLE, 0, payload));
+        });
     }
 
-    private void sendTeLink(List<NetworkLink> links) {
-        for (NetworkLink networkLink : links) {
-            Link link = createTeLink(networkLink);
-
-            sendMessage(linkMessage(new LinkEvent(LINK_ADDED, link)));
+    // Keeps a bundle the client expanded current from a change of the
+    // bundle link, which is not sent itself.
+    private void refreshBundle(TeTopoUiModelEvent event) {
+        if (event.type() == TeTopoUiModelEvent.Type.LINK_REMOVED) {
+            bundles.remove(event.id());
+        } else {
+            sendBundle(event.id());
         }
     }
 
-    private Link createTeLink(NetworkLink networkLink) {
-        TerminationPointKey from = networkLink.getSource();
-        TerminationPointKey to = networkLink.getDestination();
-
-        ConnectPoint src = new ConnectPoint(DeviceId.deviceId(from.nodeId().toString()),
-                                            PortNumber.portNumber(portNaNCheck(from.tpId())));
-
-        ConnectPoint dst = new ConnectPoint(DeviceId.deviceId(to.nodeId().toString()),
-                                            PortNumber.portNumber(portNaNCheck(to.tpId())));
-
-        DefaultLink.Builder builder = DefaultLink.builder();
-        builder.providerId(new ProviderId("127.0.0.1", "meow-topo"));
-        builder.src(src);
-        builder.dst(dst);
-        builder.type(Link.Type.DIRECT);
-        builder.state(Link.State.ACTIVE);
-        builder.isExpected(true);
-        Link link = builder.build();
-
-        return link;
+    private ArrayNode ids(List<ObjectNode> payloads) {
+        ArrayNode ids = arrayNode();
+        payloads.forEach(p -> ids.add(p.get(ID)));
+        return ids;
     }
 
-    private Link createMiddleLink(NetworkNodeKey key, DefaultNetworkNode node) {
-        ConnectPoint src = new ConnectPoint(DeviceId.deviceId(node.nodeId().toString()),
-                                            PortNumber.portNumber("0"));
-
-        ConnectPoint dst = new ConnectPoint(DeviceId.deviceId(key.nodeId().toString()),
-                                            PortNumber.portNumber("0"));
-
-        DefaultLink.Builder builder = DefaultLink.builder();
-        builder.providerId(new ProviderId("127.0.0.1", "meow-topo"));
-        builder.src(src);
-        builder.dst(dst);
-        builder.type(Link.Type.DIRECT);
-
-        builder.state(Link.State.ACTIVE);
-        builder.isExpected(true);
-        Link link = builder.build();
-
-        return link;
+    // Sends a batch of coalesced view events, unless the view is closed,
+    // tagged with the newest logged change it accounts for.
+    private void sendDelta(List<TeTopoUiModelEvent> batch) {
+        if (listenersRemoved) {
+            return;
+        }
+        long version = 0;
+        for (TeTopoUiModelEvent event : batch) {
+            version = Math.max(version, event.sequence());
+        }
+        List<TeTopoUiModelEvent> events = batch.stream()
+                .filter(e -> e.parent() == null || expanded.contains(e.parent()))
+                .collect(Collectors.toList());
+        if (!bundles.isEmpty()) {
+            List<TeTopoUiModelEvent> shown = Lists.newArrayList();
+            for (TeTopoUiModelEvent event : events) {
+                if (bundles.containsKey(event.id())) {
+                    refreshBundle(event);
+                } else {
+                    shown.add(event);
+                }
+            }
+            events = shown;
+        }
+        TeTopoUiViewport vp = viewport;
+        if (clustered) {
+            events = clusterEvents(events);
+        } else if (vp != null) {
+            events = vp.filter(events);
+        }
+        if (!events.isEmpty() && !channel.offer(deltaMessage(events, version))) {
+            invalidateMark();
+        }
     }
 
-    private Link createMatrixLink(ConnectivityMatrix matrix) {
-        TerminationPointKey from = matrix.from();
-        TerminationPointKey to = matrix.to();
-
-        ConnectPoint src = new ConnectPoint(DeviceId.deviceId(from.nodeId().toString()),
-                                            PortNumber.portNumber(portNaNCheck(from.tpId())));
-
-        ConnectPoint dst = new ConnectPoint(DeviceId.deviceId(to.nodeId().toString()),
-                                            PortNumber.portNumber(portNaNCheck(to.tpId())));
-
-        DefaultLink.Builder builder = DefaultLink.builder();
-        builder.providerId(new ProviderId("127.0.0.1", "meow-topo"));
-        builder.src(src);
-        builder.dst(dst);
-        builder.type(Link.Type.DIRECT);
-
-        builder.state(Link.State.ACTIVE);
-        builder.isExpected(true);
-        Link link = builder.build();
-
-        return link;
+    // Sends elements in the compact encoding, devices first, in messages
+    // of at most SNAPSHOT_CHUNK_SIZE elements.
+    private void sendCompact(List<ObjectNode> devices, List<ObjectNode> links) {
+        for (List<ObjectNode> chunk : Lists.partition(devices, SNAPSHOT_CHUNK_SIZE)) {
+            channel.submit(JsonUtils.envelope(TOPO_COMPACT, 0,
+                    TeTopoUiCompactCodec.encode(chunk, ImmutableList.of())));
+        }
+        for (List<ObjectNode> chunk : Lists.partition(links, SNAPSHOT_CHUNK_SIZE)) {
+            channel.submit(JsonUtils.envelope(TOPO_COMPACT, 0,
+                    TeTopoUiCompactCodec.encode(ImmutableList.of(), chunk)));
+        }
     }
 
-    private String portNaNCheck(KeyId tpId) {
-//        if (tpId == null) {
-//            return "0";
-//        }
-//        return tpId.toString();
-        return "1";
+    // Sends the given payloads in messages of at most SNAPSHOT_CHUNK_SIZE.
+    private void sendChunked(String type, String key, List<ObjectNode> items) {
+        int size = items.size();
+        for (int from = 0; from < size; from += SNAPSHOT_CHUNK_SIZE) {
+            int to = Math.min(size, from + SNAPSHOT_CHUNK_SIZE);
+            ArrayNode chunk = arrayNode();
+            chunk.addAll(items.subList(from, to));
+            ObjectNode payload = objectNode();
+            payload.set(key, chunk);
+            channel.submit(JsonUtils.envelope(type, 0, payload));
+        }
     }
 
-
     private Link createDemoLink(String srcId, String dstId) {
 
         ConnectPoint src = new ConnectPoint(DeviceId.deviceId(srcId),
@@ -617,6 +1510,41 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
         return link;
     }
 
+    // Produces one delta message carrying a batch of view model events;
+    // for a client that asked for it, links added in both directions are
+    // added as one, the other changes staying per direction.
+    private ObjectNode deltaMessage(List<TeTopoUiModelEvent> batch, long version) {
+        Map<String, ObjectNode> added = paired ? pairAdded(batch) : null;
+        ArrayNode events = arrayNode();
+        for (TeTopoUiModelEvent event : batch) {
+            ObjectNode subject = event.subject();
+            if (added != null && event.type() == TeTopoUiModelEvent.Type.LINK_ADDED) {
+                subject = added.get(event.id());
+                if (subject == null) {
+                    continue;
+                }
+            }
+            ObjectNode entry = objectNode().put(EVENT, event.type().messageType());
+            entry.set(PAYLOAD, subject);
+            events.add(entry);
+        }
+        ObjectNode payload = objectNode().put(VERSION, version);
+        payload.set(EVENTS, events);
+        return JsonUtils.envelope(TOPO_DELTA, 0, payload);
+    }
+
+    // Pairs the links a batch adds; returns the payloads to send by the id
+    // of the link they are sent for, leaving out the directions paired.
+    private Map<String, ObjectNode> pairAdded(List<TeTopoUiModelEvent> batch) {
+        List<ObjectNode> links = batch.stream()
+                .filter(e -> e.type() == TeTopoUiModelEvent.Type.LINK_ADDED)
+                .map(TeTopoUiModelEvent::subject)
+                .collect(Collectors.toList());
+        Map<String, ObjectNode> added = Maps.newHashMap();
+        TeTopoUiLinkPairs.pair(links).forEach(link -> added.put(link.path(ID).asText(), link));
+        return added;
+    }
+
     // Temporary mechanism to support topology overlays adding their own
     // properties to the link events.
     private ObjectNode composeLinkMessage(LinkEvent event) {
@@ -638,27 +1566,43 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
     // Adds all internal listeners.
     private synchronized void addListeners() {
         listenersRemoved = false;
+        paused = false;
+        attachListeners();
+    }
+
+    // Removes all internal listeners.
+    private synchronized void removeListeners() {
+        if (!listenersRemoved) {
+            listenersRemoved = true;
+            if (!paused) {
+                detachListeners();
+            }
+            paused = false;
+        }
+    }
+
+    // Listens to the view changes; also used to resume a paused view.
+    private void attachListeners() {
 //        clusterService.addListener(clusterListener);
 //        mastershipService.addListener(mastershipListener);
         deviceService.addListener(deviceListener);
         linkService.addListener(linkListener);
+        modelCache.addListener(modelListener);
 //        hostService.addListener(hostListener);
 //        intentService.addListener(intentListener);
 //        flowService.addListener(flowListener);
     }
 
-    // Removes all internal listeners.
-    private synchronized void removeListeners() {
-        if (!listenersRemoved) {
-            listenersRemoved = true;
-//            clusterService.removeListener(clusterListener);
-//            mastershipService.removeListener(mastershipListener);
-            deviceService.removeListener(deviceListener);
-            linkService.removeListener(linkListener);
-//            hostService.removeListener(hostListener);
-//            intentService.removeListener(intentListener);
-//            flowService.removeListener(flowListener);
-        }
+    // Stops listening to the view changes; also used to pause a view.
+    private void detachListeners() {
+//        clusterService.removeListener(clusterListener);
+//        mastershipService.removeListener(mastershipListener);
+        deviceService.removeListener(deviceListener);
+        linkService.removeListener(linkListener);
+        modelCache.removeListener(modelListener);
+//        hostService.removeListener(hostListener);
+//        intentService.removeListener(intentListener);
+//        flowService.removeListener(flowListener);
     }
 
     // Device event listener.
@@ -668,9 +1612,8 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
         @Override
         public void event(DeviceEvent event) {
             if (event.type() != PORT_STATS_UPDATED) {
-                msgSender.execute(() -> sendMessage(deviceMessage(event)));
 //                msgSender.execute(traffic::pokeIntent);
-//                eventAccummulator.add(event);
+                eventAccumulator.add(deviceModelEvent(event));
             }
         }
     }
@@ -682,9 +1625,17 @@ public class TeTopoUiMessageHandler extends TeTopoUiMessageHandlerBase {
     private class InternalLinkListener implements LinkListener {
         @Override
         public void event(LinkEvent event) {
-            msgSender.execute(() -> sendMessage(composeLinkMessage(event)));
 //            msgSender.execute(traffic::pokeIntent);
-//            eventAccummulator.add(event);
+            eventAccumulator.add(linkModelEvent(event));
+        }
+    }
+
+    // TE topology view model listener; element changes are batched with
+    // the device and link events into coalesced delta messages.
+    private class InternalModelListener implements TeTopoUiModelListener {
+        @Override
+        public void event(TeTopoUiModelEvent event) {
+            eventAccumulator.add(event);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,5 @@
 package org.onosproject;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.onlab.osgi.ServiceDirectory;
@@ -9,7 +8,6 @@ import org.onosproject.cluster.ClusterEvent;
 import org.onosproject.cluster.ControllerNode;
 import org.onosproject.cluster.NodeId;
 import org.onosproject.mastership.MastershipService;
-import org.onosproject.net.Annotated;
 import org.onosproject.net.AnnotationKeys;
 import org.onosproject.net.Annotations;
 import org.onosproject.net.Device;
@@ -19,7 +17,6 @@ import org.onosproject.net.HostId;
 import org.onosproject.net.Link;
 import org.onosproject.net.device.DeviceEvent;
 import org.onosproject.net.device.DeviceService;
-import org.onosproject.net.flow.FlowEntry;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.host.HostService;
 import org.onosproject.net.link.LinkEvent;
@@ -34,7 +31,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
-import static org.onosproject.ui.topo.TopoUtils.compactLinkString;
 
 /**
  * Facility for creating messages bound for the topology viewer.
@@ -50,6 +46,11 @@ public abstract class TeTopoUiMessageHandlerBase extends UiMessageHandler {
     private static final DefaultHashMap<LinkEvent.Type, String> LINK_EVENT =
             new DefaultHashMap<>("updateLink");
 
+    private static final DefaultHashMap<DeviceEvent.Type, TeTopoUiModelEvent.Type>
+            DEVICE_MODEL_EVENT = new DefaultHashMap<>(TeTopoUiModelEvent.Type.DEVICE_UPDATED);
+    private static final DefaultHashMap<LinkEvent.Type, TeTopoUiModelEvent.Type>
+            LINK_MODEL_EVENT = new DefaultHashMap<>(TeTopoUiModelEvent.Type.LINK_UPDATED);
+
     // but call out specific events that we care to differentiate...
     static {
         DEVICE_EVENT.put(DeviceEvent.Type.DEVICE_ADDED, "addDevice");
@@ -57,6 +58,12 @@ public abstract class TeTopoUiMessageHandlerBase extends UiMessageHandler {
 
         LINK_EVENT.put(LinkEvent.Type.LINK_ADDED, "addLink");
         LINK_EVENT.put(LinkEvent.Type.LINK_REMOVED, "removeLink");
+
+        DEVICE_MODEL_EVENT.put(DeviceEvent.Type.DEVICE_ADDED, TeTopoUiModelEvent.Type.DEVICE_ADDED);
+        DEVICE_MODEL_EVENT.put(DeviceEvent.Type.DEVICE_REMOVED, TeTopoUiModelEvent.Type.DEVICE_REMOVED);
+
+        LINK_MODEL_EVENT.put(LinkEvent.Type.LINK_ADDED, TeTopoUiModelEvent.Type.LINK_ADDED);
+        LINK_MODEL_EVENT.put(LinkEvent.Type.LINK_REMOVED, TeTopoUiModelEvent.Type.LINK_REMOVED);
     }
 
 
@@ -72,12 +79,18 @@ public abstract class TeTopoUiMessageHandlerBase extends UiMessageHandler {
 //    protected TunnelService tunnelService;
     protected TeTopologyService teTopologyService;
 
+    // shared device flow and port counts
+    protected TeTopoUiCounters counters;
+
+    // shared meta data set on devices, such as pinned positions
+    protected TeTopoUiMetaStore metaStore;
+
 
     // multi topo layer define
-    protected static final String LAYER_KEY = "ctrl_layer";
-    protected static final String LAYER_CONTROLLER = "pkt"; // controller
-    protected static final String LAYER_TRAFFIC = "opt"; // traffic
-    protected static final String LAYER_MASTER = "layermaster"; // master
+    protected static final String LAYER_KEY = TeTopoJson.LAYER_KEY;
+    protected static final String LAYER_CONTROLLER = TeTopoJson.LAYER_CONTROLLER;
+    protected static final String LAYER_TRAFFIC = TeTopoJson.LAYER_TRAFFIC;
+    protected static final String LAYER_MASTER = TeTopoJson.LAYER_MASTER;
 
 
     @Override
@@ -111,7 +124,24 @@ public abstract class TeTopoUiMessageHandlerBase extends UiMessageHandler {
 
     // Produces a device event message to the client.
     protected ObjectNode deviceMessage(DeviceEvent event) {
-        Device device = event.subject();
+        String type = DEVICE_EVENT.get(event.type());
+        return JsonUtils.envelope(type, 0, devicePayload(event.subject()));
+    }
+
+    // Produces a view model event from a core device event.
+    protected TeTopoUiModelEvent deviceModelEvent(DeviceEvent event) {
+        return new TeTopoUiModelEvent(DEVICE_MODEL_EVENT.get(event.type()),
+                                      devicePayload(event.subject()));
+    }
+
+    // Produces a view model event from a core link event.
+    protected TeTopoUiModelEvent linkModelEvent(LinkEvent event) {
+        return new TeTopoUiModelEvent(LINK_MODEL_EVENT.get(event.type()),
+                                      linkPayload(event.subject()));
+    }
+
+    // Produces the payload of a device message, without envelope.
+    protected ObjectNode devicePayload(Device device) {
         ObjectNode payload = objectNode()
                 .put("id", device.id().toString())
                 .put("type", device.type().toString().toLowerCase())
@@ -127,57 +157,35 @@ public abstract class TeTopoUiMessageHandlerBase extends UiMessageHandler {
 
         // Add labels, props and stuff the payload into envelope.
         payload.set("labels", labels);
-        payload.set("props", props(device.annotations()));
-        addGeoLocation(device, payload);
+        payload.set("props", TeTopoJson.props(device.annotations()));
+        TeTopoJson.addGeoLocation(device, payload);
         addMetaUi(device.id().toString(), payload);
-
-        String type = DEVICE_EVENT.get(event.type());
-        return JsonUtils.envelope(type, 0, payload);
+        return payload;
     }
 
 
     protected ObjectNode deviceMessageLayer(DeviceEvent event) {
-        Device device = event.subject();
-        String ctrlLayer = device.annotations().value(LAYER_KEY);
-        ObjectNode payload = objectNode()
-                .put("id", device.id().toString())
-                .put("type", device.type().toString().toLowerCase())
-                .put("online", ctrlLayer.equals(LAYER_CONTROLLER))
-                .put("master", "127.0.0.1");
-
-        // Generate labels: id, chassis id, no-label, optional-name
-        String name = device.annotations().value(AnnotationKeys.NAME);
-        ArrayNode labels = arrayNode();
-        labels.add("");
-        labels.add(isNullOrEmpty(name) ? device.id().toString() : name);
-        labels.add(device.id().toString());
+        String type = DEVICE_EVENT.get(event.type());
+        return JsonUtils.envelope(type, 0, deviceLayerPayload(event.subject()));
+    }
 
-        // Add labels, props and stuff the payload into envelope.
-        payload.set("labels", labels);
-        payload.set("props", props(device.annotations()));
-        addGeoLocation(device, payload);
+    // Produces the payload of a layered device message, without envelope.
+    protected ObjectNode deviceLayerPayload(Device device) {
+        ObjectNode payload = TeTopoJson.layerDevice(device);
         addMetaUi(device.id().toString(), payload);
-
-        String type = DEVICE_EVENT.get(event.type());
-        return JsonUtils.envelope(type, 0, payload);
+        return payload;
     }
 
 
     // Produces a link event message to the client.
     protected ObjectNode linkMessage(LinkEvent event) {
-        Link link = event.subject();
-        ObjectNode payload = objectNode()
-                .put("id", compactLinkString(link))
-                .put("type", link.type().toString().toLowerCase())
-                .put("expected", link.isExpected())
-                .put("online", link.state() == Link.State.ACTIVE)
-                .put("linkWidth", 1.2)
-                .put("src", link.src().deviceId().toString())
-                .put("srcPort", link.src().port().toString())
-                .put("dst", link.dst().deviceId().toString())
-                .put("dstPort", link.dst().port().toString());
         String type = LINK_EVENT.get(event.type());
-        return JsonUtils.envelope(type, 0, payload);
+        return JsonUtils.envelope(type, 0, linkPayload(event.subject()));
+    }
+
+    // Produces the payload of a link message, without envelope.
+    protected ObjectNode linkPayload(Link link) {
+        return TeTopoJson.link(link);
     }
 
     // Returns the name of the master node for the specified device id.
@@ -187,55 +195,18 @@ public abstract class TeTopoUiMessageHandlerBase extends UiMessageHandler {
     }
 
 
-    // Produces JSON structure from annotations.
-    private JsonNode props(Annotations annotations) {
-        ObjectNode props = objectNode();
-        if (annotations != null) {
-            for (String key : annotations.keys()) {
-                props.put(key, annotations.value(key));
-            }
-        }
-        return props;
-    }
-
-
-    // Adds a geo location JSON to the specified payload object.
-    private void addGeoLocation(Annotated annotated, ObjectNode payload) {
-        Annotations annotations = annotated.annotations();
-        if (annotations == null) {
+    // Adds meta UI information for the specified object.
+    private void addMetaUi(String id, ObjectNode payload) {
+        if (metaStore == null) {
             return;
         }
-
-        String slng = annotations.value(AnnotationKeys.LONGITUDE);
-        String slat = annotations.value(AnnotationKeys.LATITUDE);
-        boolean haveLng = slng != null && !slng.isEmpty();
-        boolean haveLat = slat != null && !slat.isEmpty();
-        try {
-            if (haveLng && haveLat) {
-                double lng = Double.parseDouble(slng);
-                double lat = Double.parseDouble(slat);
-                ObjectNode loc = objectNode()
-                        .put("type", "lnglat")
-                        .put("lng", lng)
-                        .put("lat", lat);
-                payload.set("location", loc);
-            } else {
-                log.trace("missing Lng/Lat: lng={}, lat={}", slng, slat);
-            }
-        } catch (NumberFormatException e) {
-            log.warn("Invalid geo data: longitude={}, latitude={}", slng, slat);
+        String network = payload.path("props").path(LAYER_MASTER).asText();
+        ObjectNode meta = metaStore.get(network, id);
+        if (meta != null) {
+            payload.set("metaUi", meta);
         }
     }
 
-
-    // Adds meta UI information for the specified object.
-    private void addMetaUi(String id, ObjectNode payload) {
-//        ObjectNode meta = metaUi.get(id);
-//        if (meta != null) {
-//            payload.set("metaUi", meta);
-//        }
-    }
-
     // -----------------------------------------------------------------------
     // Create models of the data to return, that overlays can adjust / augment
 
@@ -245,7 +216,7 @@ public abstract class TeTopoUiMessageHandlerBase extends UiMessageHandler {
         Device device = deviceService.getDevice(deviceId);
         Annotations annot = device.annotations();
         String name = annot.value(AnnotationKeys.NAME);
-        int portCount = deviceService.getPorts(deviceId).size();
+        int portCount = counters.portCount(deviceId);
         int flowCount = getFlowCount(deviceId);
 //        int tunnelCount = getTunnelCount(deviceId);
 
@@ -322,11 +293,7 @@ public abstract class TeTopoUiMessageHandlerBase extends UiMessageHandler {
     }
 
     protected int getFlowCount(DeviceId deviceId) {
-        int count = 0;
-        for (FlowEntry flowEntry : flowService.getFlowEntries(deviceId)) {
-            count++;
-        }
-        return count;
+        return counters.flowCount(deviceId);
     }
 
 
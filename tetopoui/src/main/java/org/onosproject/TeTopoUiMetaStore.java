@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Write-behind store of the UI meta data, such as pinned positions, the
+ * operators set on nodes, keyed by network and node id.
+ * <p>
+ * Reads and writes are served from memory. Changes are appended to a
+ * local log file, one JSON record per line, by a single thread at a fixed
+ * period, with the changes of a node within a period collapsed into one
+ * record. Once the log holds several times more records than there are
+ * nodes, it is compacted by rewriting the live entries to a new file.
+ */
+public class TeTopoUiMetaStore {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    // period at which changes are written out
+    private static final int FLUSH_MS = 1000;
+    // log records per live entry from which the log is compacted
+    private static final int COMPACT_RATIO = 4;
+    // log records below which the log is never compacted
+    private static final int COMPACT_MIN = 1024;
+
+    private static final String KEY = "k";
+    private static final String META = "m";
+    private static final char SEPARATOR = '/';
+
+    private final File file;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler =
+            newSingleThreadScheduledExecutor(groupedThreads("onos/tetopoui", "metaui-%d", log));
+
+    // live entries, by network/node key
+    private final Map<String, ObjectNode> entries = Maps.newConcurrentMap();
+
+    // changes not written yet, null for removals; guarded by itself
+    private final Map<String, ObjectNode> pending = Maps.newLinkedHashMap();
+
+    // open log and its number of records; only touched by the scheduler
+    // thread once activated
+    private Writer out;
+    private long records = 0;
+
+    /**
+     * Creates a meta data store.
+     *
+     * @param file log file the meta data is persisted to
+     */
+    public TeTopoUiMetaStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the persisted meta data and starts writing changes behind.
+     */
+    public void activate() {
+        if (!load()) {
+            // drop the damaged tail, so that new records are not appended to it
+            synchronized (this) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    log.warn("Unable to rewrite UI meta data to {}", file, e);
+                }
+            }
+        }
+        scheduler.scheduleAtFixedRate(this::flush, FLUSH_MS, FLUSH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes out the pending changes and closes the log.
+     */
+    public void deactivate() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(FLUSH_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        close();
+    }
+
+    /**
+     * Returns the meta data of a node.
+     *
+     * @param network network id, empty for nodes of no network
+     * @param id      node id
+     * @return meta data, or null if none is stored
+     */
+    public ObjectNode get(String network, String id) {
+        return entries.get(key(network, id));
+    }
+
+    /**
+     * Stores the meta data of a node; empty meta data removes it.
+     *
+     * @param network network id, empty for nodes of no network
+     * @param id      node id
+     * @param meta    meta data, empty or null to remove it
+     */
+    public void put(String network, String id, ObjectNode meta) {
+        String key = key(network, id);
+        ObjectNode value = meta == null || meta.size() == 0 ? null : meta.deepCopy();
+        if (value == null) {
+            entries.remove(key);
+        } else {
+            entries.put(key, value);
+        }
+        synchronized (pending) {
+            pending.put(key, value);
+        }
+    }
+
+    /**
+     * Returns all stored meta data.
+     *
+     * @return meta data by network/node key
+     */
+    public Map<String, ObjectNode> entries() {
+        return ImmutableMap.copyOf(entries);
+    }
+
+    private static String key(String network, String id) {
+        return (network != null ? network : "") + SEPARATOR + id;
+    }
+
+    // Appends the pending changes to the log, compacting it if it grew
+    // too long.
+    private synchronized void flush() {
+        Map<String, ObjectNode> changes;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            changes = Maps.newLinkedHashMap(pending);
+            pending.clear();
+        }
+        try {
+            Writer writer = writer();
+            for (Map.Entry<String, ObjectNode> change : changes.entrySet()) {
+                write(writer, change.getKey(), change.getValue());
+            }
+            writer.flush();
+            records += changes.size();
+            if (records >= COMPACT_MIN && records > (long) COMPACT_RATIO * entries.size()) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write UI meta data to {}", file, e);
+            close();
+        }
+    }
+
+    // Rewrites the live entries to a new log, which replaces the old one
+    // only once complete.
+    private void compact() throws IOException {
+        close();
+        File tmp = new File(directory(), file.getName() + ".tmp");
+        long count = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, ObjectNode> entry : entries.entrySet()) {
+                write(writer, entry.getKey(), entry.getValue());
+                count++;
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        log.debug("UI meta data log compacted from {} to {} records", records, count);
+        records = count;
+    }
+
+    private void write(Writer writer, String key, ObjectNode meta) throws IOException {
+        ObjectNode record = mapper.createObjectNode().put(KEY, key);
+        if (meta != null) {
+            record.set(META, meta);
+        }
+        writer.write(mapper.writeValueAsString(record));
+        writer.write('\n');
+    }
+
+    private Writer writer() throws IOException {
+        if (out == null) {
+            File dir = directory();
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.debug("Unable to close {}", file, e);
+            }
+            out = null;
+        }
+    }
+
+    private File directory() {
+        return file.getAbsoluteFile().getParentFile();
+    }
+
+    // Replays the log; a record cut short by a crash ends the replay.
+    // Returns false if the log has such a damaged tail.
+    private synchronized boolean load() {
+        if (!file.exists()) {
+            return true;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(),
+                                                             StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode record;
+                try {
+                    record = mapper.readTree(line);
+                } catch (IOException e) {
+                    log.warn("Ignoring truncated UI meta data record in {}", file);
+                    return false;
+                }
+                String key = record.path(KEY).asText();
+                JsonNode meta = record.get(META);
+                if (meta instanceof ObjectNode) {
+                    entries.put(key, (ObjectNode) meta);
+                } else {
+                    entries.remove(key);
+                }
+                records++;
+            }
+            log.info("Loaded UI meta data of {} nodes", entries.size());
+        } catch (IOException e) {
+            log.warn("Unable to load UI meta data from {}", file, e);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,1919 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import org.onosproject.event.ListenerRegistry;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.provider.ProviderId;
+import org.onosproject.tetopology.management.api.InternalTeNetwork;
+import org.onosproject.tetopology.management.api.KeyId;
+import org.onosproject.tetopology.management.api.Network;
+import org.onosproject.tetopology.management.api.TeTopologyEvent;
+import org.onosproject.tetopology.management.api.TeTopologyListener;
+import org.onosproject.tetopology.management.api.TeTopologyService;
+import org.onosproject.tetopology.management.api.TeTopologyType;
+import org.onosproject.tetopology.management.api.link.DefaultNetworkLink;
+import org.onosproject.tetopology.management.api.link.NetworkLink;
+import org.onosproject.tetopology.management.api.link.TeLink;
+import org.onosproject.tetopology.management.api.node.ConnectivityMatrix;
+import org.onosproject.tetopology.management.api.node.DefaultNetworkNode;
+import org.onosproject.tetopology.management.api.node.NetworkNode;
+import org.onosproject.tetopology.management.api.node.NetworkNodeKey;
+import org.onosproject.tetopology.management.api.node.TeNode;
+import org.onosproject.tetopology.management.api.node.TerminationPointKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.onosproject.TeTopoJson.LAYER_CONTROLLER;
+import static org.onosproject.TeTopoJson.LAYER_KEY;
+import static org.onosproject.TeTopoJson.LAYER_MASTER;
+import static org.onosproject.TeTopoJson.LAYER_TRAFFIC;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_ADDED;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_REMOVED;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_UPDATED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_ADDED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_REMOVED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_UPDATED;
+import static org.onosproject.ui.topo.TopoUtils.compactLinkString;
+
+/**
+ * View model of the native TE topologies, shared by all TE topology
+ * view sessions. Holds the pre-rendered payload of every node and link
+ * shown by the view, and keeps it current from TE topology events by
+ * re-rendering only what changed: the TE nodes and TE links a change is
+ * about, or the network for a change of a whole network. Changes queued
+ * while the model is being updated are coalesced, each element or
+ * network being re-rendered once. The differences found are posted to
+ * listeners as element-level add, update and remove events.
+ * <p>
+ * Re-rendering streams each element known from the previous rendering
+ * into a hash of its JSON bytes first; only elements whose hash changed
+ * get a new payload tree, the others keep the one already cached. New
+ * elements are only built as trees, their hash being taken from the tree
+ * once a later rendering compares them.
+ * <p>
+ * The inner layer of a TE node, its supporting nodes and connectivity
+ * matrices, is only rendered once a view has expanded the node, and is
+ * kept current as long as some view holds it expanded. The connectivity
+ * matrices of a TE node with more entries than the bundle threshold are
+ * rendered as one bundle link per ordered pair of supporting nodes,
+ * carrying the number of entries and the range of their termination
+ * points; the entries of a bundle are only rendered on request.
+ * <p>
+ * Rendering runs on a bounded fork-join pool: networks are rendered
+ * concurrently, and the TE nodes and links of each network in ranges,
+ * each range streamed by its own writer. The ranges are merged back in
+ * their order in the network, so that a rendering does not depend on
+ * how its ranges were scheduled.
+ * <p>
+ * Upper layer elements are also indexed by id, links by their end devices,
+ * geo-located devices by location, the other devices by layout position
+ * and those with neither in paging order, so that sessions can page
+ * through the topology region by region.
+ * <p>
+ * Devices carry their position as {@code metaUi}, which clients use as
+ * the initial position: the one an operator pinned the device at, if
+ * any, or else the server-side layout position of an upper layer device.
+ * <p>
+ * Cached payloads are shared between sessions and must be treated as
+ * immutable by their users.
+ */
+public class TeTopoUiModelCache {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final ProviderId PID = new ProviderId("127.0.0.1", "meow-topo");
+
+    // grid cell size of the spatial index, in degrees
+    private static final double CELL_DEGREES = 1.0;
+    // grid cell size of the layout index, in view pixels
+    private static final double LAYOUT_CELL = 256.0;
+
+    private static final String META_UI = "metaUi";
+    private static final String BUNDLE = "bundle";
+
+    // termination point id compared as a number
+    private static final Pattern NUMBER = Pattern.compile("\\d{1,18}");
+
+    // network under which the meta data of devices outside the model is kept
+    private static final String NO_NETWORK = "";
+
+    // default number of recent changes kept for reconnecting views
+    private static final int DEFAULT_EVENT_LOG_SIZE = 10000;
+
+    // number of TE nodes or TE links rendered by one task
+    private static final int RENDER_CHUNK_SIZE = 512;
+
+    private final TeTopologyService teTopologyService;
+    private final TeTopologyListener teTopologyListener = new InternalTeTopologyListener();
+
+    private final ExecutorService modelUpdater =
+            newSingleThreadExecutor(groupedThreads("onos/tetopoui", "model-updater", log));
+
+    // renders networks and ranges of their elements
+    private final ForkJoinPool renderer;
+
+    // connectivity matrix entries of a TE node above which they are
+    // bundled; 0 for never
+    private final int bundleThreshold;
+
+    private final ListenerRegistry<TeTopoUiModelEvent, TeTopoUiModelListener>
+            listenerRegistry = new ListenerRegistry<>();
+
+    // rendered networks, by network id; guarded by this
+    private final Map<String, NetworkModel> networks = Maps.newLinkedHashMap();
+
+    // number of expansions held by views, by TE node id; the inner layer
+    // of a TE node is rendered while any is held; guarded by this
+    private final Multiset<String> expanded = HashMultiset.create();
+
+    // indexes over the upper layer of all networks; guarded by this
+    private final Map<String, ObjectNode> devicesById = Maps.newLinkedHashMap();
+    private final Map<String, ObjectNode> linksById = Maps.newHashMap();
+    private final SetMultimap<String, String> linksByDevice = HashMultimap.create();
+    private final TeTopoUiSpatialIndex spatialIndex = new TeTopoUiSpatialIndex(CELL_DEGREES, true);
+    private final TeTopoUiSpatialIndex layoutIndex = new TeTopoUiSpatialIndex(LAYOUT_CELL, false);
+    private final TeTopoUiUnlocatedIndex unlocatedIndex = new TeTopoUiUnlocatedIndex();
+
+    // totals over all networks of what is not rendered until expanded;
+    // guarded by this
+    private int supportingNodeCount = 0;
+    private int matrixCount = 0;
+
+    // layout positions {x, y} of upper layer devices, by device id;
+    // guarded by this
+    private Map<String, double[]> positions = ImmutableMap.of();
+
+    // meta data operators set on devices, such as pinned positions
+    private final TeTopoUiMetaStore metaStore;
+
+    // TE topology changes waiting for the model updater
+    private final Pending pending = new Pending();
+
+    // number of changes posted so far
+    private final AtomicLong version = new AtomicLong();
+
+    // recent changes, by sequence number; its lock also orders posting
+    private final TeTopoUiEventLog eventLog;
+
+    /**
+     * Creates a model cache backed by the given TE topology service.
+     *
+     * @param teTopologyService TE topology service
+     */
+    public TeTopoUiModelCache(TeTopologyService teTopologyService) {
+        this(teTopologyService, DEFAULT_EVENT_LOG_SIZE);
+    }
+
+    /**
+     * Creates a model cache backed by the given TE topology service,
+     * logging the given number of recent changes.
+     *
+     * @param teTopologyService TE topology service
+     * @param eventLogSize      number of recent changes kept
+     */
+    public TeTopoUiModelCache(TeTopologyService teTopologyService, int eventLogSize) {
+        this(teTopologyService, eventLogSize, null);
+    }
+
+    /**
+     * Creates a model cache backed by the given TE topology service,
+     * logging the given number of recent changes and placing devices at
+     * the positions operators pinned them at.
+     *
+     * @param teTopologyService TE topology service
+     * @param eventLogSize      number of recent changes kept
+     * @param metaStore         store of the meta data set on devices, or
+     *                          null for none
+     */
+    public TeTopoUiModelCache(TeTopologyService teTopologyService, int eventLogSize,
+                              TeTopoUiMetaStore metaStore) {
+        this(teTopologyService, eventLogSize, metaStore, 1);
+    }
+
+    /**
+     * Creates a model cache backed by the given TE topology service,
+     * logging the given number of recent changes, placing devices at the
+     * positions operators pinned them at and rendering on the given
+     * number of threads.
+     *
+     * @param teTopologyService TE topology service
+     * @param eventLogSize      number of recent changes kept
+     * @param metaStore         store of the meta data set on devices, or
+     *                          null for none
+     * @param parallelism       number of threads rendering the topology
+     */
+    public TeTopoUiModelCache(TeTopologyService teTopologyService, int eventLogSize,
+                              TeTopoUiMetaStore metaStore, int parallelism) {
+        this(teTopologyService, eventLogSize, metaStore, parallelism, 0);
+    }
+
+    /**
+     * Creates a model cache backed by the given TE topology service,
+     * logging the given number of recent changes, placing devices at the
+     * positions operators pinned them at, rendering on the given number
+     * of threads and bundling large connectivity matrices.
+     *
+     * @param teTopologyService TE topology service
+     * @param eventLogSize      number of recent changes kept
+     * @param metaStore         store of the meta data set on devices, or
+     *                          null for none
+     * @param parallelism       number of threads rendering the topology
+     * @param bundleThreshold   number of connectivity matrix entries of a
+     *                          TE node above which they are bundled, 0 for
+     *                          never
+     */
+    public TeTopoUiModelCache(TeTopologyService teTopologyService, int eventLogSize,
+                              TeTopoUiMetaStore metaStore, int parallelism,
+                              int bundleThreshold) {
+        this.teTopologyService = teTopologyService;
+        this.eventLog = new TeTopoUiEventLog(eventLogSize);
+        this.metaStore = metaStore;
+        this.renderer = new ForkJoinPool(Math.max(1, parallelism));
+        this.bundleThreshold = bundleThreshold;
+    }
+
+    /**
+     * Renders the current TE topology and starts following its changes.
+     * The initial rendering runs on the model updater, like every later
+     * change, and is waited for.
+     */
+    public void activate() {
+        teTopologyService.addListener(teTopologyListener);
+        Future<?> built = modelUpdater.submit(this::rebuild);
+        try {
+            built.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while rendering the TE topology view model");
+        } catch (ExecutionException e) {
+            log.warn("Unable to render the TE topology view model", e.getCause());
+        }
+    }
+
+    /**
+     * Stops following the TE topology and drops the rendered model.
+     */
+    public void deactivate() {
+        teTopologyService.removeListener(teTopologyListener);
+        modelUpdater.shutdownNow();
+        renderer.shutdownNow();
+        synchronized (this) {
+            networks.clear();
+            expanded.clear();
+            devicesById.clear();
+            linksById.clear();
+            linksByDevice.clear();
+            spatialIndex.clear();
+            layoutIndex.clear();
+            unlocatedIndex.clear();
+        }
+    }
+
+    /**
+     * Adds a listener for view model changes.
+     *
+     * @param listener listener to add
+     */
+    public void addListener(TeTopoUiModelListener listener) {
+        listenerRegistry.addListener(listener);
+    }
+
+    /**
+     * Removes a listener for view model changes.
+     *
+     * @param listener listener to remove
+     */
+    public void removeListener(TeTopoUiModelListener listener) {
+        listenerRegistry.removeListener(listener);
+    }
+
+    /**
+     * Returns the device payloads of all cached networks, in network order.
+     *
+     * @return device payloads
+     */
+    public synchronized List<ObjectNode> devices() {
+        ImmutableList.Builder<ObjectNode> builder = ImmutableList.builder();
+        networks.values().forEach(n -> builder.addAll(n.devices.values()));
+        return builder.build();
+    }
+
+    /**
+     * Returns the link payloads of all cached networks, in network order.
+     *
+     * @return link payloads
+     */
+    public synchronized List<ObjectNode> links() {
+        ImmutableList.Builder<ObjectNode> builder = ImmutableList.builder();
+        networks.values().forEach(n -> builder.addAll(n.links.values()));
+        return builder.build();
+    }
+
+    /**
+     * Returns the maximum bandwidth of the TE links of all cached networks
+     * that advertise one, by link id.
+     *
+     * @return bandwidths, in bytes per second
+     */
+    public synchronized Map<String, Double> linkBandwidths() {
+        Map<String, Double> bandwidths = Maps.newHashMap();
+        for (NetworkModel network : networks.values()) {
+            network.linkShapes.forEach((id, shape) -> {
+                if (shape.bandwidth > 0) {
+                    bandwidths.put(id, shape.bandwidth);
+                }
+            });
+        }
+        return bandwidths;
+    }
+
+    /**
+     * Returns the payloads of up to the given number of geo-located
+     * devices inside a bounding box after the cursor, leaving out the ones
+     * to skip, and moves the cursor past them.
+     *
+     * @param cursor position of the caller among the devices of the box
+     * @param box    bounding box {minLng, minLat, maxLng, maxLat}
+     * @param skip   ids of the devices to leave out
+     * @param limit  maximum number of payloads returned
+     * @return device payloads
+     */
+    synchronized List<ObjectNode> locatedDevices(TeTopoUiSpatialIndex.Cursor cursor,
+                                                 double[] box, Predicate<String> skip,
+                                                 int limit) {
+        return payloads(spatialIndex.next(cursor, box, skip, limit));
+    }
+
+    /**
+     * Returns the payloads of up to the given number of devices without
+     * geo location whose layout position lies inside a bounding box, after
+     * the cursor, leaving out the ones to skip, and moves the cursor past
+     * them.
+     *
+     * @param cursor position of the caller among the devices of the box
+     * @param box    bounding box {minX, minY, maxX, maxY} in layout
+     *               coordinates, or null for every placed device
+     * @param skip   ids of the devices to leave out
+     * @param limit  maximum number of payloads returned
+     * @return device payloads
+     */
+    synchronized List<ObjectNode> placedDevices(TeTopoUiSpatialIndex.Cursor cursor,
+                                                double[] box, Predicate<String> skip,
+                                                int limit) {
+        return payloads(layoutIndex.next(cursor, box, skip, limit));
+    }
+
+    /**
+     * Returns the payloads of up to the given number of devices with
+     * neither geo location nor layout position after the cursor, those of
+     * the controller layer first, leaving out the ones to skip, and moves
+     * the cursor past them.
+     *
+     * @param cursor position of the caller among the devices without
+     *               position
+     * @param skip   ids of the devices to leave out
+     * @param limit  maximum number of payloads returned
+     * @return device payloads
+     */
+    synchronized List<ObjectNode> unlocatedDevices(TeTopoUiUnlocatedIndex.Cursor cursor,
+                                                   Predicate<String> skip, int limit) {
+        return payloads(unlocatedIndex.next(cursor, skip, limit));
+    }
+
+    /**
+     * Indicates whether devices without position remain after the
+     * cursor.
+     *
+     * @param cursor position of the caller among the devices without
+     *               position
+     * @return true if devices remain
+     */
+    synchronized boolean hasUnlocatedDevices(TeTopoUiUnlocatedIndex.Cursor cursor) {
+        return unlocatedIndex.hasNext(cursor);
+    }
+
+    private List<ObjectNode> payloads(List<String> deviceIds) {
+        ImmutableList.Builder<ObjectNode> builder = ImmutableList.builder();
+        deviceIds.forEach(id -> builder.add(devicesById.get(id)));
+        return builder.build();
+    }
+
+    /**
+     * Returns the payloads of the links attached to the given device.
+     *
+     * @param deviceId device id
+     * @return link payloads
+     */
+    public synchronized List<ObjectNode> linksOf(String deviceId) {
+        ImmutableList.Builder<ObjectNode> builder = ImmutableList.builder();
+        linksByDevice.get(deviceId).forEach(id -> builder.add(linksById.get(id)));
+        return builder.build();
+    }
+
+    /**
+     * Returns the payloads of the upper layer devices with the given ids,
+     * skipping the ones the view model lacks.
+     *
+     * @param ids device ids
+     * @return device payloads
+     */
+    public synchronized List<ObjectNode> devices(Collection<String> ids) {
+        ImmutableList.Builder<ObjectNode> builder = ImmutableList.builder();
+        ids.stream().map(devicesById::get).filter(Objects::nonNull).forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Returns the payloads of the upper layer links with the given ids,
+     * skipping the ones the view model lacks.
+     *
+     * @param ids link ids
+     * @return link payloads
+     */
+    public synchronized List<ObjectNode> links(Collection<String> ids) {
+        ImmutableList.Builder<ObjectNode> builder = ImmutableList.builder();
+        ids.stream().map(linksById::get).filter(Objects::nonNull).forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of changes posted so far; a listener that reads
+     * it and stops listening has missed changes if it later differs.
+     *
+     * @return view model version
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Returns the changes posted after the given version, each carrying
+     * its sequence number, so that a view that saw every change up to
+     * that version can be brought up to date.
+     *
+     * @param since version the view is up to date with
+     * @return changes posted since, in order, or null if they are no
+     * longer all logged
+     */
+    public List<TeTopoUiModelEvent> eventsSince(long since) {
+        return eventLog.since(since);
+    }
+
+    /**
+     * Returns the number of native networks shown.
+     *
+     * @return network count
+     */
+    public synchronized int networkCount() {
+        return networks.size();
+    }
+
+    /**
+     * Returns the number of supporting nodes of all TE nodes, whether
+     * their inner layer is rendered or not.
+     *
+     * @return supporting node count
+     */
+    public synchronized int supportingNodeCount() {
+        return supportingNodeCount;
+    }
+
+    /**
+     * Returns the number of connectivity matrices of all TE nodes, whether
+     * their inner layer is rendered or not.
+     *
+     * @return connectivity matrix count
+     */
+    public synchronized int matrixCount() {
+        return matrixCount;
+    }
+
+    /**
+     * Returns the adjacency of the network holding a node, in either
+     * layer. The adjacency is rebuilt along with the network's rendering
+     * and never changes once returned.
+     *
+     * @param nodeId node id
+     * @return adjacency of the node's network, or null if no network holds
+     * the node
+     */
+    synchronized TeTopoUiGraph graphOf(String nodeId) {
+        for (NetworkModel model : networks.values()) {
+            if (model.graph.node(nodeId) != TeTopoUiGraph.NONE) {
+                return model.graph;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the TE links of the network holding a TE node. They are
+     * rebuilt along with the network's rendering and never change once
+     * returned.
+     *
+     * @param nodeId TE node id
+     * @return TE links of the node's network, or null if no network holds
+     * the node
+     */
+    synchronized TeTopoUiPathGraph pathsOf(String nodeId) {
+        for (NetworkModel model : networks.values()) {
+            if (model.paths.node(nodeId) != TeTopoUiPathGraph.NONE) {
+                return model.paths;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the inner layer of the given TE node, rendering it first if
+     * no view holds the node expanded. The expansion is kept current until
+     * every expansion of the node is released, its changes being posted as
+     * events whose parent is the TE node.
+     * <p>
+     * Each expansion obtained, that is each future completed with a
+     * non-null inner layer, must be released once with
+     * {@link #release(String)}.
+     *
+     * @param nodeId TE node device id
+     * @return future inner layer, or future null if there is no such node
+     */
+    public CompletableFuture<Expansion> expand(String nodeId) {
+        return CompletableFuture.supplyAsync(() -> expandNode(nodeId), modelUpdater);
+    }
+
+    /**
+     * Releases an expansion of the given TE node obtained from
+     * {@link #expand(String)}. Once the last one is released, the inner
+     * layer of the node is dropped and no longer kept current.
+     *
+     * @param nodeId TE node device id
+     * @return future completed once the expansion is released
+     */
+    public CompletableFuture<Void> release(String nodeId) {
+        return CompletableFuture.runAsync(() -> {
+            synchronized (this) {
+                if (expanded.remove(nodeId, 1) != 1) {
+                    return;
+                }
+                networks.values().forEach(model -> model.inner.remove(nodeId));
+            }
+            log.debug("TE node {} collapsed", nodeId);
+        }, modelUpdater);
+    }
+
+    /**
+     * Places upper layer devices at the given layout positions, posting an
+     * update for each device that moved; devices left out of the layout
+     * lose their position, and pinned devices keep theirs.
+     *
+     * @param layout positions {x, y} by device id
+     * @return future completed once the devices are placed
+     */
+    public CompletableFuture<Void> place(Map<String, double[]> layout) {
+        return CompletableFuture.runAsync(() -> {
+            List<TeTopoUiModelEvent> events = Lists.newArrayList();
+            synchronized (this) {
+                positions = ImmutableMap.copyOf(layout);
+                networks.forEach((key, model) -> position(key, model, events));
+                index(events);
+            }
+            log.debug("TE topology view layout applied: {} devices moved", events.size());
+            post(events);
+        }, modelUpdater);
+    }
+
+    /**
+     * Sets the meta data an operator set on a device, such as the position
+     * it was pinned at, and posts an update of the device if it moved.
+     * Devices the view model does not hold are stored under no network.
+     *
+     * @param id   device id
+     * @param meta meta data, empty to clear it
+     * @return future completed once the meta data is stored
+     */
+    public CompletableFuture<Void> setMeta(String id, ObjectNode meta) {
+        return CompletableFuture.runAsync(() -> {
+            if (metaStore == null) {
+                return;
+            }
+            List<TeTopoUiModelEvent> events = Lists.newArrayList();
+            synchronized (this) {
+                boolean held = false;
+                for (Map.Entry<String, NetworkModel> network : networks.entrySet()) {
+                    NetworkModel model = network.getValue();
+                    if (model.devices.containsKey(id) || model.inner.values().stream()
+                            .anyMatch(inner -> inner.devices.containsKey(id))) {
+                        metaStore.put(network.getKey(), id, meta);
+                        position(network.getKey(), model, events);
+                        held = true;
+                    }
+                }
+                if (!held) {
+                    metaStore.put(NO_NETWORK, id, meta);
+                }
+                index(events);
+            }
+            post(events);
+        }, modelUpdater);
+    }
+
+    // Gives the devices of a network rendering, and of its inner layers,
+    // their current position, collecting an update for each one that
+    // moved. Must be called with this held.
+    private void position(String key, NetworkModel model, List<TeTopoUiModelEvent> events) {
+        position(key, model.devices, true, null, events);
+        model.inner.forEach((parent, inner) ->
+                position(key, inner.devices, false, parent, events));
+    }
+
+    private void position(String key, Map<String, ObjectNode> devices, boolean upper,
+                          String parent, List<TeTopoUiModelEvent> events) {
+        devices.replaceAll((id, payload) -> {
+            ObjectNode placed = positioned(payload, meta(key, id, upper));
+            if (placed != payload && events != null) {
+                events.add(new TeTopoUiModelEvent(DEVICE_UPDATED, placed, parent));
+            }
+            return placed;
+        });
+    }
+
+    // Returns the position of a device: the meta data it was pinned with,
+    // else its layout position for an upper layer device. Must be called
+    // with this held.
+    private ObjectNode meta(String key, String id, boolean upper) {
+        ObjectNode pinned = metaStore != null ? metaStore.get(key, id) : null;
+        if (pinned != null) {
+            return pinned;
+        }
+        double[] xy = upper ? positions.get(id) : null;
+        return xy == null ? null : TeTopoJson.objectNode().put("x", xy[0]).put("y", xy[1]);
+    }
+
+    // Returns the payload with the given meta data, the same payload if it
+    // already has it.
+    private static ObjectNode positioned(ObjectNode payload, ObjectNode meta) {
+        if (Objects.equals(payload.get(META_UI), meta)) {
+            return payload;
+        }
+        ObjectNode placed = payload.deepCopy();
+        if (meta != null) {
+            placed.set(META_UI, meta);
+        } else {
+            placed.remove(META_UI);
+        }
+        return placed;
+    }
+
+    /**
+     * Returns the connectivity matrix entries summarized by a bundle link
+     * of an expanded TE node, rendered on each request.
+     *
+     * @param id bundle link id
+     * @return future bundle, or future null if there is no such bundle
+     */
+    public CompletableFuture<Bundle> bundle(String id) {
+        return CompletableFuture.supplyAsync(() -> bundleEntries(id), modelUpdater);
+    }
+
+    // Runs on the model updater.
+    private Bundle bundleEntries(String id) {
+        String key = null;
+        String nodeId = null;
+        ObjectNode payload = null;
+        synchronized (this) {
+            for (Map.Entry<String, NetworkModel> network : networks.entrySet()) {
+                for (Map.Entry<String, NetworkModel> inner : network.getValue().inner.entrySet()) {
+                    ObjectNode link = inner.getValue().links.get(id);
+                    if (link != null && link.has(BUNDLE)) {
+                        key = network.getKey();
+                        nodeId = inner.getKey();
+                        payload = link;
+                    }
+                }
+            }
+        }
+        DefaultNetworkNode node = payload != null ? findNode(key, nodeId) : null;
+        TeNode te = node != null ? node.getTe() : null;
+        List<ConnectivityMatrix> connMatrices = te != null ? te.connectivityMatrices() : null;
+        if (connMatrices == null) {
+            return null;
+        }
+
+        String src = payload.path("src").asText();
+        String dst = payload.path("dst").asText();
+        List<ObjectNode> entries = Lists.newArrayList();
+        for (ConnectivityMatrix matrix : connMatrices) {
+            if (matrix.from().nodeId().toString().equals(src) &&
+                    matrix.to().nodeId().toString().equals(dst)) {
+                entries.add(TeTopoJson.bundleEntry(createMatrixLink(matrix), tpId(matrix.from()),
+                                                   tpId(matrix.to()), matrix.isAllowed()));
+            }
+        }
+        return new Bundle(payload, entries);
+    }
+
+    // Runs on the model updater, so the network cannot be re-rendered
+    // while its inner layer is being added.
+    private Expansion expandNode(String nodeId) {
+        String key;
+        synchronized (this) {
+            key = networkOf(nodeId);
+            if (key == null) {
+                return null;
+            }
+            NetworkModel inner = networks.get(key).inner.get(nodeId);
+            if (inner != null) {
+                expanded.add(nodeId);
+                return new Expansion(inner);
+            }
+        }
+
+        DefaultNetworkNode node = findNode(key, nodeId);
+        if (node == null) {
+            return null;
+        }
+        NetworkModel inner = new NetworkModel();
+        innerLayer(node, inner, new TeTopoJsonWriter(), NetworkModel.EMPTY);
+
+        synchronized (this) {
+            expanded.add(nodeId);
+            NetworkModel model = networks.get(key);
+            if (model != null) {
+                position(key, inner.devices, false, nodeId, null);
+                model.inner.put(nodeId, inner);
+            }
+        }
+        log.debug("TE node {} expanded: {} devices, {} links",
+                  nodeId, inner.devices.size(), inner.links.size());
+        return new Expansion(inner);
+    }
+
+    // Re-renders every native network. The ranges of all networks are
+    // submitted before any is merged, so that networks render concurrently.
+    private void rebuild() {
+        Set<String> expandedNodes = expandedNodes();
+        Map<String, List<ForkJoinTask<Chunk>>> pending = Maps.newLinkedHashMap();
+        for (Network network : teTopologyService.getNetworks().networks()) {
+            if (isNative(network)) {
+                String key = network.networkId().toString();
+                pending.put(key, split(network, expandedNodes, cached(key)));
+            }
+        }
+        Map<String, NetworkModel> rendered = Maps.newLinkedHashMap();
+        pending.forEach((key, chunks) -> rendered.put(key, merge(chunks)));
+
+        List<TeTopoUiModelEvent> events;
+        synchronized (this) {
+            Map<String, NetworkModel> previous = Maps.newLinkedHashMap(networks);
+            rendered.forEach((key, model) -> position(key, model, null));
+            networks.clear();
+            networks.putAll(rendered);
+
+            Set<String> keys = Sets.newLinkedHashSet(previous.keySet());
+            keys.addAll(rendered.keySet());
+            events = diff(keys, previous, rendered);
+            index(events);
+            keys.forEach(k -> account(previous.get(k), rendered.get(k)));
+        }
+        log.debug("TE topology view model rebuilt: {} networks, {} changes",
+                  rendered.size(), events.size());
+        post(events);
+    }
+
+    // Re-renders the network with the given key, or drops it if it is gone.
+    private void refresh(String key) {
+        Network network = findNetwork(key);
+        NetworkModel model = network != null && isNative(network) ?
+                merge(split(network, expandedNodes(), cached(key))) : null;
+
+        List<TeTopoUiModelEvent> events;
+        synchronized (this) {
+            Map<String, NetworkModel> previous = Maps.newHashMap();
+            Map<String, NetworkModel> current = Maps.newHashMap();
+            if (networks.containsKey(key)) {
+                previous.put(key, networks.get(key));
+            }
+            if (model != null) {
+                position(key, model, null);
+                networks.put(key, model);
+                current.put(key, model);
+            } else {
+                networks.remove(key);
+            }
+            events = diff(Sets.newHashSet(key), previous, current);
+            index(events);
+            account(previous.get(key), current.get(key));
+        }
+        post(events);
+    }
+
+    // Applies the TE topology changes queued so far: re-renders every
+    // network if a change was not about a known kind of element, else
+    // each network changed as a whole, then the TE nodes and TE links
+    // changed in the other networks.
+    private void applyPending() {
+        boolean all;
+        Set<String> changedNetworks;
+        SetMultimap<String, String> changedNodes;
+        SetMultimap<String, String> changedLinks;
+        Set<String> looseNodes;
+        synchronized (pending) {
+            all = pending.all;
+            changedNetworks = ImmutableSet.copyOf(pending.networks);
+            changedNodes = LinkedHashMultimap.create(pending.nodes);
+            changedLinks = LinkedHashMultimap.create(pending.links);
+            looseNodes = ImmutableSet.copyOf(pending.looseNodes);
+            pending.clear();
+        }
+        if (all) {
+            rebuild();
+            return;
+        }
+
+        for (String nodeId : looseNodes) {
+            String key = networkOfNode(nodeId);
+            if (key != null) {
+                changedNodes.put(key, nodeId);
+            }
+        }
+        changedNetworks.forEach(this::refresh);
+
+        Set<String> keys = Sets.newLinkedHashSet(changedNodes.keySet());
+        keys.addAll(changedLinks.keySet());
+        keys.removeAll(changedNetworks);
+        for (String key : keys) {
+            patch(key, changedNodes.get(key), changedLinks.get(key));
+        }
+    }
+
+    // Re-renders the given TE nodes and TE links of a network, along with
+    // the inner layer of the expanded ones, leaving the rest of the
+    // network as it is. A node id that is not a TE node of the network
+    // stands for the TE nodes it supports. The adjacency and TE links of
+    // the network are only rebuilt if the shape of an element changed.
+    private void patch(String key, Set<String> nodeIds, Set<String> linkIds) {
+        Network network = findNetwork(key);
+        NetworkModel previous = cached(key);
+        if (network == null || !isNative(network) || previous == NetworkModel.EMPTY) {
+            refresh(key);
+            return;
+        }
+
+        KeyId networkId = network.networkId();
+        Set<String> expandedNodes = expandedNodes();
+        TeTopoJsonWriter writer = new TeTopoJsonWriter();
+        NetworkModel prev = new NetworkModel();
+        NetworkModel next = new NetworkModel();
+
+        Map<String, DefaultNetworkNode> teNodes = Maps.newHashMap();
+        SetMultimap<String, String> supported = HashMultimap.create();
+        if (!nodeIds.isEmpty() && network.getNodes() != null) {
+            for (NetworkNode node : network.getNodes()) {
+                if (node instanceof DefaultNetworkNode) {
+                    DefaultNetworkNode defaultNode = (DefaultNetworkNode) node;
+                    String nodeId = defaultNode.nodeId().toString();
+                    teNodes.put(nodeId, defaultNode);
+                    List<NetworkNodeKey> supporting = defaultNode.getSupportingNodeIds();
+                    if (supporting != null) {
+                        supporting.forEach(k -> supported.put(k.nodeId().toString(), nodeId));
+                    }
+                }
+            }
+        }
+        Set<String> targets = Sets.newLinkedHashSet();
+        for (String nodeId : nodeIds) {
+            if (teNodes.containsKey(nodeId) || previous.devices.containsKey(nodeId)) {
+                targets.add(nodeId);
+            } else {
+                targets.addAll(supported.get(nodeId));
+            }
+        }
+        for (String nodeId : targets) {
+            prev.take(previous, nodeId);
+            DefaultNetworkNode node = teNodes.get(nodeId);
+            if (node != null) {
+                next.addDevice(createTeDevice(node, networkId), writer, previous);
+                next.shape(node);
+                if (expandedNodes.contains(nodeId)) {
+                    NetworkModel inner = new NetworkModel();
+                    innerLayer(node, inner, writer,
+                               previous.inner.getOrDefault(nodeId, NetworkModel.EMPTY));
+                    next.inner.put(nodeId, inner);
+                }
+            }
+        }
+
+        if (!linkIds.isEmpty() && network.getLinks() != null) {
+            for (NetworkLink networkLink : network.getLinks()) {
+                Link link = createTeLink(networkLink);
+                String linkId = compactLinkString(link);
+                if (linkIds.contains(linkId)) {
+                    next.addLink(link, writer, previous);
+                    next.shape(linkId, networkLink);
+                }
+            }
+        }
+        linkIds.forEach(linkId -> prev.takeLink(previous, linkId));
+
+        NetworkModel reshaped = null;
+        if (!prev.nodeShapes.equals(next.nodeShapes) ||
+                !prev.linkShapes.equals(next.linkShapes)) {
+            reshaped = new NetworkModel();
+            graphs(network, reshaped);
+        }
+
+        List<TeTopoUiModelEvent> deviceEvents = Lists.newArrayList();
+        List<TeTopoUiModelEvent> linkEvents = Lists.newArrayList();
+        List<TeTopoUiModelEvent> deviceRemovals = Lists.newArrayList();
+        synchronized (this) {
+            NetworkModel model = networks.get(key);
+            if (model == null) {
+                return;
+            }
+            position(key, next, null);
+            model.replace(prev, next);
+            if (reshaped != null) {
+                model.graph = reshaped.graph;
+                model.paths = reshaped.paths;
+            }
+            diff(prev, next, deviceEvents, linkEvents, deviceRemovals);
+            deviceEvents.addAll(linkEvents);
+            deviceEvents.addAll(deviceRemovals);
+            index(deviceEvents);
+            account(prev, next);
+        }
+        log.debug("TE network {} patched: {} nodes, {} links, {} changes",
+                  key, targets.size(), linkIds.size(), deviceEvents.size());
+        post(deviceEvents);
+    }
+
+    // Builds the adjacency and TE links of a network, as merge does from
+    // its rendering, without rendering it.
+    private void graphs(Network network, NetworkModel model) {
+        TeTopoUiGraph.Builder graph = TeTopoUiGraph.builder();
+        TeTopoUiPathGraph.Builder paths = TeTopoUiPathGraph.builder();
+        Chunk chunk = new Chunk();
+        if (network.getNodes() != null) {
+            for (NetworkNode node : network.getNodes()) {
+                if (node instanceof DefaultNetworkNode) {
+                    DefaultNetworkNode defaultNode = (DefaultNetworkNode) node;
+                    String nodeId = defaultNode.nodeId().toString();
+                    graph.node(nodeId);
+                    paths.node(nodeId);
+                    crossings(defaultNode, paths);
+                    innerGraph(defaultNode, chunk);
+                }
+            }
+        }
+        chunk.members.forEach(graph::member);
+        chunk.links.forEach(graph::link);
+        if (network.getLinks() != null) {
+            for (NetworkLink networkLink : network.getLinks()) {
+                Link link = createTeLink(networkLink);
+                graph.link(link);
+                teLink(paths, link, networkLink);
+            }
+        }
+        model.graph = graph.build();
+        model.paths = paths.build();
+    }
+
+    // Numbers and logs changes and posts them to the listeners, then
+    // counts them in the version, so that a listener reading the version
+    // before it stops listening never misses a change the version does
+    // not account for. Posting is serialized on the log, so that changes
+    // reach the listeners in sequence order, and a view reading the log
+    // while it starts listening gets every change from one or the other.
+    private void post(List<TeTopoUiModelEvent> events) {
+        synchronized (eventLog) {
+            long sequence = version.get();
+            for (TeTopoUiModelEvent event : events) {
+                TeTopoUiModelEvent sequenced = event.sequenced(++sequence);
+                eventLog.append(sequenced);
+                listenerRegistry.process(sequenced);
+            }
+            version.set(sequence);
+        }
+    }
+
+    // Computes the element changes between two renderings of the given
+    // networks. Devices are added before links and removed after them,
+    // and an element still shown by another network is never removed.
+    // Must be called with the new renderings already installed.
+    private List<TeTopoUiModelEvent> diff(Set<String> keys,
+                                          Map<String, NetworkModel> previous,
+                                          Map<String, NetworkModel> current) {
+        List<TeTopoUiModelEvent> deviceEvents = Lists.newArrayList();
+        List<TeTopoUiModelEvent> linkEvents = Lists.newArrayList();
+        List<TeTopoUiModelEvent> deviceRemovals = Lists.newArrayList();
+
+        for (String key : keys) {
+            diff(previous.getOrDefault(key, NetworkModel.EMPTY),
+                 current.getOrDefault(key, NetworkModel.EMPTY),
+                 deviceEvents, linkEvents, deviceRemovals);
+        }
+
+        deviceEvents.addAll(linkEvents);
+        deviceEvents.addAll(deviceRemovals);
+        return deviceEvents;
+    }
+
+    // Collects the changes between two renderings of a network, or of
+    // part of it, upper layer and inner layers.
+    private void diff(NetworkModel prev, NetworkModel next,
+                      List<TeTopoUiModelEvent> deviceEvents,
+                      List<TeTopoUiModelEvent> linkEvents,
+                      List<TeTopoUiModelEvent> deviceRemovals) {
+        diff(prev, next, null, deviceEvents, linkEvents, deviceRemovals);
+
+        Set<String> parents = Sets.newLinkedHashSet(prev.inner.keySet());
+        parents.addAll(next.inner.keySet());
+        for (String parent : parents) {
+            diff(prev.inner.getOrDefault(parent, NetworkModel.EMPTY),
+                 next.inner.getOrDefault(parent, NetworkModel.EMPTY),
+                 parent, deviceEvents, linkEvents, deviceRemovals);
+        }
+    }
+
+    // Collects the changes between two renderings of one layer.
+    private void diff(NetworkModel prev, NetworkModel next, String parent,
+                      List<TeTopoUiModelEvent> deviceEvents,
+                      List<TeTopoUiModelEvent> linkEvents,
+                      List<TeTopoUiModelEvent> deviceRemovals) {
+        diff(prev.devices, next.devices, DEVICE_ADDED, DEVICE_UPDATED, parent, deviceEvents);
+        diff(prev.links, next.links, LINK_ADDED, LINK_UPDATED, parent, linkEvents);
+
+        prev.devices.forEach((id, payload) -> {
+            if (!next.devices.containsKey(id) && !isShown(id, true)) {
+                deviceRemovals.add(new TeTopoUiModelEvent(DEVICE_REMOVED, payload, parent));
+            }
+        });
+        prev.links.forEach((id, payload) -> {
+            if (!next.links.containsKey(id) && !isShown(id, false)) {
+                linkEvents.add(new TeTopoUiModelEvent(LINK_REMOVED, payload, parent));
+            }
+        });
+    }
+
+    // Collects the added and updated elements of one element map.
+    private void diff(Map<String, ObjectNode> prev, Map<String, ObjectNode> next,
+                      TeTopoUiModelEvent.Type added, TeTopoUiModelEvent.Type updated,
+                      String parent, List<TeTopoUiModelEvent> events) {
+        next.forEach((id, payload) -> {
+            ObjectNode old = prev.get(id);
+            if (old == null) {
+                events.add(new TeTopoUiModelEvent(added, payload, parent));
+            } else if (!old.equals(payload)) {
+                events.add(new TeTopoUiModelEvent(updated, payload, parent));
+            }
+        });
+    }
+
+    // Applies upper layer element changes to the indexes. Must be called
+    // with this held.
+    private void index(List<TeTopoUiModelEvent> events) {
+        for (TeTopoUiModelEvent event : events) {
+            if (event.parent() != null) {
+                continue;
+            }
+            ObjectNode payload = event.subject();
+            String id = event.id();
+            switch (event.type()) {
+                case DEVICE_ADDED:
+                case DEVICE_UPDATED:
+                    devicesById.put(id, payload);
+                    JsonNode loc = payload.get("location");
+                    JsonNode xy = payload.get(META_UI);
+                    if (loc != null) {
+                        spatialIndex.put(id, loc.path("lng").asDouble(),
+                                         loc.path("lat").asDouble());
+                        layoutIndex.remove(id);
+                        unlocatedIndex.remove(id);
+                    } else if (xy != null && xy.has("x") && xy.has("y")) {
+                        layoutIndex.put(id, xy.path("x").asDouble(), xy.path("y").asDouble());
+                        spatialIndex.remove(id);
+                        unlocatedIndex.remove(id);
+                    } else {
+                        spatialIndex.remove(id);
+                        layoutIndex.remove(id);
+                        String layer = payload.path("props").path(LAYER_KEY).asText();
+                        unlocatedIndex.put(id, LAYER_CONTROLLER.equals(layer));
+                    }
+                    break;
+                case DEVICE_REMOVED:
+                    devicesById.remove(id);
+                    spatialIndex.remove(id);
+                    layoutIndex.remove(id);
+                    unlocatedIndex.remove(id);
+                    break;
+                case LINK_ADDED:
+                case LINK_UPDATED:
+                    linksById.put(id, payload);
+                    linksByDevice.put(payload.path("src").asText(), id);
+                    linksByDevice.put(payload.path("dst").asText(), id);
+                    break;
+                case LINK_REMOVED:
+                    linksById.remove(id);
+                    linksByDevice.remove(payload.path("src").asText(), id);
+                    linksByDevice.remove(payload.path("dst").asText(), id);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Replaces the contribution of a network rendering to the totals by
+    // that of its new rendering; either may be null. Must be called with
+    // this held.
+    private void account(NetworkModel prev, NetworkModel next) {
+        NetworkModel p = prev != null ? prev : NetworkModel.EMPTY;
+        NetworkModel n = next != null ? next : NetworkModel.EMPTY;
+        supportingNodeCount += n.supportingNodes - p.supportingNodes;
+        matrixCount += n.matrices - p.matrices;
+    }
+
+    // Indicates whether any cached network shows the given element, in
+    // its upper layer or in an expanded inner layer.
+    private boolean isShown(String id, boolean device) {
+        for (NetworkModel model : networks.values()) {
+            if (model.shows(id, device)) {
+                return true;
+            }
+            for (NetworkModel inner : model.inner.values()) {
+                if (inner.shows(id, device)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Returns the key of the network showing the given TE node. Must be
+    // called with this held.
+    private String networkOf(String nodeId) {
+        for (Map.Entry<String, NetworkModel> entry : networks.entrySet()) {
+            if (entry.getValue().devices.containsKey(nodeId)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private synchronized NetworkModel cached(String key) {
+        return networks.getOrDefault(key, NetworkModel.EMPTY);
+    }
+
+    private synchronized Set<String> expandedNodes() {
+        return ImmutableSet.copyOf(expanded.elementSet());
+    }
+
+    private DefaultNetworkNode findNode(String networkKey, String nodeId) {
+        for (Network network : teTopologyService.getNetworks().networks()) {
+            if (!network.networkId().toString().equals(networkKey) ||
+                    network.getNodes() == null) {
+                continue;
+            }
+            for (NetworkNode node : network.getNodes()) {
+                if (node instanceof DefaultNetworkNode &&
+                        node.nodeId().toString().equals(nodeId)) {
+                    return (DefaultNetworkNode) node;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Network findNetwork(String networkKey) {
+        for (Network network : teTopologyService.getNetworks().networks()) {
+            if (network.networkId().toString().equals(networkKey)) {
+                return network;
+            }
+        }
+        return null;
+    }
+
+    // Returns the key of the network holding a TE node, looking it up in
+    // the TE topology if the view model does not show it yet.
+    private String networkOfNode(String nodeId) {
+        synchronized (this) {
+            String key = networkOf(nodeId);
+            if (key != null) {
+                return key;
+            }
+        }
+        for (Network network : teTopologyService.getNetworks().networks()) {
+            if (network.getNodes() != null && network.getNodes().stream()
+                    .anyMatch(node -> node.nodeId().toString().equals(nodeId))) {
+                return network.networkId().toString();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNative(Network network) {
+        return network instanceof InternalTeNetwork &&
+                ((InternalTeNetwork) network).getTeTopologyType() == TeTopologyType.NATIVE;
+    }
+
+    // Submits the rendering of a network, range by range, to the
+    // renderer: the up layer TE nodes and links, along with the inner
+    // layer of supporting nodes and connectivity matrices of the TE nodes
+    // that have been expanded. Payloads of the elements unchanged since
+    // the previous rendering are reused.
+    private List<ForkJoinTask<Chunk>> split(Network network, Set<String> expandedNodes,
+                                            NetworkModel previous) {
+        KeyId networkId = network.networkId();
+        List<ForkJoinTask<Chunk>> chunks = Lists.newArrayList();
+
+        List<NetworkNode> nodes = network.getNodes();
+        if (nodes != null) {
+            for (List<NetworkNode> range : Lists.partition(nodes, RENDER_CHUNK_SIZE)) {
+                chunks.add(renderer.submit(
+                        () -> renderNodes(range, networkId, expandedNodes, previous)));
+            }
+        }
+
+        List<NetworkLink> links = network.getLinks();
+        if (links != null) {
+            for (List<NetworkLink> range : Lists.partition(links, RENDER_CHUNK_SIZE)) {
+                chunks.add(renderer.submit(() -> renderLinks(range, previous)));
+            }
+        }
+        return chunks;
+    }
+
+    // Merges the ranges of a network rendering, in order, and builds the
+    // adjacency of the network, which covers the inner layers of all TE
+    // nodes, expanded or not, and its TE links, which cover the
+    // connectivity matrices of all TE nodes.
+    private NetworkModel merge(List<ForkJoinTask<Chunk>> chunks) {
+        NetworkModel model = new NetworkModel();
+        TeTopoUiGraph.Builder graph = TeTopoUiGraph.builder();
+        TeTopoUiPathGraph.Builder paths = TeTopoUiPathGraph.builder();
+
+        for (ForkJoinTask<Chunk> task : chunks) {
+            Chunk chunk = task.join();
+            model.merge(chunk.model);
+            for (DefaultNetworkNode node : chunk.nodes) {
+                String nodeId = node.nodeId().toString();
+                graph.node(nodeId);
+                paths.node(nodeId);
+                crossings(node, paths);
+            }
+            chunk.members.forEach(graph::member);
+            chunk.links.forEach(graph::link);
+            for (int i = 0; i < chunk.teLinks.size(); i++) {
+                teLink(paths, chunk.links.get(i), chunk.teLinks.get(i));
+            }
+        }
+        model.graph = graph.build();
+        model.paths = paths.build();
+        return model;
+    }
+
+    // Adds a TE link to the TE links of its network.
+    private static void teLink(TeTopoUiPathGraph.Builder paths, Link link,
+                               NetworkLink networkLink) {
+        TeLink te = teOf(networkLink);
+        paths.link(link, tpId(networkLink.getSource()), tpId(networkLink.getDestination()),
+                   te != null ? te.teDefaultMetric() : 0,
+                   te != null ? te.maxLinkBandwidth() : 0);
+    }
+
+    private static TeLink teOf(NetworkLink networkLink) {
+        return networkLink instanceof DefaultNetworkLink ?
+                ((DefaultNetworkLink) networkLink).getTe() : null;
+    }
+
+    // Renders a range of the TE nodes of a network.
+    private Chunk renderNodes(List<NetworkNode> nodes, KeyId networkId,
+                              Set<String> expandedNodes, NetworkModel previous) {
+        Chunk chunk = new Chunk();
+        TeTopoJsonWriter writer = new TeTopoJsonWriter();
+        for (NetworkNode node : nodes) {
+            if (node instanceof DefaultNetworkNode) {
+                DefaultNetworkNode defaultNode = (DefaultNetworkNode) node;
+                chunk.model.addDevice(createTeDevice(defaultNode, networkId), writer, previous);
+                chunk.model.shape(defaultNode);
+                chunk.nodes.add(defaultNode);
+                innerGraph(defaultNode, chunk);
+                String nodeId = defaultNode.nodeId().toString();
+                if (expandedNodes.contains(nodeId)) {
+                    NetworkModel inner = new NetworkModel();
+                    innerLayer(defaultNode, inner, writer,
+                               previous.inner.getOrDefault(nodeId, NetworkModel.EMPTY));
+                    chunk.model.inner.put(nodeId, inner);
+                }
+            }
+        }
+        return chunk;
+    }
+
+    // Renders a range of the TE links of a network.
+    private Chunk renderLinks(List<NetworkLink> links, NetworkModel previous) {
+        Chunk chunk = new Chunk();
+        TeTopoJsonWriter writer = new TeTopoJsonWriter();
+        for (NetworkLink networkLink : links) {
+            Link link = createTeLink(networkLink);
+            chunk.model.addLink(link, writer, previous);
+            chunk.model.shape(compactLinkString(link), networkLink);
+            chunk.links.add(link);
+            chunk.teLinks.add(networkLink);
+        }
+        return chunk;
+    }
+
+    // Adds the connectivity matrices of a TE node to the TE links of its
+    // network.
+    private void crossings(DefaultNetworkNode defaultNode, TeTopoUiPathGraph.Builder paths) {
+        TeNode te = defaultNode.getTe();
+        List<ConnectivityMatrix> connMatrices = te != null ? te.connectivityMatrices() : null;
+        if (connMatrices != null) {
+            String nodeId = defaultNode.nodeId().toString();
+            for (ConnectivityMatrix matrix : connMatrices) {
+                paths.matrix(nodeId, tpId(matrix.from()), tpId(matrix.to()), matrix.isAllowed());
+            }
+        }
+    }
+
+    private static String tpId(TerminationPointKey key) {
+        return key != null ? String.valueOf(key.tpId()) : "";
+    }
+
+    // Adds the inner layer of a TE node to the adjacency of a range.
+    private void innerGraph(DefaultNetworkNode defaultNode, Chunk chunk) {
+        List<NetworkNodeKey> supportingNodeIds = defaultNode.getSupportingNodeIds();
+        if (supportingNodeIds != null) {
+            for (NetworkNodeKey key : supportingNodeIds) {
+                chunk.members.add(createMiddleLink(key, defaultNode));
+            }
+        }
+        TeNode te = defaultNode.getTe();
+        List<ConnectivityMatrix> connMatrices = te != null ? te.connectivityMatrices() : null;
+        if (connMatrices != null) {
+            for (ConnectivityMatrix matrix : connMatrices) {
+                chunk.links.add(createMatrixLink(matrix));
+            }
+        }
+    }
+
+    private void innerLayer(DefaultNetworkNode defaultNode, NetworkModel model,
+                            TeTopoJsonWriter writer, NetworkModel previous) {
+        TeNode te = defaultNode.getTe();
+        List<NetworkNodeKey> supportingNodeIds = defaultNode.getSupportingNodeIds();
+        if (supportingNodeIds != null) {
+            for (NetworkNodeKey key : supportingNodeIds) {
+                model.addDevice(createSupportingDevice(key, te), writer, previous);
+                model.addLink(createMiddleLink(key, defaultNode), writer, previous);
+            }
+        }
+
+        List<ConnectivityMatrix> connMatrices = te.connectivityMatrices();
+        if (connMatrices == null) {
+            return;
+        }
+        if (bundleThreshold > 0 && connMatrices.size() > bundleThreshold) {
+            addBundles(defaultNode, connMatrices, model, previous);
+        } else {
+            for (ConnectivityMatrix matrix : connMatrices) {
+                model.addLink(createMatrixLink(matrix), writer, previous);
+            }
+        }
+    }
+
+    // Adds the connectivity matrices of a TE node as one bundle link per
+    // ordered pair of supporting nodes.
+    private void addBundles(DefaultNetworkNode defaultNode, List<ConnectivityMatrix> connMatrices,
+                            NetworkModel model, NetworkModel previous) {
+        Map<String, List<ConnectivityMatrix>> pairs = Maps.newLinkedHashMap();
+        for (ConnectivityMatrix matrix : connMatrices) {
+            String pair = matrix.from().nodeId() + "-" + matrix.to().nodeId();
+            pairs.computeIfAbsent(pair, k -> Lists.newArrayList()).add(matrix);
+        }
+
+        String nodeId = defaultNode.nodeId().toString();
+        for (List<ConnectivityMatrix> entries : pairs.values()) {
+            List<String> srcTps = Lists.newArrayListWithCapacity(entries.size());
+            List<String> dstTps = Lists.newArrayListWithCapacity(entries.size());
+            int allowed = 0;
+            for (ConnectivityMatrix matrix : entries) {
+                srcTps.add(tpId(matrix.from()));
+                dstTps.add(tpId(matrix.to()));
+                allowed += matrix.isAllowed() ? 1 : 0;
+            }
+            Link link = createBundleLink(entries.get(0));
+            model.addLink(compactLinkString(link),
+                          TeTopoJson.bundle(link, nodeId, entries.size(), allowed,
+                                            tpRange(srcTps), tpRange(dstTps)),
+                          previous);
+        }
+    }
+
+    // Returns the range spanned by termination point ids, compared as
+    // numbers if they all are.
+    private static String tpRange(List<String> tps) {
+        Comparator<String> order = tps.stream().allMatch(tp -> NUMBER.matcher(tp).matches()) ?
+                Comparator.comparingLong(Long::parseLong) : Comparator.naturalOrder();
+        String min = Collections.min(tps, order);
+        String max = Collections.max(tps, order);
+        return min.equals(max) ? min : min + ".." + max;
+    }
+
+    private Device createTeDevice(DefaultNetworkNode node, KeyId networkId) {
+        DefaultAnnotations annotations =
+                DefaultAnnotations.builder().set("name", node.nodeId().toString())
+                        .set(LAYER_KEY, LAYER_CONTROLLER)
+                        .set(LAYER_MASTER, networkId.toString())
+                        .build();
+        return new DefaultDevice(null,
+                                 DeviceId.deviceId(node.nodeId().toString()),
+                                 Device.Type.SWITCH,
+                                 "",
+                                 "",
+                                 "",
+                                 "",
+                                 null,
+                                 annotations);
+    }
+
+    private Device createSupportingDevice(NetworkNodeKey key, TeNode te) {
+        DefaultAnnotations annotations =
+                DefaultAnnotations.builder().set("name", key.nodeId().toString())
+                        .set(LAYER_KEY, LAYER_TRAFFIC)
+                        .set(LAYER_MASTER, te.teNodeId())
+                        .build();
+        return new DefaultDevice(null,
+                                 DeviceId.deviceId(key.nodeId().toString()),
+                                 Device.Type.SWITCH,
+                                 "",
+                                 "",
+                                 "",
+                                 "",
+                                 null,
+                                 annotations);
+    }
+
+    private Link createTeLink(NetworkLink networkLink) {
+        return createLink(networkLink.getSource(), networkLink.getDestination());
+    }
+
+    private Link createMatrixLink(ConnectivityMatrix matrix) {
+        return createLink(matrix.from(), matrix.to());
+    }
+
+    private Link createBundleLink(ConnectivityMatrix matrix) {
+        ConnectPoint src = new ConnectPoint(DeviceId.deviceId(matrix.from().nodeId().toString()),
+                                            PortNumber.portNumber("0"));
+        ConnectPoint dst = new ConnectPoint(DeviceId.deviceId(matrix.to().nodeId().toString()),
+                                            PortNumber.portNumber("0"));
+        return buildLink(src, dst);
+    }
+
+    private Link createMiddleLink(NetworkNodeKey key, DefaultNetworkNode node) {
+        ConnectPoint src = new ConnectPoint(DeviceId.deviceId(node.nodeId().toString()),
+                                            PortNumber.portNumber("0"));
+        ConnectPoint dst = new ConnectPoint(DeviceId.deviceId(key.nodeId().toString()),
+                                            PortNumber.portNumber("0"));
+        return buildLink(src, dst);
+    }
+
+    private Link createLink(TerminationPointKey from, TerminationPointKey to) {
+        ConnectPoint src = new ConnectPoint(DeviceId.deviceId(from.nodeId().toString()),
+                                            PortNumber.portNumber(portNaNCheck(from.tpId())));
+        ConnectPoint dst = new ConnectPoint(DeviceId.deviceId(to.nodeId().toString()),
+                                            PortNumber.portNumber(portNaNCheck(to.tpId())));
+        return buildLink(src, dst);
+    }
+
+    private Link buildLink(ConnectPoint src, ConnectPoint dst) {
+        DefaultLink.Builder builder = DefaultLink.builder();
+        builder.providerId(PID);
+        builder.src(src);
+        builder.dst(dst);
+        builder.type(Link.Type.DIRECT);
+        builder.state(Link.State.ACTIVE);
+        builder.isExpected(true);
+        return builder.build();
+    }
+
+    private String portNaNCheck(KeyId tpId) {
+//        if (tpId == null) {
+//            return "0";
+//        }
+//        return tpId.toString();
+        return "1";
+    }
+
+    /**
+     * Rendered inner layer of a TE node.
+     */
+    public static final class Expansion {
+        private final List<ObjectNode> devices;
+        private final List<ObjectNode> links;
+
+        private Expansion(NetworkModel inner) {
+            this.devices = ImmutableList.copyOf(inner.devices.values());
+            this.links = ImmutableList.copyOf(inner.links.values());
+        }
+
+        /**
+         * Returns the payloads of the supporting devices.
+         *
+         * @return device payloads
+         */
+        public List<ObjectNode> devices() {
+            return devices;
+        }
+
+        /**
+         * Returns the payloads of the links to the supporting devices and
+         * of the connectivity matrix links.
+         *
+         * @return link payloads
+         */
+        public List<ObjectNode> links() {
+            return links;
+        }
+    }
+
+    /**
+     * Connectivity matrix entries summarized by a bundle link.
+     */
+    public static final class Bundle {
+        private final ObjectNode link;
+        private final List<ObjectNode> entries;
+
+        private Bundle(ObjectNode link, List<ObjectNode> entries) {
+            this.link = link;
+            this.entries = ImmutableList.copyOf(entries);
+        }
+
+        /**
+         * Returns the payload of the bundle link.
+         *
+         * @return bundle link payload
+         */
+        public ObjectNode link() {
+            return link;
+        }
+
+        /**
+         * Returns the payloads of the links of the bundled entries.
+         *
+         * @return entry link payloads
+         */
+        public List<ObjectNode> entries() {
+            return entries;
+        }
+    }
+
+    // Rendered payloads of one network, or of the inner layer of one TE
+    // node, by element id, along with their serialized form.
+    private static final class NetworkModel {
+        private static final NetworkModel EMPTY = new NetworkModel();
+
+        private final Map<String, ObjectNode> devices = Maps.newLinkedHashMap();
+        private final Map<String, ObjectNode> links = Maps.newLinkedHashMap();
+        // hashes of the serialized payloads, without position; absent
+        // until a rendering compared the element
+        private final Map<String, Long> deviceHashes = Maps.newHashMap();
+        private final Map<String, Long> linkHashes = Maps.newHashMap();
+        // rendered inner layers, by TE node id
+        private final Map<String, NetworkModel> inner = Maps.newLinkedHashMap();
+        // shapes of the TE nodes and TE links, by id
+        private final Map<String, Shape> nodeShapes = Maps.newHashMap();
+        private final Map<String, Shape> linkShapes = Maps.newHashMap();
+        // adjacency of the network, over both layers
+        private TeTopoUiGraph graph = TeTopoUiGraph.EMPTY;
+        // TE links of the network
+        private TeTopoUiPathGraph paths = TeTopoUiPathGraph.EMPTY;
+        // supporting nodes and connectivity matrices of all TE nodes,
+        // rendered or not
+        private int supportingNodes;
+        private int matrices;
+
+        private boolean shows(String id, boolean device) {
+            return (device ? devices : links).containsKey(id);
+        }
+
+        // Adds the elements and counts of a rendered range; elements
+        // already present keep their place.
+        private void merge(NetworkModel part) {
+            devices.putAll(part.devices);
+            links.putAll(part.links);
+            deviceHashes.putAll(part.deviceHashes);
+            linkHashes.putAll(part.linkHashes);
+            inner.putAll(part.inner);
+            nodeShapes.putAll(part.nodeShapes);
+            linkShapes.putAll(part.linkShapes);
+            supportingNodes += part.supportingNodes;
+            matrices += part.matrices;
+        }
+
+        // Replaces the elements of one part of the network by those of its
+        // new rendering.
+        private void replace(NetworkModel prev, NetworkModel next) {
+            for (String id : prev.nodeShapes.keySet()) {
+                devices.remove(id);
+                deviceHashes.remove(id);
+                inner.remove(id);
+                nodeShapes.remove(id);
+            }
+            for (String id : prev.linkShapes.keySet()) {
+                links.remove(id);
+                linkHashes.remove(id);
+                linkShapes.remove(id);
+            }
+            merge(next);
+            supportingNodes -= prev.supportingNodes;
+            matrices -= prev.matrices;
+        }
+
+        // Takes over the rendering of a TE node from another model, if it
+        // has one.
+        private void take(NetworkModel from, String nodeId) {
+            Shape shape = from.nodeShapes.get(nodeId);
+            if (shape == null) {
+                return;
+            }
+            devices.put(nodeId, from.devices.get(nodeId));
+            Long hash = from.deviceHashes.get(nodeId);
+            if (hash != null) {
+                deviceHashes.put(nodeId, hash);
+            }
+            NetworkModel layer = from.inner.get(nodeId);
+            if (layer != null) {
+                inner.put(nodeId, layer);
+            }
+            nodeShapes.put(nodeId, shape);
+            supportingNodes += shape.supporting;
+            matrices += shape.matrices;
+        }
+
+        // Takes over the rendering of a TE link from another model, if it
+        // has one.
+        private void takeLink(NetworkModel from, String linkId) {
+            Shape shape = from.linkShapes.get(linkId);
+            if (shape != null) {
+                links.put(linkId, from.links.get(linkId));
+                Long hash = from.linkHashes.get(linkId);
+                if (hash != null) {
+                    linkHashes.put(linkId, hash);
+                }
+                linkShapes.put(linkId, shape);
+            }
+        }
+
+        // Records the shape of a TE node and counts its inner layer
+        // elements.
+        private void shape(DefaultNetworkNode node) {
+            Shape shape = Shape.of(node);
+            nodeShapes.put(node.nodeId().toString(), shape);
+            supportingNodes += shape.supporting;
+            matrices += shape.matrices;
+        }
+
+        // Records the shape of a TE link.
+        private void shape(String linkId, NetworkLink networkLink) {
+            linkShapes.put(linkId, Shape.of(linkId, networkLink));
+        }
+
+        // Adds a device, reusing its previous payload if it is unchanged;
+        // the device is positioned once the rendering is installed.
+        private void addDevice(Device device, TeTopoJsonWriter writer, NetworkModel previous) {
+            String id = device.id().toString();
+            ObjectNode old = previous.devices.get(id);
+            if (old == null) {
+                devices.put(id, TeTopoJson.layerDevice(device));
+                return;
+            }
+            long hash = writer.layerDeviceHash(device);
+            Long oldHash = previous.deviceHashes.get(id);
+            if (oldHash == null) {
+                oldHash = TeTopoJsonWriter.hash(old, META_UI);
+            }
+            devices.put(id, hash == oldHash ? old : TeTopoJson.layerDevice(device));
+            deviceHashes.put(id, hash);
+        }
+
+        // Adds a link rendered as a payload tree, reusing its previous
+        // payload if it is equal.
+        private void addLink(String id, ObjectNode payload, NetworkModel previous) {
+            ObjectNode old = previous.links.get(id);
+            links.put(id, payload.equals(old) ? old : payload);
+        }
+
+        // Adds a link, reusing its previous payload if it is unchanged.
+        private void addLink(Link link, TeTopoJsonWriter writer, NetworkModel previous) {
+            String id = compactLinkString(link);
+            ObjectNode old = previous.links.get(id);
+            if (old == null) {
+                links.put(id, TeTopoJson.link(link));
+                return;
+            }
+            long hash = writer.linkHash(link);
+            Long oldHash = previous.linkHashes.get(id);
+            if (oldHash == null) {
+                oldHash = TeTopoJsonWriter.hash(old, null);
+            }
+            links.put(id, hash == oldHash ? old : TeTopoJson.link(link));
+            linkHashes.put(id, hash);
+        }
+    }
+
+    // Rendering of a range of the TE nodes or TE links of a network, with
+    // what the range adds to the adjacency and the TE links of the
+    // network, in order.
+    private static final class Chunk {
+        private final NetworkModel model = new NetworkModel();
+        // TE nodes of the range
+        private final List<DefaultNetworkNode> nodes = Lists.newArrayList();
+        // links from the TE nodes of the range to their supporting nodes
+        private final List<Link> members = Lists.newArrayList();
+        // connectivity matrices of the TE nodes, or TE links, of the range
+        private final List<Link> links = Lists.newArrayList();
+        // TE links of the range, matching the first links
+        private final List<NetworkLink> teLinks = Lists.newArrayList();
+    }
+
+    // What of a TE node or TE link the adjacency and TE links of its
+    // network are built from, as a hash, along with the number of inner
+    // layer elements of a TE node and the bandwidth of a TE link, which
+    // the hash covers.
+    private static final class Shape {
+        private final int hash;
+        private final int supporting;
+        private final int matrices;
+        private final double bandwidth;
+
+        private Shape(int hash, int supporting, int matrices, double bandwidth) {
+            this.hash = hash;
+            this.supporting = supporting;
+            this.matrices = matrices;
+            this.bandwidth = bandwidth;
+        }
+
+        private static Shape of(DefaultNetworkNode node) {
+            List<NetworkNodeKey> supportingIds = node.getSupportingNodeIds();
+            TeNode te = node.getTe();
+            List<ConnectivityMatrix> matrixList = te != null ? te.connectivityMatrices() : null;
+            int hash = 1;
+            if (supportingIds != null) {
+                for (NetworkNodeKey key : supportingIds) {
+                    hash = 31 * hash + key.nodeId().toString().hashCode();
+                }
+            }
+            if (matrixList != null) {
+                for (ConnectivityMatrix matrix : matrixList) {
+                    hash = 31 * hash + Objects.hash(matrix.from().nodeId().toString(),
+                                                    tpId(matrix.from()),
+                                                    matrix.to().nodeId().toString(),
+                                                    tpId(matrix.to()), matrix.isAllowed());
+                }
+            }
+            return new Shape(hash, supportingIds != null ? supportingIds.size() : 0,
+                             matrixList != null ? matrixList.size() : 0, 0);
+        }
+
+        private static Shape of(String linkId, NetworkLink networkLink) {
+            TeLink te = teOf(networkLink);
+            double bandwidth = te != null ? te.maxLinkBandwidth() : 0;
+            return new Shape(Objects.hash(linkId, tpId(networkLink.getSource()),
+                                          tpId(networkLink.getDestination()),
+                                          te != null ? te.teDefaultMetric() : 0,
+                                          bandwidth), 0, 0, bandwidth);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Shape)) {
+                return false;
+            }
+            Shape that = (Shape) obj;
+            return hash == that.hash && supporting == that.supporting &&
+                    matrices == that.matrices;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hash, supporting, matrices);
+        }
+    }
+
+    // TE topology changes waiting for the model updater, by network key;
+    // guarded by itself.
+    private static final class Pending {
+        // whether a change was not about a known kind of element
+        private boolean all;
+        // whether the model updater is due to apply the changes
+        private boolean scheduled;
+        private final Set<String> networks = Sets.newLinkedHashSet();
+        private final SetMultimap<String, String> nodes = LinkedHashMultimap.create();
+        private final SetMultimap<String, String> links = LinkedHashMultimap.create();
+        // TE nodes whose network the change did not tell
+        private final Set<String> looseNodes = Sets.newLinkedHashSet();
+
+        private void clear() {
+            all = false;
+            scheduled = false;
+            networks.clear();
+            nodes.clear();
+            links.clear();
+            looseNodes.clear();
+        }
+    }
+
+    // TE topology listener; queues the change for the model updater,
+    // which applies it off the event dispatch thread along with the other
+    // changes queued by then.
+    private class InternalTeTopologyListener implements TeTopologyListener {
+        @Override
+        public void event(TeTopologyEvent event) {
+            Object subject = event.subject();
+            synchronized (pending) {
+                if (subject instanceof Network) {
+                    pending.networks.add(((Network) subject).networkId().toString());
+                } else if (subject instanceof NetworkLink &&
+                        ((NetworkLink) subject).getSource() != null) {
+                    NetworkLink networkLink = (NetworkLink) subject;
+                    pending.links.put(networkLink.getSource().networkId().toString(),
+                                      compactLinkString(createTeLink(networkLink)));
+                } else if (subject instanceof NetworkNodeKey) {
+                    // termination points too, through their node
+                    NetworkNodeKey key = (NetworkNodeKey) subject;
+                    pending.nodes.put(key.networkId().toString(), key.nodeId().toString());
+                } else if (subject instanceof ConnectivityMatrix &&
+                        ((ConnectivityMatrix) subject).from() != null) {
+                    // held by the TE node of its supporting nodes
+                    TerminationPointKey from = ((ConnectivityMatrix) subject).from();
+                    pending.nodes.put(from.networkId().toString(), from.nodeId().toString());
+                } else if (subject instanceof NetworkNode) {
+                    pending.looseNodes.add(((NetworkNode) subject).nodeId().toString());
+                } else {
+                    pending.all = true;
+                }
+                if (!pending.scheduled) {
+                    pending.scheduled = true;
+                    modelUpdater.execute(TeTopoUiModelCache.this::applyPending);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onosproject.event.AbstractEvent;
+
+/**
+ * Describes a change of one element of the TE topology view model.
+ * The subject is the rendered payload of the element; for removals it
+ * is the last payload that was shown.
+ * <p>
+ * Elements of the inner layer of a TE node carry the id of that node as
+ * their parent, so that the change reaches only views that expanded it.
+ * Events posted by the model cache carry the sequence number under which
+ * it logged them.
+ */
+public class TeTopoUiModelEvent extends AbstractEvent<TeTopoUiModelEvent.Type, ObjectNode> {
+
+    /**
+     * Type of view model change.
+     */
+    public enum Type {
+        DEVICE_ADDED("addDevice"),
+        DEVICE_UPDATED("updateDevice"),
+        DEVICE_REMOVED("removeDevice"),
+        LINK_ADDED("addLink"),
+        LINK_UPDATED("updateLink"),
+        LINK_REMOVED("removeLink");
+
+        private final String messageType;
+
+        Type(String messageType) {
+            this.messageType = messageType;
+        }
+
+        /**
+         * Returns the type of the view message carrying this change.
+         *
+         * @return message type
+         */
+        public String messageType() {
+            return messageType;
+        }
+    }
+
+    private final String parent;
+    private final long sequence;
+
+    /**
+     * Creates a view model event for an upper layer element.
+     *
+     * @param type    event type
+     * @param payload rendered element payload
+     */
+    public TeTopoUiModelEvent(Type type, ObjectNode payload) {
+        this(type, payload, null);
+    }
+
+    /**
+     * Creates a view model event.
+     *
+     * @param type    event type
+     * @param payload rendered element payload
+     * @param parent  id of the TE node whose inner layer holds the element,
+     *                or null for an upper layer element
+     */
+    public TeTopoUiModelEvent(Type type, ObjectNode payload, String parent) {
+        this(type, payload, parent, 0);
+    }
+
+    /**
+     * Creates a sequenced view model event.
+     *
+     * @param type     event type
+     * @param payload  rendered element payload
+     * @param parent   id of the TE node whose inner layer holds the
+     *                 element, or null for an upper layer element
+     * @param sequence sequence number of the change, 0 if unsequenced
+     */
+    public TeTopoUiModelEvent(Type type, ObjectNode payload, String parent, long sequence) {
+        super(type, payload);
+        this.parent = parent;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the id of the changed element.
+     *
+     * @return element id
+     */
+    public String id() {
+        return subject().get("id").asText();
+    }
+
+    /**
+     * Returns the id of the TE node whose inner layer holds the element.
+     *
+     * @return parent TE node id, or null for an upper layer element
+     */
+    public String parent() {
+        return parent;
+    }
+
+    /**
+     * Returns the sequence number of the change in the model cache's
+     * event log.
+     *
+     * @return sequence number, 0 if the event was not logged
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns a copy of this event carrying the given sequence number.
+     *
+     * @param sequence sequence number
+     * @return sequenced event
+     */
+    public TeTopoUiModelEvent sequenced(long sequence) {
+        return new TeTopoUiModelEvent(type(), subject(), parent, sequence);
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSet;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.link.LinkEvent;
+import org.onosproject.net.link.LinkListener;
+import org.onosproject.net.link.LinkService;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.onosproject.net.device.DeviceEvent.Type.PORT_STATS_UPDATED;
+
+/**
+ * Views of closed TE topo view sessions, kept for a short while so that
+ * a client reconnecting with the same view token can resume where its
+ * previous session stopped instead of loading the whole topology again.
+ * A parked view is handed out at most once.
+ * <p>
+ * Views dropped without being handed out, once expired, evicted or
+ * replaced, are passed to a callback so that what they hold can be
+ * released. Expired views are dropped on later accesses to the store.
+ * <p>
+ * The view model event log a resumed view catches up from does not
+ * record core device and link changes, so the store counts those: a
+ * view that stopped listening, whether parked or paused, missed some if
+ * the count moved in the meantime.
+ */
+public class TeTopoUiParkedViews {
+
+    // maximum number of views parked at once
+    private static final int MAX_PARKED = 1000;
+
+    private final Cache<String, View> views;
+
+    private final DeviceService deviceService;
+    private final LinkService linkService;
+
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+    private final LinkListener linkListener = new InternalLinkListener();
+
+    // number of core device and link changes seen so far
+    private final AtomicLong coreChanges = new AtomicLong();
+
+    /**
+     * Creates a parked view store.
+     *
+     * @param ttlMs time a view stays parked, in milliseconds
+     */
+    public TeTopoUiParkedViews(int ttlMs) {
+        this(ttlMs, view -> {
+        }, null, null);
+    }
+
+    /**
+     * Creates a parked view store notifying views dropped without being
+     * handed out, and counting the core device and link changes of the
+     * given services once activated.
+     *
+     * @param ttlMs         time a view stays parked, in milliseconds
+     * @param dropped       callback given each view dropped without being
+     *                      handed out
+     * @param deviceService device service, or null to count no changes
+     * @param linkService   link service, or null to count no changes
+     */
+    public TeTopoUiParkedViews(int ttlMs, Consumer<View> dropped,
+                               DeviceService deviceService, LinkService linkService) {
+        this.deviceService = deviceService;
+        this.linkService = linkService;
+        this.views = CacheBuilder.newBuilder()
+                .maximumSize(MAX_PARKED)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .removalListener((RemovalNotification<String, View> removal) -> {
+                    if (removal.getCause() != RemovalCause.EXPLICIT) {
+                        dropped.accept(removal.getValue());
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Starts counting core device and link changes.
+     */
+    public void activate() {
+        if (deviceService != null && linkService != null) {
+            deviceService.addListener(deviceListener);
+            linkService.addListener(linkListener);
+        }
+    }
+
+    /**
+     * Stops counting core changes and drops every parked view, without
+     * notifying them.
+     */
+    public void deactivate() {
+        if (deviceService != null && linkService != null) {
+            linkService.removeListener(linkListener);
+            deviceService.removeListener(deviceListener);
+        }
+        clear();
+    }
+
+    /**
+     * Returns the number of core device and link changes seen so far.
+     *
+     * @return core change count
+     */
+    public long coreChanges() {
+        return coreChanges.get();
+    }
+
+    /**
+     * Indicates whether core device or link changes happened since the
+     * given view was parked; the view model event log does not record
+     * them.
+     *
+     * @param view parked view
+     * @return true if the view missed core changes
+     */
+    public boolean missedCoreChanges(View view) {
+        return coreChanges.get() != view.coreChanges;
+    }
+
+    /**
+     * Parks the view of a closing session that listened to core changes
+     * until now.
+     *
+     * @param token view token of the client
+     * @param view  what the client was shown
+     */
+    public void park(String token, View view) {
+        park(token, view, coreChanges.get());
+    }
+
+    /**
+     * Parks the view of a closing session that stopped listening to core
+     * changes earlier, such as a paused session.
+     *
+     * @param token       view token of the client
+     * @param view        what the client was shown
+     * @param coreChanges core change count when the session stopped
+     *                    listening
+     */
+    public void park(String token, View view, long coreChanges) {
+        view.coreChanges = coreChanges;
+        views.put(token, view);
+        views.cleanUp();
+    }
+
+    /**
+     * Takes the parked view of a reconnecting client.
+     *
+     * @param token view token of the client
+     * @return parked view, or null if none is parked under the token
+     */
+    public View take(String token) {
+        return views.asMap().remove(token);
+    }
+
+    /**
+     * Drops every parked view, without notifying them.
+     */
+    public void clear() {
+        views.invalidateAll();
+    }
+
+    /**
+     * What the client of a closed session was shown.
+     */
+    public static final class View {
+        private final long mark;
+        private final TeTopoUiViewport viewport;
+        private final Set<String> expanded;
+
+        // core change count when the session stopped listening
+        private volatile long coreChanges;
+
+        /**
+         * Creates a parked view.
+         *
+         * @param mark     last snapshot mark sent to the client
+         * @param viewport what a paged client was sent, or null
+         * @param expanded TE nodes whose inner layer the client expanded
+         */
+        View(long mark, TeTopoUiViewport viewport, Set<String> expanded) {
+            this.mark = mark;
+            this.viewport = viewport;
+            this.expanded = ImmutableSet.copyOf(expanded);
+        }
+
+        /**
+         * Returns the last snapshot mark sent to the client; the client
+         * received every snapshot only if it reports the same mark.
+         *
+         * @return snapshot mark
+         */
+        public long mark() {
+            return mark;
+        }
+
+        /**
+         * Returns what a paged client was sent.
+         *
+         * @return viewport, or null if the client got the whole topology
+         */
+        TeTopoUiViewport viewport() {
+            return viewport;
+        }
+
+        /**
+         * Returns the TE nodes whose inner layer the client expanded; the
+         * view holds one model cache expansion of each.
+         *
+         * @return expanded TE node ids
+         */
+        public Set<String> expanded() {
+            return expanded;
+        }
+    }
+
+    private class InternalDeviceListener implements DeviceListener {
+        @Override
+        public void event(DeviceEvent event) {
+            if (event.type() != PORT_STATS_UPDATED) {
+                coreChanges.incrementAndGet();
+            }
+        }
+    }
+
+    private class InternalLinkListener implements LinkListener {
+        @Override
+        public void event(LinkEvent event) {
+            coreChanges.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onosproject.net.Link;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.onosproject.ui.topo.TopoUtils.compactLinkString;
+
+/**
+ * Directed TE links of one network, with their TE metric, bandwidth and
+ * termination points, and the connectivity matrices restricting which
+ * termination points of a TE node traffic may cross between.
+ * <p>
+ * Nodes and termination points are interned to ints when the graph is
+ * built, the links leaving a node being a contiguous run of one shared
+ * int array. Paths are searched with Dijkstra's algorithm over the links
+ * rather than the nodes, so that a link may only follow another where
+ * the connectivity matrices of the node between them allow; the search
+ * keeps its labels and its binary heap in the int and long arrays of a
+ * caller-owned {@link Search}. The graph is immutable, so sessions share
+ * it without locking.
+ */
+final class TeTopoUiPathGraph {
+
+    /**
+     * Graph without nodes.
+     */
+    static final TeTopoUiPathGraph EMPTY = builder().build();
+
+    /**
+     * Index of no node or link.
+     */
+    static final int NONE = -1;
+
+    // heap position of a link whose label is final
+    private static final int SETTLED = -2;
+
+    // bits of the heap key of a label given to the hop count when paths
+    // are compared on metric first, and to the metric otherwise
+    private static final int KEY_HOPS_BITS = 20;
+    private static final int KEY_METRIC_BITS = 43;
+    private static final long MAX_KEY_HOPS = (1L << KEY_HOPS_BITS) - 1;
+    private static final long MAX_KEY_METRIC = (1L << KEY_METRIC_BITS) - 1;
+
+    // node id -> node index
+    private final Map<String, Integer> index;
+    private final String[] nodes;
+
+    // directed links, by link index
+    private final String[] linkIds;
+    private final int[] linkSrc;
+    private final int[] linkDst;
+    private final int[] srcTps;
+    private final int[] dstTps;
+    private final long[] metrics;
+    private final double[] bandwidths;
+
+    // links leaving node v are out[outOffsets[v]] to out[outOffsets[v + 1] - 1]
+    private final int[] outOffsets;
+    private final int[] out;
+
+    // allowed crossings of node v, as sorted (from tp << 32 | to tp) keys
+    // in matrix[matrixOffsets[v]] to matrix[matrixOffsets[v + 1] - 1];
+    // crossing a node without connectivity matrices is unrestricted
+    private final int[] matrixOffsets;
+    private final long[] matrix;
+    private final boolean[] restricted;
+
+    private TeTopoUiPathGraph(Builder builder) {
+        index = builder.index;
+        nodes = builder.nodes.toArray(new String[builder.nodes.size()]);
+        linkIds = builder.linkIds.toArray(new String[builder.linkIds.size()]);
+        int n = nodes.length;
+        int m = linkIds.length;
+        linkSrc = Arrays.copyOf(builder.linkSrc, m);
+        linkDst = Arrays.copyOf(builder.linkDst, m);
+        srcTps = Arrays.copyOf(builder.srcTps, m);
+        dstTps = Arrays.copyOf(builder.dstTps, m);
+        metrics = Arrays.copyOf(builder.metrics, m);
+        bandwidths = Arrays.copyOf(builder.bandwidths, m);
+
+        outOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            outOffsets[linkSrc[e] + 1]++;
+        }
+        prefixSums(outOffsets);
+        out = new int[m];
+        int[] next = Arrays.copyOf(outOffsets, n);
+        for (int e = 0; e < m; e++) {
+            out[next[linkSrc[e]]++] = e;
+        }
+
+        int c = builder.crossingCount;
+        matrixOffsets = new int[n + 1];
+        restricted = new boolean[n];
+        for (int i = 0; i < c; i++) {
+            restricted[builder.crossingNodes[i]] = true;
+            if (builder.crossings[i] != NONE) {
+                matrixOffsets[builder.crossingNodes[i] + 1]++;
+            }
+        }
+        prefixSums(matrixOffsets);
+        matrix = new long[matrixOffsets[n]];
+        next = Arrays.copyOf(matrixOffsets, n);
+        for (int i = 0; i < c; i++) {
+            if (builder.crossings[i] != NONE) {
+                matrix[next[builder.crossingNodes[i]]++] = builder.crossings[i];
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            Arrays.sort(matrix, matrixOffsets[v], matrixOffsets[v + 1]);
+        }
+    }
+
+    private static void prefixSums(int[] offsets) {
+        for (int v = 1; v < offsets.length; v++) {
+            offsets[v] += offsets[v - 1];
+        }
+    }
+
+    /**
+     * Returns a builder of graphs.
+     *
+     * @return graph builder
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the index of a node.
+     *
+     * @param id node id
+     * @return node index, or {@link #NONE} if the graph lacks the node
+     */
+    int node(String id) {
+        Integer v = index.get(id);
+        return v != null ? v : NONE;
+    }
+
+    /**
+     * Returns the number of directed links.
+     *
+     * @return number of links
+     */
+    int linkCount() {
+        return linkIds.length;
+    }
+
+    /**
+     * Finds the best path between two nodes that meets the given
+     * constraints, leaving it in the search. Paths are compared on their
+     * TE metric, or on their hop count, the other breaking ties. Every
+     * link of the path has at least the required bandwidth, and every
+     * node it crosses lets it through. As the labels are set link by
+     * link, a hop or metric limit drops the paths extending a best prefix
+     * that exceeds it rather than looking for a worse prefix within it.
+     *
+     * @param src         source node id
+     * @param dst         destination node id
+     * @param byHops      whether paths are compared on hop count first
+     * @param maxHops     maximum number of links, 0 for any
+     * @param maxMetric   maximum TE metric, 0 for any
+     * @param minBandwidth bandwidth every link must have, 0 for any
+     * @param search      search the path is left in
+     * @return false if no path meets the constraints
+     */
+    boolean path(String src, String dst, boolean byHops, int maxHops, long maxMetric,
+                 double minBandwidth, Search search) {
+        search.reset(this);
+        int from = node(src);
+        int to = node(dst);
+        if (from == NONE || to == NONE || from == to) {
+            return false;
+        }
+        search.byHops = byHops;
+        search.maxHops = maxHops > 0 ? maxHops : Integer.MAX_VALUE;
+        search.maxMetric = maxMetric > 0 ? maxMetric : Long.MAX_VALUE;
+        search.minBandwidth = minBandwidth;
+
+        for (int i = outOffsets[from]; i < outOffsets[from + 1]; i++) {
+            int f = out[i];
+            search.relax(f, NONE, metrics[f], 1);
+        }
+        while (search.heapSize > 0) {
+            int e = search.pop();
+            int v = linkDst[e];
+            if (v == to) {
+                search.trace(e);
+                return true;
+            }
+            for (int i = outOffsets[v]; i < outOffsets[v + 1]; i++) {
+                int f = out[i];
+                if (crosses(v, dstTps[e], srcTps[f])) {
+                    search.relax(f, e, search.metrics[e] + metrics[f], search.hops[e] + 1);
+                }
+            }
+        }
+        return false;
+    }
+
+    // Returns whether traffic entering a node at one termination point may
+    // leave it at another.
+    private boolean crosses(int v, int in, int out) {
+        return !restricted[v] || Arrays.binarySearch(matrix, matrixOffsets[v], matrixOffsets[v + 1],
+                                                     crossing(in, out)) >= 0;
+    }
+
+    private static long crossing(int in, int out) {
+        return ((long) in << 32) | (out & 0xffffffffL);
+    }
+
+    /**
+     * Reusable labels, heap and result of path searches. Not thread-safe;
+     * each session keeps its own.
+     */
+    static final class Search {
+        // links labelled carry the current stamp
+        private int[] stamps = new int[0];
+        private int stamp = 0;
+        // best label of each link: metric and hops from the source, and
+        // the link before it
+        private long[] metrics = new long[0];
+        private int[] hops = new int[0];
+        private int[] previous = new int[0];
+        // binary min-heap of labelled links and of their keys, and each
+        // link's position in it, SETTLED once popped
+        private int[] heap = new int[0];
+        private long[] keys = new long[0];
+        private int[] positions = new int[0];
+        private int heapSize;
+        // links of the path found, from the source
+        private int[] path = new int[0];
+        private int pathLength;
+        private TeTopoUiPathGraph graph = EMPTY;
+
+        private boolean byHops;
+        private int maxHops;
+        private long maxMetric;
+        private double minBandwidth;
+
+        /**
+         * Returns the number of links of the path found.
+         *
+         * @return number of links, 0 if none was found
+         */
+        int linkCount() {
+            return pathLength;
+        }
+
+        /**
+         * Returns the id of a link of the path found.
+         *
+         * @param i position of the link, from the source
+         * @return link id
+         */
+        String linkId(int i) {
+            return graph.linkIds[path[i]];
+        }
+
+        /**
+         * Returns the id of a node of the path found; the source comes
+         * first, followed by the destination node of each link.
+         *
+         * @param i position of the node, at most the number of links
+         * @return node id
+         */
+        String nodeId(int i) {
+            return graph.nodes[i == 0 ? graph.linkSrc[path[0]] : graph.linkDst[path[i - 1]]];
+        }
+
+        /**
+         * Returns the TE metric of the path found.
+         *
+         * @return sum of the TE metrics of its links
+         */
+        long metric() {
+            return pathLength > 0 ? metrics[path[pathLength - 1]] : 0;
+        }
+
+        // Forgets the previous search, growing to the size of the graph.
+        private void reset(TeTopoUiPathGraph graph) {
+            this.graph = graph;
+            int m = graph.linkCount();
+            if (stamps.length < m) {
+                stamps = new int[m];
+                metrics = new long[m];
+                hops = new int[m];
+                previous = new int[m];
+                heap = new int[m];
+                keys = new long[m];
+                positions = new int[m];
+                path = new int[m];
+                stamp = 0;
+            }
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            heapSize = 0;
+            pathLength = 0;
+        }
+
+        // Labels a link with the given path to it, if that path meets the
+        // constraints and beats the link's current label.
+        private void relax(int f, int before, long metric, int hopCount) {
+            if (hopCount > maxHops || metric > maxMetric ||
+                    minBandwidth > 0 && graph.bandwidths[f] < minBandwidth) {
+                return;
+            }
+            long key = key(metric, hopCount);
+            if (stamps[f] == stamp) {
+                if (positions[f] == SETTLED || key >= keys[positions[f]]) {
+                    return;
+                }
+            } else {
+                stamps[f] = stamp;
+                positions[f] = heapSize++;
+            }
+            metrics[f] = metric;
+            hops[f] = hopCount;
+            previous[f] = before;
+            up(positions[f], f, key);
+        }
+
+        // Orders labels on metric then hops, or on hops then metric, as
+        // one long; metrics beyond 2^43 or hop counts beyond 2^20 saturate.
+        private long key(long metric, int hopCount) {
+            long m = Math.min(metric, MAX_KEY_METRIC);
+            long h = Math.min(hopCount, MAX_KEY_HOPS);
+            return byHops ? h << KEY_METRIC_BITS | m : m << KEY_HOPS_BITS | h;
+        }
+
+        private int pop() {
+            int top = heap[0];
+            positions[top] = SETTLED;
+            if (--heapSize > 0) {
+                down(heap[heapSize], keys[heapSize]);
+            }
+            return top;
+        }
+
+        // Sifts a link up from the given position of the heap.
+        private void up(int i, int e, long key) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                keys[i] = keys[parent];
+                positions[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = e;
+            keys[i] = key;
+            positions[e] = i;
+        }
+
+        // Sifts a link down from the top of the heap.
+        private void down(int e, long key) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                heap[i] = heap[child];
+                keys[i] = keys[child];
+                positions[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = e;
+            keys[i] = key;
+            positions[e] = i;
+        }
+
+        // Records the path ending with the given link.
+        private void trace(int e) {
+            pathLength = hops[e];
+            for (int i = pathLength - 1; i >= 0; i--) {
+                path[i] = e;
+                e = previous[e];
+            }
+        }
+    }
+
+    /**
+     * Builder of graphs; nodes and termination points are interned as
+     * they are first named.
+     */
+    static final class Builder {
+        private final Map<String, Integer> index = Maps.newHashMap();
+        private final List<String> nodes = Lists.newArrayList();
+        private final Map<String, Integer> tps = Maps.newHashMap();
+        private final List<String> linkIds = Lists.newArrayList();
+
+        private int[] linkSrc = new int[16];
+        private int[] linkDst = new int[16];
+        private int[] srcTps = new int[16];
+        private int[] dstTps = new int[16];
+        private long[] metrics = new long[16];
+        private double[] bandwidths = new double[16];
+
+        // node and (from tp << 32 | to tp) key of each allowed crossing;
+        // NONE keys only mark the node as restricted
+        private int[] crossingNodes = new int[16];
+        private long[] crossings = new long[16];
+        private int crossingCount;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a node, unless already added.
+         *
+         * @param id node id
+         * @return node index
+         */
+        int node(String id) {
+            Integer v = index.get(id);
+            if (v == null) {
+                v = nodes.size();
+                index.put(id, v);
+                nodes.add(id);
+            }
+            return v;
+        }
+
+        /**
+         * Adds a directed TE link, along with its end nodes.
+         *
+         * @param link      link, for its end nodes and id
+         * @param srcTp     termination point the link leaves its source at
+         * @param dstTp     termination point the link enters its
+         *                  destination at
+         * @param metric    TE metric, 0 if none is advertised, counting as 1
+         * @param bandwidth bandwidth, 0 if none is advertised
+         * @return this builder
+         */
+        Builder link(Link link, String srcTp, String dstTp, long metric, double bandwidth) {
+            int e = linkIds.size();
+            if (e == linkSrc.length) {
+                int size = 2 * e;
+                linkSrc = Arrays.copyOf(linkSrc, size);
+                linkDst = Arrays.copyOf(linkDst, size);
+                srcTps = Arrays.copyOf(srcTps, size);
+                dstTps = Arrays.copyOf(dstTps, size);
+                metrics = Arrays.copyOf(metrics, size);
+                bandwidths = Arrays.copyOf(bandwidths, size);
+            }
+            linkIds.add(compactLinkString(link));
+            linkSrc[e] = node(link.src().deviceId().toString());
+            linkDst[e] = node(link.dst().deviceId().toString());
+            srcTps[e] = tp(srcTp);
+            dstTps[e] = tp(dstTp);
+            metrics[e] = Math.max(1, metric);
+            bandwidths[e] = bandwidth;
+            return this;
+        }
+
+        /**
+         * Adds a connectivity matrix entry of a node. Once a node has an
+         * entry, traffic crosses it only between the termination points of
+         * its allowed entries.
+         *
+         * @param id      node id
+         * @param fromTp  termination point traffic enters the node at
+         * @param toTp    termination point traffic leaves the node at
+         * @param allowed whether traffic may cross
+         * @return this builder
+         */
+        Builder matrix(String id, String fromTp, String toTp, boolean allowed) {
+            if (crossingCount == crossings.length) {
+                crossingNodes = Arrays.copyOf(crossingNodes, 2 * crossingCount);
+                crossings = Arrays.copyOf(crossings, 2 * crossingCount);
+            }
+            crossingNodes[crossingCount] = node(id);
+            crossings[crossingCount++] = allowed ? crossing(tp(fromTp), tp(toTp)) : NONE;
+            return this;
+        }
+
+        /**
+         * Builds the graph.
+         *
+         * @return graph
+         */
+        TeTopoUiPathGraph build() {
+            return new TeTopoUiPathGraph(this);
+        }
+
+        private int tp(String id) {
+            Integer tp = tps.get(id);
+            if (tp == null) {
+                tp = tps.size();
+                tps.put(id, tp);
+            }
+            return tp;
+        }
+    }
+}
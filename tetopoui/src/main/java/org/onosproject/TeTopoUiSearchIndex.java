@@ -0,0 +1,451 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Search index over the upper layer TE nodes and links of the view model,
+ * kept current from its events.
+ * <p>
+ * The ids of the elements, and the names and {@code LAYER_MASTER} parents
+ * of the nodes, are indexed by their trigrams, and by the one and two
+ * character prefixes of their words; node annotations are indexed by
+ * key/value pair. Elements are numbered in the order they are indexed,
+ * so every posting list is sorted; a changed element is indexed anew and
+ * its old entries are dropped when the index is compacted. A query walks
+ * the shortest posting list among its terms, checking each candidate
+ * against every term.
+ */
+public class TeTopoUiSearchIndex {
+
+    private static final int GRAM = 3;
+    private static final String PREFIX = "^";
+    private static final String PROPS = "props";
+    private static final String NAME = "name";
+
+    // points per term by how well it matches a field
+    private static final int EXACT = 4;
+    private static final int FIELD_PREFIX = 3;
+    private static final int WORD_PREFIX = 2;
+    private static final int SUBSTRING = 1;
+
+    private final TeTopoUiModelCache modelCache;
+    private final TeTopoUiModelListener modelListener = new InternalModelListener();
+
+    // indexed elements, by number; null once changed or removed; guarded
+    // by this
+    private Entry[] entries = new Entry[64];
+    private int entryCount = 0;
+    private int liveCount = 0;
+    private final Map<String, Integer> numbers = Maps.newHashMap();
+    // gram or key=value pair -> numbers of the elements holding it
+    private final Map<String, Postings> grams = Maps.newHashMap();
+    private final Map<String, Postings> annotations = Maps.newHashMap();
+
+    /**
+     * Creates a search index of the given view model.
+     *
+     * @param modelCache shared TE topology view model
+     */
+    public TeTopoUiSearchIndex(TeTopoUiModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
+    /**
+     * Starts following the view model, indexing what it already holds.
+     */
+    public void activate() {
+        modelCache.addListener(modelListener);
+        synchronized (this) {
+            modelCache.devices().forEach(payload -> put(payload, false));
+            modelCache.links().forEach(payload -> put(payload, true));
+        }
+    }
+
+    /**
+     * Stops following the view model.
+     */
+    public void deactivate() {
+        modelCache.removeListener(modelListener);
+    }
+
+    /**
+     * Finds the elements matching every term of a query, best first.
+     * A term of the form {@code key=value} matches nodes annotated with
+     * that pair; any other term matches elements whose id, name or parent
+     * holds it, preferably as a whole or at the start. Case is ignored.
+     *
+     * @param query whitespace separated terms
+     * @param limit maximum number of matches returned
+     * @return matches
+     */
+    public synchronized Result search(String query, int limit) {
+        String[] terms = query.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        if (terms.length == 0 || terms[0].isEmpty() || limit <= 0) {
+            return new Result(ImmutableList.of(), 0);
+        }
+        Postings driver = null;
+        for (String term : terms) {
+            Postings postings = postings(term);
+            if (postings == null) {
+                return new Result(ImmutableList.of(), 0);
+            }
+            if (driver == null || postings.size < driver.size) {
+                driver = postings;
+            }
+        }
+
+        // keeps the best matches, worst on top
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, Match.ORDER.reversed());
+        int total = 0;
+        for (int i = 0; i < driver.size; i++) {
+            Entry entry = entries[driver.numbers[i]];
+            int score = entry != null ? entry.score(terms) : 0;
+            if (score > 0) {
+                total++;
+                // most candidates score below the worst kept match
+                if (best.size() == limit && score < best.peek().score) {
+                    continue;
+                }
+                best.add(new Match(entry, score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        List<Match> matches = Lists.newArrayList(best);
+        matches.sort(Match.ORDER);
+        return new Result(matches, total);
+    }
+
+    // Returns the posting list a term's matches are all on, null if none
+    // can match.
+    private Postings postings(String term) {
+        if (term.indexOf('=') > 0) {
+            return annotations.get(term);
+        }
+        if (term.length() < GRAM) {
+            return grams.get(PREFIX + term);
+        }
+        Postings shortest = null;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            Postings postings = grams.get(term.substring(i, i + GRAM));
+            if (postings == null) {
+                return null;
+            }
+            if (shortest == null || postings.size < shortest.size) {
+                shortest = postings;
+            }
+        }
+        return shortest;
+    }
+
+    // Indexes an element, dropping what was indexed for it before. Must be
+    // called with this held.
+    private void put(ObjectNode payload, boolean link) {
+        String id = payload.path("id").asText();
+        Entry entry = new Entry(payload, link);
+        Integer old = numbers.get(id);
+        if (old != null && entries[old].indexedAs(entry)) {
+            // only unindexed data, such as the position, changed
+            entries[old] = entry;
+            return;
+        }
+        drop(id);
+        int number = entryCount++;
+        if (number == entries.length) {
+            entries = Arrays.copyOf(entries, 2 * number);
+        }
+        entries[number] = entry;
+        numbers.put(id, number);
+        liveCount++;
+
+        Set<String> keys = Sets.newHashSet();
+        for (String field : entry.fields) {
+            grams(field, keys);
+        }
+        keys.forEach(key -> grams.computeIfAbsent(key, k -> new Postings()).add(number));
+        if (!link) {
+            Iterator<Map.Entry<String, JsonNode>> props = payload.path(PROPS).fields();
+            while (props.hasNext()) {
+                Map.Entry<String, JsonNode> prop = props.next();
+                String key = (prop.getKey() + "=" + prop.getValue().asText()).toLowerCase(Locale.ROOT);
+                annotations.computeIfAbsent(key, k -> new Postings()).add(number);
+            }
+        }
+    }
+
+    // Collects the trigrams of a field and the short prefixes of its words.
+    private static void grams(String field, Set<String> keys) {
+        for (int i = 0; i + GRAM <= field.length(); i++) {
+            keys.add(field.substring(i, i + GRAM));
+        }
+        for (int i = 0; i < field.length(); i++) {
+            if (i == 0 || !Character.isLetterOrDigit(field.charAt(i - 1))) {
+                for (int n = 1; n < GRAM && i + n <= field.length(); n++) {
+                    keys.add(PREFIX + field.substring(i, i + n));
+                }
+            }
+        }
+    }
+
+    // Must be called with this held.
+    private void drop(String id) {
+        Integer number = numbers.remove(id);
+        if (number == null) {
+            return;
+        }
+        entries[number] = null;
+        liveCount--;
+        if (entryCount > 1024 && liveCount < entryCount / 2) {
+            compact();
+        }
+    }
+
+    // Renumbers the live elements, indexing them anew. Must be called with
+    // this held.
+    private void compact() {
+        Entry[] live = Arrays.stream(entries, 0, entryCount)
+                .filter(e -> e != null).toArray(Entry[]::new);
+        entries = new Entry[Math.max(64, live.length * 2)];
+        entryCount = 0;
+        liveCount = 0;
+        numbers.clear();
+        grams.clear();
+        annotations.clear();
+        for (Entry entry : live) {
+            put(entry.payload, entry.link);
+        }
+    }
+
+    /**
+     * Elements matching a query, and how many matched in all.
+     */
+    public static final class Result {
+        private final List<Match> matches;
+        private final int total;
+
+        private Result(List<Match> matches, int total) {
+            this.matches = ImmutableList.copyOf(matches);
+            this.total = total;
+        }
+
+        /**
+         * Returns the best matches, best first.
+         *
+         * @return matches
+         */
+        public List<Match> matches() {
+            return matches;
+        }
+
+        /**
+         * Returns the number of elements that matched, returned or not.
+         *
+         * @return match count
+         */
+        public int total() {
+            return total;
+        }
+    }
+
+    /**
+     * Element matching a query.
+     */
+    public static final class Match {
+        private static final Comparator<Match> ORDER =
+                Comparator.comparingInt((Match m) -> -m.score)
+                        .thenComparingInt(m -> m.id().length())
+                        .thenComparing(Match::id);
+
+        private final Entry entry;
+        private final int score;
+
+        private Match(Entry entry, int score) {
+            this.entry = entry;
+            this.score = score;
+        }
+
+        /**
+         * Returns the id of the element.
+         *
+         * @return element id
+         */
+        public String id() {
+            return entry.payload.path("id").asText();
+        }
+
+        /**
+         * Returns whether the element is a link rather than a node.
+         *
+         * @return true for a link
+         */
+        public boolean isLink() {
+            return entry.link;
+        }
+
+        /**
+         * Returns the payload of the element, as in the view model.
+         *
+         * @return element payload
+         */
+        public ObjectNode payload() {
+            return entry.payload;
+        }
+
+        /**
+         * Returns how well the element matched; higher is better.
+         *
+         * @return score
+         */
+        public int score() {
+            return score;
+        }
+    }
+
+    // Indexed element, with its searchable fields in lower case: the id,
+    // and the name and parent of a node or the end nodes of a link.
+    private static final class Entry {
+        private final ObjectNode payload;
+        private final boolean link;
+        private final String[] fields;
+
+        private Entry(ObjectNode payload, boolean link) {
+            this.payload = payload;
+            this.link = link;
+            JsonNode props = payload.path(PROPS);
+            List<String> values = Lists.newArrayList(payload.path("id").asText());
+            if (link) {
+                values.add(payload.path("src").asText());
+                values.add(payload.path("dst").asText());
+            } else {
+                values.add(props.path(NAME).asText());
+                values.add(props.path(TeTopoJson.LAYER_MASTER).asText());
+            }
+            fields = values.stream().filter(v -> !v.isEmpty())
+                    .map(v -> v.toLowerCase(Locale.ROOT)).distinct().toArray(String[]::new);
+        }
+
+        // Returns whether both are indexed under the same keys.
+        private boolean indexedAs(Entry other) {
+            return link == other.link && Arrays.equals(fields, other.fields) &&
+                    payload.path(PROPS).equals(other.payload.path(PROPS));
+        }
+
+        // Returns how well the element matches every term, 0 if it misses
+        // one.
+        private int score(String[] terms) {
+            int score = 0;
+            for (String term : terms) {
+                int points = term.indexOf('=') > 0 ? annotated(term) : points(term);
+                if (points == 0) {
+                    return 0;
+                }
+                score += points;
+            }
+            return score;
+        }
+
+        private int annotated(String term) {
+            int eq = term.indexOf('=');
+            JsonNode value = payload.path(PROPS).get(term.substring(0, eq));
+            return value != null && value.asText().equalsIgnoreCase(term.substring(eq + 1)) ?
+                    SUBSTRING : 0;
+        }
+
+        private int points(String term) {
+            int points = 0;
+            for (String field : fields) {
+                if (field.equals(term)) {
+                    return EXACT;
+                } else if (field.startsWith(term)) {
+                    points = Math.max(points, FIELD_PREFIX);
+                } else if (wordStartsWith(field, term)) {
+                    points = Math.max(points, WORD_PREFIX);
+                } else if (term.length() >= GRAM && field.contains(term)) {
+                    points = Math.max(points, SUBSTRING);
+                }
+            }
+            return points;
+        }
+
+        private static boolean wordStartsWith(String field, String term) {
+            for (int i = field.indexOf(term, 1); i > 0; i = field.indexOf(term, i + 1)) {
+                if (!Character.isLetterOrDigit(field.charAt(i - 1))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Sorted numbers of the elements holding a gram or annotation.
+    private static final class Postings {
+        private int[] numbers = new int[4];
+        private int size;
+
+        private void add(int number) {
+            if (size == numbers.length) {
+                numbers = Arrays.copyOf(numbers, 2 * size);
+            }
+            numbers[size++] = number;
+        }
+    }
+
+    // Indexes upper layer changes; inner layers are only rendered for the
+    // TE nodes some view expanded.
+    private class InternalModelListener implements TeTopoUiModelListener {
+        @Override
+        public void event(TeTopoUiModelEvent event) {
+            if (event.parent() != null) {
+                return;
+            }
+            synchronized (TeTopoUiSearchIndex.this) {
+                switch (event.type()) {
+                    case DEVICE_ADDED:
+                    case DEVICE_UPDATED:
+                        put(event.subject(), false);
+                        break;
+                    case LINK_ADDED:
+                    case LINK_UPDATED:
+                        put(event.subject(), true);
+                        break;
+                    case DEVICE_REMOVED:
+                    case LINK_REMOVED:
+                        drop(event.id());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Pool of threads sending view messages for all TE topo UI sessions.
+ * <p>
+ * Each session owns a {@link Channel} with its own queue, drained by at
+ * most one pool thread at a time so that messages keep their order.
+ * Incremental messages are offered against a high-water mark, which only
+ * counts the incremental messages queued, so that a large snapshot in
+ * flight does not count against it. A channel whose incremental backlog
+ * reaches the mark is considered lagging: its queued messages are
+ * dropped and further submissions are refused until the queue has
+ * drained, at which point the session is asked to resynchronize its view
+ * with a fresh snapshot. The snapshot is built on a worker thread, not
+ * on a sender thread.
+ * <p>
+ * The worker threads also run the per session work of preparing
+ * messages, such as filtering view model events, off the threads that
+ * deliver those events.
+ * <p>
+ * A channel also has a priority lane for replies to user requests, such
+ * as details panels: its messages are sent ahead of any queued snapshot
+ * or incremental message and are not subject to the high-water mark.
+ */
+public class TeTopoUiSender {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    // max messages sent by one channel before yielding its pool thread
+    private static final int MAX_DRAIN = 64;
+
+    private final ExecutorService executor;
+    private final ExecutorService workers;
+    private final int highWaterMark;
+
+    /**
+     * Creates a sender pool.
+     *
+     * @param threads       number of sender threads
+     * @param highWaterMark number of queued incremental messages at which
+     *                      a channel is considered lagging
+     */
+    public TeTopoUiSender(int threads, int highWaterMark) {
+        checkArgument(threads > 0, "Sender threads must be positive");
+        checkArgument(highWaterMark > 0, "High-water mark must be positive");
+        this.executor = newFixedThreadPool(threads,
+                groupedThreads("onos/tetopoui", "msg-sender-%d", log));
+        this.workers = newFixedThreadPool(threads,
+                groupedThreads("onos/tetopoui", "msg-worker-%d", log));
+        this.highWaterMark = highWaterMark;
+    }
+
+    /**
+     * Opens a channel for one session.
+     *
+     * @param transport delivers a message to the session's connection
+     * @param resync    invoked once a lagging channel has drained
+     * @return new channel
+     */
+    public Channel open(Consumer<ObjectNode> transport, Runnable resync) {
+        return new Channel(transport, resync);
+    }
+
+    /**
+     * Returns the worker threads preparing messages of sessions.
+     *
+     * @return worker executor
+     */
+    public Executor workers() {
+        return workers;
+    }
+
+    /**
+     * Stops the sender threads, dropping every queued message.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Bounded, ordered outgoing message queue of one session.
+     */
+    public final class Channel {
+        private final Consumer<ObjectNode> transport;
+        private final Runnable resync;
+
+        private final Queue<Queued> queue = new ConcurrentLinkedQueue<>();
+        private final Queue<ObjectNode> priority = new ConcurrentLinkedQueue<>();
+        // incremental messages queued; snapshot messages do not count
+        private final AtomicInteger backlog = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean resyncing = new AtomicBoolean();
+
+        private volatile boolean lagging = false;
+        private volatile boolean closed = false;
+
+        private Channel(Consumer<ObjectNode> transport, Runnable resync) {
+            this.transport = transport;
+            this.resync = resync;
+        }
+
+        /**
+         * Queues a message for sending regardless of the high-water mark;
+         * meant for snapshot messages, which a resync would resend anyway.
+         *
+         * @param message message to send
+         * @return false if the message was refused because the channel is
+         * closed or lagging
+         */
+        public boolean submit(ObjectNode message) {
+            if (closed || lagging) {
+                return false;
+            }
+            queue.add(new Queued(message, false));
+            schedule();
+            return true;
+        }
+
+        /**
+         * Queues an incremental message for sending, unless the queued
+         * incremental messages have reached the high-water mark; in that
+         * case the channel turns lagging and drops its queue.
+         *
+         * @param message message to send
+         * @return false if the message was refused because the channel is
+         * closed or lagging
+         */
+        public boolean offer(ObjectNode message) {
+            if (closed || lagging) {
+                return false;
+            }
+            if (backlog.incrementAndGet() > highWaterMark) {
+                backlog.decrementAndGet();
+                lagging = true;
+                clear();
+                log.warn("TE topo view session lagging; resync scheduled");
+                schedule();
+                return false;
+            }
+            queue.add(new Queued(message, true));
+            schedule();
+            return true;
+        }
+
+        /**
+         * Queues a message on the priority lane, to be sent before any
+         * other queued message; it is accepted even while lagging.
+         *
+         * @param message message to send
+         * @return false if the message was refused because the channel is
+         * closed
+         */
+        public boolean urgent(ObjectNode message) {
+            if (closed) {
+                return false;
+            }
+            priority.add(message);
+            schedule();
+            return true;
+        }
+
+        /**
+         * Indicates whether the channel is waiting to resynchronize.
+         *
+         * @return true if lagging
+         */
+        public boolean isLagging() {
+            return lagging;
+        }
+
+        /**
+         * Drops every queued message.
+         */
+        public void clear() {
+            ObjectNode message = poll();
+            while (message != null) {
+                message = poll();
+            }
+        }
+
+        /**
+         * Returns the number of incremental messages queued.
+         *
+         * @return incremental backlog
+         */
+        public int backlog() {
+            return backlog.get();
+        }
+
+        /**
+         * Closes the channel, dropping every queued message.
+         */
+        public void close() {
+            closed = true;
+            clear();
+            priority.clear();
+        }
+
+        private void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                ObjectNode message;
+                int sent = 0;
+                while (!closed && sent < MAX_DRAIN && (message = next()) != null) {
+                    sent++;
+                    try {
+                        transport.accept(message);
+                    } catch (Exception e) {
+                        log.warn("Unable to send TE topo view message", e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+
+            if (closed) {
+                return;
+            }
+            if (!queue.isEmpty() || !priority.isEmpty()) {
+                schedule();
+            } else if (lagging && resyncing.compareAndSet(false, true)) {
+                // snapshots can take long to build; keep them off the
+                // sender threads, refusing messages until they start
+                try {
+                    workers.execute(this::resync);
+                } catch (RejectedExecutionException e) {
+                    resyncing.set(false);
+                }
+            }
+        }
+
+        private void resync() {
+            resyncing.set(false);
+            if (closed) {
+                return;
+            }
+            lagging = false;
+            try {
+                resync.run();
+            } catch (Exception e) {
+                log.warn("Unable to resync TE topo view session", e);
+            }
+        }
+
+        // Takes the next message to send, priority lane first.
+        private ObjectNode next() {
+            ObjectNode message = priority.poll();
+            return message != null ? message : poll();
+        }
+
+        // Takes the next queued message, keeping the backlog count.
+        private ObjectNode poll() {
+            Queued queued = queue.poll();
+            if (queued == null) {
+                return null;
+            }
+            if (queued.incremental) {
+                backlog.decrementAndGet();
+            }
+            return queued.message;
+        }
+    }
+
+    // Queued message, along with whether it counts against the mark.
+    private static final class Queued {
+        private final ObjectNode message;
+        private final boolean incremental;
+
+        private Queued(ObjectNode message, boolean incremental) {
+            this.message = message;
+            this.incremental = incremental;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.function.Predicate;
+
+/**
+ * Uniform grid index of located elements, either geo-located by longitude
+ * and latitude or placed at layout coordinates. Sessions page through the
+ * elements inside a bounding box with a cursor, visiting only the
+ * populated grid cells the box overlaps, in cell order, and within a cell
+ * the elements in the order they entered it, so that each page only
+ * visits the elements after the previous one.
+ * <p>
+ * An element entering a cell is placed at its end, after every cursor
+ * position in it. An element entering a cell a cursor has already passed
+ * is not visited by that cursor.
+ * <p>
+ * Not thread-safe; callers synchronize.
+ */
+final class TeTopoUiSpatialIndex {
+
+    private final double cellSize;
+    private final boolean geographic;
+
+    // cell key -> position -> id of the elements located in the cell
+    private final NavigableMap<Long, NavigableMap<Long, String>> cells = Maps.newTreeMap();
+    // id -> location and position in its cell
+    private final Map<String, Entry> entries = Maps.newHashMap();
+
+    // last position handed out; never reset, so that cursors stay valid
+    // across a clear
+    private long lastPosition = 0;
+
+    /**
+     * Creates a spatial index.
+     *
+     * @param cellSize   width and height of a grid cell, in degrees for a
+     *                   geographic index
+     * @param geographic true for longitudes and latitudes, which are
+     *                   clamped to their range and whose boxes may cross
+     *                   the antimeridian; false for unbounded layout
+     *                   coordinates
+     */
+    TeTopoUiSpatialIndex(double cellSize, boolean geographic) {
+        this.cellSize = cellSize;
+        this.geographic = geographic;
+    }
+
+    /**
+     * Places an element at the given location, moving it if it was
+     * already indexed elsewhere.
+     *
+     * @param id element id
+     * @param x  longitude or horizontal coordinate
+     * @param y  latitude or vertical coordinate
+     */
+    void put(String id, double x, double y) {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            if (entry.x == x && entry.y == y) {
+                return;
+            }
+            remove(id);
+        }
+        long key = key(column(x), row(y));
+        long position = ++lastPosition;
+        cells.computeIfAbsent(key, k -> Maps.newTreeMap()).put(position, id);
+        entries.put(id, new Entry(x, y, key, position));
+    }
+
+    /**
+     * Removes an element from the index.
+     *
+     * @param id element id
+     */
+    void remove(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        NavigableMap<Long, String> cell = cells.get(entry.cell);
+        cell.remove(entry.position);
+        if (cell.isEmpty()) {
+            cells.remove(entry.cell);
+        }
+    }
+
+    /**
+     * Indicates whether the element is indexed.
+     *
+     * @param id element id
+     * @return true if located
+     */
+    boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * Removes every element.
+     */
+    void clear() {
+        cells.clear();
+        entries.clear();
+    }
+
+    /**
+     * Returns the ids of up to the given number of elements inside the
+     * bounding box after the cursor, leaving out the ones to skip, and
+     * moves the cursor past them and past the skipped ones, but not past
+     * the first element beyond the limit. A geographic box whose minimum
+     * longitude exceeds its maximum crosses the antimeridian. A cursor
+     * must be reset before it is used with another box.
+     *
+     * @param cursor cursor to move
+     * @param box    bounding box {minX, minY, maxX, maxY}, or null for
+     *               every element
+     * @param skip   elements to leave out
+     * @param limit  maximum number of ids returned
+     * @return element ids, in index order
+     */
+    List<String> next(Cursor cursor, double[] box, Predicate<String> skip, int limit) {
+        List<String> ids = Lists.newArrayList();
+        double[][] parts = parts(box);
+        while (cursor.part < parts.length) {
+            if (!collect(cursor, parts[cursor.part], skip, limit, ids)) {
+                cursor.exhausted = false;
+                return ids;
+            }
+            if (cursor.part == parts.length - 1) {
+                // stay on the last cell, to visit what is added after it
+                break;
+            }
+            cursor.part++;
+            cursor.cell = null;
+        }
+        cursor.exhausted = true;
+        return ids;
+    }
+
+    // Splits a box crossing the antimeridian in two.
+    private double[][] parts(double[] box) {
+        if (box == null) {
+            return new double[][]{null};
+        }
+        if (geographic && box[0] > box[2]) {
+            return new double[][]{{box[0], box[1], 180, box[3]}, {-180, box[1], box[2], box[3]}};
+        }
+        return new double[][]{box};
+    }
+
+    // Visits the elements of one box from the cursor on; returns false if
+    // the limit was reached before the end of the box.
+    private boolean collect(Cursor cursor, double[] box, Predicate<String> skip, int limit,
+                            List<String> ids) {
+        Map<Long, NavigableMap<Long, String>> span;
+        int r0 = Integer.MIN_VALUE;
+        int r1 = Integer.MAX_VALUE;
+        if (box == null) {
+            span = cursor.cell == null ? cells : cells.tailMap(cursor.cell, true);
+        } else if (box[0] > box[2] || box[1] > box[3]) {
+            return true;
+        } else {
+            r0 = row(box[1]);
+            r1 = row(box[3]);
+            long first = cursor.cell == null ? key(column(box[0]), r0) : cursor.cell;
+            long last = key(column(box[2]), r1);
+            if (first > last) {
+                return true;
+            }
+            span = cells.subMap(first, true, last, true);
+        }
+
+        for (Map.Entry<Long, NavigableMap<Long, String>> cell : span.entrySet()) {
+            long key = cell.getKey();
+            if (cursor.cell == null || key != cursor.cell) {
+                cursor.cell = key;
+                cursor.position = 0;
+            }
+            // cells of the columns in the box but outside its rows
+            int r = rowOf(key);
+            if (r < r0 || r > r1) {
+                continue;
+            }
+            for (Map.Entry<Long, String> element :
+                    cell.getValue().tailMap(cursor.position, false).entrySet()) {
+                String id = element.getValue();
+                if (inside(entries.get(id), box) && !skip.test(id)) {
+                    if (ids.size() == limit) {
+                        return false;
+                    }
+                    ids.add(id);
+                }
+                cursor.position = element.getKey();
+            }
+        }
+        return true;
+    }
+
+    private static boolean inside(Entry entry, double[] box) {
+        return box == null || entry.x >= box[0] && entry.x <= box[2] &&
+                entry.y >= box[1] && entry.y <= box[3];
+    }
+
+    private int column(double x) {
+        return cell(geographic ? clamp(x, -180, 180) + 180 : x);
+    }
+
+    private int row(double y) {
+        return cell(geographic ? clamp(y, -90, 90) + 90 : y);
+    }
+
+    // Grid cell of a coordinate; layout coordinates far out of range
+    // share the outermost cells.
+    private int cell(double v) {
+        return (int) clamp(Math.floor(v / cellSize), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private static int rowOf(long key) {
+        return (int) key + Integer.MIN_VALUE;
+    }
+
+    private static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    // Orders cells by column, then row, with signed columns and rows.
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row - (long) Integer.MIN_VALUE);
+    }
+
+    // Location of an element, and where it is in the index.
+    private static final class Entry {
+        private final double x;
+        private final double y;
+        private final long cell;
+        private final long position;
+
+        private Entry(double x, double y, long cell, long position) {
+            this.x = x;
+            this.y = y;
+            this.cell = cell;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Position of a session among the elements of a bounding box,
+     * starting before its first element.
+     */
+    static final class Cursor {
+        // part of the box, cell and position in the cell last visited;
+        // no cell before the first one
+        private int part = 0;
+        private Long cell = null;
+        private long position = 0;
+        private boolean exhausted = false;
+
+        /**
+         * Indicates whether elements may be left to visit; false once the
+         * cursor has been moved past the last element of its box, until
+         * it visits elements added after it.
+         *
+         * @return true if the cursor is not at the end
+         */
+        boolean hasNext() {
+            return !exhausted;
+        }
+
+        /**
+         * Moves the cursor back before the first element, as for a new
+         * bounding box.
+         */
+        void reset() {
+            part = 0;
+            cell = null;
+            position = 0;
+            exhausted = false;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.collect.TreeMultiset;
+import org.onosproject.ui.topo.PropertyPanel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.onosproject.ui.topo.TopoJson.json;
+
+/**
+ * Summary of the TE topology view, shared by all TE topo view sessions.
+ * <p>
+ * Counts of the upper layer devices and links, per network, layer and
+ * type and by online state, are kept current from view model events, so
+ * that a summary costs the same whatever the size of the topology; the
+ * supporting nodes and connectivity matrices of TE nodes are counted by
+ * the model cache as it renders. While at least one session subscribes,
+ * the summary is pushed at a fixed period, and only if it changed.
+ */
+public class TeTopoUiSummary {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final String TITLE = "TE Topology Summary";
+    private static final String TYPE = "node";
+
+    private final TeTopoUiModelCache modelCache;
+    private final int periodMs;
+
+    private final TeTopoUiModelListener modelListener = new InternalModelListener();
+    private final ScheduledExecutorService scheduler =
+            newSingleThreadScheduledExecutor(groupedThreads("onos/tetopoui", "summary-%d", log));
+
+    // counted elements and running counts; guarded by this
+    private final Map<String, DeviceRecord> devices = Maps.newHashMap();
+    private final Map<String, String> linkNetworks = Maps.newHashMap();
+    private final Multiset<String> devicesByNetwork = TreeMultiset.create();
+    private final Multiset<String> linksByNetwork = TreeMultiset.create();
+    private final Multiset<String> devicesByLayer = TreeMultiset.create();
+    private final Multiset<String> devicesByType = TreeMultiset.create();
+    private int online = 0;
+    private long version = 0;
+
+    private final Set<Subscription> subscriptions = Sets.newConcurrentHashSet();
+    private ScheduledFuture<?> pushing;
+
+    // state last pushed; only touched by the scheduler thread
+    private long[] pushed;
+
+    /**
+     * Creates a summary of the given view model.
+     *
+     * @param modelCache shared TE topology view model
+     * @param periodMs   period at which changes are pushed, in milliseconds
+     */
+    public TeTopoUiSummary(TeTopoUiModelCache modelCache, int periodMs) {
+        this.modelCache = modelCache;
+        this.periodMs = periodMs;
+    }
+
+    /**
+     * Starts following the view model, counting what it already holds.
+     */
+    public void activate() {
+        modelCache.addListener(modelListener);
+        synchronized (this) {
+            modelCache.devices().forEach(this::putDevice);
+            modelCache.links().forEach(this::putLink);
+        }
+    }
+
+    /**
+     * Stops following the view model and pushing summaries.
+     */
+    public void deactivate() {
+        modelCache.removeListener(modelListener);
+        subscriptions.clear();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Returns the current summary.
+     *
+     * @return summary panel, in JSON form
+     */
+    public ObjectNode summary() {
+        return json(panel());
+    }
+
+    /**
+     * Subscribes to summary changes; pushing starts with the first
+     * subscription.
+     *
+     * @param sink receives the summary at most once per period, when it
+     *             changed
+     * @return subscription
+     */
+    public Subscription subscribe(Consumer<ObjectNode> sink) {
+        Subscription subscription = new Subscription(sink);
+        synchronized (subscriptions) {
+            subscriptions.add(subscription);
+            if (pushing == null) {
+                pushing = scheduler.scheduleAtFixedRate(this::push, periodMs, periodMs,
+                                                        TimeUnit.MILLISECONDS);
+            }
+        }
+        return subscription;
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        synchronized (subscriptions) {
+            subscriptions.remove(subscription);
+            if (subscriptions.isEmpty() && pushing != null) {
+                pushing.cancel(false);
+                pushing = null;
+            }
+        }
+    }
+
+    // Pushes the summary to every subscriber if it changed since the last
+    // push.
+    private void push() {
+        try {
+            long[] state = state();
+            if (Arrays.equals(state, pushed)) {
+                return;
+            }
+            pushed = state;
+            ObjectNode summary = summary();
+            subscriptions.forEach(s -> s.sink.accept(summary));
+        } catch (Exception e) {
+            log.warn("Unable to push TE topo summary", e);
+        }
+    }
+
+    // Everything the summary shows depends on.
+    private long[] state() {
+        long v;
+        synchronized (this) {
+            v = version;
+        }
+        return new long[]{v, modelCache.networkCount(),
+                modelCache.supportingNodeCount(), modelCache.matrixCount()};
+    }
+
+    private synchronized PropertyPanel panel() {
+        PropertyPanel pp = new PropertyPanel(TITLE, TYPE)
+                .addProp("Networks", modelCache.networkCount())
+                .addProp("TE Nodes", devices.size())
+                .addProp("TE Links", linkNetworks.size())
+                .addProp("Supporting Nodes", modelCache.supportingNodeCount())
+                .addProp("Connectivity Matrices", modelCache.matrixCount())
+                .addSeparator()
+                .addProp("Online", online)
+                .addProp("Offline", devices.size() - online)
+                .addSeparator();
+        for (Multiset.Entry<String> layer : devicesByLayer.entrySet()) {
+            pp.addProp("Layer " + layer.getElement(), layer.getCount());
+        }
+        for (Multiset.Entry<String> type : devicesByType.entrySet()) {
+            pp.addProp("Type " + type.getElement(), type.getCount());
+        }
+        pp.addSeparator();
+        for (Multiset.Entry<String> network : devicesByNetwork.entrySet()) {
+            pp.addProp("Network " + network.getElement(),
+                       network.getCount() + " nodes, " +
+                               linksByNetwork.count(network.getElement()) + " links");
+        }
+        return pp;
+    }
+
+    // Counts a device, replacing what was counted for it before. Must be
+    // called with this held.
+    private void putDevice(ObjectNode payload) {
+        JsonNode props = payload.path("props");
+        DeviceRecord record = new DeviceRecord(props.path(TeTopoJson.LAYER_MASTER).asText(),
+                                               props.path(TeTopoJson.LAYER_KEY).asText(),
+                                               payload.path("type").asText(),
+                                               payload.path("online").asBoolean());
+        DeviceRecord old = devices.put(payload.path("id").asText(), record);
+        if (record.equals(old)) {
+            return;
+        }
+        if (old != null) {
+            count(old, -1);
+        }
+        count(record, 1);
+    }
+
+    // Must be called with this held.
+    private void removeDevice(ObjectNode payload) {
+        DeviceRecord old = devices.remove(payload.path("id").asText());
+        if (old != null) {
+            count(old, -1);
+        }
+    }
+
+    private void count(DeviceRecord record, int delta) {
+        add(devicesByNetwork, record.network, delta);
+        add(devicesByLayer, record.layer, delta);
+        add(devicesByType, record.type, delta);
+        online += record.online ? delta : 0;
+        version++;
+    }
+
+    // Counts a link in the network of its source device. Must be called
+    // with this held.
+    private void putLink(ObjectNode payload) {
+        String id = payload.path("id").asText();
+        if (linkNetworks.containsKey(id)) {
+            return;
+        }
+        DeviceRecord src = devices.get(payload.path("src").asText());
+        String network = src != null ? src.network : "";
+        linkNetworks.put(id, network);
+        add(linksByNetwork, network, 1);
+        version++;
+    }
+
+    // Must be called with this held.
+    private void removeLink(ObjectNode payload) {
+        String network = linkNetworks.remove(payload.path("id").asText());
+        if (network != null) {
+            add(linksByNetwork, network, -1);
+            version++;
+        }
+    }
+
+    private static void add(Multiset<String> counts, String key, int delta) {
+        if (delta > 0) {
+            counts.add(key, delta);
+        } else {
+            counts.remove(key, -delta);
+        }
+    }
+
+    // What a device is counted under.
+    private static final class DeviceRecord {
+        private final String network;
+        private final String layer;
+        private final String type;
+        private final boolean online;
+
+        private DeviceRecord(String network, String layer, String type, boolean online) {
+            this.network = network;
+            this.layer = layer;
+            this.type = type;
+            this.online = online;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DeviceRecord)) {
+                return false;
+            }
+            DeviceRecord that = (DeviceRecord) obj;
+            return online == that.online && Objects.equals(network, that.network) &&
+                    Objects.equals(layer, that.layer) && Objects.equals(type, that.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(network, layer, type, online);
+        }
+    }
+
+    /**
+     * Subscription of one session to summary changes.
+     */
+    public final class Subscription {
+        private final Consumer<ObjectNode> sink;
+
+        private Subscription(Consumer<ObjectNode> sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Ends the subscription; pushing stops with the last one.
+         */
+        public void cancel() {
+            unsubscribe(this);
+        }
+    }
+
+    // Counts upper layer changes; inner layers are only rendered for the
+    // TE nodes some view expanded, so they are left to the model cache.
+    private class InternalModelListener implements TeTopoUiModelListener {
+        @Override
+        public void event(TeTopoUiModelEvent event) {
+            if (event.parent() != null) {
+                return;
+            }
+            synchronized (TeTopoUiSummary.this) {
+                switch (event.type()) {
+                    case DEVICE_ADDED:
+                    case DEVICE_UPDATED:
+                        putDevice(event.subject());
+                        break;
+                    case DEVICE_REMOVED:
+                        removeDevice(event.subject());
+                        break;
+                    case LINK_ADDED:
+                    case LINK_UPDATED:
+                        putLink(event.subject());
+                        break;
+                    case LINK_REMOVED:
+                        removeLink(event.subject());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+}
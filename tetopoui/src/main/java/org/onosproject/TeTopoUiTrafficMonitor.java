@@ -0,0 +1,345 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.device.PortStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Link traffic monitor shared by all TE topo view sessions.
+ * <p>
+ * While at least one session subscribes, the port statistics of the
+ * devices at the ends of the view's links are sampled once per period
+ * on a single scheduler thread, whatever the number of sessions. A
+ * link's rate is the larger of its two ports' rates, computed from the
+ * byte counters of consecutive samples, and its load class follows from
+ * that rate and the maximum bandwidth of the TE link, or the speed of its
+ * ports if it advertises none. A link of unknown bandwidth is classified
+ * and labelled by its rate alone.
+ * Each subscriber then receives one highlights message per period,
+ * holding only the links whose load class changed since its last one.
+ */
+public class TeTopoUiTrafficMonitor {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final double BITS_PER_MBIT = 1_000_000.0;
+    private static final double BITS_PER_BYTE = 8.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * Load class of a link, as shown by the traffic overlay.
+     */
+    enum Load {
+        IDLE("", ""),
+        LOW("secondary port-traffic-Kbps", "< 10%"),
+        MEDIUM("secondary port-traffic-Mbps", "10-50%"),
+        HIGH("secondary port-traffic-Gbps", "50-90%"),
+        CHOKED("secondary port-traffic-Gbps-choked", "> 90%"),
+        KBPS("secondary port-traffic-Kbps", "< 1 Mbps"),
+        MBPS("secondary port-traffic-Mbps", "1 Mbps - 1 Gbps"),
+        GBPS("secondary port-traffic-Gbps", "1-9 Gbps"),
+        GBPS_CHOKED("secondary port-traffic-Gbps-choked", "> 9 Gbps");
+
+        private final String css;
+        private final String label;
+
+        Load(String css, String label) {
+            this.css = css;
+            this.label = label;
+        }
+
+        // Classifies a rate against a bandwidth; without a known bandwidth
+        // the rate alone decides, by its order of magnitude, and so does
+        // the label.
+        static Load of(double bps, double bandwidthBps) {
+            if (bps < 1) {
+                return IDLE;
+            }
+            if (bandwidthBps <= 0) {
+                return bps < 1e6 ? KBPS : bps < 1e9 ? MBPS : bps < 9e9 ? GBPS : GBPS_CHOKED;
+            }
+            double utilisation = bps / bandwidthBps;
+            return utilisation < 0.1 ? LOW : utilisation < 0.5 ? MEDIUM :
+                    utilisation < 0.9 ? HIGH : CHOKED;
+        }
+    }
+
+    private final DeviceService deviceService;
+    private final TeTopoUiModelCache modelCache;
+    private final int periodMs;
+
+    private final ScheduledExecutorService scheduler =
+            newSingleThreadScheduledExecutor(groupedThreads("onos/tetopoui", "traffic-%d", log));
+    private final Set<Subscription> subscriptions = Sets.newConcurrentHashSet();
+    private ScheduledFuture<?> sampling;
+
+    // byte counters of the previous sample, by "device/port"; only touched
+    // by the scheduler thread
+    private Map<String, Counter> counters = Maps.newHashMap();
+
+    /**
+     * Creates a traffic monitor.
+     *
+     * @param deviceService device service
+     * @param modelCache    shared TE topology view model
+     * @param periodMs      sampling period, in milliseconds
+     */
+    public TeTopoUiTrafficMonitor(DeviceService deviceService,
+                                  TeTopoUiModelCache modelCache, int periodMs) {
+        this.deviceService = deviceService;
+        this.modelCache = modelCache;
+        this.periodMs = periodMs;
+    }
+
+    /**
+     * Stops sampling and drops every subscription.
+     */
+    public void shutdown() {
+        subscriptions.clear();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Subscribes to link load changes; sampling starts with the first
+     * subscription.
+     *
+     * @param sink receives one highlights payload per period in which a
+     *             link changed load class
+     * @return subscription
+     */
+    public Subscription subscribe(Consumer<ObjectNode> sink) {
+        Subscription subscription = new Subscription(sink);
+        synchronized (this) {
+            subscriptions.add(subscription);
+            if (sampling == null) {
+                sampling = scheduler.scheduleAtFixedRate(this::sample, 0, periodMs,
+                                                         TimeUnit.MILLISECONDS);
+            }
+        }
+        return subscription;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription);
+        if (subscriptions.isEmpty() && sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+            if (!scheduler.isShutdown()) {
+                scheduler.execute(() -> counters = Maps.newHashMap());
+            }
+        }
+    }
+
+    private void sample() {
+        try {
+            Map<String, Load> loads = loads();
+            for (Subscription subscription : subscriptions) {
+                subscription.update(loads);
+            }
+        } catch (Exception e) {
+            log.warn("Unable to sample TE topo link traffic", e);
+        }
+    }
+
+    // Samples the ports at the ends of every link and returns the load
+    // class of each link that is not idle.
+    private Map<String, Load> loads() {
+        long now = System.nanoTime();
+        Map<DeviceId, DeviceSample> devices = Maps.newHashMap();
+        Map<String, Counter> sampled = Maps.newHashMap();
+        Map<String, Double> rates = Maps.newHashMap();
+        Map<String, Load> loads = Maps.newHashMap();
+        Map<String, Double> bandwidths = modelCache.linkBandwidths();
+
+        for (ObjectNode link : modelCache.links()) {
+            String id = link.path("id").asText();
+            String src = link.path("src").asText();
+            String srcPort = link.path("srcPort").asText();
+            String dst = link.path("dst").asText();
+            String dstPort = link.path("dstPort").asText();
+
+            DeviceSample srcDevice = devices.computeIfAbsent(DeviceId.deviceId(src), this::sample);
+            DeviceSample dstDevice = devices.computeIfAbsent(DeviceId.deviceId(dst), this::sample);
+            double bps = Math.max(rate(src, srcPort, srcDevice, now, sampled, rates),
+                                  rate(dst, dstPort, dstDevice, now, sampled, rates));
+            Double teBandwidth = bandwidths.get(id);
+            double bandwidth = teBandwidth != null ? teBandwidth * BITS_PER_BYTE :
+                    Math.max(srcDevice.speedMbps(srcPort),
+                             dstDevice.speedMbps(dstPort)) * BITS_PER_MBIT;
+
+            Load load = Load.of(bps, bandwidth);
+            if (load != Load.IDLE) {
+                loads.put(id, load);
+            }
+        }
+        counters = sampled;
+        return loads;
+    }
+
+    private DeviceSample sample(DeviceId deviceId) {
+        return new DeviceSample(deviceService.getPortStatistics(deviceId),
+                                deviceService.getPorts(deviceId));
+    }
+
+    // Returns the rate of a port, in bits per second, since its previous
+    // sample; zero if it has none.
+    private double rate(String device, String port, DeviceSample sample, long now,
+                        Map<String, Counter> sampled, Map<String, Double> rates) {
+        String key = device + "/" + port;
+        Double rate = rates.get(key);
+        if (rate != null) {
+            return rate;
+        }
+        long bytes = sample.bytes(port);
+        rate = 0.0;
+        if (bytes >= 0) {
+            Counter previous = counters.get(key);
+            if (previous != null && bytes >= previous.bytes && now > previous.nanos) {
+                rate = (bytes - previous.bytes) * 8 * NANOS_PER_SECOND / (now - previous.nanos);
+            }
+            sampled.put(key, new Counter(bytes, now));
+        }
+        rates.put(key, rate);
+        return rate;
+    }
+
+    // Byte counter of a port at some instant.
+    private static final class Counter {
+        private final long bytes;
+        private final long nanos;
+
+        private Counter(long bytes, long nanos) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+
+    // Port statistics and speeds of one device, by port number.
+    private static final class DeviceSample {
+        private final Map<String, Long> bytes = Maps.newHashMap();
+        private final Map<String, Long> speeds = Maps.newHashMap();
+
+        private DeviceSample(List<PortStatistics> statistics, List<Port> ports) {
+            if (statistics != null) {
+                for (PortStatistics stats : statistics) {
+                    bytes.put(String.valueOf(stats.port()),
+                              stats.bytesReceived() + stats.bytesSent());
+                }
+            }
+            if (ports != null) {
+                for (Port port : ports) {
+                    speeds.put(port.number().toString(), port.portSpeed());
+                }
+            }
+        }
+
+        private long bytes(String port) {
+            return bytes.getOrDefault(port, -1L);
+        }
+
+        private long speedMbps(String port) {
+            return speeds.getOrDefault(port, 0L);
+        }
+    }
+
+    /**
+     * Subscription of one session to link load changes.
+     */
+    public final class Subscription {
+        private final Consumer<ObjectNode> sink;
+
+        // load class last sent for each link that is not idle; only
+        // touched by the scheduler thread
+        private final Map<String, Load> shown = Maps.newHashMap();
+        private volatile boolean reset = false;
+
+        private Subscription(Consumer<ObjectNode> sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Makes the next update carry the load class of every link that
+         * is not idle, for a session that lost what it was shown.
+         */
+        public void reset() {
+            reset = true;
+        }
+
+        /**
+         * Ends the subscription; sampling stops with the last one.
+         */
+        public void cancel() {
+            unsubscribe(this);
+        }
+
+        // Sends the links whose load class changed since the last update.
+        private void update(Map<String, Load> loads) {
+            if (reset) {
+                reset = false;
+                shown.clear();
+            }
+            ArrayNode links = TeTopoJson.arrayNode();
+            for (Map.Entry<String, Load> entry : loads.entrySet()) {
+                if (shown.get(entry.getKey()) != entry.getValue()) {
+                    links.add(link(entry.getKey(), entry.getValue()));
+                }
+            }
+            for (String id : shown.keySet()) {
+                if (!loads.containsKey(id)) {
+                    links.add(link(id, Load.IDLE));
+                }
+            }
+            if (links.size() == 0) {
+                return;
+            }
+
+            shown.clear();
+            shown.putAll(loads);
+            ObjectNode payload = TeTopoJson.objectNode().put("delta", true);
+            payload.set("devices", TeTopoJson.arrayNode());
+            payload.set("hosts", TeTopoJson.arrayNode());
+            payload.set("links", links);
+            sink.accept(payload);
+        }
+
+        private ObjectNode link(String id, Load load) {
+            return TeTopoJson.objectNode()
+                    .put("id", id)
+                    .put("css", load.css)
+                    .put("label", load.label);
+        }
+    }
+}
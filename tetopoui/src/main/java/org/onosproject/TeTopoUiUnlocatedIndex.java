@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.function.Predicate;
+
+/**
+ * Ordered index of the devices without geo location: controller layer
+ * devices first, then the others, each group in the order its devices
+ * entered it. Sessions page through it with a cursor, so that each page
+ * only visits the devices after the previous one.
+ * <p>
+ * A device entering a group is placed at its end, after every cursor
+ * position in it, so that paging never misses it.
+ * <p>
+ * Not thread-safe; callers synchronize.
+ */
+final class TeTopoUiUnlocatedIndex {
+
+    private static final int UPPER = 0;
+    private static final int INNER = 1;
+
+    // position -> device id, by group
+    private final List<NavigableMap<Long, String>> groups = Lists.newArrayList(
+            Maps.<Long, String>newTreeMap(), Maps.<Long, String>newTreeMap());
+
+    // device id -> {group, position}
+    private final Map<String, long[]> entries = Maps.newHashMap();
+
+    // last position handed out; never reset, so that cursors stay valid
+    // across a clear
+    private long lastPosition = 0;
+
+    /**
+     * Adds a device, or moves it to the other group if its layer changed.
+     *
+     * @param id    device id
+     * @param upper true for a controller layer device
+     */
+    void put(String id, boolean upper) {
+        int group = upper ? UPPER : INNER;
+        long[] entry = entries.get(id);
+        if (entry != null) {
+            if (entry[0] == group) {
+                return;
+            }
+            remove(id);
+        }
+        long position = ++lastPosition;
+        groups.get(group).put(position, id);
+        entries.put(id, new long[]{group, position});
+    }
+
+    /**
+     * Removes a device from the index.
+     *
+     * @param id device id
+     */
+    void remove(String id) {
+        long[] entry = entries.remove(id);
+        if (entry != null) {
+            groups.get((int) entry[0]).remove(entry[1]);
+        }
+    }
+
+    /**
+     * Removes every device.
+     */
+    void clear() {
+        groups.forEach(Map::clear);
+        entries.clear();
+    }
+
+    /**
+     * Returns the ids of up to the given number of devices after the
+     * cursor, leaving out the ones to skip, and moves the cursor past
+     * them and past the skipped ones, but not past the first device
+     * beyond the limit.
+     *
+     * @param cursor cursor to move
+     * @param skip   devices to leave out
+     * @param limit  maximum number of ids returned
+     * @return device ids, in index order
+     */
+    List<String> next(Cursor cursor, Predicate<String> skip, int limit) {
+        List<String> ids = Lists.newArrayList();
+        for (int group = UPPER; group <= INNER; group++) {
+            NavigableMap<Long, String> tail =
+                    groups.get(group).tailMap(cursor.positions[group], false);
+            for (Map.Entry<Long, String> entry : tail.entrySet()) {
+                if (!skip.test(entry.getValue())) {
+                    if (ids.size() == limit) {
+                        return ids;
+                    }
+                    ids.add(entry.getValue());
+                }
+                cursor.positions[group] = entry.getKey();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Indicates whether devices remain after the cursor.
+     *
+     * @param cursor cursor
+     * @return true if the cursor is not at the end
+     */
+    boolean hasNext(Cursor cursor) {
+        for (int group = UPPER; group <= INNER; group++) {
+            if (groups.get(group).higherKey(cursor.positions[group]) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Position of a session in the index, starting before its first
+     * device.
+     */
+    static final class Cursor {
+        // last position visited, by group
+        private final long[] positions = {0, 0};
+
+        /**
+         * Moves the cursor back before the first device.
+         */
+        void reset() {
+            positions[UPPER] = 0;
+            positions[INNER] = 0;
+        }
+    }
+}
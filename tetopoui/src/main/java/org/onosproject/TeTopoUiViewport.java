@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Part of the TE topology a session has been sent, and the region of
+ * the topology its view currently shows.
+ * <p>
+ * Devices are sent page by page: first the geo-located ones inside the
+ * visible region, then the ones without location whose layout position
+ * is inside the visible part of the layout, then the ones with no
+ * position at all, controller layer first. Each kind is paged through
+ * with a cursor, so that a page only visits the devices after the
+ * previous one; the cursors of the located and placed devices start over
+ * when the region changes. Devices added to the view model are sent as
+ * they come, so paging never needs to find them. A link is sent once both
+ * of its end devices have been.
+ */
+final class TeTopoUiViewport {
+
+    private static final String MIN_LNG = "minLng";
+    private static final String MIN_LAT = "minLat";
+    private static final String MAX_LNG = "maxLng";
+    private static final String MAX_LAT = "maxLat";
+    private static final String MIN_X = "minX";
+    private static final String MIN_Y = "minY";
+    private static final String MAX_X = "maxX";
+    private static final String MAX_Y = "maxY";
+
+    private static final double[] WORLD = {-180, -90, 180, 90};
+
+    private final int pageSize;
+
+    // visible region {minLng, minLat, maxLng, maxLat}, or null for all
+    private double[] region;
+    // visible part of the layout {minX, minY, maxX, maxY}, or null for all
+    private double[] layoutRegion;
+
+    private final Set<String> sentDevices = Sets.newHashSet();
+    private final Set<String> sentLinks = Sets.newHashSet();
+
+    // how far the located, placed and other devices have been paged through
+    private final TeTopoUiSpatialIndex.Cursor located = new TeTopoUiSpatialIndex.Cursor();
+    private final TeTopoUiSpatialIndex.Cursor placed = new TeTopoUiSpatialIndex.Cursor();
+    private final TeTopoUiUnlocatedIndex.Cursor unlocated = new TeTopoUiUnlocatedIndex.Cursor();
+
+    /**
+     * Creates a viewport.
+     *
+     * @param pageSize maximum number of devices sent per page
+     */
+    TeTopoUiViewport(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Sets the visible region from its JSON form; a missing or partial
+     * region stands for the whole world, and a missing or partial layout
+     * region for the whole layout. Paging through the located and placed
+     * devices starts over if the region changed.
+     *
+     * @param node region with minLng, minLat, maxLng and maxLat, and the
+     *             visible part of the layout as minX, minY, maxX and maxY
+     */
+    synchronized void region(JsonNode node) {
+        double[] geo = box(node, MIN_LNG, MIN_LAT, MAX_LNG, MAX_LAT);
+        if (!Arrays.equals(geo, region)) {
+            region = geo;
+            located.reset();
+        }
+        double[] layout = box(node, MIN_X, MIN_Y, MAX_X, MAX_Y);
+        if (!Arrays.equals(layout, layoutRegion)) {
+            layoutRegion = layout;
+            placed.reset();
+        }
+    }
+
+    private static double[] box(JsonNode node, String minX, String minY,
+                                String maxX, String maxY) {
+        if (node == null || !node.has(minX) || !node.has(minY) ||
+                !node.has(maxX) || !node.has(maxY)) {
+            return null;
+        }
+        return new double[]{
+                node.get(minX).asDouble(), node.get(minY).asDouble(),
+                node.get(maxX).asDouble(), node.get(maxY).asDouble()
+        };
+    }
+
+    /**
+     * Forgets what has been sent, as when the client starts over.
+     */
+    synchronized void reset() {
+        sentDevices.clear();
+        sentLinks.clear();
+        located.reset();
+        placed.reset();
+        unlocated.reset();
+    }
+
+    /**
+     * Selects the next page of devices not sent yet, along with the links
+     * they complete, and records them as sent.
+     *
+     * @param model view model
+     * @return next page
+     */
+    synchronized Page nextPage(TeTopoUiModelCache model) {
+        List<ObjectNode> devices = Lists.newArrayList();
+        add(devices, model.locatedDevices(located, region != null ? region : WORLD,
+                                          sentDevices::contains, pageSize));
+        boolean more = located.hasNext();
+        if (!more) {
+            add(devices, model.placedDevices(placed, layoutRegion, sentDevices::contains,
+                                             pageSize - devices.size()));
+            more = placed.hasNext();
+        }
+        if (!more) {
+            add(devices, model.unlocatedDevices(unlocated, sentDevices::contains,
+                                                pageSize - devices.size()));
+            more = model.hasUnlocatedDevices(unlocated);
+        }
+
+        List<ObjectNode> links = Lists.newArrayList();
+        for (ObjectNode device : devices) {
+            for (ObjectNode link : model.linksOf(device.get("id").asText())) {
+                String id = link.get("id").asText();
+                if (!sentLinks.contains(id) && isComplete(link)) {
+                    sentLinks.add(id);
+                    links.add(link);
+                }
+            }
+        }
+        return new Page(devices, links, more);
+    }
+
+    /**
+     * Selects, among the given devices and links, those not sent yet,
+     * links only once both of their end devices are, and records them as
+     * sent; used to send elements found outside the paging order.
+     *
+     * @param devices device payloads
+     * @param links   link payloads
+     * @return elements to send; never more to come
+     */
+    synchronized Page claim(List<ObjectNode> devices, List<ObjectNode> links) {
+        List<ObjectNode> newDevices = Lists.newArrayList();
+        for (ObjectNode payload : devices) {
+            if (sentDevices.add(payload.get("id").asText())) {
+                newDevices.add(payload);
+            }
+        }
+        List<ObjectNode> newLinks = Lists.newArrayList();
+        for (ObjectNode link : links) {
+            String id = link.get("id").asText();
+            if (!sentLinks.contains(id) && isComplete(link)) {
+                sentLinks.add(id);
+                newLinks.add(link);
+            }
+        }
+        return new Page(newDevices, newLinks, false);
+    }
+
+    /**
+     * Keeps the events that concern what the session has been sent:
+     * changes of sent elements, new devices, and new links whose end
+     * devices were sent. Inner layer events are not paged and pass as is.
+     *
+     * @param batch view model events
+     * @return relevant events
+     */
+    synchronized List<TeTopoUiModelEvent> filter(List<TeTopoUiModelEvent> batch) {
+        ImmutableList.Builder<TeTopoUiModelEvent> builder = ImmutableList.builder();
+        for (TeTopoUiModelEvent event : batch) {
+            if (event.parent() != null) {
+                builder.add(event);
+                continue;
+            }
+            String id = event.id();
+            switch (event.type()) {
+                case DEVICE_ADDED:
+                    sentDevices.add(id);
+                    builder.add(event);
+                    break;
+                case LINK_ADDED:
+                    if (isComplete(event.subject())) {
+                        sentLinks.add(id);
+                        builder.add(event);
+                    }
+                    break;
+                case DEVICE_UPDATED:
+                case LINK_UPDATED:
+                    if (sentDevices.contains(id) || sentLinks.contains(id)) {
+                        builder.add(event);
+                    }
+                    break;
+                case DEVICE_REMOVED:
+                    if (sentDevices.remove(id)) {
+                        builder.add(event);
+                    }
+                    break;
+                case LINK_REMOVED:
+                    if (sentLinks.remove(id)) {
+                        builder.add(event);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return builder.build();
+    }
+
+    private void add(List<ObjectNode> devices, List<ObjectNode> page) {
+        for (ObjectNode payload : page) {
+            sentDevices.add(payload.get("id").asText());
+            devices.add(payload);
+        }
+    }
+
+    private boolean isComplete(ObjectNode link) {
+        return sentDevices.contains(link.path("src").asText()) &&
+                sentDevices.contains(link.path("dst").asText());
+    }
+
+    /**
+     * Devices and links of one page, and whether more devices remain.
+     */
+    static final class Page {
+        final List<ObjectNode> devices;
+        final List<ObjectNode> links;
+        final boolean more;
+
+        private Page(List<ObjectNode> devices, List<ObjectNode> links, boolean more) {
+            this.devices = devices;
+            this.links = links;
+            this.more = more;
+        }
+    }
+}
@@ -24,7 +24,7 @@
     var ovtopo, svg, defs, zoomLayer, mapG, spriteG, forceG, noDevsLayer;
 
     // Internal state
-    var zoomer, actionMap;
+    var zoomer, actionMap, mapProjection;
 
 // --- end topo param -------------------------------------------
 
@@ -250,6 +250,37 @@
 
         // keep the map lines constant width while zooming
         mapG.style('stroke-width', (2.0 / sc) + 'px');
+
+        // let the server page in what became visible
+        if (mapProjection) {
+            tes.viewRegion(visibleRegion());
+        }
+    }
+
+    // lng/lat bounding box of the visible part of the map, along with
+    //  the visible part of the layout, which places the devices without
+    //  location. Note, SVG viewbox is '0 0 1000 1000', defined in topo.html.
+    function visibleRegion() {
+        var sc = zoomer.scale(),
+            tr = zoomer.translate(),
+            tl = [-tr[0] / sc, -tr[1] / sc],
+            br = [(1000 - tr[0]) / sc, (1000 - tr[1]) / sc],
+            nw = mapProjection.invert(tl),
+            se = mapProjection.invert(br);
+
+        if (!nw || !se || isNaN(nw[0]) || isNaN(se[0])) {
+            return null;
+        }
+        return {
+            minLng: nw[0],
+            minLat: se[1],
+            maxLng: se[0],
+            maxLat: nw[1],
+            minX: tl[0],
+            minY: tl[1],
+            maxX: br[0],
+            maxY: br[1]
+        };
     }
 
     function setUpZoom() {
@@ -523,6 +554,12 @@
             //     setMap: setMap
             // });
 
+            // the server searches its index of the whole topology, sending
+            //  the matches along with the neighbourhood we lack
+            $scope.searchTopology = function () {
+                fltr.search($scope.searchQuery);
+            };
+
             $scope.notifyResize = function () {
                 svgResized(fs.windowSize(mast.mastHeight()));
             };
@@ -565,6 +602,7 @@
                     $log.debug('** Zoom restored:', z);
 
                     projection = proj;
+                    mapProjection = proj;
                     $log.debug('** We installed the projection:', proj);
                     flash.enable(false);
                     toggleMap(prefsState.bg);
@@ -573,7 +611,7 @@
 
                     // now we have the map projection, we are ready for
                     //  the server to send us device/host data...
-                    tes.start();
+                    tes.start(visibleRegion());
 
                     // need to do the following so we immediately get
                     //  the summary panel data back from the server
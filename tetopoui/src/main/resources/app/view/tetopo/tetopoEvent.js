@@ -27,14 +27,29 @@
     'use strict';
 
     // injected refs
-    var $log, $interval, wss, tps, tis, tfs, tss, tov, tspr;
+    var $log, $interval, $timeout, wss, tps, tis, tfs, tss, tov, tspr, fltr;
 
     // internal state
     var handlerMap,
         openListener,
-        heartbeatTimer;
+        heartbeatTimer,
+        regionTimer;
 
     var heartbeatPeriod = 9000; // 9 seconds
+    var regionDelay = 300; // ms of pan/zoom quiet before asking for more
+
+    // ask for the initial topology in the compact columnar encoding
+    //  (bulk addDevices/addLinks messages otherwise), paged in starting
+    //  with the visible region, or at the level of detail of clusters
+    //  when the server clusters the topology; both directions of a
+    //  link come as one
+    var startParams = {
+        bulk: true,
+        compact: true,
+        paged: true,
+        clustered: true,
+        paired: true
+    };
 
     // ==========================
 
@@ -51,6 +66,7 @@
             removeInstance: tis,
 
             addDevice: tfs,
+            addDevices: tfs,
             updateDevice: tfs,
             removeDevice: tfs,
             addHost: tfs,
@@ -58,10 +74,18 @@
             moveHost: tfs,
             removeHost: tfs,
             addLink: tfs,
+            addLinks: tfs,
             updateLink: tfs,
             removeLink: tfs,
 
+            meowTopoCompact: tfs,
+            meowTopoBundle: tfs,
+            meowTopoClusters: tfs,
+            meowTopoDelta: topoDelta,
+            meowTopoResync: tfs,
             meowTopoStartDone: tfs,
+            meowTopoPageDone: pageDone,
+            meowTopoSearchResult: fltr,
 
             spriteListResponse: tspr,
             spriteDataResponse: tspr
@@ -71,7 +95,19 @@
     function wsOpen(host, url) {
         $log.debug('TOPO: web socket open - cluster node:', host, 'URL:', url);
         // Request batch of initial data from the new server
-        wss.sendEvent('meowTopoStart');
+        wss.sendEvent('meowTopoStart', startParams);
+    }
+
+    // the server pauses the view while the tab is hidden or the
+    //  heartbeats stop, and catches it up when it is shown again
+    function sendHeartbeat() {
+        wss.sendEvent('topoHeartbeat', { visible: !document.hidden });
+    }
+
+    function scheduleHeartbeat() {
+        cancelHeartbeat();
+        heartbeatTimer = $interval(sendHeartbeat, heartbeatPeriod);
+        document.addEventListener('visibilitychange', sendHeartbeat);
     }
 
     function cancelHeartbeat() {
@@ -79,26 +115,63 @@
             $interval.cancel(heartbeatTimer);
         }
         heartbeatTimer = null;
+        document.removeEventListener('visibilitychange', sendHeartbeat);
     }
 
-    function scheduleHeartbeat() {
-        cancelHeartbeat();
-        heartbeatTimer = $interval(function () {
-            wss.sendEvent('topoHeartbeat');
-        }, heartbeatPeriod);
+    // on reconnecting, the view token, the newest view model version seen
+    //  and the last snapshot mark received let the server resume the view
+    //  by sending only the changes it missed
+    function newViewToken() {
+        return Date.now().toString(36) + '-' +
+            Math.random().toString(36).slice(2);
+    }
+
+    function seenVersion(version) {
+        if (version !== undefined && version > startParams.version) {
+            startParams.version = version;
+        }
+    }
+
+    function topoDelta(data) {
+        tfs.meowTopoDelta(data);
+        seenVersion(data.version);
+    }
+
+    // a page only covers what is visible; more pages are asked for as
+    //  the view is panned or zoomed, never just because more remain
+    function pageDone(data) {
+        startParams.mark = data.mark;
+        seenVersion(data.version);
+    }
+
+    function requestPage() {
+        cancelRegion();
+        regionTimer = $timeout(function () {
+            regionTimer = null;
+            wss.sendEvent('meowTopoRegion', { region: startParams.region });
+        }, regionDelay);
+    }
+
+    function cancelRegion() {
+        if (regionTimer) {
+            $timeout.cancel(regionTimer);
+        }
+        regionTimer = null;
     }
 
 
     angular.module('ovTetopo')
     .factory('MeowTopoEventService',
-        ['$log', '$interval', 'WebSocketService',
+        ['$log', '$interval', '$timeout', 'WebSocketService',
             'MeowTopoPanelService', 'TopoInstService', 'MeowTopoForceService',
             'MeowTopoSelectService', 'MeowTopoOverlayService', 'TopoSpriteService',
+            'MeowTopoFilterService',
 
-        function (_$log_,  _$interval_, _wss_,
-                  _mtps_, _tis_, _mtfs_, _mtss_, _mtov_, _tspr_) {
+        function (_$log_,  _$interval_, _$timeout_, _wss_,
+                  _mtps_, _tis_, _mtfs_, _mtss_, _mtov_, _tspr_, _mfltr_) {
             $log = _$log_;
             $interval = _$interval_;
+            $timeout = _$timeout_;
             wss = _wss_;
             tps = _mtps_;
             tis = _tis_;
@@ -106,6 +179,7 @@
             tss = _mtss_;
             tov = _mtov_;
             tspr = _tspr_;
+            fltr = _mfltr_;
 
             createHandlerMap();
 
@@ -114,18 +188,29 @@
                 $log.debug('topo event handlers bound');
             }
 
-            function start() {
+            function start(region) {
+                startParams.region = region || undefined;
+                startParams.view = newViewToken();
+                startParams.version = 0;
+                startParams.mark = undefined;
                 // in case we fail over to a new server, listen for wsock-open
                 openListener = wss.addOpenListener(wsOpen);
-                wss.sendEvent('meowTopoStart');
-                // TODO: Heartbeat removed
-                // scheduleHeartbeat();
+                wss.sendEvent('meowTopoStart', startParams);
+                scheduleHeartbeat();
                 $log.debug('meow topo comms started');
             }
 
+            // debounced: send the visible region once panning/zooming stops
+            function viewRegion(region) {
+                startParams.region = region || undefined;
+                requestPage();
+            }
+
             function stop() {
                 cancelHeartbeat();
+                cancelRegion();
                 wss.sendEvent('meowTopoStop');
+                startParams.view = undefined;
                 wss.unbindHandlers(handlerMap);
                 wss.removeOpenListener(openListener);
                 openListener = null;
@@ -135,6 +220,7 @@
             return {
                 bindHandlers: bindHandlers,
                 start: start,
+                viewRegion: viewRegion,
                 stop: stop
             };
         }]);
@@ -24,7 +24,7 @@
     'use strict';
 
     // injected refs
-    var $log, fs, flash, tps, tts;
+    var $log, fs, flash, wss, tps, tts;
 
     // api to topoForce
     var api;
@@ -121,20 +121,45 @@
         unsuppressLayer(which);
     }
 
+    // === -----------------------------------------------------
+    // === Server-side search
+
+    var searchLimit = 10;
+
+    function search(query) {
+        var q = query && query.trim();
+        if (q) {
+            wss.sendEvent('searchTopology', { query: q, limit: searchLimit });
+        }
+    }
+
+    // the matches are highlighted by the showHighlights event that follows
+    function meowTopoSearchResult(data) {
+        var n = data.matches.length;
+        if (!n) {
+            flash.flash('No match for "' + data.query + '"');
+        } else if (data.total > n) {
+            flash.flash('Best ' + n + ' of ' + data.total + ' matches');
+        } else {
+            flash.flash(n + (n === 1 ? ' match' : ' matches'));
+        }
+    }
+
     // === -----------------------------------------------------
     // === MODULE DEFINITION ===
 
     angular.module('ovTetopo')
         .factory('MeowTopoFilterService',
         ['$log', 'FnService',
-            'FlashService',
+            'FlashService', 'WebSocketService',
             'MeowTopoPanelService',
             'TopoTrafficService',
 
-            function (_$log_, _fs_, _flash_, _mtps_, _tts_) {
+            function (_$log_, _fs_, _flash_, _wss_, _mtps_, _tts_) {
                 $log = _$log_;
                 fs = _fs_;
                 flash = _flash_;
+                wss = _wss_;
                 tps = _mtps_;
                 tts = _tts_;
 
@@ -147,7 +172,10 @@
 
                     clickAction: clickAction,
                     selected: selected,
-                    inLayer: inLayer
+                    inLayer: inLayer,
+
+                    search: search,
+                    meowTopoSearchResult: meowTopoSearchResult
                 };
             }]);
 }());
@@ -63,7 +63,8 @@
         fNodesTimer,            // timer for delayed nodes update
         fLinksTimer,            // timer for delayed links update
         dim,                    // the dimensions of the force layout [w,h]
-        linkNums = [];          // array of link number labels
+        linkNums = [],          // array of link number labels
+        expanded = {};          // ids of TE nodes whose inner layer was requested
 
     // SVG elements;
     var linkG, linkLabelG, numLinkLblsG, portLabelG, nodeG;
@@ -122,6 +123,96 @@
         fStart();
     }
 
+    // bulk variant of addDevice(), used for the initial snapshot:
+    //  applies every entry, then refreshes nodes and layout only once
+    function addDevices(data) {
+        var added = false;
+
+        data.devices.forEach(function (dev) {
+            var d;
+            if (lu[dev.id]) {
+                angular.extend(lu[dev.id], dev);
+                return;
+            }
+            d = tms.createDeviceNode(dev);
+            network.nodes.push(d);
+            lu[dev.id] = d;
+            added = true;
+        });
+
+        if (added) {
+            uplink.showNoDevs(false);
+            fStart();
+        }
+        updateNodes();
+    }
+
+    // decodes a compact columnar message (see TeTopoUiCompactCodec)
+    //  back into the device and link objects of addDevices/addLinks
+    function decodeDevices(c, str) {
+        var devs = [], i, j, lbls, pr, dev;
+        for (i = 0; i < c.n; i++) {
+            lbls = c.labels[i];
+            pr = c.props[i];
+            dev = {
+                id: str[c.id[i]],
+                type: str[c.type[i]],
+                online: c.online[i] === 1,
+                master: str[c.master[i]],
+                labels: [],
+                props: {}
+            };
+            for (j = 0; j < lbls.length; j++) {
+                dev.labels.push(str[lbls[j]]);
+            }
+            for (j = 0; j < pr.length; j += 2) {
+                dev.props[str[pr[j]]] = str[pr[j + 1]];
+            }
+            if (c.lng[i] !== null) {
+                dev.location = { type: 'lnglat', lng: c.lng[i], lat: c.lat[i] };
+            }
+            if (c.extra && c.extra[i]) {
+                angular.extend(dev, c.extra[i]);
+            }
+            devs.push(dev);
+        }
+        return devs;
+    }
+
+    function decodeLinks(c, str) {
+        var lnks = [], i, lnk;
+        for (i = 0; i < c.n; i++) {
+            lnk = {
+                type: str[c.type[i]],
+                expected: c.expected[i] === 1,
+                online: c.online[i] === 1,
+                linkWidth: c.linkWidth[i],
+                src: str[c.src[i]],
+                srcPort: str[c.srcPort[i]],
+                dst: str[c.dst[i]],
+                dstPort: str[c.dstPort[i]]
+            };
+            lnk.id = lnk.src + '/' + lnk.srcPort + '-' + lnk.dst + '/' + lnk.dstPort;
+            if (c.rev && c.rev[i]) {
+                lnk.rev = c.rev[i];
+            }
+            if (c.extra && c.extra[i]) {
+                angular.extend(lnk, c.extra[i]);
+            }
+            lnks.push(lnk);
+        }
+        return lnks;
+    }
+
+    function topoCompact(data) {
+        if (data.devices) {
+            addDevices({ devices: decodeDevices(data.devices, data.strings) });
+        }
+        if (data.links) {
+            addLinks({ links: decodeLinks(data.links, data.strings) });
+        }
+    }
+
     function updateDevice(data) {
         var id = data.id,
             d = lu[id],
@@ -225,28 +316,72 @@
         }
     }
 
-    function addLink(data) {
-        var result = tms.findLink(data, 'add'),
-            bad = result.badLogic,
-            d = result.ldata;
+    // unpacks the reverse direction the server paired with a link, if any
+    function reverseLink(lnk) {
+        var rev;
 
-        if (bad) {
-            $log.debug(bad + ': ' + link.id);
-            return;
+        if (!lnk.rev) {
+            return null;
         }
+        rev = angular.extend({}, lnk, {
+            src: lnk.dst,
+            srcPort: lnk.dstPort,
+            dst: lnk.src,
+            dstPort: lnk.srcPort
+        }, lnk.rev);
+        delete rev.rev;
+        rev.id = rev.src + '/' + rev.srcPort + '-' + rev.dst + '/' + rev.dstPort;
+        return rev;
+    }
+
+    // adds a link, and the reverse direction paired with it in the same
+    //  backing store link; returns true if a new link was created
+    function addOneLink(lnk) {
+        var rev = reverseLink(lnk),
+            result = tms.findLink(lnk, 'add'),
+            d = result.ldata;
 
+        if (result.badLogic) {
+            $log.debug(result.badLogic + ': ' + lnk.id);
+            return rev ? addOneLink(rev) : false;
+        }
         if (d) {
             // we already have a backing store link for src/dst nodes
-            addLinkUpdate(d, data);
-            return;
+            addLinkUpdate(d, lnk);
+            return rev ? addOneLink(rev) : false;
         }
 
         // no backing store link yet
-        d = tms.createLink(data);
-        if (d) {
-            network.links.push(d);
-            aggregateLink(d, data);
-            lu[d.key] = d;
+        d = tms.createLink(lnk);
+        if (!d) {
+            return false;
+        }
+        if (rev) {
+            d.fromTarget = rev;
+            rlk[rev.id] = d.key;
+        }
+        network.links.push(d);
+        aggregateLink(d, lnk);
+        lu[d.key] = d;
+        return true;
+    }
+
+    function addLink(data) {
+        if (addOneLink(data)) {
+            updateLinks();
+            fStart();
+        }
+    }
+
+    // bulk variant of addLink(), used for the initial snapshot
+    function addLinks(data) {
+        var added = false;
+
+        data.links.forEach(function (lnk) {
+            added = addOneLink(lnk) || added;
+        });
+
+        if (added) {
             updateLinks();
             fStart();
         }
@@ -270,6 +405,89 @@
         }
     }
 
+    // applies a batch of coalesced add/update/remove events from the server
+    function topoDelta(data) {
+        var handlers = {
+            addDevice: addDevice,
+            updateDevice: updateDevice,
+            removeDevice: removeDevice,
+            addLink: addLink,
+            updateLink: updateLink,
+            removeLink: removeLink
+        };
+
+        data.events.forEach(function (ev) {
+            var fn = handlers[ev.event];
+            if (fn) {
+                fn(ev.payload);
+            } else {
+                $log.debug('Unhandled delta event: ' + ev.event);
+            }
+        });
+    }
+
+    // the server dropped deltas for this session because it fell behind;
+    //  remove the elements it no longer has, a fresh snapshot follows
+    function topoResync(data) {
+        var devs = {},
+            lnks = {};
+
+        data.devices.forEach(function (id) { devs[id] = true; });
+        data.links.forEach(function (id) { lnks[id] = true; });
+
+        network.links.slice().forEach(function (ld) {
+            var src = ld.fromSource && ld.fromSource.id,
+                tgt = ld.fromTarget && ld.fromTarget.id;
+            if (ld.type() !== 'hostLink' && !lnks[src] && !lnks[tgt]) {
+                removeLinkElement(ld);
+            }
+        });
+        network.nodes.slice().forEach(function (d) {
+            if (d.class === 'device' && !devs[d.id]) {
+                removeDeviceElement(d);
+            }
+        });
+    }
+
+    // the server sent the connectivity matrix entries of a bundle the user
+    //  expanded; they replace the bundle link, and are resent as they change
+    function topoBundle(data) {
+        removeLink(data.bundle);
+        data.removed.forEach(removeLink);
+        addLinks(data);
+    }
+
+    // replaces the clusters and aggregated links of a clustered view;
+    //  upper layer devices not shown in full any more are dropped too
+    function topoClusters(data) {
+        var clusters = {},
+            devices = {},
+            links = {};
+
+        data.clusters.forEach(function (c) { clusters[c.id] = true; });
+        data.devices.forEach(function (id) { devices[id] = true; });
+        data.links.forEach(function (l) { links[l.id] = true; });
+
+        network.nodes.filter(function (d) {
+            return d.class === 'device' && (d.cluster ? !clusters[d.id] :
+                fltr.inLayer(d, 'pkt') && !devices[d.id]);
+        }).forEach(removeDeviceElement);
+
+        network.links.filter(function (ld) {
+            return ld.fromSource && ld.fromSource.cluster &&
+                !links[ld.fromSource.id];
+        }).forEach(function (ld) { removeLink(ld.fromSource); });
+
+        data.clusters.forEach(function (c) {
+            if (lu[c.id]) {
+                updateDevice(c);
+            } else {
+                addDevice(c);
+            }
+        });
+        data.links.forEach(addLink);
+    }
+
     function topoStartDone(data) {
         // called when the initial barrage of data has been sent from server
         uplink.topoStartDone();
@@ -453,6 +671,20 @@
     }
 
 
+    // the inner (opt) layer of a TE node is fetched on first double-click;
+    //  the server keeps it current from then on
+    function expandNode(d) {
+        if (d.cluster) {
+            wss.sendEvent('refineCluster', { id: d.id });
+            return;
+        }
+        if (d.class !== 'device' || !fltr.inLayer(d, 'pkt') || expanded[d.id]) {
+            return;
+        }
+        expanded[d.id] = true;
+        wss.sendEvent('expandTeNode', { id: d.id });
+    }
+
     function sendUpdateMeta(d, clearPos) {
         var metaUi = {},
             ll;
@@ -632,6 +864,7 @@
             .call(drag)
             .on('mouseover', tss.nodeMouseOver)
             .on('mouseout', tss.nodeMouseOut)
+            .on('dblclick', expandNode)
             .transition()
             .attr('opacity', 1);
 
@@ -903,8 +1136,9 @@
         'port-traffic-Kbps port-traffic-Mbps port-traffic-Gbps ' +
         'port-traffic-Gbps-choked';
 
-    function clearLinkTrafficStyle() {
-        link.style('stroke-width', null)
+    // clears all links, or only the given link element
+    function clearLinkTrafficStyle(el) {
+        (el || link).style('stroke-width', null)
             .classed(allTrafficClasses, false);
     }
 
@@ -1157,6 +1391,7 @@
                 network.revLinkToKey = {};
 
                 linkNums = [];
+                expanded = {};
 
                 linkG = linkLabelG = numLinkLblsG = nodeG = portLabelG = null;
                 link = linkLabel = node = null;
@@ -1190,6 +1425,7 @@
 
                 resetAllLocations: resetAllLocations,
                 addDevice: addDevice,
+                addDevices: addDevices,
                 updateDevice: updateDevice,
                 removeDevice: removeDevice,
                 addHost: addHost,
@@ -1197,8 +1433,14 @@
                 moveHost: moveHost,
                 removeHost: removeHost,
                 addLink: addLink,
+                addLinks: addLinks,
                 updateLink: updateLink,
                 removeLink: removeLink,
+                meowTopoDelta: topoDelta,
+                meowTopoResync: topoResync,
+                meowTopoCompact: topoCompact,
+                meowTopoBundle: topoBundle,
+                meowTopoClusters: topoClusters,
                 meowTopoStartDone: topoStartDone
             };
         }]);
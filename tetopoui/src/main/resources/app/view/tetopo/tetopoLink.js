@@ -23,7 +23,7 @@
     'use strict';
 
     // injected refs
-    var $log, fs, sus, ts, flash, tss, tps, tov;
+    var $log, fs, sus, ts, flash, wss, tss, tps, tov;
 
     // internal state
     var api,
@@ -239,9 +239,26 @@
         d.el.classed('selected', true);
 
         tps.displayLink(d, tov.hooks.modifyLinkData);
+        addBundleAction(d);
         tps.displaySomething();
     }
 
+    // a bundle summarizes the connectivity matrix entries between two
+    //  supporting nodes; the server sends the entries once it is expanded
+    function addBundleAction(d) {
+        var raw = d.fromSource || d.fromTarget;
+        if (raw && raw.bundle) {
+            tps.addAction({
+                id: 'bundle-btn',
+                gid: 'ports',
+                cb: function () {
+                    wss.sendEvent('expandBundle', { id: raw.id });
+                },
+                tt: 'Expand Bundle (' + raw.bundle.count + ' entries)'
+            });
+        }
+    }
+
     // ====== MOUSE EVENT HANDLERS ======
 
     function mouseMoveHandler() {
@@ -300,14 +317,16 @@
     angular.module('ovTetopo')
         .factory('MeowTopoLinkService',
         ['$log', 'FnService', 'SvgUtilService', 'ThemeService', 'FlashService',
-            'MeowTopoSelectService', 'MeowTopoPanelService', 'MeowTopoOverlayService',
+            'WebSocketService', 'MeowTopoSelectService', 'MeowTopoPanelService',
+            'MeowTopoOverlayService',
 
-        function (_$log_, _fs_, _sus_, _ts_, _flash_, _mtss_, _mtps_, _mtov_) {
+        function (_$log_, _fs_, _sus_, _ts_, _flash_, _wss_, _mtss_, _mtps_, _mtov_) {
             $log = _$log_;
             fs = _fs_;
             sus = _sus_;
             ts = _ts_;
             flash = _flash_;
+            wss = _wss_;
             tss = _mtss_;
             tps = _mtps_;
             tov = _mtov_;
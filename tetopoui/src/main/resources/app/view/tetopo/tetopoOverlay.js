@@ -306,11 +306,12 @@
     }
 
     function _showHighlights(data) {
-        var less;
+        var less,
+            delta = data.delta;
 
         /*
            API to topoForce
-             clearLinkTrafficStyle()
+             clearLinkTrafficStyle( [el] )
              removeLinkLabels()
              findLinkById( id )
              findNodeById( id )
@@ -321,19 +322,23 @@
              unsupLink( key, [less] )
          */
 
-        api.clearNodeDeco();
-        api.removeNodeBadges();
-        api.clearLinkTrafficStyle();
-        api.removeLinkLabels();
+        // a delta only restyles the links it carries; the others keep
+        //  the styling and suppression earlier highlights gave them
+        if (!delta) {
+            api.clearNodeDeco();
+            api.removeNodeBadges();
+            api.clearLinkTrafficStyle();
+            api.removeLinkLabels();
 
-        // handle element suppression
-        if (data.subdue) {
-            less = data.subdue === 'min';
-            api.supLayers(true, less);
+            // handle element suppression
+            if (data.subdue) {
+                less = data.subdue === 'min';
+                api.supLayers(true, less);
 
-        } else {
-            api.supLayers(false);
-            api.supLayers(false, true);
+            } else {
+                api.supLayers(false);
+                api.supLayers(false, true);
+            }
         }
 
         data.hosts.forEach(function (host) {
@@ -372,10 +377,15 @@
                 units, portcls, magnitude;
 
             if (ldata && ldata.el && !ldata.el.empty()) {
+                if (delta) {
+                    api.clearLinkTrafficStyle(ldata.el);
+                }
                 if (!link.subdue) {
                     api.unsupLink(ldata.key, less);
                 }
-                ldata.el.classed(link.css, true);
+                if (link.css) {
+                    ldata.el.classed(link.css, true);
+                }
                 ldata.label = lab;
 
                 // TODO: this needs to be pulled out into traffic overlay
@@ -35,13 +35,14 @@
      */
 
     // internal state
-    var hovered, selections, selectOrder, consumeClick;
+    var hovered, selections, selectOrder, consumeClick, shownHighlights;
 
     function setInitialState () {
         hovered = null;         // the node over which the mouse is hovering
         selections = {};        // currently selected nodes (by id)
         selectOrder = [];       // the order in which we made selections
         consumeClick = false;   // used to coordinate with SVG click handler
+        shownHighlights = null; // event cancelling the selection highlights
     }
 
     // ==========================
@@ -172,6 +173,7 @@
 
     function updateDetail() {
         var nSel = selectOrder.length;
+        cancelHighlights();
         if (!nSel) {
             emptySelect();
         } else if (nSel === 1) {
@@ -188,20 +190,101 @@
 
     function singleSelect() {
         var data = getSel(0).obj;
+        if (data.cluster) {
+            showCluster(data);
+            return;
+        }
         requestDetails(data);
         // NOTE: detail panel is shown as a response to receiving
         //       a 'showDetails' event from the server. See 'showDetails'
         //       callback function below...
     }
 
+    // clusters are not devices the server knows details of; the panel
+    //  lists what the cluster itself carries
+    function showCluster(data) {
+        tps.displaySingle({
+            id: data.id,
+            type: 'unknown',
+            title: data.labels[1],
+            props: data.props,
+            propOrder: [ 'TE Nodes', 'Online', 'Level' ]
+        });
+        addCoarsenAction();
+        tov.hooks.singleSelect(data);
+        tps.displaySomething();
+    }
+
     function multiSelect() {
         // display the selected nodes in the detail panel
         tps.displayMulti(selectOrder);
         addHostSelectionActions();
+        addDeviceSelectionActions();
         tov.hooks.multiSelect(selectOrder);
         tps.displaySomething();
     }
 
+    // highlight the neighbours of the selected device; the server walks
+    //  its adjacency index of the TE network
+    function requestRelated() {
+        var sel = getSel(0);
+        if (sel && sel.obj.class === 'device') {
+            wss.sendEvent('requestRelated', {
+                id: sel.obj.id,
+                hops: 1,
+                crossLayer: true
+            });
+            shownHighlights = 'cancelRelated';
+        }
+    }
+
+    // highlight the best TE path from the first selected device to the
+    //  second; the server searches the TE links of their network
+    function requestTePath() {
+        if (nSel() === 2) {
+            wss.sendEvent('requestTePath', {
+                src: selectOrder[0],
+                dst: selectOrder[1]
+            });
+            shownHighlights = 'cancelTePath';
+        }
+    }
+
+    // show the cluster holding the selected cluster or device in its place
+    function coarsenCluster() {
+        var sel = getSel(0);
+        if (sel) {
+            wss.sendEvent('coarsenCluster', { id: sel.obj.id });
+        }
+    }
+
+    function addCoarsenAction() {
+        tps.addAction({
+            id: 'coarsen-btn',
+            gid: 'minus',
+            cb: coarsenCluster,
+            tt: 'Coarsen'
+        });
+    }
+
+    function cancelHighlights() {
+        if (shownHighlights) {
+            wss.sendEvent(shownHighlights);
+            shownHighlights = null;
+        }
+    }
+
+    function addDeviceSelectionActions() {
+        if (nSel() === 2 && allSelectionsClass('device')) {
+            tps.addAction({
+                id: 'te-path-btn',
+                gid: 'endstation',
+                cb: requestTePath,
+                tt: 'Show TE Path'
+            });
+        }
+    }
+
     function addHostSelectionActions() {
         if (allSelectionsClass('host')) {
             if (nSel() === 2) {
@@ -231,6 +314,15 @@
         var buttons = fs.isA(data.buttons) || [];
         tps.displaySingle(data);
         tov.installButtons(buttons, data, data.props['URI']);
+        if (nSel() === 1 && getSel(0).obj.class === 'device') {
+            tps.addAction({
+                id: 'related-btn',
+                gid: 'relatedIntents',
+                cb: requestRelated,
+                tt: 'Show Neighbours'
+            });
+            addCoarsenAction();
+        }
         tov.hooks.singleSelect(data);
         tps.displaySomething();
     }
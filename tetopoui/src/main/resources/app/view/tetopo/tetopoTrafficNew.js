@@ -74,11 +74,6 @@
                 gid: 'xMark'
             },
 
-            A: {
-                cb: function () { tts.showAllFlowTraffic(); },
-                tt: 'Monitor all traffic using flow stats',
-                gid: 'allTraffic'
-            },
             Q: {
                 cb: function () { tts.showAllPortTraffic(); },
                 tt: 'Monitor all traffic using port stats',
@@ -111,7 +106,7 @@
             },
 
             _keyOrder: [
-                '0', 'A', 'Q', 'F', 'V', 'leftArrow', 'rightArrow', 'W'
+                '0', 'Q', 'F', 'V', 'leftArrow', 'rightArrow', 'W'
             ]
         },
 
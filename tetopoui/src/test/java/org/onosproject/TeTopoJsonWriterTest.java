@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+import org.onosproject.net.AnnotationKeys;
+import org.onosproject.net.Annotations;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.Device;
+import org.onosproject.net.Link;
+import org.onosproject.net.provider.ProviderId;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.onosproject.TeTopoJson.LAYER_CONTROLLER;
+import static org.onosproject.TeTopoJson.LAYER_KEY;
+import static org.onosproject.net.DeviceId.deviceId;
+import static org.onosproject.net.PortNumber.portNumber;
+
+/**
+ * Unit tests for {@link TeTopoJsonWriter}.
+ */
+public class TeTopoJsonWriterTest {
+
+    private static final ProviderId PID = new ProviderId("test", "tetopoui");
+
+    private final TeTopoJsonWriter writer = new TeTopoJsonWriter();
+
+    private static Device device(String id, Annotations annotations) {
+        return new DefaultDevice(PID, deviceId(id), Device.Type.ROUTER,
+                                 "", "", "", "", null, annotations);
+    }
+
+    private static Link link(String src, String dst, Link.State state) {
+        return DefaultLink.builder()
+                .providerId(PID)
+                .src(new ConnectPoint(deviceId(src), portNumber(1)))
+                .dst(new ConnectPoint(deviceId(dst), portNumber(2)))
+                .type(Link.Type.DIRECT)
+                .state(state)
+                .build();
+    }
+
+    @Test
+    public void locatedDevice() {
+        Device device = device("te:1", DefaultAnnotations.builder()
+                .set(AnnotationKeys.NAME, "Node \"one\"")
+                .set(LAYER_KEY, LAYER_CONTROLLER)
+                .set(AnnotationKeys.LATITUDE, "37.5")
+                .set(AnnotationKeys.LONGITUDE, "-122.25")
+                .build());
+        ObjectNode tree = TeTopoJson.layerDevice(device);
+
+        assertEquals(TeTopoJsonWriter.hash(tree, null), writer.layerDeviceHash(device));
+    }
+
+    @Test
+    public void unlocatedDevice() {
+        Device device = device("te:2", DefaultAnnotations.builder()
+                .set(LAYER_KEY, "opt")
+                .build());
+        ObjectNode tree = TeTopoJson.layerDevice(device);
+
+        assertEquals(TeTopoJsonWriter.hash(tree, null), writer.layerDeviceHash(device));
+    }
+
+    @Test
+    public void deviceWithoutAnnotations() {
+        Device device = device("te:3", null);
+        ObjectNode tree = TeTopoJson.layerDevice(device);
+
+        assertEquals(TeTopoJsonWriter.hash(tree, null), writer.layerDeviceHash(device));
+    }
+
+    @Test
+    public void links() {
+        for (Link.State state : Link.State.values()) {
+            Link link = link("te:1", "te:2", state);
+            ObjectNode tree = TeTopoJson.link(link);
+
+            assertEquals(TeTopoJsonWriter.hash(tree, null), writer.linkHash(link));
+        }
+    }
+
+    @Test
+    public void hashSkipsField() {
+        Device device = device("te:4", DefaultAnnotations.EMPTY);
+        ObjectNode tree = TeTopoJson.layerDevice(device);
+        long hash = writer.layerDeviceHash(device);
+
+        tree.put("metaUi", "{}");
+        assertNotEquals(hash, TeTopoJsonWriter.hash(tree, null));
+        assertEquals(hash, TeTopoJsonWriter.hash(tree, "metaUi"));
+        assertNotEquals(hash, writer.layerDeviceHash(device("te:5", DefaultAnnotations.EMPTY)));
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_REMOVED;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_UPDATED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_REMOVED;
+
+/**
+ * Unit tests for {@link TeTopoUiClusters}.
+ */
+public class TeTopoUiClustersTest {
+
+    // te:1 and te:2 share every cluster but the finest, te:3 is far east
+    private static final String WEST = "cluster:0:g:0:0";
+    private static final String EAST = "cluster:0:g:2:0";
+    private static final String TE1_CELL = "cluster:3:g:0:0";
+    private static final String TE2_CELL = "cluster:3:g:1:0";
+    private static final Set<String> WEST_REFINED =
+            ImmutableSet.of(WEST, "cluster:1:g:0:0", "cluster:2:g:0:0");
+
+    private final TestModelCache modelCache = new TestModelCache();
+    private final TeTopoUiClusters clusters = new TeTopoUiClusters(modelCache);
+
+    @Before
+    public void setUp() {
+        modelCache.devices.add(device("te:1", 1, 1, true));
+        modelCache.devices.add(device("te:2", 3, 1, false));
+        modelCache.devices.add(device("te:3", 40, 1, true));
+        modelCache.links.add(link("te:1", "te:2"));
+        modelCache.links.add(link("te:1", "te:3"));
+        modelCache.links.add(link("te:2", "te:3"));
+        clusters.activate();
+    }
+
+    @After
+    public void tearDown() {
+        clusters.deactivate();
+        assertNull(modelCache.listener);
+    }
+
+    private static ObjectNode device(String id, double lng, double lat, boolean online) {
+        ObjectNode payload = TeTopoJson.objectNode().put("id", id).put("online", online);
+        payload.set("location", TeTopoJson.objectNode()
+                .put("type", "lnglat").put("lng", lng).put("lat", lat));
+        return payload;
+    }
+
+    private static ObjectNode link(String src, String dst) {
+        return TeTopoJson.objectNode()
+                .put("id", src + "/1-" + dst + "/1")
+                .put("src", src)
+                .put("dst", dst);
+    }
+
+    private static Map<String, ObjectNode> byId(List<ObjectNode> payloads) {
+        Map<String, ObjectNode> byId = Maps.newHashMap();
+        payloads.forEach(p -> byId.put(p.path("id").asText(), p));
+        return byId;
+    }
+
+    // an aggregated link runs one way or the other
+    private static Set<String> pair(String a, String b) {
+        return ImmutableSet.of(a, b);
+    }
+
+    // number of links aggregated between each pair of shown elements
+    private static Map<Set<String>, Integer> counts(TeTopoUiClusters.View view) {
+        Map<Set<String>, Integer> counts = Maps.newHashMap();
+        view.aggregated().forEach(p -> counts.put(pair(p.path("src").asText(), p.path("dst").asText()),
+                                                  p.path("cluster").path("count").asInt()));
+        return counts;
+    }
+
+    @Test
+    public void coarsest() {
+        TeTopoUiClusters.View view = clusters.view(ImmutableSet.of());
+        Map<String, ObjectNode> shown = byId(view.clusters());
+        assertEquals(ImmutableSet.of(WEST, EAST), shown.keySet());
+        assertTrue(view.nodes().isEmpty());
+        assertTrue(view.links().isEmpty());
+
+        ObjectNode west = shown.get(WEST);
+        assertEquals(2, west.path("cluster").path("count").asInt());
+        assertEquals(1, west.path("cluster").path("online").asInt());
+        assertEquals(2.0, west.path("location").path("lng").asDouble(), 1e-9);
+        assertEquals(1.0, west.path("location").path("lat").asDouble(), 1e-9);
+
+        // the links te:1 - te:3 and te:2 - te:3, as one
+        assertEquals(ImmutableMap.of(pair(WEST, EAST), 2), counts(view));
+    }
+
+    @Test
+    public void refined() {
+        TeTopoUiClusters.View view = clusters.view(WEST_REFINED);
+        assertEquals(ImmutableSet.of(TE1_CELL, TE2_CELL, EAST), byId(view.clusters()).keySet());
+        assertTrue(view.nodes().isEmpty());
+        assertEquals(ImmutableMap.of(pair(TE1_CELL, TE2_CELL), 1,
+                                     pair(TE1_CELL, EAST), 1,
+                                     pair(TE2_CELL, EAST), 1), counts(view));
+
+        Set<String> refined = ImmutableSet.<String>builder()
+                .addAll(WEST_REFINED).add(TE1_CELL).build();
+        view = clusters.view(refined);
+        assertEquals(ImmutableSet.of("te:1"), view.nodes());
+        assertEquals(ImmutableMap.of(pair(TE2_CELL, "te:1"), 1,
+                                     pair(EAST, "te:1"), 1,
+                                     pair(TE2_CELL, EAST), 1), counts(view));
+        assertTrue(clusters.isShown("te:1", refined));
+        assertFalse(clusters.isShown("te:2", refined));
+
+        // both ends shown as themselves
+        refined = ImmutableSet.<String>builder().addAll(refined).add(TE2_CELL).build();
+        view = clusters.view(refined);
+        assertEquals(ImmutableSet.of("te:1", "te:2"), view.nodes());
+        assertEquals(ImmutableSet.of("te:1/1-te:2/1"), view.links());
+    }
+
+    @Test
+    public void hierarchy() {
+        assertTrue(clusters.isCluster(WEST));
+        assertFalse(clusters.isCluster("te:1"));
+        assertEquals(TE1_CELL, clusters.parentOf("te:1"));
+        assertEquals("cluster:2:g:0:0", clusters.parentOf(TE2_CELL));
+        assertNull(clusters.parentOf("te:9"));
+        assertTrue(TeTopoUiClusters.isWithin(TE2_CELL, WEST));
+        assertTrue(TeTopoUiClusters.isWithin(WEST, WEST));
+        assertFalse(TeTopoUiClusters.isWithin(WEST, TE2_CELL));
+        assertFalse(TeTopoUiClusters.isWithin(TE2_CELL, EAST));
+        assertFalse(TeTopoUiClusters.isWithin(TE2_CELL, "cluster:0:l:0:0"));
+    }
+
+    @Test
+    public void followsModel() {
+        // te:2 moves east, next to te:3
+        modelCache.post(DEVICE_UPDATED, device("te:2", 41, 1, true));
+        TeTopoUiClusters.View view = clusters.view(ImmutableSet.of());
+        Map<String, ObjectNode> shown = byId(view.clusters());
+        assertEquals(1, shown.get(WEST).path("cluster").path("count").asInt());
+        assertEquals(2, shown.get(EAST).path("cluster").path("count").asInt());
+        assertEquals(ImmutableMap.of(pair(WEST, EAST), 2), counts(view));
+
+        modelCache.post(LINK_REMOVED, link("te:1", "te:2"));
+        assertEquals(ImmutableMap.of(pair(WEST, EAST), 1), counts(clusters.view(ImmutableSet.of())));
+
+        modelCache.post(DEVICE_REMOVED, device("te:1", 1, 1, true));
+        view = clusters.view(ImmutableSet.of());
+        assertEquals(ImmutableSet.of(EAST), byId(view.clusters()).keySet());
+        assertTrue(view.aggregated().isEmpty());
+        assertFalse(clusters.isCluster(WEST));
+    }
+
+    @Test
+    public void lowerLayerIgnored() {
+        modelCache.listener.event(new TeTopoUiModelEvent(
+                DEVICE_UPDATED, device("of:1", 100, 50, true), "te:1"));
+        assertEquals(ImmutableSet.of(WEST, EAST), byId(clusters.view(ImmutableSet.of()).clusters()).keySet());
+    }
+
+    @Test
+    public void layoutPositions() {
+        ObjectNode placed = TeTopoJson.objectNode().put("id", "te:4").put("online", true);
+        placed.set("metaUi", TeTopoJson.objectNode().put("x", 100).put("y", 200));
+        modelCache.post(DEVICE_UPDATED, placed);
+        modelCache.post(DEVICE_UPDATED, TeTopoJson.objectNode().put("id", "te:5"));
+
+        Map<String, ObjectNode> shown = byId(clusters.view(ImmutableSet.of()).clusters());
+        assertEquals(ImmutableSet.of(WEST, EAST, "cluster:0:l:0:0", "cluster:0:u:0:0"), shown.keySet());
+        assertEquals(100.0, shown.get("cluster:0:l:0:0").path("metaUi").path("x").asDouble(), 1e-9);
+        assertFalse(shown.get("cluster:0:u:0:0").has("location"));
+        assertFalse(shown.get("cluster:0:u:0:0").has("metaUi"));
+    }
+
+    // View model of fixed payloads, its listener driven by the test.
+    private static class TestModelCache extends TeTopoUiModelCache {
+        private final List<ObjectNode> devices = Lists.newArrayList();
+        private final List<ObjectNode> links = Lists.newArrayList();
+        private TeTopoUiModelListener listener;
+
+        TestModelCache() {
+            super(null);
+        }
+
+        @Override
+        public void addListener(TeTopoUiModelListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void removeListener(TeTopoUiModelListener listener) {
+            this.listener = null;
+        }
+
+        @Override
+        public synchronized List<ObjectNode> devices() {
+            return ImmutableList.copyOf(devices);
+        }
+
+        @Override
+        public synchronized List<ObjectNode> links() {
+            return ImmutableList.copyOf(links);
+        }
+
+        void post(TeTopoUiModelEvent.Type type, ObjectNode payload) {
+            listener.event(new TeTopoUiModelEvent(type, payload));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.TeTopoJson.arrayNode;
+import static org.onosproject.TeTopoJson.objectNode;
+
+/**
+ * Unit tests for {@link TeTopoUiCompactCodec}, decoding the compact form
+ * the way the client does.
+ */
+public class TeTopoUiCompactCodecTest {
+
+    private static ObjectNode device(String id, String name, Double lng, Double lat) {
+        ObjectNode device = objectNode()
+                .put("id", id)
+                .put("type", "router")
+                .put("online", true)
+                .put("master", "127.0.0.1");
+        ArrayNode labels = arrayNode();
+        labels.add("");
+        labels.add(name);
+        labels.add(id);
+        device.set("labels", labels);
+        device.set("props", objectNode().put("name", name).put("ctrl_layer", "pkt"));
+        if (lng != null) {
+            device.set("location", objectNode()
+                    .put("type", "lnglat").put("lng", lng).put("lat", lat));
+        }
+        return device;
+    }
+
+    private static ObjectNode link(String src, String dst, boolean online) {
+        return objectNode()
+                .put("id", src + "/1-" + dst + "/2")
+                .put("type", "direct")
+                .put("expected", false)
+                .put("online", online)
+                .put("linkWidth", 1.2)
+                .put("src", src)
+                .put("srcPort", "1")
+                .put("dst", dst)
+                .put("dstPort", "2");
+    }
+
+    // Mirrors decodeDevices of tetopoForce.js.
+    private static List<ObjectNode> decodeDevices(JsonNode c, JsonNode str) {
+        List<ObjectNode> devices = Lists.newArrayList();
+        for (int i = 0; i < c.get("n").asInt(); i++) {
+            ObjectNode device = objectNode()
+                    .put("id", str.get(c.get("id").get(i).asInt()).asText())
+                    .put("type", str.get(c.get("type").get(i).asInt()).asText())
+                    .put("online", c.get("online").get(i).asInt() == 1)
+                    .put("master", str.get(c.get("master").get(i).asInt()).asText());
+            ArrayNode labels = arrayNode();
+            c.get("labels").get(i).forEach(l -> labels.add(str.get(l.asInt()).asText()));
+            device.set("labels", labels);
+            ObjectNode props = objectNode();
+            JsonNode refs = c.get("props").get(i);
+            for (int j = 0; j < refs.size(); j += 2) {
+                props.put(str.get(refs.get(j).asInt()).asText(),
+                          str.get(refs.get(j + 1).asInt()).asText());
+            }
+            device.set("props", props);
+            if (!c.get("lng").get(i).isNull()) {
+                device.set("location", objectNode().put("type", "lnglat")
+                        .put("lng", c.get("lng").get(i).asDouble())
+                        .put("lat", c.get("lat").get(i).asDouble()));
+            }
+            if (c.has("extra") && !c.get("extra").get(i).isNull()) {
+                device.setAll((ObjectNode) c.get("extra").get(i));
+            }
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    // Mirrors decodeLinks of tetopoForce.js.
+    private static List<ObjectNode> decodeLinks(JsonNode c, JsonNode str) {
+        List<ObjectNode> links = Lists.newArrayList();
+        for (int i = 0; i < c.get("n").asInt(); i++) {
+            ObjectNode link = objectNode()
+                    .put("type", str.get(c.get("type").get(i).asInt()).asText())
+                    .put("expected", c.get("expected").get(i).asInt() == 1)
+                    .put("online", c.get("online").get(i).asInt() == 1)
+                    .put("linkWidth", c.get("linkWidth").get(i).asDouble())
+                    .put("src", str.get(c.get("src").get(i).asInt()).asText())
+                    .put("srcPort", str.get(c.get("srcPort").get(i).asInt()).asText())
+                    .put("dst", str.get(c.get("dst").get(i).asInt()).asText())
+                    .put("dstPort", str.get(c.get("dstPort").get(i).asInt()).asText());
+            link.put("id", link.get("src").asText() + "/" + link.get("srcPort").asText() +
+                    "-" + link.get("dst").asText() + "/" + link.get("dstPort").asText());
+            if (c.has("rev") && !c.get("rev").get(i).isNull()) {
+                link.set("rev", c.get("rev").get(i));
+            }
+            if (c.has("extra") && !c.get("extra").get(i).isNull()) {
+                link.setAll((ObjectNode) c.get("extra").get(i));
+            }
+            links.add(link);
+        }
+        return links;
+    }
+
+    @Test
+    public void roundTrip() {
+        List<ObjectNode> devices = ImmutableList.of(
+                device("te:1", "one", 10.5, -20.25),
+                device("te:2", "two", null, null),
+                device("te:3", "te:3", 0.0, 0.0));
+        List<ObjectNode> links = ImmutableList.of(
+                link("te:1", "te:2", true),
+                link("te:2", "te:3", false));
+
+        ObjectNode encoded = TeTopoUiCompactCodec.encode(devices, links);
+        JsonNode strings = encoded.get("strings");
+        assertEquals(devices, decodeDevices(encoded.get("devices"), strings));
+        assertEquals(links, decodeLinks(encoded.get("links"), strings));
+        assertFalse(encoded.get("devices").has("extra"));
+        assertFalse(encoded.get("links").has("rev"));
+    }
+
+    @Test
+    public void stringsInterned() {
+        ObjectNode encoded = TeTopoUiCompactCodec.encode(
+                ImmutableList.of(device("te:1", "te:1", null, null)), ImmutableList.of());
+        // id, type, master, "", name and props share the table
+        List<String> strings = Lists.newArrayList();
+        encoded.get("strings").forEach(s -> strings.add(s.asText()));
+        assertEquals(ImmutableList.of("te:1", "router", "127.0.0.1", "", "name", "ctrl_layer", "pkt"),
+                     strings);
+        assertFalse(encoded.has("links"));
+    }
+
+    @Test
+    public void extraFieldsKept() {
+        ObjectNode device = device("te:1", "one", null, null);
+        device.set("metaUi", objectNode().put("x", 1.5).put("y", 2.5));
+        ObjectNode link = link("te:1", "te:2", true).put("bundle", 12);
+
+        ObjectNode encoded = TeTopoUiCompactCodec.encode(ImmutableList.of(device),
+                                                         ImmutableList.of(link));
+        JsonNode strings = encoded.get("strings");
+        assertTrue(encoded.get("devices").has("extra"));
+        assertEquals(ImmutableList.of(device), decodeDevices(encoded.get("devices"), strings));
+        assertEquals(ImmutableList.of(link), decodeLinks(encoded.get("links"), strings));
+    }
+
+    @Test
+    public void pairedLinks() {
+        List<ObjectNode> links = TeTopoUiLinkPairs.pair(ImmutableList.of(
+                link("te:1", "te:2", true),
+                link("te:2", "te:1", false)));
+
+        ObjectNode encoded = TeTopoUiCompactCodec.encode(ImmutableList.of(), links);
+        assertFalse(encoded.has("devices"));
+        assertEquals(links, decodeLinks(encoded.get("links"), encoded.get("strings")));
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.cluster.RoleInfo;
+import org.onosproject.mastership.MastershipEvent;
+import org.onosproject.mastership.MastershipListener;
+import org.onosproject.mastership.MastershipServiceAdapter;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceServiceAdapter;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowEntry.FlowEntryState;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleListener;
+import org.onosproject.net.flow.FlowRuleServiceAdapter;
+import org.onosproject.net.provider.ProviderId;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.onosproject.net.DeviceId.deviceId;
+
+/**
+ * Unit tests for {@link TeTopoUiCounters}.
+ */
+public class TeTopoUiCountersTest {
+
+    private static final DeviceId DID = deviceId("of:0000000000000001");
+    private static final Device DEVICE =
+            new DefaultDevice(new ProviderId("test", "tetopoui"), DID, Device.Type.SWITCH,
+                              "", "", "", "", null, DefaultAnnotations.EMPTY);
+    private static final FlowRule RULE = flowRule(DID);
+    private static final FlowEntry ADDED = flowEntry(FlowEntryState.ADDED);
+    private static final FlowEntry PENDING = flowEntry(FlowEntryState.PENDING_ADD);
+
+    private final TestDeviceService deviceService = new TestDeviceService();
+    private final TestFlowRuleService flowService = new TestFlowRuleService();
+    private final TestMastershipService mastershipService = new TestMastershipService();
+
+    private TeTopoUiCounters counters;
+
+    @Before
+    public void setUp() {
+        counters = new TeTopoUiCounters(deviceService, flowService, mastershipService);
+        counters.activate();
+    }
+
+    @After
+    public void tearDown() {
+        counters.deactivate();
+    }
+
+    private static FlowRule flowRule(DeviceId deviceId) {
+        return (FlowRule) Proxy.newProxyInstance(
+                FlowRule.class.getClassLoader(), new Class<?>[]{FlowRule.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("deviceId")) {
+                        return deviceId;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static FlowEntry flowEntry(FlowEntryState state) {
+        return (FlowEntry) Proxy.newProxyInstance(
+                FlowEntry.class.getClassLoader(), new Class<?>[]{FlowEntry.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("state")) {
+                        return state;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private void flowEvent(FlowRuleEvent.Type type) {
+        flowService.listener.event(new FlowRuleEvent(type, RULE));
+    }
+
+    private void deviceEvent(DeviceEvent.Type type) {
+        deviceService.listener.event(new DeviceEvent(type, DEVICE));
+    }
+
+    @Test
+    public void portsCountedOnceThenFollowed() {
+        deviceService.ports = 4;
+        assertEquals(4, counters.portCount(DID));
+        deviceEvent(DeviceEvent.Type.PORT_ADDED);
+        deviceEvent(DeviceEvent.Type.PORT_ADDED);
+        deviceEvent(DeviceEvent.Type.PORT_REMOVED);
+        assertEquals(5, counters.portCount(DID));
+        assertEquals(1, deviceService.requests);
+    }
+
+    @Test
+    public void addsCountedOnConfirmation() {
+        flowService.entries = 3;
+        assertEquals(3, counters.flowCount(DID));
+
+        // a request may replace a stored entry; only confirmations count
+        flowEvent(FlowRuleEvent.Type.RULE_ADD_REQUESTED);
+        assertEquals(3, counters.flowCount(DID));
+        flowEvent(FlowRuleEvent.Type.RULE_ADDED);
+        assertEquals(4, counters.flowCount(DID));
+        assertEquals(1, flowService.requests);
+    }
+
+    @Test
+    public void pendingEntriesCountedOnConfirmation() {
+        flowService.entries = 3;
+        flowService.pending = 2;
+        assertEquals(3, counters.flowCount(DID));
+
+        flowEvent(FlowRuleEvent.Type.RULE_ADDED);
+        assertEquals(4, counters.flowCount(DID));
+        assertEquals(1, flowService.requests);
+    }
+
+    @Test
+    public void removalsFollowed() {
+        flowService.entries = 3;
+        assertEquals(3, counters.flowCount(DID));
+        flowEvent(FlowRuleEvent.Type.RULE_REMOVE_REQUESTED);
+        flowEvent(FlowRuleEvent.Type.RULE_REMOVED);
+        assertEquals(2, counters.flowCount(DID));
+        assertEquals(1, flowService.requests);
+    }
+
+    @Test
+    public void negativeCountMarkedStale() {
+        flowService.entries = 0;
+        assertEquals(0, counters.flowCount(DID));
+        flowEvent(FlowRuleEvent.Type.RULE_REMOVED);
+        assertEquals(0, counters.flowCount(DID));
+        assertEquals(2, flowService.requests);
+    }
+
+    @Test
+    public void eventDuringCountNotLost() {
+        flowService.entries = 3;
+        // the entry is removed while the flow entries are being counted
+        flowService.duringCount = () -> flowEvent(FlowRuleEvent.Type.RULE_REMOVED);
+        assertEquals(3, counters.flowCount(DID));
+
+        flowService.duringCount = null;
+        flowService.entries = 2;
+        assertEquals(2, counters.flowCount(DID));
+        assertEquals(2, flowService.requests);
+    }
+
+    @Test
+    public void failedCountRetried() {
+        flowService.failure = new IllegalStateException("store unavailable");
+        try {
+            counters.flowCount(DID);
+            fail("count expected to fail");
+        } catch (IllegalStateException e) {
+            flowService.failure = null;
+        }
+        flowService.entries = 1;
+        assertEquals(1, counters.flowCount(DID));
+    }
+
+    @Test
+    public void mastershipChangeMarksStale() {
+        flowService.entries = 3;
+        assertEquals(3, counters.flowCount(DID));
+        flowService.entries = 7;
+        mastershipService.listener.event(
+                new MastershipEvent(MastershipEvent.Type.MASTER_CHANGED, DID, new RoleInfo()));
+        assertEquals(7, counters.flowCount(DID));
+    }
+
+    @Test
+    public void deviceAddedMarksStale() {
+        deviceService.ports = 2;
+        flowService.entries = 3;
+        assertEquals(2, counters.portCount(DID));
+        assertEquals(3, counters.flowCount(DID));
+
+        deviceService.ports = 6;
+        flowService.entries = 1;
+        deviceEvent(DeviceEvent.Type.DEVICE_ADDED);
+        assertEquals(6, counters.portCount(DID));
+        assertEquals(1, counters.flowCount(DID));
+    }
+
+    private static class TestDeviceService extends DeviceServiceAdapter {
+        private DeviceListener listener;
+        private int ports;
+        private int requests;
+
+        @Override
+        public void addListener(DeviceListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public List<Port> getPorts(DeviceId deviceId) {
+            requests++;
+            return Collections.nCopies(ports, null);
+        }
+    }
+
+    private static class TestFlowRuleService extends FlowRuleServiceAdapter {
+        private FlowRuleListener listener;
+        private int entries;
+        private int pending;
+        private int requests;
+        private Runnable duringCount;
+        private RuntimeException failure;
+
+        @Override
+        public void addListener(FlowRuleListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public Iterable<FlowEntry> getFlowEntries(DeviceId deviceId) {
+            requests++;
+            if (failure != null) {
+                throw failure;
+            }
+            if (duringCount != null) {
+                duringCount.run();
+            }
+            List<FlowEntry> stored = new ArrayList<>();
+            stored.addAll(Collections.nCopies(entries, ADDED));
+            stored.addAll(Collections.nCopies(pending, PENDING));
+            return stored;
+        }
+    }
+
+    private static class TestMastershipService extends MastershipServiceAdapter {
+        private MastershipListener listener;
+
+        @Override
+        public void addListener(MastershipListener listener) {
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_ADDED;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_REMOVED;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_UPDATED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_ADDED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_REMOVED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_UPDATED;
+
+/**
+ * Unit tests for {@link TeTopoUiEventAccumulator}.
+ */
+public class TeTopoUiEventAccumulatorTest {
+
+    private final List<List<TeTopoUiModelEvent>> batches = Lists.newArrayList();
+
+    // tasks handed to the executor, run when the test says so
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private TeTopoUiEventAccumulator accumulator;
+
+    @Before
+    public void setUp() {
+        accumulator = new TeTopoUiEventAccumulator(100, 1000, tasks::add, batches::add);
+    }
+
+    private static TeTopoUiModelEvent event(TeTopoUiModelEvent.Type type, String id,
+                                            String label, long sequence) {
+        ObjectNode payload = TeTopoJson.objectNode().put("id", id).put("label", label);
+        return new TeTopoUiModelEvent(type, payload, null, sequence);
+    }
+
+    // Runs the tasks handed to the executor and returns the only batch.
+    private List<TeTopoUiModelEvent> batch() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+        assertEquals(1, batches.size());
+        return batches.get(0);
+    }
+
+    private static void assertEvent(TeTopoUiModelEvent event, TeTopoUiModelEvent.Type type,
+                                    String id, String label, long sequence) {
+        assertEquals(type, event.type());
+        assertEquals(id, event.id());
+        assertEquals(label, event.subject().path("label").asText());
+        assertEquals(sequence, event.sequence());
+    }
+
+    @Test
+    public void updateFoldsIntoAdd() {
+        accumulator.processItems(ImmutableList.of(
+                event(DEVICE_ADDED, "d1", "a", 1),
+                event(DEVICE_UPDATED, "d1", "b", 2),
+                event(DEVICE_UPDATED, "d1", "c", 3)));
+
+        List<TeTopoUiModelEvent> batch = batch();
+        assertEquals(1, batch.size());
+        assertEvent(batch.get(0), DEVICE_ADDED, "d1", "c", 3);
+        assertEquals(2, accumulator.mergedCount());
+        assertEquals(1, accumulator.emittedCount());
+    }
+
+    @Test
+    public void addThenRemoveCancels() {
+        accumulator.processItems(ImmutableList.of(
+                event(LINK_ADDED, "l1", "a", 1),
+                event(LINK_REMOVED, "l1", "a", 2)));
+
+        assertTrue(tasks.isEmpty());
+        assertTrue(batches.isEmpty());
+        assertEquals(2, accumulator.droppedCount());
+    }
+
+    @Test
+    public void cancelledSequenceCarried() {
+        accumulator.processItems(ImmutableList.of(
+                event(DEVICE_UPDATED, "d1", "a", 1),
+                event(LINK_ADDED, "l1", "a", 2),
+                event(LINK_REMOVED, "l1", "a", 3)));
+
+        // the batch accounts for the link that cancelled out
+        List<TeTopoUiModelEvent> batch = batch();
+        assertEquals(1, batch.size());
+        assertEvent(batch.get(0), DEVICE_UPDATED, "d1", "a", 3);
+    }
+
+    @Test
+    public void cancelledSequenceCarriedOver() {
+        accumulator.processItems(ImmutableList.of(
+                event(LINK_ADDED, "l1", "a", 1),
+                event(LINK_REMOVED, "l1", "a", 2)));
+        assertTrue(batches.isEmpty());
+
+        accumulator.processItems(ImmutableList.of(event(DEVICE_UPDATED, "d1", "a", 0)));
+        assertEvent(batch().get(0), DEVICE_UPDATED, "d1", "a", 2);
+    }
+
+    @Test
+    public void parentsKeptApart() {
+        ObjectNode payload = TeTopoJson.objectNode().put("id", "of:1").put("label", "a");
+        accumulator.processItems(ImmutableList.of(
+                new TeTopoUiModelEvent(DEVICE_ADDED, payload, "te:1", 1),
+                new TeTopoUiModelEvent(DEVICE_REMOVED, payload, "te:2", 2)));
+
+        List<TeTopoUiModelEvent> batch = batch();
+        assertEquals(2, batch.size());
+        assertEquals("te:1", batch.get(0).parent());
+        assertEquals(DEVICE_ADDED, batch.get(0).type());
+        assertEquals("te:2", batch.get(1).parent());
+        assertEquals(DEVICE_REMOVED, batch.get(1).type());
+        assertEquals(0, accumulator.droppedCount());
+    }
+
+    @Test
+    public void removeThenAddBecomesUpdate() {
+        accumulator.processItems(ImmutableList.of(
+                event(LINK_REMOVED, "l1", "a", 1),
+                event(LINK_ADDED, "l1", "b", 2)));
+
+        List<TeTopoUiModelEvent> batch = batch();
+        assertEquals(1, batch.size());
+        assertEvent(batch.get(0), LINK_UPDATED, "l1", "b", 2);
+    }
+
+    @Test
+    public void devicesAndLinksKeptApart() {
+        // a device and a link may share an id
+        accumulator.processItems(ImmutableList.of(
+                event(DEVICE_UPDATED, "x", "device", 1),
+                event(LINK_UPDATED, "x", "link", 2)));
+
+        List<TeTopoUiModelEvent> batch = batch();
+        assertEquals(2, batch.size());
+        assertEvent(batch.get(0), DEVICE_UPDATED, "x", "device", 1);
+        assertEvent(batch.get(1), LINK_UPDATED, "x", "link", 2);
+    }
+
+    @Test
+    public void devicesAddedBeforeLinksRemovedAfter() {
+        accumulator.processItems(ImmutableList.of(
+                event(DEVICE_REMOVED, "d1", "a", 1),
+                event(LINK_ADDED, "l1", "a", 2),
+                event(LINK_REMOVED, "l2", "a", 3),
+                event(DEVICE_ADDED, "d2", "a", 4)));
+
+        List<TeTopoUiModelEvent> batch = batch();
+        assertEquals(4, batch.size());
+        assertEvent(batch.get(0), DEVICE_ADDED, "d2", "a", 4);
+        assertEvent(batch.get(1), LINK_ADDED, "l1", "a", 2);
+        assertEvent(batch.get(2), LINK_REMOVED, "l2", "a", 3);
+        assertEvent(batch.get(3), DEVICE_REMOVED, "d1", "a", 1);
+    }
+
+    @Test
+    public void batchesHandedOverInOrder() {
+        accumulator.processItems(ImmutableList.of(event(DEVICE_ADDED, "d1", "a", 1)));
+        accumulator.processItems(ImmutableList.of(event(DEVICE_ADDED, "d2", "a", 2)));
+
+        // one drain is scheduled for both batches
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        assertEquals(2, batches.size());
+        assertEquals("d1", batches.get(0).get(0).id());
+        assertEquals("d2", batches.get(1).get(0).id());
+    }
+
+    @Test
+    public void failingSinkDoesNotStopDelivery() {
+        List<String> delivered = Lists.newArrayList();
+        TeTopoUiEventAccumulator failing = new TeTopoUiEventAccumulator(
+                100, 1000, Runnable::run, batch -> {
+                    delivered.add(batch.get(0).id());
+                    throw new IllegalStateException("sink failure");
+                });
+
+        failing.processItems(ImmutableList.of(event(DEVICE_ADDED, "d1", "a", 1)));
+        failing.processItems(ImmutableList.of(event(DEVICE_ADDED, "d2", "a", 2)));
+        assertEquals(ImmutableList.of("d1", "d2"), delivered);
+    }
+}
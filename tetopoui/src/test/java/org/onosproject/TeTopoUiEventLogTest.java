@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_UPDATED;
+
+/**
+ * Unit tests for {@link TeTopoUiEventLog}.
+ */
+public class TeTopoUiEventLogTest {
+
+    private static final int CAPACITY = 4;
+
+    private final TeTopoUiEventLog log = new TeTopoUiEventLog(CAPACITY);
+
+    private void append(int count) {
+        for (int i = 0; i < count; i++) {
+            long sequence = log.last() + 1;
+            log.append(new TeTopoUiModelEvent(
+                    DEVICE_UPDATED, TeTopoJson.objectNode().put("id", "d" + sequence),
+                    null, sequence));
+        }
+    }
+
+    private static List<Long> sequences(List<TeTopoUiModelEvent> events) {
+        List<Long> sequences = Lists.newArrayList();
+        events.forEach(e -> sequences.add(e.sequence()));
+        return sequences;
+    }
+
+    @Test
+    public void empty() {
+        assertEquals(0, log.last());
+        assertTrue(log.since(0).isEmpty());
+        assertNull(log.since(1));
+        assertNull(log.since(-1));
+    }
+
+    @Test
+    public void since() {
+        append(3);
+        assertEquals(3, log.last());
+        assertEquals(ImmutableList.of(1L, 2L, 3L), sequences(log.since(0)));
+        assertEquals(ImmutableList.of(3L), sequences(log.since(2)));
+        assertTrue(log.since(3).isEmpty());
+    }
+
+    @Test
+    public void wrapsAround() {
+        append(CAPACITY * 2 + 1);
+        long last = CAPACITY * 2 + 1;
+        assertEquals(last, log.last());
+
+        // the last CAPACITY events are still logged, in order
+        assertEquals(ImmutableList.of(6L, 7L, 8L, 9L), sequences(log.since(last - CAPACITY)));
+        assertEquals("d9", log.since(last - 1).get(0).id());
+
+        // older ones have been overwritten
+        assertNull(log.since(last - CAPACITY - 1));
+        assertNull(log.since(0));
+    }
+
+    @Test
+    public void futureVersionRefused() {
+        append(2);
+        // a client claiming a version the log never reached must resync
+        assertNull(log.since(3));
+    }
+}
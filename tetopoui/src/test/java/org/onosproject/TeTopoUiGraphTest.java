@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.Link;
+import org.onosproject.net.provider.ProviderId;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.net.DeviceId.deviceId;
+import static org.onosproject.net.PortNumber.portNumber;
+
+/**
+ * Unit tests for {@link TeTopoUiGraph}.
+ */
+public class TeTopoUiGraphTest {
+
+    private static final ProviderId PID = new ProviderId("test", "tetopoui");
+
+    private final TeTopoUiGraph.Search search = new TeTopoUiGraph.Search();
+
+    private static Link link(String src, String dst) {
+        return DefaultLink.builder()
+                .providerId(PID)
+                .src(new ConnectPoint(deviceId(src), portNumber(1)))
+                .dst(new ConnectPoint(deviceId(dst), portNumber(1)))
+                .type(Link.Type.DIRECT)
+                .state(Link.State.ACTIVE)
+                .build();
+    }
+
+    // te:1 - te:2 - te:3, with te:1 supported by of:1 and of:2, which are
+    // linked, and te:3 supported by of:3
+    private static TeTopoUiGraph graph() {
+        return TeTopoUiGraph.builder()
+                .link(link("te:1", "te:2"))
+                .link(link("te:2", "te:3"))
+                .link(link("te:1", "te:2"))
+                .member(link("te:1", "of:1"))
+                .member(link("te:1", "of:2"))
+                .member(link("te:3", "of:3"))
+                .link(link("of:1", "of:2"))
+                .build();
+    }
+
+    private Set<String> nodes() {
+        Set<String> nodes = Sets.newHashSet();
+        for (int i = 0; i < search.nodeCount(); i++) {
+            nodes.add(search.nodeId(i));
+        }
+        return nodes;
+    }
+
+    private Set<String> links() {
+        Set<String> links = Sets.newHashSet();
+        for (int i = 0; i < search.linkCount(); i++) {
+            links.add(search.linkId(i));
+        }
+        return links;
+    }
+
+    @Test
+    public void structure() {
+        TeTopoUiGraph graph = graph();
+        assertEquals(6, graph.nodeCount());
+        // the repeated link is interned once
+        assertEquals(6, graph.linkCount());
+
+        int te2 = graph.node("te:2");
+        assertEquals(2, graph.degree(te2));
+        Set<String> neighbours = Sets.newHashSet();
+        for (int i = 0; i < graph.degree(te2); i++) {
+            neighbours.add(graph.nodeId(graph.neighbour(te2, i)));
+        }
+        assertEquals(ImmutableSet.of("te:1", "te:3"), neighbours);
+
+        int te1 = graph.node("te:1");
+        assertEquals(TeTopoUiGraph.NONE, graph.parent(te1));
+        assertEquals(2, graph.memberCount(te1));
+        assertEquals(te1, graph.parent(graph.node("of:2")));
+        assertEquals(0, graph.memberCount(graph.node("of:2")));
+        assertEquals("of:1", graph.nodeId(graph.member(te1, 0)));
+        assertEquals(TeTopoUiGraph.NONE, graph.node("of:9"));
+    }
+
+    @Test
+    public void sameLayer() {
+        assertTrue(graph().neighbourhood("te:1", 1, false, search));
+        assertEquals("te:1", search.nodeId(0));
+        assertEquals(0, search.depth(0));
+        assertEquals(1, search.depth(1));
+        assertEquals(ImmutableSet.of("te:1", "te:2"), nodes());
+        assertEquals(ImmutableSet.of("te:1/1-te:2/1"), links());
+    }
+
+    @Test
+    public void crossLayer() {
+        assertTrue(graph().neighbourhood("te:1", 1, true, search));
+        assertEquals(ImmutableSet.of("te:1", "te:2", "of:1", "of:2"), nodes());
+        // the link between the members is among the nodes found
+        assertEquals(ImmutableSet.of("te:1/1-te:2/1", "te:1/1-of:1/1",
+                                     "te:1/1-of:2/1", "of:1/1-of:2/1"), links());
+
+        assertTrue(graph().neighbourhood("of:1", 2, true, search));
+        assertEquals(ImmutableSet.of("of:1", "of:2", "te:1", "te:2"), nodes());
+    }
+
+    @Test
+    public void inOrderOfDistance() {
+        assertTrue(graph().neighbourhood("te:1", 2, false, search));
+        assertEquals(3, search.nodeCount());
+        assertEquals("te:3", search.nodeId(2));
+        assertEquals(2, search.depth(2));
+        assertEquals(2, search.linkCount());
+    }
+
+    @Test
+    public void searchReused() {
+        TeTopoUiGraph graph = graph();
+        assertTrue(graph.neighbourhood("te:1", 3, true, search));
+        assertEquals(6, search.nodeCount());
+        assertTrue(graph.neighbourhood("te:3", 0, false, search));
+        assertEquals(ImmutableSet.of("te:3"), nodes());
+        assertEquals(0, search.linkCount());
+
+        assertFalse(graph.neighbourhood("te:9", 1, true, search));
+        assertFalse(TeTopoUiGraph.EMPTY.neighbourhood("te:1", 1, true, search));
+        assertEquals(0, search.nodeCount());
+    }
+}
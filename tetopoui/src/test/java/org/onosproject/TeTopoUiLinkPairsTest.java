@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.onosproject.TeTopoJson.objectNode;
+
+/**
+ * Unit tests for {@link TeTopoUiLinkPairs}, unpacking the pairs the way
+ * the client does.
+ */
+public class TeTopoUiLinkPairsTest {
+
+    private static ObjectNode link(String src, String srcPort, String dst, String dstPort,
+                                   boolean online) {
+        return objectNode()
+                .put("id", src + "/" + srcPort + "-" + dst + "/" + dstPort)
+                .put("type", "direct")
+                .put("expected", false)
+                .put("online", online)
+                .put("linkWidth", 1.2)
+                .put("src", src)
+                .put("srcPort", srcPort)
+                .put("dst", dst)
+                .put("dstPort", dstPort);
+    }
+
+    // Mirrors reverseLink of tetopoForce.js.
+    private static ObjectNode reverse(ObjectNode link) {
+        if (!link.has("rev")) {
+            return null;
+        }
+        ObjectNode rev = objectNode();
+        rev.setAll(link);
+        rev.set("src", link.get("dst"));
+        rev.set("srcPort", link.get("dstPort"));
+        rev.set("dst", link.get("src"));
+        rev.set("dstPort", link.get("srcPort"));
+        rev.setAll((ObjectNode) link.get("rev"));
+        rev.remove("rev");
+        rev.put("id", rev.get("src").asText() + "/" + rev.get("srcPort").asText() + "-" +
+                rev.get("dst").asText() + "/" + rev.get("dstPort").asText());
+        return rev;
+    }
+
+    // Removes the paired direction, giving back the first one.
+    private static ObjectNode forward(ObjectNode link) {
+        ObjectNode forward = link.deepCopy();
+        forward.remove("rev");
+        return forward;
+    }
+
+    @Test
+    public void bothDirectionsPaired() {
+        ObjectNode ab = link("a", "1", "b", "2", true);
+        ObjectNode ba = link("b", "2", "a", "1", false).put("type", "optical");
+
+        List<ObjectNode> paired = TeTopoUiLinkPairs.pair(ImmutableList.of(ab, ba));
+        assertEquals(1, paired.size());
+        ObjectNode pair = paired.get(0);
+        assertEquals(ab, forward(pair));
+        assertEquals(ba, reverse(pair));
+
+        // only the state and the differing attributes are carried
+        assertEquals(objectNode().put("online", false).put("type", "optical"), pair.get("rev"));
+    }
+
+    @Test
+    public void sharedPayloadsUntouched() {
+        ObjectNode ab = link("a", "1", "b", "2", true);
+        ObjectNode ba = link("b", "2", "a", "1", true);
+        ObjectNode before = ab.deepCopy();
+
+        TeTopoUiLinkPairs.pair(ImmutableList.of(ab, ba));
+        assertEquals(before, ab);
+        assertFalse(ab.has("rev"));
+    }
+
+    @Test
+    public void unpairedKeptInOrder() {
+        ObjectNode ab = link("a", "1", "b", "2", true);
+        ObjectNode bc = link("b", "3", "c", "1", true);
+        ObjectNode ba = link("b", "2", "a", "1", true);
+        // same devices, other ports: not the reverse of ab
+        ObjectNode ba2 = link("b", "9", "a", "1", true);
+
+        List<ObjectNode> paired = TeTopoUiLinkPairs.pair(ImmutableList.of(ab, bc, ba, ba2));
+        assertEquals(3, paired.size());
+        assertEquals(ab, forward(paired.get(0)));
+        assertEquals(ba, reverse(paired.get(0)));
+        assertSame(bc, paired.get(1));
+        assertSame(ba2, paired.get(2));
+        assertNull(reverse(paired.get(2)));
+    }
+
+    @Test
+    public void selfLoopNotPaired() {
+        ObjectNode loop = link("a", "1", "a", "1", true);
+        assertEquals(ImmutableList.of(loop), TeTopoUiLinkPairs.pair(ImmutableList.of(loop)));
+    }
+}
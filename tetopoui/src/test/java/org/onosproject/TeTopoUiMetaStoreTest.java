@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TeTopoUiMetaStore}.
+ */
+public class TeTopoUiMetaStoreTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("tetopoui").toFile();
+        file = new File(dir, "meta.log");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                assertTrue(f.delete());
+            }
+        }
+        assertTrue(dir.delete());
+    }
+
+    private static ObjectNode meta(double x, double y) {
+        return TeTopoJson.objectNode().put("x", x).put("y", y);
+    }
+
+    private TeTopoUiMetaStore open() {
+        TeTopoUiMetaStore store = new TeTopoUiMetaStore(file);
+        store.activate();
+        return store;
+    }
+
+    private List<String> lines() throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void persisted() {
+        TeTopoUiMetaStore store = open();
+        store.put("net1", "n1", meta(1, 2));
+        store.put("net1", "n2", meta(3, 4));
+        store.put("", "of:1", meta(5, 6));
+        store.put("net1", "n2", null);
+        assertEquals(meta(1, 2), store.get("net1", "n1"));
+        assertNull(store.get("net1", "n2"));
+        store.deactivate();
+
+        TeTopoUiMetaStore reopened = open();
+        assertEquals(2, reopened.entries().size());
+        assertEquals(meta(1, 2), reopened.get("net1", "n1"));
+        assertEquals(meta(5, 6), reopened.get("", "of:1"));
+        assertEquals(meta(5, 6), reopened.get(null, "of:1"));
+        assertNull(reopened.get("net1", "n2"));
+        reopened.deactivate();
+    }
+
+    @Test
+    public void changesCollapsed() throws IOException {
+        TeTopoUiMetaStore store = open();
+        for (int i = 0; i < 10; i++) {
+            store.put("net1", "n1", meta(i, i));
+        }
+        store.deactivate();
+        assertEquals(1, lines().size());
+
+        TeTopoUiMetaStore reopened = open();
+        assertEquals(meta(9, 9), reopened.get("net1", "n1"));
+        reopened.deactivate();
+    }
+
+    @Test
+    public void tornTailRecovered() throws IOException {
+        TeTopoUiMetaStore store = open();
+        store.put("net1", "n1", meta(1, 2));
+        store.put("net1", "n2", meta(3, 4));
+        store.deactivate();
+
+        // a crash in the middle of writing the next record
+        Files.write(file.toPath(), "{\"k\":\"net1/n3\",\"m\":{\"x\":".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+        TeTopoUiMetaStore reopened = open();
+        assertEquals(2, reopened.entries().size());
+        assertEquals(meta(3, 4), reopened.get("net1", "n2"));
+        assertNull(reopened.get("net1", "n3"));
+
+        // the damaged tail was dropped, so new records are not glued to it
+        assertEquals(2, lines().size());
+        reopened.put("net1", "n3", meta(7, 8));
+        reopened.deactivate();
+
+        TeTopoUiMetaStore again = open();
+        assertEquals(3, again.entries().size());
+        assertEquals(meta(7, 8), again.get("net1", "n3"));
+        again.deactivate();
+        assertFalse(new File(dir, file.getName() + ".tmp").exists());
+    }
+
+    @Test
+    public void emptyMetaRemoves() {
+        TeTopoUiMetaStore store = open();
+        store.put("net1", "n1", meta(1, 2));
+        store.put("net1", "n1", TeTopoJson.objectNode());
+        assertNull(store.get("net1", "n1"));
+        store.deactivate();
+
+        TeTopoUiMetaStore reopened = open();
+        assertTrue(reopened.entries().isEmpty());
+        reopened.deactivate();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.Device;
+import org.onosproject.net.Link;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceServiceAdapter;
+import org.onosproject.net.link.LinkEvent;
+import org.onosproject.net.link.LinkListener;
+import org.onosproject.net.link.LinkServiceAdapter;
+import org.onosproject.net.provider.ProviderId;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.net.DeviceId.deviceId;
+import static org.onosproject.net.PortNumber.portNumber;
+
+/**
+ * Unit tests for {@link TeTopoUiParkedViews}.
+ */
+public class TeTopoUiParkedViewsTest {
+
+    private static final ProviderId PID = new ProviderId("test", "tetopoui");
+    private static final Device DEVICE =
+            new DefaultDevice(PID, deviceId("of:1"), Device.Type.SWITCH,
+                              "", "", "", "", null, DefaultAnnotations.EMPTY);
+    private static final Link LINK = DefaultLink.builder()
+            .providerId(PID)
+            .src(new ConnectPoint(deviceId("of:1"), portNumber(1)))
+            .dst(new ConnectPoint(deviceId("of:2"), portNumber(1)))
+            .type(Link.Type.DIRECT)
+            .state(Link.State.ACTIVE)
+            .build();
+
+    private final TestDeviceService deviceService = new TestDeviceService();
+    private final TestLinkService linkService = new TestLinkService();
+    private final List<TeTopoUiParkedViews.View> dropped = Lists.newArrayList();
+
+    private TeTopoUiParkedViews parkedViews;
+
+    @Before
+    public void setUp() {
+        parkedViews = new TeTopoUiParkedViews(60000, dropped::add, deviceService, linkService);
+        parkedViews.activate();
+    }
+
+    @After
+    public void tearDown() {
+        parkedViews.deactivate();
+    }
+
+    private static TeTopoUiParkedViews.View view(long mark) {
+        return new TeTopoUiParkedViews.View(mark, null, ImmutableSet.of("te:1"));
+    }
+
+    @Test
+    public void handedOutOnce() {
+        TeTopoUiParkedViews.View view = view(3);
+        parkedViews.park("token", view);
+        assertSame(view, parkedViews.take("token"));
+        assertNull(parkedViews.take("token"));
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void replacedViewDropped() {
+        TeTopoUiParkedViews.View first = view(1);
+        parkedViews.park("token", first);
+        parkedViews.park("token", view(2));
+        assertEquals(1, dropped.size());
+        assertSame(first, dropped.get(0));
+        assertEquals(ImmutableSet.of("te:1"), dropped.get(0).expanded());
+    }
+
+    @Test
+    public void coreChangesMissed() {
+        TeTopoUiParkedViews.View view = view(1);
+        parkedViews.park("token", view);
+        assertFalse(parkedViews.missedCoreChanges(view));
+
+        // port statistics are not shown, so not missed
+        deviceService.listener.event(new DeviceEvent(DeviceEvent.Type.PORT_STATS_UPDATED, DEVICE));
+        assertFalse(parkedViews.missedCoreChanges(view));
+
+        linkService.listener.event(new LinkEvent(LinkEvent.Type.LINK_ADDED, LINK));
+        assertTrue(parkedViews.missedCoreChanges(view));
+        assertEquals(1, parkedViews.coreChanges());
+
+        deviceService.listener.event(new DeviceEvent(DeviceEvent.Type.DEVICE_UPDATED, DEVICE));
+        assertEquals(2, parkedViews.coreChanges());
+
+        // stamped again when parked again
+        parkedViews.park("other", view);
+        assertFalse(parkedViews.missedCoreChanges(view));
+    }
+
+    @Test
+    public void pausedBeforeParking() {
+        // paused, then a core change the paused session did not see
+        long paused = parkedViews.coreChanges();
+        linkService.listener.event(new LinkEvent(LinkEvent.Type.LINK_REMOVED, LINK));
+
+        // disconnected, parked as of its pause
+        TeTopoUiParkedViews.View view = view(1);
+        parkedViews.park("token", view, paused);
+
+        TeTopoUiParkedViews.View resumed = parkedViews.take("token");
+        assertSame(view, resumed);
+        assertTrue(parkedViews.missedCoreChanges(resumed));
+    }
+
+    @Test
+    public void pausedThenParkedThenChanged() {
+        long paused = parkedViews.coreChanges();
+        TeTopoUiParkedViews.View view = view(1);
+        parkedViews.park("token", view, paused);
+        assertFalse(parkedViews.missedCoreChanges(view));
+
+        deviceService.listener.event(new DeviceEvent(DeviceEvent.Type.DEVICE_ADDED, DEVICE));
+        assertTrue(parkedViews.missedCoreChanges(parkedViews.take("token")));
+    }
+
+    @Test
+    public void noServicesNoChanges() {
+        TeTopoUiParkedViews plain = new TeTopoUiParkedViews(60000);
+        plain.activate();
+        TeTopoUiParkedViews.View view = view(1);
+        plain.park("token", view);
+        assertFalse(plain.missedCoreChanges(view));
+        plain.deactivate();
+    }
+
+    private static class TestDeviceService extends DeviceServiceAdapter {
+        private DeviceListener listener;
+
+        @Override
+        public void addListener(DeviceListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private static class TestLinkService extends LinkServiceAdapter {
+        private LinkListener listener;
+
+        @Override
+        public void addListener(LinkListener listener) {
+            this.listener = listener;
+        }
+    }
+}
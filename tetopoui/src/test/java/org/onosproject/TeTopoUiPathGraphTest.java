@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DefaultLink;
+import org.onosproject.net.Link;
+import org.onosproject.net.provider.ProviderId;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.net.DeviceId.deviceId;
+import static org.onosproject.net.PortNumber.portNumber;
+
+/**
+ * Unit tests for {@link TeTopoUiPathGraph}.
+ */
+public class TeTopoUiPathGraphTest {
+
+    private static final ProviderId PID = new ProviderId("test", "tetopoui");
+
+    private final TeTopoUiPathGraph.Search search = new TeTopoUiPathGraph.Search();
+
+    private static Link link(String src, int srcPort, String dst, int dstPort) {
+        return DefaultLink.builder()
+                .providerId(PID)
+                .src(new ConnectPoint(deviceId(src), portNumber(srcPort)))
+                .dst(new ConnectPoint(deviceId(dst), portNumber(dstPort)))
+                .type(Link.Type.DIRECT)
+                .state(Link.State.ACTIVE)
+                .build();
+    }
+
+    // te:a - te:b - te:d at metric 1 per link, te:a - te:c - te:d at
+    // metric 5 per link, and a direct te:a - te:d link at metric 100
+    private static TeTopoUiPathGraph.Builder diamond() {
+        return TeTopoUiPathGraph.builder()
+                .link(link("te:a", 1, "te:b", 1), "a1", "b1", 1, 10)
+                .link(link("te:b", 2, "te:d", 1), "b2", "d1", 1, 10)
+                .link(link("te:a", 2, "te:c", 1), "a2", "c1", 5, 100)
+                .link(link("te:c", 2, "te:d", 2), "c2", "d2", 5, 100)
+                .link(link("te:a", 3, "te:d", 3), "a3", "d3", 100, 100);
+    }
+
+    private List<String> nodes() {
+        List<String> nodes = Lists.newArrayList();
+        for (int i = 0; i <= search.linkCount(); i++) {
+            nodes.add(search.nodeId(i));
+        }
+        return nodes;
+    }
+
+    @Test
+    public void lowestMetric() {
+        TeTopoUiPathGraph graph = diamond().build();
+        assertEquals(5, graph.linkCount());
+        assertTrue(graph.path("te:a", "te:d", false, 0, 0, 0, search));
+        assertEquals(ImmutableList.of("te:a", "te:b", "te:d"), nodes());
+        assertEquals(2, search.metric());
+        assertEquals("te:a/1-te:b/1", search.linkId(0));
+        assertEquals("te:b/2-te:d/1", search.linkId(1));
+    }
+
+    @Test
+    public void fewestHops() {
+        assertTrue(diamond().build().path("te:a", "te:d", true, 0, 0, 0, search));
+        assertEquals(ImmutableList.of("te:a", "te:d"), nodes());
+        assertEquals(100, search.metric());
+    }
+
+    @Test
+    public void matrixAllowsCrossing() {
+        TeTopoUiPathGraph graph = diamond().matrix("te:b", "b1", "b2", true).build();
+        assertTrue(graph.path("te:a", "te:d", false, 0, 0, 0, search));
+        assertEquals(ImmutableList.of("te:a", "te:b", "te:d"), nodes());
+    }
+
+    @Test
+    public void matrixBlocksCrossing() {
+        // te:b only lets traffic from b1 out towards a port with no link
+        TeTopoUiPathGraph graph = diamond().matrix("te:b", "b1", "b9", true).build();
+        assertTrue(graph.path("te:a", "te:d", false, 0, 0, 0, search));
+        assertEquals(ImmutableList.of("te:a", "te:c", "te:d"), nodes());
+        assertEquals(10, search.metric());
+
+        // a disallowed entry alone restricts the node to nothing
+        graph = diamond().matrix("te:b", "b1", "b2", false)
+                .matrix("te:c", "c1", "c2", false).build();
+        assertTrue(graph.path("te:a", "te:d", false, 0, 0, 0, search));
+        assertEquals(ImmutableList.of("te:a", "te:d"), nodes());
+    }
+
+    @Test
+    public void directionMatters() {
+        TeTopoUiPathGraph graph = TeTopoUiPathGraph.builder()
+                .link(link("te:a", 1, "te:b", 1), "a1", "b1", 1, 0)
+                .matrix("te:b", "b1", "b2", true)
+                .build();
+        assertTrue(graph.path("te:a", "te:b", false, 0, 0, 0, search));
+        assertFalse(graph.path("te:b", "te:a", false, 0, 0, 0, search));
+        assertEquals(0, search.linkCount());
+    }
+
+    @Test
+    public void constraints() {
+        TeTopoUiPathGraph graph = diamond().build();
+
+        // te:a - te:b - te:d lacks the bandwidth
+        assertTrue(graph.path("te:a", "te:d", false, 0, 0, 50, search));
+        assertEquals(ImmutableList.of("te:a", "te:c", "te:d"), nodes());
+
+        assertTrue(graph.path("te:a", "te:d", false, 1, 0, 0, search));
+        assertEquals(ImmutableList.of("te:a", "te:d"), nodes());
+
+        assertFalse(graph.path("te:a", "te:d", false, 1, 50, 0, search));
+        assertFalse(graph.path("te:a", "te:d", false, 0, 0, 1000, search));
+    }
+
+    @Test
+    public void unknownOrSameNodes() {
+        TeTopoUiPathGraph graph = diamond().build();
+        assertFalse(graph.path("te:a", "te:x", false, 0, 0, 0, search));
+        assertFalse(graph.path("te:a", "te:a", false, 0, 0, 0, search));
+        assertFalse(TeTopoUiPathGraph.EMPTY.path("te:a", "te:d", false, 0, 0, 0, search));
+    }
+
+    @Test
+    public void searchReused() {
+        TeTopoUiPathGraph graph = diamond().build();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(graph.path("te:a", "te:d", false, 0, 0, 0, search));
+            assertEquals(2, search.metric());
+            assertTrue(graph.path("te:c", "te:d", false, 0, 0, 0, search));
+            assertEquals(5, search.metric());
+        }
+    }
+
+    @Test
+    public void metricDefaultsToOne() {
+        TeTopoUiPathGraph graph = TeTopoUiPathGraph.builder()
+                .link(link("te:a", 1, "te:b", 1), "a1", "b1", 0, 0)
+                .build();
+        assertTrue(graph.path("te:a", "te:b", false, 0, 0, 0, search));
+        assertEquals(1, search.metric());
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_REMOVED;
+import static org.onosproject.TeTopoUiModelEvent.Type.DEVICE_UPDATED;
+import static org.onosproject.TeTopoUiModelEvent.Type.LINK_REMOVED;
+
+/**
+ * Unit tests for {@link TeTopoUiSearchIndex}.
+ */
+public class TeTopoUiSearchIndexTest {
+
+    private static final String LINK = "te:1/1-te:2/1";
+
+    private final TestModelCache modelCache = new TestModelCache();
+    private final TeTopoUiSearchIndex index = new TeTopoUiSearchIndex(modelCache);
+
+    @Before
+    public void setUp() {
+        modelCache.devices.add(device("te:1", "core-router", null));
+        modelCache.devices.add(device("te:12", "edge", null));
+        modelCache.devices.add(device("te:2", "Router-East", null, "region", "West"));
+        modelCache.devices.add(device("of:1", "sw", "te:1"));
+        modelCache.links.add(link());
+        index.activate();
+    }
+
+    @After
+    public void tearDown() {
+        index.deactivate();
+        assertNull(modelCache.listener);
+    }
+
+    private static ObjectNode device(String id, String name, String master, String... props) {
+        ObjectNode properties = TeTopoJson.objectNode().put("name", name);
+        if (master != null) {
+            properties.put(TeTopoJson.LAYER_MASTER, master);
+        }
+        for (int i = 0; i < props.length; i += 2) {
+            properties.put(props[i], props[i + 1]);
+        }
+        ObjectNode payload = TeTopoJson.objectNode().put("id", id);
+        payload.set("props", properties);
+        return payload;
+    }
+
+    private static ObjectNode link() {
+        return TeTopoJson.objectNode().put("id", LINK).put("src", "te:1").put("dst", "te:2");
+    }
+
+    private List<String> ids(String query) {
+        List<String> ids = Lists.newArrayList();
+        index.search(query, 10).matches().forEach(m -> ids.add(m.id()));
+        return ids;
+    }
+
+    private List<Integer> scores(String query) {
+        List<Integer> scores = Lists.newArrayList();
+        index.search(query, 10).matches().forEach(m -> scores.add(m.score()));
+        return scores;
+    }
+
+    @Test
+    public void exactBeforePrefix() {
+        // of:1 is supported by te:1, and the link starts at te:1
+        assertEquals(ImmutableList.of("of:1", "te:1", LINK, "te:12"), ids("te:1"));
+        assertEquals(ImmutableList.of(4, 4, 4, 3), scores("te:1"));
+
+        TeTopoUiSearchIndex.Match link = index.search("te:1", 10).matches().get(2);
+        assertTrue(link.isLink());
+        assertEquals("te:2", link.payload().path("dst").asText());
+        assertFalse(index.search("te:12", 10).matches().get(0).isLink());
+    }
+
+    @Test
+    public void fieldThenWordThenSubstring() {
+        // field prefix, then the start of a word within the field
+        assertEquals(ImmutableList.of("te:2", "te:1"), ids("router"));
+        assertEquals(ImmutableList.of(3, 2), scores("router"));
+
+        // short terms only match at the start of a word
+        assertEquals(ImmutableList.of("te:2", "te:1"), ids("ro"));
+        assertEquals(ImmutableList.of(3, 2), scores("ro"));
+
+        assertEquals(ImmutableList.of("te:1", "te:2"), ids("oute"));
+        assertEquals(ImmutableList.of(1, 1), scores("oute"));
+        assertTrue(ids("ou").isEmpty());
+    }
+
+    @Test
+    public void everyTermMatches() {
+        assertEquals(ImmutableList.of("te:2"), ids("router east"));
+        assertEquals(ImmutableList.of(5), scores("ROUTER  East "));
+        assertTrue(ids("router zzz").isEmpty());
+    }
+
+    @Test
+    public void annotations() {
+        assertEquals(ImmutableList.of("te:2"), ids("Region=WEST"));
+        assertEquals(ImmutableList.of("te:2"), ids("region=west router"));
+        assertTrue(ids("region=east").isEmpty());
+    }
+
+    @Test
+    public void limited() {
+        TeTopoUiSearchIndex.Result result = index.search("te", 2);
+        assertEquals(2, result.matches().size());
+        assertEquals(5, result.total());
+        assertEquals(ImmutableList.of("of:1", "te:1"), ImmutableList.of(
+                result.matches().get(0).id(), result.matches().get(1).id()));
+
+        assertTrue(index.search("te", 0).matches().isEmpty());
+        assertEquals(0, index.search("  ", 10).total());
+        assertEquals(0, index.search("zzz", 10).total());
+    }
+
+    @Test
+    public void followsModel() {
+        modelCache.post(DEVICE_UPDATED, device("te:12", "metro-router", null));
+        assertEquals(ImmutableList.of("te:2", "te:1", "te:12"), ids("router"));
+        assertTrue(ids("edge").isEmpty());
+
+        modelCache.post(DEVICE_REMOVED, device("te:2", "Router-East", null));
+        assertEquals(ImmutableList.of("te:1", "te:12"), ids("router"));
+        assertTrue(ids("region=west").isEmpty());
+
+        modelCache.post(LINK_REMOVED, link());
+        assertEquals(ImmutableList.of("of:1", "te:1", "te:12"), ids("te:1"));
+
+        // supporting nodes of expanded TE nodes are not indexed
+        modelCache.listener.event(new TeTopoUiModelEvent(
+                DEVICE_UPDATED, device("of:2", "router", null), "te:1"));
+        assertFalse(ids("router").contains("of:2"));
+    }
+
+    // View model of fixed payloads, its listener driven by the test.
+    private static class TestModelCache extends TeTopoUiModelCache {
+        private final List<ObjectNode> devices = Lists.newArrayList();
+        private final List<ObjectNode> links = Lists.newArrayList();
+        private TeTopoUiModelListener listener;
+
+        TestModelCache() {
+            super(null);
+        }
+
+        @Override
+        public void addListener(TeTopoUiModelListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void removeListener(TeTopoUiModelListener listener) {
+            this.listener = null;
+        }
+
+        @Override
+        public synchronized List<ObjectNode> devices() {
+            return ImmutableList.copyOf(devices);
+        }
+
+        @Override
+        public synchronized List<ObjectNode> links() {
+            return ImmutableList.copyOf(links);
+        }
+
+        void post(TeTopoUiModelEvent.Type type, ObjectNode payload) {
+            listener.event(new TeTopoUiModelEvent(type, payload));
+        }
+    }
+}
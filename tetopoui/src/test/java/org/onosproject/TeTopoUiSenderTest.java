@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TeTopoUiSender}.
+ */
+public class TeTopoUiSenderTest {
+
+    private static final int HIGH_WATER_MARK = 4;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private TeTopoUiSender sender;
+
+    // messages delivered, by their "n" field
+    private final List<Integer> sent = new CopyOnWriteArrayList<>();
+    // one permit per message delivered, and the permits taken so far
+    private final Semaphore deliveries = new Semaphore(0);
+    private int awaited = 0;
+
+    // holds the transport back until released
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    private final CountDownLatch resynced = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        sender = new TeTopoUiSender(2, HIGH_WATER_MARK);
+    }
+
+    @After
+    public void tearDown() {
+        sender.shutdown();
+    }
+
+    private static ObjectNode message(int n) {
+        return TeTopoJson.objectNode().put("n", n);
+    }
+
+    private void deliver(ObjectNode message) {
+        blocked.countDown();
+        try {
+            release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        record(message);
+    }
+
+    private void record(ObjectNode message) {
+        sent.add(message.get("n").asInt());
+        deliveries.release();
+    }
+
+    // Opens a channel whose transport is held on its first message.
+    private TeTopoUiSender.Channel blockedChannel() throws InterruptedException {
+        TeTopoUiSender.Channel channel = sender.open(this::deliver, resynced::countDown);
+        channel.submit(message(0));
+        assertTrue(blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return channel;
+    }
+
+    // Waits until the given number of messages have been delivered in all.
+    private void awaitSent(int count) throws InterruptedException {
+        assertTrue(deliveries.tryAcquire(count - awaited, TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        awaited = count;
+        assertEquals(count, sent.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noThreads() {
+        new TeTopoUiSender(0, HIGH_WATER_MARK);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noHighWaterMark() {
+        new TeTopoUiSender(1, 0);
+    }
+
+    @Test
+    public void inOrder() throws InterruptedException {
+        TeTopoUiSender wide = new TeTopoUiSender(2, 1000);
+        try {
+            TeTopoUiSender.Channel channel = wide.open(this::record, resynced::countDown);
+            for (int i = 0; i < 200; i++) {
+                assertTrue(i % 2 == 0 ? channel.submit(message(i)) : channel.offer(message(i)));
+            }
+            awaitSent(200);
+            for (int i = 0; i < 200; i++) {
+                assertEquals(i, (int) sent.get(i));
+            }
+        } finally {
+            wide.shutdown();
+        }
+    }
+
+    @Test
+    public void snapshotsNotCounted() throws InterruptedException {
+        TeTopoUiSender.Channel channel = blockedChannel();
+        for (int i = 1; i <= HIGH_WATER_MARK * 2; i++) {
+            assertTrue(channel.submit(message(i)));
+        }
+        assertEquals(0, channel.backlog());
+        for (int i = 1; i <= HIGH_WATER_MARK; i++) {
+            assertTrue(channel.offer(message(100 + i)));
+        }
+        assertEquals(HIGH_WATER_MARK, channel.backlog());
+        assertFalse(channel.isLagging());
+
+        release.countDown();
+        awaitSent(1 + HIGH_WATER_MARK * 3);
+        assertEquals(0, channel.backlog());
+    }
+
+    @Test
+    public void lagThenResync() throws InterruptedException {
+        TeTopoUiSender.Channel channel = blockedChannel();
+        for (int i = 1; i <= HIGH_WATER_MARK; i++) {
+            assertTrue(channel.offer(message(i)));
+        }
+        assertFalse(channel.offer(message(HIGH_WATER_MARK + 1)));
+        assertTrue(channel.isLagging());
+        assertEquals(0, channel.backlog());
+
+        // refused until resynchronized
+        assertFalse(channel.submit(message(-1)));
+        assertFalse(channel.offer(message(-1)));
+        assertEquals(1, resynced.getCount());
+
+        release.countDown();
+        assertTrue(resynced.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(channel.isLagging());
+        assertEquals(ImmutableList.of(0), sent);
+
+        assertTrue(channel.offer(message(1)));
+        awaitSent(2);
+    }
+
+    @Test
+    public void urgentFirst() throws InterruptedException {
+        TeTopoUiSender.Channel channel = blockedChannel();
+        channel.submit(message(1));
+        channel.offer(message(2));
+        channel.urgent(message(3));
+
+        release.countDown();
+        awaitSent(4);
+        assertEquals(ImmutableList.of(0, 3, 1, 2), sent);
+    }
+
+    @Test
+    public void closed() throws InterruptedException {
+        TeTopoUiSender.Channel channel = blockedChannel();
+        channel.offer(message(1));
+        channel.close();
+        assertEquals(0, channel.backlog());
+        assertFalse(channel.submit(message(2)));
+        assertFalse(channel.offer(message(3)));
+        assertFalse(channel.urgent(message(4)));
+
+        release.countDown();
+        awaitSent(1);
+        assertEquals(ImmutableList.of(0), sent);
+    }
+}
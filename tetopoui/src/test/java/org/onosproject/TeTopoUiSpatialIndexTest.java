@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TeTopoUiSpatialIndex}.
+ */
+public class TeTopoUiSpatialIndexTest {
+
+    private static final Set<String> NONE = ImmutableSet.of();
+    private static final double[] EUROPE = {-10, 35, 30, 60};
+
+    private TeTopoUiSpatialIndex index;
+    private TeTopoUiSpatialIndex.Cursor cursor;
+
+    @Before
+    public void setUp() {
+        index = new TeTopoUiSpatialIndex(1.0, true);
+        cursor = new TeTopoUiSpatialIndex.Cursor();
+        index.put("paris", 2.35, 48.86);
+        index.put("rome", 12.5, 41.9);
+        index.put("berlin", 13.4, 52.5);
+        index.put("tokyo", 139.7, 35.7);
+        index.put("fiji", 178.4, -18.1);
+        index.put("samoa", -171.8, -13.8);
+    }
+
+    // Pages through a box, returning every id and the number of pages.
+    private List<String> all(double[] box, int limit, int[] pages) {
+        List<String> ids = Lists.newArrayList();
+        while (cursor.hasNext()) {
+            ids.addAll(index.next(cursor, box, NONE::contains, limit));
+            pages[0]++;
+        }
+        return ids;
+    }
+
+    @Test
+    public void insideBox() {
+        List<String> ids = index.next(cursor, EUROPE, NONE::contains, 10);
+        assertEquals(ImmutableSet.of("paris", "rome", "berlin"), ImmutableSet.copyOf(ids));
+        assertEquals(3, ids.size());
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void pagedOnce() {
+        int[] pages = {0};
+        List<String> ids = all(EUROPE, 1, pages);
+        assertEquals(ImmutableSet.of("paris", "rome", "berlin"), ImmutableSet.copyOf(ids));
+        assertEquals(3, ids.size());
+        assertEquals(3, pages[0]);
+    }
+
+    @Test
+    public void antimeridian() {
+        List<String> ids = index.next(cursor, new double[]{170, -30, -160, 0}, NONE::contains, 10);
+        assertEquals(ImmutableList.of("fiji", "samoa"), ids);
+
+        cursor.reset();
+        int[] pages = {0};
+        assertEquals(ImmutableList.of("fiji", "samoa"),
+                     all(new double[]{170, -30, -160, 0}, 1, pages));
+    }
+
+    @Test
+    public void skipped() {
+        Set<String> sent = ImmutableSet.of("paris", "berlin");
+        assertEquals(ImmutableList.of("rome"), index.next(cursor, EUROPE, sent::contains, 1));
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void everything() {
+        assertEquals(6, index.next(cursor, null, NONE::contains, 10).size());
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void addedAfterCursorInSameCell() {
+        assertEquals(1, index.next(cursor, new double[]{2, 48, 3, 49}, NONE::contains, 1).size());
+        index.put("versailles", 2.13, 48.80);
+        assertEquals(ImmutableList.of("versailles"),
+                     index.next(cursor, new double[]{2, 48, 3, 49}, NONE::contains, 1));
+    }
+
+    @Test
+    public void movedAndRemoved() {
+        index.put("rome", 100, 10);
+        index.remove("berlin");
+        assertFalse(index.contains("berlin"));
+        assertEquals(ImmutableList.of("paris"), index.next(cursor, EUROPE, NONE::contains, 10));
+    }
+
+    @Test
+    public void layoutCoordinates() {
+        TeTopoUiSpatialIndex layout = new TeTopoUiSpatialIndex(256, false);
+        layout.put("a", -300, -20);
+        layout.put("b", 100, 200);
+        layout.put("c", 900, 600);
+        layout.put("d", 5000, 5000);
+        assertEquals(ImmutableSet.of("a", "b"), ImmutableSet.copyOf(
+                layout.next(cursor, new double[]{-500, -100, 500, 500}, NONE::contains, 10)));
+        cursor.reset();
+        assertEquals(ImmutableSet.of("b", "c"), ImmutableSet.copyOf(
+                layout.next(cursor, new double[]{0, 0, 1000, 1000}, NONE::contains, 10)));
+        cursor.reset();
+        assertTrue(layout.next(cursor, new double[]{1000, 0, 0, 1000}, NONE::contains, 10).isEmpty());
+        assertFalse(cursor.hasNext());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TeTopoUiUnlocatedIndex}.
+ */
+public class TeTopoUiUnlocatedIndexTest {
+
+    private static final Set<String> NONE = ImmutableSet.of();
+
+    private TeTopoUiUnlocatedIndex index;
+    private TeTopoUiUnlocatedIndex.Cursor cursor;
+
+    @Before
+    public void setUp() {
+        index = new TeTopoUiUnlocatedIndex();
+        cursor = new TeTopoUiUnlocatedIndex.Cursor();
+        index.put("a", false);
+        index.put("b", true);
+        index.put("c", false);
+        index.put("d", true);
+    }
+
+    @Test
+    public void upperLayerFirst() {
+        assertEquals(ImmutableList.of("b", "d", "a"), index.next(cursor, NONE::contains, 3));
+        assertTrue(index.hasNext(cursor));
+        assertEquals(ImmutableList.of("c"), index.next(cursor, NONE::contains, 3));
+        assertFalse(index.hasNext(cursor));
+    }
+
+    @Test
+    public void skipped() {
+        Set<String> sent = ImmutableSet.of("d", "c");
+        assertEquals(ImmutableList.of("b", "a"), index.next(cursor, sent::contains, 2));
+        assertFalse(index.hasNext(cursor));
+    }
+
+    @Test
+    public void skippedBeforeLimit() {
+        Set<String> sent = ImmutableSet.of("d", "a");
+        assertEquals(ImmutableList.of("b"), index.next(cursor, sent::contains, 1));
+        assertTrue(index.hasNext(cursor));
+        assertEquals(ImmutableList.of("c"), index.next(cursor, sent::contains, 1));
+        assertFalse(index.hasNext(cursor));
+    }
+
+    @Test
+    public void addedAfterCursor() {
+        index.next(cursor, NONE::contains, 4);
+        index.put("e", true);
+        index.put("a", true);
+        assertTrue(index.hasNext(cursor));
+        assertEquals(ImmutableList.of("e", "a"), index.next(cursor, NONE::contains, 4));
+    }
+
+    @Test
+    public void removed() {
+        index.next(cursor, NONE::contains, 1);
+        index.remove("b");
+        index.remove("d");
+        assertEquals(ImmutableList.of("a", "c"), index.next(cursor, NONE::contains, 4));
+    }
+
+    @Test
+    public void reset() {
+        index.next(cursor, NONE::contains, 4);
+        cursor.reset();
+        assertEquals(ImmutableList.of("b", "d", "a", "c"), index.next(cursor, NONE::contains, 4));
+    }
+}